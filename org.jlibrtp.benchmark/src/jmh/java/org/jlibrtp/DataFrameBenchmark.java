@@ -0,0 +1,134 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Assembling a video keyframe out of many packets and handing its
+ * payload on, per frame.
+ *
+ * The packets are received into pooled direct buffers, as with a
+ * DatagramChannel, run through a RingPktBuffer, and the frame is written
+ * into a buffer with getConcatenatedData(ByteBuffer) and released.
+ * What is still allocated per frame are the RtpPkt instances.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class DataFrameBenchmark {
+    /** Payload octets per packet */
+    private static final int PAYLOAD_SIZE = 1200;
+
+    /** Packets per frame, 200 is a 1080p keyframe */
+    @Param({"1", "200"})
+    int frameSize;
+
+    /** Sockets of the session */
+    private DatagramSocket rtpSock, rtcpSock;
+    /** Owns the buffers and the frame pool */
+    private RTPSession rtpSession;
+    /** The participant the buffer belongs to */
+    private Participant participant;
+    /** Buffers the packets are received into */
+    private BufferPool pool;
+    /** One encoded packet, its sequence number and timestamp are patched in */
+    private byte[] pkt;
+    /** The jitter buffer, created by the first packet */
+    private PktBuffer pktBuffer;
+    /** Where the frames are written to */
+    private ByteBuffer out;
+    /** Sequence number of the next packet */
+    private int seqNum = 0;
+    /** Timestamp of the next frame */
+    private long timeStamp = 0;
+
+    /**
+     * Creates the session and encodes the packet.
+     *
+     * @throws Exception if the sockets could not be opened
+     */
+    @Setup
+    public void setup() throws Exception {
+        rtpSock = new DatagramSocket(0);
+        rtcpSock = new DatagramSocket(0);
+        rtpSession = new RTPSession(rtpSock, rtcpSock);
+        // Frames are the packets sharing a timestamp
+        rtpSession.packetBufferBehavior(3, RTPSession.PKTBUF_RING);
+        InetSocketAddress adr = new InetSocketAddress("127.0.0.1", 6000);
+        participant = new Participant(adr, adr, 0x12345678L);
+        pool = new BufferPool(2 * frameSize, 1500);
+        pkt = new RtpPkt(0, 0x12345678L, 0, 96, new byte[PAYLOAD_SIZE]).encode();
+        out = ByteBuffer.allocateDirect(frameSize * PAYLOAD_SIZE);
+    }
+
+    /**
+     * Closes the sockets.
+     */
+    @TearDown
+    public void tearDown() {
+        // The session was never registered, so there are no threads to end
+        rtpSock.close();
+        rtcpSock.close();
+    }
+
+    /**
+     * Receives one frame worth of packets and takes the frame off the buffer.
+     *
+     * @return the number of octets written
+     */
+    @Benchmark
+    public int assembleAndRelease() {
+        for(int i=0; i<frameSize; i++) {
+            ByteBuffer buf = pool.acquire();
+            buf.put(pkt);
+            buf.putShort(2, (short) seqNum++);
+            buf.putInt(4, (int) timeStamp);
+            buf.flip();
+            RtpPkt aPkt = new RtpPkt(buf, pool);
+            if(pktBuffer == null) {
+                pktBuffer = PktBuffer.create(rtpSession, participant, aPkt);
+            } else {
+                pktBuffer.addPkt(aPkt);
+            }
+        }
+        timeStamp += 3000;
+
+        DataFrame frame = pktBuffer.popOldestFrame();
+        out.clear();
+        int written = frame.getConcatenatedData(out);
+        frame.release();
+        return written;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Looking up participants by SSRC, as is done for every received packet.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ParticipantDatabaseBenchmark {
+    /** Number of lookups to cycle through, a power of two */
+    private static final int LOOKUPS = 4096;
+
+    /** Number of participants in the database */
+    @Param({"10", "1000", "100000"})
+    int participants;
+
+    /** Sockets of the session */
+    private DatagramSocket rtpSock, rtcpSock;
+    /** The database */
+    private ParticipantDatabase partDb;
+    /** SSRCs that are in the database, in random order */
+    private long[] known;
+    /** SSRCs that are not */
+    private long[] unknown;
+    /** Index of the next lookup */
+    private int next = 0;
+
+    /**
+     * Fills the database with participants discovered through RTP.
+     *
+     * @throws Exception if the sockets could not be opened
+     */
+    @Setup
+    public void setup() throws Exception {
+        rtpSock = new DatagramSocket(0);
+        rtcpSock = new DatagramSocket(0);
+        RTPSession rtpSession = new RTPSession(rtpSock, rtcpSock);
+        partDb = rtpSession.partDb;
+
+        Random random = new Random(42);
+        InetSocketAddress adr = new InetSocketAddress("127.0.0.1", 6000);
+        long[] ssrcs = new long[participants];
+        for(int i=0; i<participants; i++) {
+            long ssrc;
+            do {
+                ssrc = random.nextInt() & 0xFFFFFFFFL;
+            } while(partDb.getParticipant(ssrc) != null);
+            ssrcs[i] = ssrc;
+            partDb.addParticipant(1, new Participant(adr, adr, ssrc));
+        }
+
+        known = new long[LOOKUPS];
+        unknown = new long[LOOKUPS];
+        for(int i=0; i<LOOKUPS; i++) {
+            known[i] = ssrcs[random.nextInt(participants)];
+            long ssrc;
+            do {
+                ssrc = random.nextInt() & 0xFFFFFFFFL;
+            } while(partDb.getParticipant(ssrc) != null);
+            unknown[i] = ssrc;
+        }
+    }
+
+    /**
+     * Closes the sockets.
+     */
+    @TearDown
+    public void tearDown() {
+        // The session was never registered, so there are no threads to end
+        rtpSock.close();
+        rtcpSock.close();
+    }
+
+    /**
+     * Looks up a participant that is in the database.
+     *
+     * @return the participant
+     */
+    @Benchmark
+    public Participant lookupKnown() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return partDb.getParticipant(known[next]);
+    }
+
+    /**
+     * Looks up an SSRC that is not in the database, as for the first packet of a new source.
+     *
+     * @return null
+     */
+    @Benchmark
+    public Participant lookupUnknown() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return partDb.getParticipant(unknown[next]);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Adding packets to a jitter buffer and popping frames off it, per packet.
+ *
+ * Every operation decodes the packet from its bytes, as the receiver does.
+ * Frames are released once consumed, as a well-behaved application would.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PktBufferBenchmark {
+    /** Packets received in a stream, the lossy one spans more sequence numbers */
+    private static final int STREAM_LENGTH = 1024;
+
+    /** Order the packets arrive in */
+    @Param({"inOrder", "reordered", "lossy"})
+    String stream;
+
+    /** RTPSession.PKTBUF_LINKED_LIST or RTPSession.PKTBUF_RING */
+    @Param({"0", "1"})
+    int bufferType;
+
+    /** See RTPSession.packetBufferBehavior() */
+    @Param({"3"})
+    int behavior;
+
+    /** Sockets of the session */
+    private DatagramSocket rtpSock, rtcpSock;
+    /** Owns the buffers */
+    private RTPSession rtpSession;
+    /** The participant the buffers belong to */
+    private Participant participant;
+    /** The encoded packets, in arrival order */
+    private byte[][] pkts;
+
+    /**
+     * Creates the session and encodes the stream.
+     *
+     * @throws Exception if the sockets could not be opened
+     */
+    @Setup
+    public void setup() throws Exception {
+        rtpSock = new DatagramSocket(0);
+        rtcpSock = new DatagramSocket(0);
+        rtpSession = new RTPSession(rtpSock, rtcpSock);
+        rtpSession.packetBufferBehavior(behavior, bufferType);
+        InetSocketAddress adr = new InetSocketAddress("127.0.0.1", 6000);
+        participant = new Participant(adr, adr, 0x12345678L);
+
+        // Every stream inserts STREAM_LENGTH packets, as @OperationsPerInvocation counts
+        int[] order = new int[STREAM_LENGTH];
+        int count = 0;
+        for(int i=0; count<STREAM_LENGTH; i++) {
+            if("lossy".equals(stream) && i % 20 == 7) {
+                // 5% loss
+                continue;
+            }
+            order[count++] = i;
+        }
+        if("reordered".equals(stream)) {
+            // Every fourth packet swaps places with the next one
+            for(int i=0; i+1<count; i+=4) {
+                int tmp = order[i];
+                order[i] = order[i+1];
+                order[i+1] = tmp;
+            }
+        }
+
+        byte[] payload = new byte[160];
+        pkts = new byte[count][];
+        for(int i=0; i<count; i++) {
+            // Sequence numbers wrap around within the stream
+            int seqNum = (0xFF00 + order[i]) & 0xFFFF;
+            pkts[i] = new RtpPkt(160L * order[i], 0x12345678L, seqNum, 0, payload).encode();
+        }
+    }
+
+    /**
+     * Closes the sockets.
+     */
+    @TearDown
+    public void tearDown() {
+        // The session was never registered, so there are no threads to end
+        rtpSock.close();
+        rtcpSock.close();
+    }
+
+    /**
+     * Runs the whole stream through a new buffer, popping frames as they become ready.
+     *
+     * @param bh consumes the frames
+     */
+    @Benchmark
+    @OperationsPerInvocation(STREAM_LENGTH)
+    public void addAndPop(Blackhole bh) {
+        PktBuffer pktBuffer = null;
+        for(int i=0; i<pkts.length; i++) {
+            RtpPkt pkt = new RtpPkt(pkts[i], pkts[i].length);
+            if(pktBuffer == null) {
+                pktBuffer = PktBuffer.create(rtpSession, participant, pkt);
+            } else {
+                pktBuffer.addPkt(pkt);
+            }
+            DataFrame frame;
+            while(pktBuffer.getLength() > 0 && (frame = pktBuffer.popOldestFrame()) != null) {
+                bh.consume(frame);
+                frame.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Handing packets from a receiving thread to the thread delivering frames,
+ * through a PktQueue and, for comparison, through a queue guarded by a
+ * monitor as the synchronized packet buffers used to be. Sampled, so that
+ * the percentiles show the tail latency of each side under contention.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Group)
+public class PktQueueBenchmark {
+    /** The capacity of both queues */
+    private static final int CAPACITY = 1024;
+
+    /** The lock-free queue */
+    private PktQueue queue;
+    /** The guarded queue */
+    private ArrayDeque<RtpPkt> locked;
+    /** What is handed over, the same packet every time */
+    private RtpPkt pkt;
+
+    /**
+     * Creates the queues and the packet.
+     */
+    @Setup
+    public void setup() {
+        queue = new PktQueue(CAPACITY);
+        locked = new ArrayDeque<RtpPkt>(CAPACITY);
+        pkt = new RtpPkt(160L, 0x12345678L, 1, 0, new byte[160]);
+    }
+
+    /**
+     * Offers a packet to the lock-free queue.
+     *
+     * @return false if it was full
+     */
+    @Benchmark
+    @Group("pktQueue")
+    @GroupThreads(1)
+    public boolean pktQueueOffer() {
+        return queue.offer(pkt);
+    }
+
+    /**
+     * Polls the lock-free queue.
+     *
+     * @return the packet, null if it was empty
+     */
+    @Benchmark
+    @Group("pktQueue")
+    @GroupThreads(1)
+    public RtpPkt pktQueuePoll() {
+        return queue.poll();
+    }
+
+    /**
+     * Adds a packet to the guarded queue.
+     *
+     * @return false if it was full
+     */
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(1)
+    public boolean monitorOffer() {
+        synchronized(locked) {
+            if(locked.size() >= CAPACITY) {
+                return false;
+            }
+            return locked.offer(pkt);
+        }
+    }
+
+    /**
+     * Polls the guarded queue.
+     *
+     * @return the packet, null if it was empty
+     */
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(1)
+    public RtpPkt monitorPoll() {
+        synchronized(locked) {
+            return locked.poll();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Building, encoding and parsing RTCP packets.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RtcpPktBenchmark {
+    /** Number of report blocks in SR and RR packets */
+    @Param({"1", "16"})
+    int reportees;
+
+    /** Sockets of the session */
+    private DatagramSocket rtpSock, rtcpSock;
+    /** The session whose CNAME goes into SDES packets */
+    private RTPSession rtpSession;
+    /** The participants that are reported on */
+    private Participant[] parts;
+    /** An encoded compound packet: SR, RR and SDES */
+    private byte[] compound;
+    /** Where the compound packet came from */
+    private InetSocketAddress from;
+
+    /**
+     * Creates the session, the participants and the compound packet to parse.
+     *
+     * @throws Exception if the sockets could not be opened
+     */
+    @Setup
+    public void setup() throws Exception {
+        rtpSock = new DatagramSocket(0);
+        rtcpSock = new DatagramSocket(0);
+        rtpSession = new RTPSession(rtpSock, rtcpSock);
+        from = new InetSocketAddress("127.0.0.1", 5005);
+
+        parts = new Participant[reportees];
+        for(int i=0; i<reportees; i++) {
+            parts[i] = new Participant(new InetSocketAddress("127.0.0.1", 6000 + 2*i),
+                    new InetSocketAddress("127.0.0.1", 6001 + 2*i), 0x10000L + i);
+            parts[i].receivedPkts = 1000;
+            parts[i].lastSeqNumber = 1000;
+            parts[i].firstSeqNumber = 1;
+        }
+        compound = encodeCompound();
+    }
+
+    /**
+     * Closes the sockets.
+     */
+    @TearDown
+    public void tearDown() {
+        // The session was never registered, so there are no threads to end
+        rtpSock.close();
+        rtcpSock.close();
+    }
+
+    /**
+     * Builds and encodes a sender report with report blocks.
+     *
+     * @return the encoded packet
+     */
+    @Benchmark
+    public byte[] buildSR() {
+        RtcpPktSR srPkt = new RtcpPktSR(rtpSession.ssrc, 1000, 160000, new RtcpPktRR(parts, -1));
+        srPkt.encode();
+        return srPkt.rawPkt;
+    }
+
+    /**
+     * Builds and encodes a receiver report.
+     *
+     * @return the encoded packet
+     */
+    @Benchmark
+    public byte[] buildRR() {
+        RtcpPktRR rrPkt = new RtcpPktRR(parts, rtpSession.ssrc);
+        rrPkt.encode();
+        return rrPkt.rawPkt;
+    }
+
+    /**
+     * Builds and encodes the SDES packet of the session.
+     *
+     * @return the encoded packet
+     */
+    @Benchmark
+    public byte[] buildSDES() {
+        RtcpPktSDES sdesPkt = new RtcpPktSDES(true, rtpSession, null);
+        sdesPkt.encode();
+        return sdesPkt.rawPkt;
+    }
+
+    /**
+     * Builds and encodes a compound packet, as RTCPSenderThread does.
+     *
+     * @return the encoded packet
+     */
+    @Benchmark
+    public byte[] encodeCompound() {
+        CompRtcpPkt compPkt = new CompRtcpPkt();
+        compPkt.addPacket(new RtcpPktSR(rtpSession.ssrc, 1000, 160000, null));
+        compPkt.addPacket(new RtcpPktRR(parts, rtpSession.ssrc));
+        compPkt.addPacket(new RtcpPktSDES(true, rtpSession, null));
+        return compPkt.encode();
+    }
+
+    /**
+     * Parses a compound packet, as RTCPReceiverThread does.
+     *
+     * @return the parsed packet
+     */
+    @Benchmark
+    public CompRtcpPkt parseCompound() {
+        return new CompRtcpPkt(compound, compound.length, from, rtpSession);
+    }
+}
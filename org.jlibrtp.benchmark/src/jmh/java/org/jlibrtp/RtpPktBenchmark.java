@@ -0,0 +1,119 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding and decoding of RTP packets.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RtpPktBenchmark {
+    /** Payload size in bytes, a 20 ms G.711 frame and a full video packet */
+    @Param({"160", "1200"})
+    int payloadSize;
+
+    /** The payload of encoded packets */
+    private byte[] payload;
+    /** An encoded packet */
+    private byte[] raw;
+    /** The same packet in a direct buffer, as received from a DatagramChannel */
+    private ByteBuffer direct;
+    /** Sequence number of the next encoded packet */
+    private int seqNum = 0;
+
+    /**
+     * Encodes the packet the decoding benchmarks work on.
+     */
+    @Setup
+    public void setup() {
+        payload = new byte[payloadSize];
+        for(int i=0; i<payloadSize; i++) {
+            payload[i] = (byte) i;
+        }
+        raw = new RtpPkt(160L, 0x12345678L, 1, 0, payload).encode();
+        direct = ByteBuffer.allocateDirect(raw.length);
+        direct.put(raw);
+        direct.flip();
+    }
+
+    /**
+     * Creates and encodes a packet, as RTPSession.sendData() does.
+     *
+     * @return the encoded packet
+     */
+    @Benchmark
+    public byte[] encode() {
+        seqNum = (seqNum + 1) & 0xFFFF;
+        return new RtpPkt(160L * seqNum, 0x12345678L, seqNum, 0, payload).encode();
+    }
+
+    /**
+     * Decodes the header fields the receiver looks at.
+     *
+     * @param bh consumes the fields
+     */
+    @Benchmark
+    public void decodeHeader(Blackhole bh) {
+        RtpPkt pkt = new RtpPkt(raw, raw.length);
+        bh.consume(pkt.getSsrc());
+        bh.consume(pkt.getSeqNumber());
+        bh.consume(pkt.getTimeStamp());
+        bh.consume(pkt.getPayloadType());
+    }
+
+    /**
+     * Decodes a packet and copies out its payload, as the application gets it.
+     *
+     * @return the payload
+     */
+    @Benchmark
+    public byte[] decodePayload() {
+        return new RtpPkt(raw, raw.length).getPayload();
+    }
+
+    /**
+     * Decodes the header fields of a packet in a direct buffer.
+     *
+     * @param bh consumes the fields
+     */
+    @Benchmark
+    public void decodeDirect(Blackhole bh) {
+        RtpPkt pkt = new RtpPkt(direct.duplicate(), null);
+        bh.consume(pkt.getSsrc());
+        bh.consume(pkt.getSeqNumber());
+        bh.consume(pkt.getTimeStamp());
+        bh.consume(pkt.getPayloadType());
+    }
+}
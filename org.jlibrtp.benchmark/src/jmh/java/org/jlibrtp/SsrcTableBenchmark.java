@@ -0,0 +1,175 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.net.InetSocketAddress;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SsrcTable against the ConcurrentHashMap of boxed SSRCs it replaced in
+ * ParticipantDatabase, for lookups and for walking all participants.
+ * Run with the gc profiler to compare the allocation rates as well.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SsrcTableBenchmark {
+    /** Number of lookups to cycle through, a power of two */
+    private static final int LOOKUPS = 4096;
+
+    /** Number of participants in the tables */
+    @Param({"10", "1000", "100000"})
+    int participants;
+
+    /** The table */
+    private SsrcTable table;
+    /** The map, with the same participants */
+    private ConcurrentHashMap<Long,Participant> map;
+    /** SSRCs that are in the tables, in random order */
+    private long[] known;
+    /** SSRCs that are not */
+    private long[] unknown;
+    /** Index of the next lookup */
+    private int next = 0;
+    /** Where visitAll() sends the participants */
+    private Blackhole blackhole;
+    /** Passes the participants of the table to blackhole */
+    private final SsrcTable.Visitor consumer = new SsrcTable.Visitor() {
+        public void visit(Participant p) {
+            blackhole.consume(p);
+        }
+    };
+
+    /**
+     * Fills both tables with the same participants.
+     */
+    @Setup
+    public void setup() {
+        table = new SsrcTable();
+        map = new ConcurrentHashMap<Long,Participant>();
+
+        Random random = new Random(42);
+        InetSocketAddress adr = new InetSocketAddress("127.0.0.1", 6000);
+        long[] ssrcs = new long[participants];
+        for(int i=0; i<participants; i++) {
+            long ssrc;
+            do {
+                ssrc = random.nextInt() & 0xFFFFFFFFL;
+            } while(table.containsKey(ssrc));
+            ssrcs[i] = ssrc;
+            Participant p = new Participant(adr, adr, ssrc);
+            table.put(ssrc, p);
+            map.put(ssrc, p);
+        }
+
+        known = new long[LOOKUPS];
+        unknown = new long[LOOKUPS];
+        for(int i=0; i<LOOKUPS; i++) {
+            known[i] = ssrcs[random.nextInt(participants)];
+            long ssrc;
+            do {
+                ssrc = random.nextInt() & 0xFFFFFFFFL;
+            } while(table.containsKey(ssrc));
+            unknown[i] = ssrc;
+        }
+    }
+
+    /**
+     * Looks up a known SSRC in the table.
+     *
+     * @return the participant
+     */
+    @Benchmark
+    public Participant tableLookupKnown() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return table.get(known[next]);
+    }
+
+    /**
+     * Looks up a known SSRC in the map, boxing it first.
+     *
+     * @return the participant
+     */
+    @Benchmark
+    public Participant mapLookupKnown() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return map.get(known[next]);
+    }
+
+    /**
+     * Looks up an unknown SSRC in the table.
+     *
+     * @return null
+     */
+    @Benchmark
+    public Participant tableLookupUnknown() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return table.get(unknown[next]);
+    }
+
+    /**
+     * Looks up an unknown SSRC in the map, boxing it first.
+     *
+     * @return null
+     */
+    @Benchmark
+    public Participant mapLookupUnknown() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return map.get(unknown[next]);
+    }
+
+    /**
+     * Walks the table with a visitor, as the RTCP and dispatch code does.
+     *
+     * @param bh sink for the participants
+     */
+    @Benchmark
+    public void tableVisit(Blackhole bh) {
+        blackhole = bh;
+        table.visit(consumer);
+    }
+
+    /**
+     * Walks the map with an enumeration, as the old code did.
+     *
+     * @param bh sink for the participants
+     */
+    @Benchmark
+    public void mapEnumerate(Blackhole bh) {
+        Enumeration<Participant> enu = map.elements();
+        while(enu.hasMoreElements()) {
+            bh.consume(enu.nextElement());
+        }
+    }
+}
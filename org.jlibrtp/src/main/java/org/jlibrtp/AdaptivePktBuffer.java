@@ -0,0 +1,209 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A jitter buffer that hands frames to the application at a playout deadline,
+ * rather than after a fixed number of packets.
+ *
+ * The deadline of a frame is the time its RTP timestamp maps to, given the
+ * mean transit time of the packets received so far, plus a playout delay.
+ * The delay follows the interarrival jitter (RFC 3550, 6.4.1) measured on
+ * the packets: it grows as soon as the jitter does, or when a packet arrives
+ * after its frame was due, and shrinks slowly when the network calms down.
+ * It is kept within rtpSession.playoutDelay().
+ *
+ * Frames are handed over at their deadline whether packets are missing or
+ * not, packets arriving after that are dropped. Packets are kept in a
+ * RingPktBuffer, rtpSession.pktBufBehavior() is not used.
+ *
+ * @author agent
+ */
+public class AdaptivePktBuffer extends RingPktBuffer {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(AdaptivePktBuffer.class.getName());
+
+    /** The playout delay is this many times the jitter */
+    private static final int JITTER_FACTOR = 4;
+    /** Weight of new samples in the mean transit time, as a shift (1/128) */
+    private static final int TRANSIT_SHIFT = 7;
+    /** Weight of the difference when the delay shrinks, as a shift (1/64) */
+    private static final int SHRINK_SHIFT = 6;
+
+    /** RTP clock rate of the payload, in Hz, see RTPSession.clockRate(int, int) */
+    private int clockRate;
+    /** RTP timestamp that timestampNanos() counts from */
+    private long baseTimeStamp;
+    /** The last RTP timestamp extended beyond 32 bits, relative to baseTimeStamp */
+    private long lastExtTimeStamp = 0;
+    /** Mean transit time, local arrival minus RTP time, in nanoseconds */
+    private long meanTransit;
+    /** Transit time of the previous packet, in nanoseconds */
+    private long lastTransit;
+    /** Interarrival jitter, in nanoseconds */
+    protected long jitter = 0;
+    /** Current playout delay, in nanoseconds */
+    protected long playoutDelay;
+    /** Packets dropped because their frame was already played out */
+    protected long latePkts = 0;
+
+    /**
+     * Creates a new adaptive buffer.
+     *
+     * @param rtpSession the parent RTPSession
+     * @param p the participant to which this packetbuffer belongs.
+     * @param aPkt The first RTP packet, to be added to the buffer
+     */
+    protected AdaptivePktBuffer(RTPSession rtpSession, Participant p, RtpPkt aPkt) {
+        super(rtpSession, p, aPkt);
+        clockRate = rtpSession.clockRate(aPkt.getPayloadType());
+        baseTimeStamp = aPkt.getTimeStamp();
+        meanTransit = System.nanoTime();
+        lastTransit = meanTransit;
+        playoutDelay = rtpSession.minPlayoutDelay * 1000000L;
+    }
+
+    /**
+     * Extends an RTP timestamp beyond 32 bits, relative to baseTimeStamp.
+     *
+     * @param timeStamp the RTP timestamp
+     * @return the extended timestamp
+     */
+    private long extendTimeStamp(long timeStamp) {
+        // Signed distance, modulo 2^32
+        int delta = (int) (timeStamp - baseTimeStamp - lastExtTimeStamp);
+        return lastExtTimeStamp + delta;
+    }
+
+    /**
+     * Converts an RTP timestamp into nanoseconds since baseTimeStamp.
+     *
+     * @param timeStamp the RTP timestamp
+     * @return nanoseconds of media time
+     */
+    private long timestampNanos(long timeStamp) {
+        long ext = extendTimeStamp(timeStamp);
+        return MediaClock.toNanos(ext, clockRate);
+    }
+
+    /**
+     * The local time, as in System.nanoTime(), at which the frame with the
+     * given RTP timestamp should be handed to the application.
+     *
+     * @param timeStamp the RTP timestamp
+     * @return the playout deadline
+     */
+    protected long playoutTime(long timeStamp) {
+        return meanTransit + timestampNanos(timeStamp) + playoutDelay;
+    }
+
+    /**
+     * Adds a packet and updates the jitter estimate and playout delay.
+     *
+     * @param aPkt the packet to be added to the buffer.
+     * @return 0 if the packet was added, -1 if it was too late, -2 if it is a duplicate
+     */
+    protected int addPkt(RtpPkt aPkt) {
+        if(aPkt == null) {
+            return super.addPkt(aPkt);
+        }
+        long now = System.nanoTime();
+        long timeStamp = aPkt.getTimeStamp();
+        long mediaTime = timestampNanos(timeStamp);
+        long transit = now - mediaTime;
+
+        int ret = super.addPkt(aPkt);
+        if(ret == -2) {
+            // Duplicates say nothing about the network
+            return ret;
+        }
+
+        long min = rtpSession.minPlayoutDelay * 1000000L;
+        long max = rtpSession.maxPlayoutDelay * 1000000L;
+
+        if(ret == -1) {
+            // Too late, delay enough that this would not have happened
+            latePkts++;
+            long lateness = now - playoutTime(timeStamp);
+            if(lateness > 0) {
+                playoutDelay = Math.min(max, playoutDelay + lateness);
+            }
+            if(LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("AdaptivePktBuffer.addPkt() late packet, delay now " + playoutDelay/1000000 + "ms");
+            }
+            return ret;
+        }
+
+        long extTimeStamp = extendTimeStamp(timeStamp);
+        if(extTimeStamp > lastExtTimeStamp) {
+            lastExtTimeStamp = extTimeStamp;
+        }
+
+        // RFC 3550, A.8
+        long d = transit - lastTransit;
+        lastTransit = transit;
+        if(d < 0) {
+            d = -d;
+        }
+        jitter += (d - jitter) / 16;
+        meanTransit += (transit - meanTransit) >> TRANSIT_SHIFT;
+
+        long target = Math.max(min, Math.min(max, JITTER_FACTOR * jitter));
+        if(target > playoutDelay) {
+            playoutDelay = target;
+        } else {
+            playoutDelay -= (playoutDelay - target) >> SHRINK_SHIFT;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the oldest frame once its playout deadline has passed,
+     * skipping any packets that are still missing at that point.
+     *
+     * @return the oldest frame, null if there is none or if it is not due yet
+     */
+    protected DataFrame popOldestFrame() {
+        RtpPkt oldest = oldestPkt();
+        if(oldest == null || System.nanoTime() - playoutTime(oldest.getTimeStamp()) < 0) {
+            return null;
+        }
+        if(headPkt() == null) {
+            skipToOldest();
+        }
+        return takeFrame(frameLength(), expectedFrameSize());
+    }
+
+    /**
+     * The playout deadline of the oldest frame in the buffer.
+     *
+     * @return the deadline, as in System.nanoTime(), or Long.MAX_VALUE if the buffer is empty
+     */
+    protected long nextPlayoutTime() {
+        RtpPkt oldest = oldestPkt();
+        if(oldest == null) {
+            return Long.MAX_VALUE;
+        }
+        return playoutTime(oldest.getTimeStamp());
+    }
+}
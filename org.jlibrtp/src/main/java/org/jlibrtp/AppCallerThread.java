@@ -18,7 +18,8 @@
  */
 package org.jlibrtp;
 
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,12 +29,12 @@ import java.util.logging.Logger;
  *
  * It should sleep when not in use, and be woken up by a condition variable.
  *
- * Optionally, if we do jitter-control, the condition variable should have a max waiting period
- * equal to how often we need to push data.
+ * If a packet buffer hands frames over at a playout deadline (AdaptivePktBuffer),
+ * the wait on the condition variable is limited to the earliest deadline.
  *
  * @author Arne Kepp
  */
-public class AppCallerThread extends Thread {
+public class AppCallerThread extends SessionThread {
     /** Logger instance. */
     private static final Logger LOGGER =
         Logger.getLogger(AppCallerThread.class.getName());
@@ -42,6 +43,10 @@ public class AppCallerThread extends Thread {
     RTPSession rtpSession;
     /**  The applications interface, where the callback methods are called */
     RTPAppIntf appl;
+    /** The participants taken from the session's ready queue, only used by this thread */
+    private final ArrayList<Participant> ready = new ArrayList<Participant>();
+    /** Participants whose packet buffers hand frames over at a deadline, earliest first */
+    private final PriorityQueue<PlayoutTimer> timers = new PriorityQueue<PlayoutTimer>();
 
     /**
      * Instantiates the AppCallerThread
@@ -50,21 +55,22 @@ public class AppCallerThread extends Thread {
      * @param rtpApp the interface to which data is given
      */
     protected AppCallerThread(RTPSession session, RTPAppIntf rtpApp) {
+        super("AppCallerThread", session);
         rtpSession = session;
         appl = rtpApp;
         if(LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.finest("<-> AppCallerThread created");
         }
-        setName("AppCallerThread");
     }
 
     /**
      * The AppCallerThread will run in this loop until the RTPSession
      * is terminated.
      *
-     * Whenever an RTP packet is received it will loop over the
-     * participants to check for packet buffers that have available
-     * frame.
+     * Whenever an RTP packet is added to a packet buffer, the receiver
+     * queues the participant it belongs to. The AppCallerThread takes the
+     * queued participants and hands their frames to the application, so the
+     * cost per frame does not depend on the number of participants.
      */
     public void run() {
         if(LOGGER.isLoggable(Level.FINER)) {
@@ -75,43 +81,170 @@ public class AppCallerThread extends Thread {
 
             rtpSession.pktBufLock.lock();
             try {
-                if(LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.finer("<-> AppCallerThread going to Sleep");
-                }
-
-                try { rtpSession.pktBufDataReady.await(); }
-                catch (Exception e) { LOGGER.log(Level.WARNING, "AppCallerThread:" + e.getMessage(), e);}
-
-                // Next loop over all participants and check whether they have anything for us.
-                Enumeration<Participant> enu = rtpSession.partDb.getParticipants();
-
-                while(enu.hasMoreElements()) {
-                    Participant p = enu.nextElement();
-
-                    boolean done = false;
-                    //System.out.println(p.ssrc + " " + !done +" " + p.rtpAddress
-                    //		+ " " + rtpSession.naiveReception + " " + p.pktBuffer);
-                    //System.out.println("done: " + done + "  p.unexpected: " + p.unexpected);
-                    while(!done && (!p.unexpected || rtpSession.naiveReception)
-                            && p.pktBuffer != null && p.pktBuffer.length > 0) {
-
-                        DataFrame aFrame = p.pktBuffer.popOldestFrame();
-                        if(aFrame == null) {
-                            done = true;
-                        } else {
-                            appl.receiveData(aFrame, p);
+                PlayoutTimer timer = timers.peek();
+                while(rtpSession.readyHead == null && rtpSession.endSession == false) {
+                    if(LOGGER.isLoggable(Level.FINER)) {
+                        LOGGER.finer("<-> AppCallerThread going to Sleep");
+                    }
+                    if(timer == null) {
+                        rtpSession.pktBufDataReady.await();
+                    } else {
+                        long wait = timer.time - System.nanoTime();
+                        if(wait <= 0) {
+                            break;
                         }
+                        rtpSession.pktBufDataReady.awaitNanos(wait);
                     }
                 }
 
+                takeReady();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "AppCallerThread:" + e.getMessage(), e);
             } finally {
                 rtpSession.pktBufLock.unlock();
             }
 
+            deliverReady();
         }
         if(LOGGER.isLoggable(Level.FINER)) {
             LOGGER.finer("<- AppCallerThread.run() terminating");
         }
     }
 
+    /**
+     * Takes the whole ready queue of the session. The caller must hold rtpSession.pktBufLock.
+     */
+    protected void takeReady() {
+        // The receiver may queue the same participants again right away
+        Participant p = rtpSession.readyHead;
+        rtpSession.readyHead = null;
+        rtpSession.readyTail = null;
+        while(p != null) {
+            ready.add(p);
+            Participant next = p.nextReady;
+            p.nextReady = null;
+            p.readyQueued = false;
+            p = next;
+        }
+    }
+
+    /**
+     * Hands the frames of the participants taken by takeReady(), and of those
+     * whose playout deadline has passed, to the application.
+     *
+     * The application is called without holding the lock, so the receiver is never held up.
+     * Sessions run by an RTPSessionEngine call this from a dispatcher thread, one at a time,
+     * without ever starting this thread.
+     *
+     * @return the earliest playout deadline still pending, as in System.nanoTime(), or Long.MAX_VALUE
+     */
+    protected long deliverReady() {
+        for(int i=0; i<ready.size(); i++) {
+            deliverFrames(ready.get(i));
+        }
+        ready.clear();
+
+        // Buffers whose playout deadline has passed
+        long now = System.nanoTime();
+        PlayoutTimer timer;
+        while((timer = timers.peek()) != null && timer.time - now <= 0) {
+            timers.poll();
+            if(timer.p.playoutTime == timer.time) {
+                timer.p.playoutTime = Long.MAX_VALUE;
+            }
+            deliverFrames(timer.p);
+        }
+        return timer == null ? Long.MAX_VALUE : timer.time;
+    }
+
+    /**
+     * Sorts the packets in a participant's inbox into its packet buffer, hands all
+     * the frames the buffer has ready to the application, and sets a timer if the
+     * buffer will have one ready at a later time.
+     *
+     * @param p the participant
+     */
+    private void deliverFrames(Participant p) {
+        drainInbox(p);
+        PktBuffer pktBuffer = p.pktBuffer;
+        if(pktBuffer == null || (p.unexpected && !rtpSession.naiveReception)) {
+            return;
+        }
+
+        DataFrame aFrame;
+        while(pktBuffer.getLength() > 0 && (aFrame = pktBuffer.popOldestFrame()) != null) {
+            appl.receiveData(aFrame, p);
+        }
+
+        long playoutTime = pktBuffer.nextPlayoutTime();
+        if(playoutTime != Long.MAX_VALUE
+                && (p.playoutTime == Long.MAX_VALUE || playoutTime - p.playoutTime < 0)) {
+            // Timers that are no longer the earliest for their participant fire harmlessly
+            p.playoutTime = playoutTime;
+            timers.add(new PlayoutTimer(playoutTime, p));
+        }
+    }
+
+    /**
+     * Moves the packets the receiver has put in a participant's inbox to its packet buffer.
+     *
+     * The signal is cleared first, so that a packet offered after the inbox looked
+     * empty queues the participant again.
+     *
+     * @param p the participant
+     */
+    private void drainInbox(Participant p) {
+        PktQueue inbox = p.inbox;
+        if(inbox == null) {
+            return;
+        }
+        p.inboxSignalled = 0;
+
+        RtpPkt pkt;
+        while((pkt = inbox.poll()) != null) {
+            addPkt(p, pkt);
+        }
+    }
+
+    /**
+     * Adds a packet to a participant's packet buffer, creating the buffer for the first one.
+     *
+     * @param p the participant
+     * @param pkt the packet, released if the buffer does not take it
+     */
+    private void addPkt(Participant p, RtpPkt pkt) {
+        PktBuffer pktBuffer = p.pktBuffer;
+        if(pktBuffer == null) {
+            p.pktBuffer = PktBuffer.create(rtpSession, p, pkt);
+        } else if(pktBuffer.addPkt(pkt) < 0) {
+            pkt.release();
+        }
+    }
+
+    /**
+     * A participant to look at again once its packet buffer's playout deadline has passed.
+     */
+    private static final class PlayoutTimer implements Comparable<PlayoutTimer> {
+        /** The deadline, as in System.nanoTime() */
+        final long time;
+        /** The participant */
+        final Participant p;
+
+        /**
+         * Creates a timer.
+         *
+         * @param time the deadline, as in System.nanoTime()
+         * @param p the participant
+         */
+        PlayoutTimer(long time, Participant p) {
+            this.time = time;
+            this.p = p;
+        }
+
+        @Override
+        public int compareTo(PlayoutTimer other) {
+            return Long.signum(time - other.time);
+        }
+    }
+
 }
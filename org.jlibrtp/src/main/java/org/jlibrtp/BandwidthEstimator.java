@@ -0,0 +1,72 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+/**
+ * Estimates the bitrate a session can send at without congesting the path,
+ * from what the receivers report back. Set one with
+ * RTPSession.bandwidthEstimation(BandwidthEstimator).
+ *
+ * The RTCP session feeds it the report blocks about our stream, and the
+ * delay signal of the transport feedback messages if packets are numbered
+ * (see RTPSession.transportSequenceNumbers(int)). After each it reads the
+ * target bitrate, which paces the streams sent and is passed on to
+ * RTCPAppIntf.targetBitrateChanged(long).
+ *
+ * Calls are serialized by the RTCP session, an implementation need not be
+ * thread safe. They come from the receiver threads, so they must return quickly.
+ *
+ * @author agent
+ */
+public interface BandwidthEstimator {
+
+    /**
+     * Takes a report block about the stream we send, from a sender or receiver report.
+     *
+     * @param reporterSsrc the SSRC of the receiver that sent the report
+     * @param lossFraction the fraction of packets lost since the last report, out of 256
+     * @param interArrivalJitter the interarrival jitter, in RTP timestamp units
+     * @param now the current time, as in System.nanoTime()
+     */
+    void receiverReport(long reporterSsrc, int lossFraction, long interArrivalJitter, long now);
+
+    /**
+     * Takes the delay signal of a transport feedback message. For each packet
+     * reported as received, after another received packet, the arrays hold
+     * the difference of their send times and of their arrival times, and its size.
+     *
+     * The arrays are reused for the next message, they must not be kept.
+     *
+     * @param sendDeltas send time minus that of the packet received before, in nanoseconds
+     * @param arrivalDeltas arrival time minus that of the packet received before, in nanoseconds
+     * @param sizes the length of each packet, in octets
+     * @param count the number of entries in the arrays
+     * @param lost the number of packets the message reported as not received
+     * @param now the current time, as in System.nanoTime()
+     */
+    void transportFeedback(long[] sendDeltas, long[] arrivalDeltas, int[] sizes,
+            int count, int lost, long now);
+
+    /**
+     * The bitrate the session should send at.
+     *
+     * @return the target bitrate, in bits per second
+     */
+    long targetBitrate();
+}
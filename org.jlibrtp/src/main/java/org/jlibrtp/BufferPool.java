@@ -0,0 +1,108 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A bounded pool of byte buffers of equal size, direct ones unless
+ * they are meant to be handed to a DatagramSocket.
+ *
+ * Buffers are allocated on demand. At most capacity buffers are kept
+ * for reuse, buffers released to a full pool are left to the garbage
+ * collector. Once the pool has warmed up, acquiring and releasing
+ * buffers does not allocate.
+ *
+ * @author agent
+ */
+public class BufferPool {
+    /** Buffers ready for reuse */
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    /** The size, in octets, of every buffer handed out by this pool */
+    private final int bufferSize;
+    /** Whether the buffers are direct, otherwise they are backed by an array */
+    private final boolean direct;
+
+    /**
+     * Creates a new, empty pool of direct buffers.
+     *
+     * @param capacity the maximum number of buffers retained for reuse
+     * @param bufferSize the size of each buffer, in octets
+     */
+    public BufferPool(int capacity, int bufferSize) {
+        this(capacity, bufferSize, true);
+    }
+
+    /**
+     * Creates a new, empty pool.
+     *
+     * @param capacity the maximum number of buffers retained for reuse
+     * @param bufferSize the size of each buffer, in octets
+     * @param direct whether to allocate direct buffers, or buffers backed by an array
+     */
+    public BufferPool(int capacity, int bufferSize, boolean direct) {
+        this.free = new ArrayBlockingQueue<ByteBuffer>(capacity);
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one if the pool is empty.
+     *
+     * @return a cleared buffer of bufferSize() octets
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if(buf == null) {
+            buf = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not touch the buffer afterwards.
+     *
+     * @param buf a buffer previously obtained through acquire(), may be null
+     */
+    public void release(ByteBuffer buf) {
+        if(buf != null && buf.capacity() == bufferSize) {
+            free.offer(buf);
+        }
+    }
+
+    /**
+     * The size of the buffers handed out by this pool.
+     *
+     * @return size in octets
+     */
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * The number of buffers currently waiting for reuse.
+     *
+     * @return number of idle buffers
+     */
+    public int available() {
+        return free.size();
+    }
+}
@@ -18,6 +18,9 @@
  */
 package org.jlibrtp;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +32,15 @@ import java.util.logging.Logger;
  * It also contains most of the data from the individual packets
  * that it is based on.
  *
+ * The payloads are copied into one contiguous array when the frame is
+ * assembled, and the packets are released right away, so their receive
+ * buffers are free again before the application sees the frame. Where one
+ * payload ends and the next begins is kept in a table of offsets.
+ *
+ * Frames come from a pool kept by the session. Applications that call
+ * release() once they are done with a frame hand it back, together with
+ * its storage, so that steady-state reception does not allocate.
+ *
  * @author Arne Kepp
  */
 public class DataFrame {
@@ -36,6 +48,10 @@ public class DataFrame {
     private static final Logger LOGGER =
         Logger.getLogger(DataFrame.class.getName());
 
+    /** The pool this frame returns to when released */
+    private final FramePool pool;
+    /** Whether this frame is waiting in the pool */
+    private final AtomicBoolean inPool = new AtomicBoolean(false);
     /** The share RTP timestamp */
     private long rtpTimestamp;
     /** The calculated UNIX timestamp, guessed after 2 Sender Reports */
@@ -46,17 +62,24 @@ public class DataFrame {
     private long[] CSRCs;
     /** RTP payload type */
     private int payloadType;
-    /** The marks on individual packets, ordered */
+    /** The marks on individual packets, ordered, only the first count are valid */
     private boolean[] marks;
     /** Whether any packets were marked or not */
     private boolean anyMarked = false;
     /** Whether the frame contains the expected number of packets */
     private int isComplete = 0;
-    //private int dataLength;
-    /** The data from the individual packets, ordered */
-    private byte[][] data;
-    /** The sequence numbers of the individual packets, ordered */
+    /** The data from the individual packets, ordered, created on first request */
+    private byte[][] data = null;
+    /** The payloads of all packets, back to back, kept when the frame is reused */
+    private byte[] payload;
+    /** Where the payload of each packet starts in payload, count + 1 entries are valid */
+    private int[] offsets;
+    /** The payload length of the first packet, the row length of data */
+    private int payloadLength;
+    /** The sequence numbers of the individual packets, ordered, only the first count are valid */
     private int[] seqNum;
+    /** The number of packets in this frame */
+    private int count = 0;
     /** The total amount of data bytes in this frame */
     private int totalLength = 0;
     /** The last sequence number in this frame */
@@ -67,64 +90,40 @@ public class DataFrame {
     protected int noPkts;
 
     /**
-     * The usual way to construct a frame is by giving it a PktBufNode,
+     * Creates an empty frame, see FramePool.
+     *
+     * @param pool the pool the frame returns to when released
+     */
+    protected DataFrame(FramePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * The usual way to fill a frame is by giving it a PktBufNode,
      * which contains links to all the other pkts that make it up.
      * @param aBufNode node
      * @param p the participant
      * @param noPkts number of packets
      */
-    protected DataFrame(PktBufNode aBufNode, Participant p, int noPkts) {
+    protected void fill(PktBufNode aBufNode, Participant p, int noPkts) {
         if(LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.finest("-> DataFrame(PktBufNode, noPkts = " + noPkts +")");
+            LOGGER.finest("-> DataFrame.fill(PktBufNode, noPkts = " + noPkts +")");
         }
-        this.noPkts = noPkts;
-        RtpPkt aPkt = aBufNode.pkt;
         int pktCount = aBufNode.pktCount;
-        firstSeqNum = aBufNode.pktCount;
 
         // All this data should be shared, so we just get it from the first one
-        this.rtpTimestamp = aBufNode.timeStamp;
-        SSRC = aPkt.getSsrc();
-        CSRCs = aPkt.getCsrcArray();
-        payloadType = aPkt.getPayloadType();
-
-        // Check whether we can compute an NTPish timestamp? Requires two SR reports
-        if(p.ntpGradient > 0) {
-            //System.out.print(Long.toString(p.ntpOffset)+" "
-            timestamp =  p.ntpOffset + (long) (p.ntpGradient*(double)(this.rtpTimestamp-p.lastSRRtpTs));
-        }
+        begin(aBufNode.pkt, aBufNode.timeStamp, p, noPkts, pktCount);
 
-        // Make data the right length
-        int payloadLength = aPkt.getPayloadLength();
-        //System.out.println("aBufNode.pktCount " + aBufNode.pktCount);
-        data = new byte[aBufNode.pktCount][payloadLength];
-        seqNum = new int[aBufNode.pktCount];
-        marks = new boolean[aBufNode.pktCount];
-
-        // Concatenate the data of the packets
-        int i;
-        for(i=0; i< pktCount; i++) {
-            aPkt = aBufNode.pkt;
-            byte[] temp = aPkt.getPayload();
-            totalLength += temp.length;
-            if(temp.length == payloadLength) {
-                data[i] = temp;
-            } else if(temp.length < payloadLength){
-                System.arraycopy(temp, 0, data[i], 0, temp.length);
-            } else {
-                LOGGER.info("DataFrame() received node structure with increasing packet payload size.");
-            }
-            //System.out.println("i " + i + " seqNum[i] " + seqNum[i] + " aBufNode"  + aBufNode);
-            seqNum[i] = aBufNode.seqNum;
-            marks[i] = aBufNode.pkt.isMarked();
-            if(marks[i])
-                anyMarked = true;
+        // Collect the packets
+        for(int i=0; i< pktCount; i++) {
+            add(aBufNode.pkt, aBufNode.seqNum);
 
             // Get next node
             aBufNode = aBufNode.nextFrameNode;
         }
 
-        lastSeqNum = seqNum[i - 1];
+        firstSeqNum = pktCount;
+        lastSeqNum = seqNum[pktCount - 1];
 
         if(noPkts > 0) {
             int seqDiff = firstSeqNum - lastSeqNum;
@@ -137,18 +136,144 @@ public class DataFrame {
         }
 
         if(LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.finest("<- DataFrame(PktBufNode, noPkt), data length: " + data.length);
+            LOGGER.finest("<- DataFrame.fill(PktBufNode, noPkt), data length: " + totalLength);
+        }
+    }
+
+    /**
+     * Starts filling the frame, taking the shared fields from its first packet.
+     * Followed by add() for every packet, in order, and finish().
+     *
+     * @param aPkt the first packet
+     * @param rtpTs the RTP timestamp of the frame
+     * @param p the participant
+     * @param noPkts number of packets expected
+     * @param pktCount number of packets that will be added
+     */
+    protected void begin(RtpPkt aPkt, long rtpTs, Participant p, int noPkts, int pktCount) {
+        inPool.set(false);
+        this.noPkts = noPkts;
+        this.rtpTimestamp = rtpTs;
+        SSRC = aPkt.getSsrc();
+        if(aPkt.getCsrcCount() > 0) {
+            CSRCs = aPkt.getCsrcArray();
+        }
+        payloadType = aPkt.getPayloadType();
+
+        // Check whether we can compute an NTPish timestamp? Requires two SR reports
+        if(p.ntpGradient > 0) {
+            timestamp =  p.ntpOffset + (long) (p.ntpGradient*(double)(this.rtpTimestamp-p.lastSRRtpTs));
+        }
+
+        payloadLength = aPkt.getPayloadLength();
+        if(seqNum == null || seqNum.length < pktCount) {
+            int size = Math.max(pktCount, 8);
+            seqNum = new int[size];
+            marks = new boolean[size];
+            offsets = new int[size + 1];
+        }
+        // The first packet is usually the largest one
+        ensureCapacity(pktCount * payloadLength);
+    }
+
+    /**
+     * Appends the payload of a packet to the frame and releases the packet.
+     *
+     * @param aPkt the packet
+     * @param aSeqNum its sequence number
+     */
+    protected void add(RtpPkt aPkt, int aSeqNum) {
+        int length = aPkt.getPayloadLength();
+        ensureCapacity(totalLength + length);
+        offsets[count] = totalLength;
+        totalLength += aPkt.copyPayload(payload, totalLength);
+        seqNum[count] = aSeqNum;
+        marks[count] = aPkt.isMarked();
+        if(marks[count])
+            anyMarked = true;
+        count++;
+        offsets[count] = totalLength;
+        aPkt.release();
+    }
+
+    /**
+     * Completes a frame made of consecutive packets, such as those taken
+     * from a RingPktBuffer, after begin() and add().
+     */
+    protected void finish() {
+        firstSeqNum = seqNum[0];
+        lastSeqNum = seqNum[count - 1];
+
+        // The packets are consecutive, so only the count matters
+        if(noPkts > 0) {
+            if(count == noPkts)
+                isComplete = 1;
+        } else {
+            isComplete = -1;
+        }
+    }
+
+    /**
+     * Grows the payload storage, keeping its content.
+     *
+     * @param size the number of octets needed
+     */
+    private void ensureCapacity(int size) {
+        if(payload == null) {
+            payload = new byte[size];
+        } else if(payload.length < size) {
+            payload = Arrays.copyOf(payload, Math.max(size, 2 * payload.length));
         }
     }
 
+    /**
+     * Hands the frame back to the session, so that it can be reused for the
+     * next frame along with its storage.
+     *
+     * Applications should call this once they are done with the frame, and
+     * must not touch it afterwards. Arrays returned by getData(),
+     * getConcatenatedData(), sequenceNumbers() and marks() remain valid.
+     * Frames that are never released are simply garbage collected.
+     */
+    public void release() {
+        // Only the first of several concurrent calls gets to return it
+        if(!inPool.compareAndSet(false, true)) {
+            return;
+        }
+        data = null;
+        CSRCs = null;
+        count = 0;
+        totalLength = 0;
+        anyMarked = false;
+        isComplete = 0;
+        timestamp = -1;
+        if(payload != null && payload.length > FramePool.MAX_RETAINED_SIZE) {
+            payload = null;
+        }
+        pool.release(this);
+    }
+
     /**
      * Returns a two dimensial array where the first dimension represents individual
      * packets, from which the frame is made up, in order of increasing sequence number.
      * These indeces can be matched to the sequence numbers returned by sequenceNumbers().
      *
+     * The arrays are created on the first call, use getPayload() to avoid that.
+     *
      * @return 2-dim array with raw data from packets
      */
     public byte[][] getData() {
+        if(data == null && count > 0) {
+            data = new byte[count][payloadLength];
+            for(int i=0; i<count; i++) {
+                int length = offsets[i + 1] - offsets[i];
+                if(length <= payloadLength) {
+                    System.arraycopy(payload, offsets[i], data[i], 0, length);
+                } else {
+                    LOGGER.info("DataFrame() received node structure with increasing packet payload size.");
+                }
+            }
+        }
         return this.data;
     }
 
@@ -161,24 +286,88 @@ public class DataFrame {
      * @return byte[] with all the data concatenated
      */
     public byte[] getConcatenatedData() {
+        if(count == 0) {
+            return null;
+        }
         if(this.noPkts < 2) {
-            byte[] ret = new byte[this.totalLength];
-            int pos = 0;
+            return Arrays.copyOf(payload, totalLength);
+        } else {
+            return getData()[0];
+        }
+    }
 
-            for(int i=0; i<data.length; i++) {
-                int length = data[i].length;
+    /**
+     * Writes the payloads of all packets, back to back, into a buffer.
+     *
+     * Nothing is allocated, the data is copied once, straight from the
+     * frame's storage. Missing sequence numbers are ignored, as in
+     * getConcatenatedData().
+     *
+     * @param dst the buffer to write to, starting at its position
+     * @return the number of octets written, -1 if dst has less than length() remaining
+     */
+    public int getConcatenatedData(ByteBuffer dst) {
+        if(dst.remaining() < totalLength) {
+            return -1;
+        }
+        if(totalLength > 0) {
+            dst.put(payload, 0, totalLength);
+        }
+        return totalLength;
+    }
 
-                // Last packet may be shorter
-                if(pos + length > totalLength)
-                    length = totalLength - pos;
+    /**
+     * Writes as much of the concatenated payloads as fits into a buffer, starting
+     * some way into the frame, so that a frame can be read in several pieces.
+     *
+     * @param offset the number of octets of the frame to skip
+     * @param dst the buffer to write to, starting at its position
+     * @return the number of octets written, 0 if offset is at or past length()
+     */
+    public int getConcatenatedData(int offset, ByteBuffer dst) {
+        int length = Math.min(totalLength - offset, dst.remaining());
+        if(length <= 0) {
+            return 0;
+        }
+        dst.put(payload, offset, length);
+        return length;
+    }
 
-                System.arraycopy(data[i], 0, ret, pos, length);
-                pos += data[i].length;
-            }
-            return ret;
-        } else {
-            return data[0];
+    /**
+     * Writes the payload of one packet into a buffer, without allocating.
+     *
+     * @param index the index of the packet, from 0 to packetCount() - 1
+     * @param dst the buffer to write to, starting at its position
+     * @return the number of octets written, -1 if dst has too little room
+     */
+    public int getPayload(int index, ByteBuffer dst) {
+        if(index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Packet " + index + " of " + count);
         }
+        int length = offsets[index + 1] - offsets[index];
+        if(dst.remaining() < length) {
+            return -1;
+        }
+        dst.put(payload, offsets[index], length);
+        return length;
+    }
+
+    /**
+     * The number of payload octets in the frame, all packets together.
+     *
+     * @return the length of getConcatenatedData(ByteBuffer)
+     */
+    public int length() {
+        return this.totalLength;
+    }
+
+    /**
+     * The number of packets the frame was made from.
+     *
+     * @return the number of packets
+     */
+    public int packetCount() {
+        return this.count;
     }
 
     /**
@@ -222,10 +411,25 @@ public class DataFrame {
      * This information can be valuable in conjunction with getData(),
      * to identify what parts of a frame are missing.
      *
+     * A new array is returned on every call, see sequenceNumber().
+     *
      * @return array with sequence numbers
      */
     public int[] sequenceNumbers() {
-        return seqNum;
+        return seqNum == null ? new int[0] : Arrays.copyOf(seqNum, count);
+    }
+
+    /**
+     * The sequence number of one packet, without allocating.
+     *
+     * @param index the index of the packet, from 0 to packetCount() - 1
+     * @return the sequence number
+     */
+    public int sequenceNumber(int index) {
+        if(index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Packet " + index + " of " + count);
+        }
+        return seqNum[index];
     }
 
     /**
@@ -234,10 +438,12 @@ public class DataFrame {
      *
      * This information can be valuable in conjunction with getData().
      *
+     * A new array is returned on every call.
+     *
      * @return array of booleans
      */
     public boolean[] marks() {
-        return this.marks;
+        return marks == null ? new boolean[0] : Arrays.copyOf(marks, count);
     }
 
     /**
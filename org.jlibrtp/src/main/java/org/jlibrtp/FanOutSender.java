@@ -0,0 +1,342 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the RTP packets of a unicast session to many receivers in parallel,
+ * for conferences where one sender feeds hundreds of receivers.
+ *
+ * Every packet is encoded once, by RtpSender. The receivers are divided
+ * between several sending channels, each of which is served by a thread of
+ * its own: the receiver at position i in the list of unicast receivers is
+ * sent to through channel i modulo the number of channels. The receivers
+ * are split into a list per channel whenever they change, so a batch costs
+ * one pass over the receivers. The threads send the same bytes, through
+ * read-only views of the buffers that each share keeps from batch to batch,
+ * so that once the send pool has warmed up a batch allocates nothing.
+ *
+ * A receiver that cannot be reached does not hold up the others. Packets
+ * sent and failures are counted per participant, see
+ * Participant.getSentPktCount() and Participant.getSendFailureCount().
+ *
+ * sendData() returns once every channel has sent the batch to its receivers.
+ *
+ * @author agent
+ */
+public class FanOutSender {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(FanOutSender.class.getName());
+
+    /** The session */
+    private final RTPSession rtpSession;
+    /** One share of the receivers per sending channel */
+    private final Share[] shares;
+    /** Runs every share but the first, which the caller of sendData() sends itself */
+    private final ExecutorService workers;
+
+    /** The batch being sent, set before the shares are started */
+    private ByteBuffer[] batch;
+    /** The number of packets in batch */
+    private int batchSize;
+    /** The number of workers not done with the batch yet, guarded by this */
+    private int pending = 0;
+    /** The version of the receiver list the shares were split from */
+    private int splitVersion = -1;
+
+    /**
+     * Creates a sender.
+     *
+     * @param rtpSession the unicast session
+     * @param channels the channels to send from, bound by the caller
+     */
+    protected FanOutSender(RTPSession rtpSession, DatagramChannel[] channels) {
+        this.rtpSession = rtpSession;
+        this.shares = new Share[channels.length];
+        for(int i=0; i<channels.length; i++) {
+            shares[i] = new Share(i, channels[i]);
+        }
+        if(channels.length > 1) {
+            ThreadFactory factory = rtpSession.threadFactory;
+            workers = Executors.newFixedThreadPool(channels.length - 1,
+                    factory != null ? factory : SessionThreads.platformFactory());
+        } else {
+            workers = null;
+        }
+    }
+
+    /**
+     * Sends a batch to every unicast receiver of the session. The buffers
+     * are not modified, they are returned to their pool by the caller.
+     *
+     * @param pkts the packets, flipped
+     * @param count the number of packets
+     * @return 0 if successful, -1 if no receiver got all the packets
+     */
+    protected int send(ByteBuffer[] pkts, int count) {
+        ReceiverList receiverList = rtpSession.partDb.receivers;
+        int version = receiverList.version();
+        if(version != splitVersion) {
+            split(receiverList);
+            splitVersion = version;
+        }
+
+        this.batch = pkts;
+        this.batchSize = count;
+        synchronized(this) {
+            pending = shares.length - 1;
+        }
+        boolean rejected = false;
+        for(int i=1; i<shares.length; i++) {
+            try {
+                workers.execute(shares[i]);
+            } catch (RejectedExecutionException e) {
+                // Shut down by endSession(), the remaining shares will not count down
+                LOGGER.warning("FanOutSender: the session has ended, batch not sent");
+                synchronized(this) {
+                    pending -= shares.length - i;
+                }
+                rejected = true;
+                break;
+            }
+        }
+        if(!rejected) {
+            shares[0].run();
+        }
+
+        boolean interrupted = false;
+        synchronized(this) {
+            while(pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // The workers are using the buffers, they cannot be returned before they are done
+                    interrupted = true;
+                }
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.batch = null;
+        if(rejected) {
+            return -1;
+        }
+
+        int receivers = 0;
+        int failed = 0;
+        for(int i=0; i<shares.length; i++) {
+            receivers += shares[i].receivers;
+            failed += shares[i].failed;
+        }
+        return receivers > 0 && failed == receivers ? -1 : 0;
+    }
+
+    /**
+     * Divides the receivers between the shares, receiver i going to
+     * share i modulo the number of shares.
+     *
+     * @param receiverList the receivers
+     */
+    private void split(ReceiverList receiverList) {
+        int perShare = receiverList.size() / shares.length + 1;
+        for(int i=0; i<shares.length; i++) {
+            Share share = shares[i];
+            if(share.members.length < perShare) {
+                share.members = new Participant[perShare];
+            } else {
+                Arrays.fill(share.members, null);
+            }
+            share.memberCount = 0;
+        }
+        int n = 0;
+        for(Participant p : receiverList) {
+            Share share = shares[n++ % shares.length];
+            if(share.memberCount == share.members.length) {
+                // Receivers were added since size() was read
+                share.members = Arrays.copyOf(share.members, share.members.length * 2);
+            }
+            share.members[share.memberCount++] = p;
+        }
+    }
+
+    /**
+     * Called by a worker when it is done with the batch.
+     */
+    private synchronized void done() {
+        if(--pending == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the worker threads. The channels are left to the caller.
+     */
+    protected void shutdown() {
+        if(workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * The receivers sent to through one channel.
+     */
+    private final class Share implements Runnable {
+        /** Position of this share */
+        private final int index;
+        /** The channel */
+        private final DatagramChannel channel;
+        /** Read-only views of the packets of the batch, private to this share */
+        private ByteBuffer[] views = new ByteBuffer[32];
+        /** The buffers this share has kept views of */
+        private final ByteBuffer[] sources = new ByteBuffer[RtpSender.SEND_POOL_SIZE];
+        /** The views of sources, reused for every batch the buffers come back in */
+        private final ByteBuffer[] sourceViews = new ByteBuffer[RtpSender.SEND_POOL_SIZE];
+        /** Where to look for the next buffer in sources, and to keep a new one if it is not there */
+        private int next = 0;
+        /** The receivers of this share, see split() */
+        Participant[] members = new Participant[0];
+        /** The number of receivers in members */
+        int memberCount = 0;
+        /** Receivers sent to in the last batch */
+        int receivers;
+        /** Receivers that did not get every packet of the last batch */
+        int failed;
+
+        /**
+         * Creates a share.
+         *
+         * @param index position of this share
+         * @param channel the channel to send through
+         */
+        Share(int index, DatagramChannel channel) {
+            this.index = index;
+            this.channel = channel;
+        }
+
+        /**
+         * Sends the batch to every receiver of this share.
+         */
+        public void run() {
+            receivers = 0;
+            failed = 0;
+            try {
+                if(views.length < batchSize) {
+                    views = new ByteBuffer[Math.max(batchSize, views.length * 2)];
+                }
+                for(int i=0; i<batchSize; i++) {
+                    views[i] = view(batch[i]);
+                }
+
+                for(int i=0; i<memberCount; i++) {
+                    receivers++;
+                    if(sendTo(members[i]) > 0) {
+                        failed++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "FanOutSender share " + index + " failed", e);
+            } finally {
+                for(int i=0; i<batchSize; i++) {
+                    views[i] = null;
+                }
+                if(index > 0) {
+                    done();
+                }
+            }
+        }
+
+        /**
+         * Finds the view this share keeps of a buffer, or makes one. The pool hands
+         * out its buffers in the same order batch after batch, so the search
+         * usually ends where the previous one did.
+         *
+         * @param buf the buffer
+         * @return a read-only view of buf, with its position and limit
+         */
+        private ByteBuffer view(ByteBuffer buf) {
+            for(int n=0; n<sources.length; n++) {
+                int i = (next + n) % sources.length;
+                if(sources[i] == buf) {
+                    next = (i + 1) % sources.length;
+                    ByteBuffer view = sourceViews[i];
+                    view.limit(buf.limit());
+                    view.position(buf.position());
+                    return view;
+                }
+            }
+            // Not seen before, keep it in the next slot
+            ByteBuffer view = buf.asReadOnlyBuffer();
+            sources[next] = buf;
+            sourceViews[next] = view;
+            next = (next + 1) % sources.length;
+            return view;
+        }
+
+        /**
+         * Sends the batch to one receiver.
+         *
+         * @param p the receiver
+         * @return the number of packets that could not be sent
+         */
+        private int sendTo(Participant p) {
+            InetSocketAddress receiver = p.rtpAddress;
+            int failedPkts = 0;
+            long octets = 0;
+            for(int i=0; i<batchSize; i++) {
+                ByteBuffer view = views[i];
+                view.rewind();
+                int length = view.remaining();
+                try {
+                    if(channel.send(view, receiver) == 0) {
+                        // Non-blocking and the socket buffer is full
+                        failedPkts++;
+                        continue;
+                    }
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "FanOutSender: sending to " + receiver + " failed.", e);
+                    failedPkts += batchSize - i;
+                    break;
+                }
+                octets += length;
+
+                //Debug
+                if(rtpSession.debugAppIntf != null) {
+                    rtpSession.debugAppIntf.packetSent(0, receiver,
+                            new String("Sent unicast RTP packet of size " + length + " to " + receiver));
+                }
+            }
+            p.sentPkts.addAndGet(batchSize - failedPkts);
+            p.sentOctets.addAndGet(octets);
+            p.sendFailures.addAndGet(failedPkts);
+            return failedPkts;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of ULPFEC packets (RFC 5109) and the XOR kernel shared by
+ * FecEncoder and FecDecoder.
+ *
+ * An FEC packet is an RTP packet of the FEC payload type, sent as a stream
+ * of its own, with an SSRC and sequence numbers other than those of the
+ * stream it protects (RFC 5109, 9). Its payload is the FEC header,
+ * one level 0 header and the protected data:
+ *
+ *   FEC header: E, L, P X CC M PT recovery, SN base, TS recovery, length recovery
+ *   level 0:    protection length, mask (16 bits, or 48 bits if L is set)
+ *   data:       the XOR of everything after the fixed RTP header of the
+ *               protected packets, padded with zeros to the protection length
+ *
+ * @author agent
+ */
+final class Fec {
+    /** Length of the FEC header */
+    protected static final int FEC_HEADER_LENGTH = 10;
+    /** Length of the level 0 header with a 16 bit mask */
+    protected static final int SHORT_LEVEL_HEADER_LENGTH = 4;
+    /** Length of the level 0 header with a 48 bit mask */
+    protected static final int LONG_LEVEL_HEADER_LENGTH = 8;
+    /** The most packets one FEC packet protects, with a 48 bit mask */
+    protected static final int MAX_SPAN = 48;
+
+    /**
+     * Not instantiable.
+     */
+    private Fec() {
+    }
+
+    /**
+     * XORs a range of one buffer into another, eight octets at a time.
+     * Only absolute gets and puts are used, positions and limits are not changed.
+     *
+     * @param dst the buffer XORed into
+     * @param dstIndex where in dst to start
+     * @param src the buffer XORed from
+     * @param srcIndex where in src to start
+     * @param length the number of octets
+     */
+    protected static void xor(ByteBuffer dst, int dstIndex, ByteBuffer src, int srcIndex, int length) {
+        int i = 0;
+        for(; i + 8 <= length; i += 8) {
+            dst.putLong(dstIndex + i, dst.getLong(dstIndex + i) ^ src.getLong(srcIndex + i));
+        }
+        for(; i < length; i++) {
+            dst.put(dstIndex + i, (byte) (dst.get(dstIndex + i) ^ src.get(srcIndex + i)));
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Recovers lost packets of one participant's stream from the FEC packets
+ * (RFC 5109) that protect it, before they reach the packet buffer.
+ *
+ * Copies of the most recent packets are kept. An FEC packet that protects
+ * exactly one packet that is missing recovers it, by XORing its own data
+ * with that of the other protected packets (RFC 5109, 8). FEC packets that
+ * protect more than one missing packet are kept, as the packets recovered by
+ * other FEC packets may leave them with one; a row and a column parity can
+ * recover several losses that way.
+ *
+ * Not thread safe, used by the thread that receives the participant's packets.
+ *
+ * @author agent
+ */
+class FecDecoder {
+    /** The number of media packets kept */
+    protected static final int HISTORY_SIZE = 128;
+    /** The most FEC packets kept while they cannot be used */
+    protected static final int MAX_PENDING = 32;
+
+    /** Returned by attempt(), the FEC packet has to wait */
+    private static final int WAIT = 0;
+    /** Returned by attempt(), the FEC packet is of no more use */
+    private static final int DONE = 1;
+    /** Returned by attempt(), the FEC packet recovered a packet */
+    private static final int RECOVERED = 2;
+
+    /** The SSRC of the stream protected, which the FEC packets do not carry */
+    private final long ssrc;
+    /** The media packets received or recovered */
+    private final PacketHistory media = new PacketHistory(HISTORY_SIZE);
+    /** Copies of the FEC packets waiting to be used, oldest first */
+    private final byte[][] pending = new byte[MAX_PENDING][];
+    /** Buffers wrapping the arrays in pending */
+    private final ByteBuffer[] pendingBuffers = new ByteBuffer[MAX_PENDING];
+    /** The length of each FEC packet */
+    private final int[] pendingLengths = new int[MAX_PENDING];
+    /** The number of FEC packets waiting */
+    private int pendingCount = 0;
+    /** The highest sequence number received, -1 before the first packet */
+    private int highest = -1;
+    /** Packets recovered and not yet taken by poll() */
+    private final ArrayDeque<RtpPkt> recovered = new ArrayDeque<RtpPkt>();
+
+    /**
+     * Creates the decoder of a stream.
+     *
+     * @param ssrc the SSRC of the stream protected
+     */
+    protected FecDecoder(long ssrc) {
+        this.ssrc = ssrc;
+    }
+
+    /**
+     * Keeps a copy of a media packet, and recovers what it helps recover.
+     *
+     * @param pkt the packet, received into a buffer
+     */
+    protected void media(RtpPkt pkt) {
+        ByteBuffer buf = pkt.getBuffer();
+        int seqNum = pkt.getSeqNumber();
+        if(buf == null || media.slot(seqNum) >= 0) {
+            return;
+        }
+        media.store(buf, 0);
+        if(highest < 0 || ((seqNum - highest) & 0xFFFF) < 0x8000) {
+            highest = seqNum;
+        }
+        if(pendingCount > 0) {
+            recover();
+        }
+    }
+
+    /**
+     * Takes an FEC packet, and recovers what it helps recover.
+     *
+     * @param pkt the FEC packet, received into a buffer
+     */
+    protected void fec(RtpPkt pkt) {
+        ByteBuffer buf = pkt.getBuffer();
+        if(buf == null) {
+            return;
+        }
+        if(pendingCount == MAX_PENDING) {
+            remove(0);
+        }
+        int length = buf.remaining();
+        int i = pendingCount++;
+        if(pending[i] == null || pending[i].length < length) {
+            pending[i] = new byte[Math.max(length, PacketHistory.SLOT_SIZE)];
+            pendingBuffers[i] = ByteBuffer.wrap(pending[i]);
+        }
+        buf.duplicate().get(pending[i], 0, length);
+        pendingLengths[i] = length;
+        recover();
+    }
+
+    /**
+     * Takes the next recovered packet.
+     *
+     * @return the packet, null if there is none
+     */
+    protected RtpPkt poll() {
+        return recovered.poll();
+    }
+
+    /**
+     * Tries every waiting FEC packet, as long as packets are recovered.
+     */
+    private void recover() {
+        boolean progress = true;
+        while(progress) {
+            progress = false;
+            int i = 0;
+            while(i < pendingCount) {
+                int result = attempt(i);
+                if(result == WAIT) {
+                    i++;
+                } else {
+                    remove(i);
+                    progress |= result == RECOVERED;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recovers the packet an FEC packet protects, if it is the only one missing.
+     *
+     * @param i the index of the FEC packet in pending
+     * @return WAIT, DONE or RECOVERED
+     */
+    private int attempt(int i) {
+        ByteBuffer fec = pendingBuffers[i];
+        int length = pendingLengths[i];
+        int h = 12 + 4*(fec.get(0) & 0x0F);
+        if(length < h + Fec.FEC_HEADER_LENGTH + Fec.SHORT_LEVEL_HEADER_LENGTH) {
+            return DONE;
+        }
+        boolean longMask = (fec.get(h) & 0x40) != 0;
+        int base = fec.getShort(h + 2) & 0xFFFF;
+        int level = h + Fec.FEC_HEADER_LENGTH;
+        int protectionLength = fec.getShort(level) & 0xFFFF;
+        long mask = (long) (fec.getShort(level + 2) & 0xFFFF) << 48;
+        int span = 16;
+        int dataStart = level + Fec.SHORT_LEVEL_HEADER_LENGTH;
+        if(longMask) {
+            mask |= (fec.getInt(level + 4) & 0xFFFFFFFFL) << 16;
+            span = Fec.MAX_SPAN;
+            dataStart = level + Fec.LONG_LEVEL_HEADER_LENGTH;
+        }
+        if(dataStart + protectionLength > length) {
+            return DONE;
+        }
+
+        int missing = 0;
+        int missingSeqNum = -1;
+        for(int bit=0; bit<span; bit++) {
+            if((mask << bit) < 0) {
+                int seqNum = (base + bit) & 0xFFFF;
+                if(media.slot(seqNum) < 0) {
+                    missing++;
+                    missingSeqNum = seqNum;
+                }
+            }
+        }
+        if(missing == 0) {
+            return DONE;
+        }
+        if(missing > 1) {
+            // Give up once the protected packets are no longer kept
+            return ((highest - base) & 0xFFFF) >= HISTORY_SIZE - span ? DONE : WAIT;
+        }
+
+        int bits = fec.getShort(h) & 0x3FFF;
+        int timeStamp = fec.getInt(h + 4);
+        int dataLength = fec.getShort(h + 8) & 0xFFFF;
+        for(int bit=0; bit<span; bit++) {
+            int slot = (mask << bit) < 0 ? media.slot((base + bit) & 0xFFFF) : -1;
+            if(slot >= 0) {
+                ByteBuffer pkt = media.buffer(slot);
+                bits ^= pkt.getShort(0) & 0x3FFF;
+                timeStamp ^= pkt.getInt(4);
+                dataLength ^= media.length(slot) - 12;
+            }
+        }
+        if(dataLength > protectionLength) {
+            return DONE;
+        }
+
+        byte[] raw = new byte[12 + dataLength];
+        ByteBuffer out = ByteBuffer.wrap(raw);
+        out.put(0, (byte) (0x80 | (bits >>> 8)));
+        out.put(1, (byte) bits);
+        out.putShort(2, (short) missingSeqNum);
+        out.putInt(4, timeStamp);
+        // FEC packets are sent in a stream of their own
+        out.putInt(8, (int) ssrc);
+        System.arraycopy(pending[i], dataStart, raw, 12, dataLength);
+        for(int bit=0; bit<span; bit++) {
+            int slot = (mask << bit) < 0 ? media.slot((base + bit) & 0xFFFF) : -1;
+            if(slot >= 0) {
+                Fec.xor(out, 12, media.buffer(slot), 12, Math.min(dataLength, media.length(slot) - 12));
+            }
+        }
+
+        media.store(out, 0);
+        RtpPkt pkt = new RtpPkt(out, null);
+        if(pkt.getVersion() != 2) {
+            return DONE;
+        }
+        recovered.add(pkt);
+        return RECOVERED;
+    }
+
+    /**
+     * Removes a waiting FEC packet, keeping the order of the others.
+     *
+     * @param i the index of the FEC packet in pending
+     */
+    private void remove(int i) {
+        byte[] array = pending[i];
+        ByteBuffer buffer = pendingBuffers[i];
+        for(int j=i+1; j<pendingCount; j++) {
+            pending[j - 1] = pending[j];
+            pendingBuffers[j - 1] = pendingBuffers[j];
+            pendingLengths[j - 1] = pendingLengths[j];
+        }
+        pendingCount--;
+        // Keep the array for the next FEC packet
+        pending[pendingCount] = array;
+        pendingBuffers[pendingCount] = buffer;
+    }
+}
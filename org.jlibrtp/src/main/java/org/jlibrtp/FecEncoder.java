@@ -0,0 +1,235 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates XOR parity packets (RFC 5109) for the packets a session sends.
+ *
+ * The packets are arranged in blocks of rows by columns, in the order they
+ * are sent. Each complete row gets a parity packet, which recovers a single
+ * loss in it, and so does each complete column, which recovers a burst of
+ * up to columns packets. With both, many patterns of several losses in a
+ * block can be recovered, one packet after the other.
+ *
+ * The parity of each row and column is accumulated as the packets go out,
+ * in buffers that are reused, so nothing is allocated per packet.
+ *
+ * Not thread safe, RTPSession serializes access through its send lock.
+ *
+ * @author agent
+ */
+class FecEncoder {
+    /** The payload type of the FEC packets */
+    private final int payloadType;
+    /** The SSRC of the FEC stream */
+    private final long ssrc;
+    /** The number of packets in a row */
+    private final int columns;
+    /** The number of rows in a block */
+    private final int rows;
+    /** Length of the level 0 header, depends on whether masks are 16 or 48 bits */
+    private final int levelHeaderLength;
+    /** The parity of the current row, null if rows are not protected */
+    private final Parity row;
+    /** The parity of each column of the current block, null if columns are not protected */
+    private final Parity[] column;
+
+    /** Position of the next packet in the block */
+    private int index = 0;
+    /** The sequence number expected next, -1 before the first packet */
+    private int expectedSeqNum = -1;
+    /** Sequence number of the last FEC packet, in the FEC stream's own sequence */
+    private int seqNum = new Random().nextInt(65536);
+
+    /**
+     * Creates an encoder.
+     *
+     * @param payloadType the payload type of the FEC packets
+     * @param ssrc the SSRC of the FEC stream, not that of the media
+     * @param columns the number of packets in a row, rows are protected if more than 1
+     * @param rows the number of rows in a block, columns are protected if more than 1
+     */
+    protected FecEncoder(int payloadType, long ssrc, int columns, int rows) {
+        this.payloadType = payloadType;
+        this.ssrc = ssrc;
+        this.columns = columns;
+        this.rows = rows;
+        int span = (rows - 1) * columns + 1;
+        this.levelHeaderLength = Math.max(columns, span) > 16
+                ? Fec.LONG_LEVEL_HEADER_LENGTH : Fec.SHORT_LEVEL_HEADER_LENGTH;
+        this.row = columns > 1 ? new Parity() : null;
+        if(rows > 1) {
+            this.column = new Parity[columns];
+            for(int i=0; i<columns; i++) {
+                this.column[i] = new Parity();
+            }
+        } else {
+            this.column = null;
+        }
+    }
+
+    /**
+     * Adds a packet that is being sent to the parity of its row and column,
+     * and adds the FEC packets for the row and column it completes to the batch.
+     *
+     * @param pkt the packet, from position to limit, which are not changed
+     * @param sender the sender whose batch the FEC packets are added to
+     * @return the number of FEC packets added
+     */
+    protected int add(ByteBuffer pkt, RtpSender sender) {
+        int start = pkt.position();
+        int pktSeqNum = pkt.getShort(start + 2) & 0xFFFF;
+        if(pktSeqNum != expectedSeqNum) {
+            // A gap in the sequence numbers, start a new block
+            index = 0;
+            if(row != null) {
+                row.reset();
+            }
+            if(column != null) {
+                for(int i=0; i<columns; i++) {
+                    column[i].reset();
+                }
+            }
+        }
+        expectedSeqNum = (pktSeqNum + 1) & 0xFFFF;
+
+        int r = index / columns;
+        int c = index % columns;
+        int added = 0;
+        if(row != null) {
+            row.add(pkt, c);
+            if(c == columns - 1) {
+                emit(row, pkt, sender);
+                added++;
+            }
+        }
+        if(column != null) {
+            column[c].add(pkt, r * columns);
+            if(r == rows - 1) {
+                emit(column[c], pkt, sender);
+                added++;
+            }
+        }
+        index = (index + 1) % (columns * rows);
+        return added;
+    }
+
+    /**
+     * Writes an FEC packet and adds it to the batch, then resets the parity.
+     *
+     * @param parity the parity
+     * @param last the packet that completed it, which gives the timestamp
+     * @param sender the sender whose batch the FEC packet is added to
+     */
+    private void emit(Parity parity, ByteBuffer last, RtpSender sender) {
+        int start = last.position();
+        int length = 12 + Fec.FEC_HEADER_LENGTH + levelHeaderLength + parity.protectionLength;
+        ByteBuffer buf = sender.buffer(length);
+
+        // RTP header
+        seqNum = (seqNum + 1) & 0xFFFF;
+        buf.put((byte) 0x80);
+        buf.put((byte) payloadType);
+        buf.putShort((short) seqNum);
+        buf.putInt(last.getInt(start + 4));
+        buf.putInt((int) ssrc);
+
+        // FEC header, E is 0
+        boolean longMask = levelHeaderLength == Fec.LONG_LEVEL_HEADER_LENGTH;
+        buf.put((byte) ((longMask ? 0x40 : 0) | ((parity.bits >>> 8) & 0x3F)));
+        buf.put((byte) parity.bits);
+        buf.putShort((short) parity.base);
+        buf.putInt(parity.timeStamp);
+        buf.putShort((short) parity.length);
+
+        // Level 0 header, the most significant bit of the mask is the packet at SN base
+        buf.putShort((short) parity.protectionLength);
+        long mask = Long.reverse(parity.mask);
+        buf.putShort((short) (mask >>> 48));
+        if(longMask) {
+            buf.putInt((int) (mask >>> 16));
+        }
+
+        buf.put(parity.data.array(), 0, parity.protectionLength);
+        sender.append(buf);
+
+        parity.reset();
+    }
+
+    /**
+     * The parity of one row or column under construction.
+     */
+    private static final class Parity {
+        /** XOR of the data of the packets, everything after the fixed header */
+        final ByteBuffer data = ByteBuffer.allocate(RtpSender.SEND_BUFFER_SIZE);
+        /** XOR of the first two octets of the packets */
+        int bits;
+        /** XOR of the timestamps */
+        int timeStamp;
+        /** XOR of the data lengths */
+        int length;
+        /** The longest data */
+        int protectionLength;
+        /** Sequence number of the first packet */
+        int base;
+        /** The packets included, bit i is the one at base + i */
+        long mask;
+        /** The number of packets included */
+        int count;
+
+        /**
+         * Adds a packet.
+         *
+         * @param pkt the packet, from position to limit
+         * @param offset the distance of its sequence number from that of the first packet
+         */
+        void add(ByteBuffer pkt, int offset) {
+            int start = pkt.position();
+            int dataLength = Math.min(pkt.remaining() - 12, data.capacity());
+            if(count == 0) {
+                base = pkt.getShort(start + 2) & 0xFFFF;
+            }
+            bits ^= pkt.getShort(start) & 0xFFFF;
+            timeStamp ^= pkt.getInt(start + 4);
+            length ^= dataLength;
+            // Earlier packets were shorter, the rest of data is still zero
+            Fec.xor(data, 0, pkt, start + 12, dataLength);
+            protectionLength = Math.max(protectionLength, dataLength);
+            mask |= 1L << offset;
+            count++;
+        }
+
+        /**
+         * Clears the parity for the next row or column.
+         */
+        void reset() {
+            Arrays.fill(data.array(), 0, protectionLength, (byte) 0);
+            bits = 0;
+            timeStamp = 0;
+            length = 0;
+            protectionLength = 0;
+            mask = 0;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * DataFrames handed to the application, kept for reuse once it releases them.
+ *
+ * Every frame keeps its payload storage and tables when it goes back to the
+ * pool, so once the pool has warmed up, assembling a frame does not allocate,
+ * however many packets it is made of. Frames whose storage has grown past
+ * MAX_RETAINED_SIZE give it up, so that a single huge frame does not pin
+ * memory for the rest of the session.
+ *
+ * @author agent
+ */
+class FramePool {
+    /** Payload storage larger than this, in octets, is not kept for reuse */
+    protected static final int MAX_RETAINED_SIZE = 1 << 20;
+
+    /** Frames ready for reuse */
+    private final ArrayBlockingQueue<DataFrame> free;
+
+    /**
+     * Creates a new, empty pool.
+     *
+     * @param capacity the maximum number of frames retained for reuse
+     */
+    protected FramePool(int capacity) {
+        this.free = new ArrayBlockingQueue<DataFrame>(capacity);
+    }
+
+    /**
+     * Takes a frame from the pool, or creates a new one if the pool is empty.
+     *
+     * @return an empty frame, which returns to this pool when released
+     */
+    protected DataFrame acquire() {
+        DataFrame frame = free.poll();
+        if(frame == null) {
+            frame = new DataFrame(this);
+        }
+        return frame;
+    }
+
+    /**
+     * Returns a released frame to the pool. Frames released to a full pool
+     * are left to the garbage collector.
+     *
+     * @param frame a frame obtained through acquire(), already cleared
+     */
+    protected void release(DataFrame frame) {
+        free.offer(frame);
+    }
+
+    /**
+     * The number of frames currently waiting for reuse.
+     *
+     * @return number of idle frames
+     */
+    protected int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+/**
+ * The default bandwidth estimator, after Google congestion control
+ * (draft-ietf-rmcat-gcc-02). It combines a loss-based and a delay-based
+ * controller, the target bitrate is the lower of the two.
+ *
+ * The loss-based controller acts on the report blocks about our stream.
+ * When more than 10% of the packets were lost its rate drops by half the loss
+ * fraction, when less than 2% were it increases by 5%, in between it holds.
+ *
+ * The delay-based controller acts on transport feedback. Packets sent within
+ * 5 ms form a group. The difference of the arrival and send deltas of
+ * consecutive groups adds up to the change in one way delay, which is smoothed
+ * and fitted to a line over the last groups. A slope above an adaptive threshold means
+ * a queue is building up on the path: the rate drops to 85% of the rate the
+ * packets arrived at. A slope below the negative threshold means the queue is
+ * draining, and the rate holds. Otherwise it increases by 8% per second, but
+ * not past one and a half times the arrival rate, so that a sender which does
+ * not use its bandwidth does not drive the estimate up without bound.
+ *
+ * Without transport feedback the target follows the loss-based controller alone.
+ *
+ * @author agent
+ */
+public class LossDelayEstimator implements BandwidthEstimator {
+    /** Nanoseconds per millisecond */
+    private static final double MILLIS = 1000000.0;
+    /** Nanoseconds per second */
+    private static final double NANOS = 1000000000.0;
+
+    /** Loss fraction, out of 256, above which the loss-based rate drops (10%) */
+    private static final int HIGH_LOSS = 26;
+    /** Loss fraction, out of 256, below which the loss-based rate increases (2%) */
+    private static final int LOW_LOSS = 5;
+
+    /** Milliseconds within which packets sent belong to the same group */
+    private static final double BURST_TIME = 5.0;
+    /** The number of groups the delay trend is fitted to */
+    private static final int WINDOW = 20;
+    /** Weight of the previous value when smoothing the accumulated delay */
+    private static final double SMOOTHING = 0.9;
+    /** Gain applied to the trend before it is compared with the threshold */
+    private static final double TREND_GAIN = 4.0;
+    /** The most deltas the trend is multiplied with */
+    private static final int MAX_DELTAS = 60;
+    /** Milliseconds the trend must stay over the threshold before the path counts as overused */
+    private static final double OVERUSE_TIME = 10.0;
+    /** How fast the threshold grows towards larger trends, per millisecond */
+    private static final double THRESHOLD_UP = 0.0087;
+    /** How fast the threshold shrinks towards smaller trends, per millisecond */
+    private static final double THRESHOLD_DOWN = 0.039;
+    /** The lowest threshold, in milliseconds */
+    private static final double MIN_THRESHOLD = 6.0;
+    /** The highest threshold, in milliseconds */
+    private static final double MAX_THRESHOLD = 600.0;
+
+    /** Nanoseconds of arrivals the incoming rate is measured over */
+    private static final long RATE_WINDOW = 500000000L;
+    /** Nanoseconds before the delay-based rate drops again */
+    private static final long DECREASE_INTERVAL = 300000000L;
+
+    /** Detector state, the path is neither over- nor underused */
+    private static final int NORMAL = 0;
+    /** Detector state, a queue is building up */
+    private static final int OVERUSING = 1;
+    /** Detector state, a queue is draining */
+    private static final int UNDERUSING = 2;
+
+    /** The lowest target, in bits per second */
+    private final long minBitrate;
+    /** The highest target, in bits per second */
+    private final long maxBitrate;
+    /** Rate of the loss-based controller, in bits per second */
+    private long lossRate;
+    /** Rate of the delay-based controller, in bits per second */
+    private long delayRate;
+
+    /** Arrival time of each point of the trend, in milliseconds */
+    private final double[] times = new double[WINDOW];
+    /** Smoothed delay of each point of the trend, in milliseconds */
+    private final double[] delays = new double[WINDOW];
+    /** The number of points added to the trend so far */
+    private long points = 0;
+    /** Send time of the last packet, in milliseconds */
+    private double sendTime = 0;
+    /** Arrival time of the last packet, in milliseconds of the receiver's clock */
+    private double arrivalTime = 0;
+    /** Whether a group has been started */
+    private boolean grouping = false;
+    /** Send time of the first packet of the current group */
+    private double groupStart = 0;
+    /** Send time of the last packet of the current group */
+    private double groupSend = 0;
+    /** Arrival time of the last packet of the current group */
+    private double groupArrival = 0;
+    /** Whether a group has been completed */
+    private boolean grouped = false;
+    /** Send time of the last packet of the previous group */
+    private double prevGroupSend = 0;
+    /** Arrival time of the last packet of the previous group */
+    private double prevGroupArrival = 0;
+    /** Sum of the delay deltas, in milliseconds */
+    private double accumulatedDelay = 0;
+    /** Accumulated delay, smoothed */
+    private double smoothedDelay = 0;
+    /** The number of group deltas so far, up to MAX_DELTAS */
+    private int deltas = 0;
+    /** The trend of the previous group */
+    private double prevTrend = 0;
+    /** The adaptive threshold, in milliseconds */
+    private double threshold = 12.5;
+    /** When the threshold was last adapted, in milliseconds of the receiver's clock */
+    private double lastAdaption = 0;
+    /** Milliseconds the trend has been over the threshold, -1 if it is not */
+    private double timeOverusing = -1;
+    /** The number of groups the trend has been over the threshold */
+    private int overuseCount = 0;
+    /** The state of the detector */
+    private int hypothesis = NORMAL;
+
+    /** Whether the delay-based rate increases, rather than holds */
+    private boolean increasing = false;
+    /** When the delay-based rate last increased, as in System.nanoTime() */
+    private long lastIncrease = 0;
+    /** Whether the delay-based rate has dropped yet */
+    private boolean decreased = false;
+    /** When the delay-based rate last dropped, as in System.nanoTime() */
+    private long lastDecrease = 0;
+    /** The rate packets arrived at, in bits per second, -1 until measured */
+    private long incomingRate = -1;
+    /** Bits arrived in the current measurement window */
+    private long windowBits = 0;
+    /** Nanoseconds of arrivals in the current measurement window */
+    private long windowNanos = 0;
+
+    /**
+     * Creates an estimator.
+     *
+     * @param startBitrate the target until the first reports, in bits per second
+     * @param minBitrate the lowest target, in bits per second
+     * @param maxBitrate the highest target, in bits per second
+     */
+    public LossDelayEstimator(long startBitrate, long minBitrate, long maxBitrate) {
+        this.minBitrate = Math.max(1, minBitrate);
+        this.maxBitrate = Math.max(this.minBitrate, maxBitrate);
+        this.lossRate = clamp(startBitrate);
+        this.delayRate = this.lossRate;
+    }
+
+    public void receiverReport(long reporterSsrc, int lossFraction, long interArrivalJitter, long now) {
+        if(lossFraction > HIGH_LOSS) {
+            lossRate = clamp((long) (lossRate * (1.0 - lossFraction / 512.0)));
+        } else if(lossFraction < LOW_LOSS) {
+            lossRate = clamp((long) (lossRate * 1.05));
+        }
+    }
+
+    public void transportFeedback(long[] sendDeltas, long[] arrivalDeltas, int[] sizes,
+            int count, int lost, long now) {
+        boolean overused = false;
+        for(int i=0; i<count; i++) {
+            sendTime += sendDeltas[i] / MILLIS;
+            arrivalTime += arrivalDeltas[i] / MILLIS;
+            windowBits += sizes[i] * 8L;
+            windowNanos += arrivalDeltas[i];
+            if(sendDeltas[i] < 0) {
+                // Reordered, its group is already done
+                continue;
+            }
+            if(grouping && sendTime - groupStart <= BURST_TIME) {
+                groupSend = sendTime;
+                groupArrival = arrivalTime;
+                continue;
+            }
+            if(grouped) {
+                double sendDelta = groupSend - prevGroupSend;
+                if(detect((groupArrival - prevGroupArrival) - sendDelta, sendDelta) == OVERUSING) {
+                    overused = true;
+                }
+            }
+            if(grouping) {
+                grouped = true;
+                prevGroupSend = groupSend;
+                prevGroupArrival = groupArrival;
+            }
+            grouping = true;
+            groupStart = sendTime;
+            groupSend = sendTime;
+            groupArrival = arrivalTime;
+        }
+        if(windowNanos >= RATE_WINDOW) {
+            incomingRate = (long) (windowBits * NANOS / windowNanos);
+            windowBits = 0;
+            windowNanos = 0;
+        }
+
+        if(overused) {
+            if(!decreased || now - lastDecrease >= DECREASE_INTERVAL) {
+                long base = incomingRate > 0 ? Math.min(delayRate, incomingRate) : delayRate;
+                delayRate = clamp((long) (base * 0.85));
+                decreased = true;
+                lastDecrease = now;
+            }
+            increasing = false;
+        } else if(hypothesis == UNDERUSING) {
+            // Let the queue drain before probing again
+            increasing = false;
+        } else if(!increasing) {
+            increasing = true;
+            lastIncrease = now;
+        } else {
+            double seconds = Math.min(now - lastIncrease, (long) NANOS) / NANOS;
+            double rate = delayRate * Math.pow(1.08, seconds);
+            if(incomingRate > 0) {
+                rate = Math.min(rate, Math.max(delayRate, 1.5 * incomingRate + 10000));
+            }
+            delayRate = clamp((long) rate);
+            lastIncrease = now;
+        }
+    }
+
+    public long targetBitrate() {
+        return Math.min(lossRate, delayRate);
+    }
+
+    /**
+     * Adds a completed group to the delay trend and updates the state of the detector.
+     *
+     * @param delta the change in one way delay since the group before, in milliseconds
+     * @param sendDelta the time since the group before was sent, in milliseconds
+     * @return the state of the detector
+     */
+    private int detect(double delta, double sendDelta) {
+        if(deltas < MAX_DELTAS) {
+            deltas++;
+        }
+        accumulatedDelay += delta;
+        smoothedDelay = SMOOTHING * smoothedDelay + (1 - SMOOTHING) * accumulatedDelay;
+        int slot = (int) (points % WINDOW);
+        times[slot] = groupArrival;
+        delays[slot] = smoothedDelay;
+        points++;
+        if(points < WINDOW) {
+            return hypothesis;
+        }
+
+        double trend = slope();
+        double modified = deltas * trend * TREND_GAIN;
+        if(modified > threshold) {
+            if(timeOverusing < 0) {
+                timeOverusing = sendDelta / 2;
+            } else {
+                timeOverusing += sendDelta;
+            }
+            overuseCount++;
+            if(timeOverusing > OVERUSE_TIME && overuseCount > 1 && trend >= prevTrend) {
+                timeOverusing = 0;
+                overuseCount = 0;
+                hypothesis = OVERUSING;
+            }
+        } else if(modified < -threshold) {
+            timeOverusing = -1;
+            overuseCount = 0;
+            hypothesis = UNDERUSING;
+        } else {
+            timeOverusing = -1;
+            overuseCount = 0;
+            hypothesis = NORMAL;
+        }
+        prevTrend = trend;
+        adapt(Math.abs(modified));
+        return hypothesis;
+    }
+
+    /**
+     * Fits a line to the points of the trend, by least squares.
+     *
+     * @return the slope of the line, the previous trend if there is none
+     */
+    private double slope() {
+        double meanTime = 0;
+        double meanDelay = 0;
+        for(int i=0; i<WINDOW; i++) {
+            meanTime += times[i];
+            meanDelay += delays[i];
+        }
+        meanTime /= WINDOW;
+        meanDelay /= WINDOW;
+        double numerator = 0;
+        double denominator = 0;
+        for(int i=0; i<WINDOW; i++) {
+            double x = times[i] - meanTime;
+            numerator += x * (delays[i] - meanDelay);
+            denominator += x * x;
+        }
+        return denominator == 0 ? prevTrend : numerator / denominator;
+    }
+
+    /**
+     * Moves the threshold towards the trend, so that it is neither
+     * starved by concurrent TCP flows nor triggered by jitter.
+     *
+     * @param magnitude the absolute value of the modified trend
+     */
+    private void adapt(double magnitude) {
+        double elapsed = Math.max(0, Math.min(groupArrival - lastAdaption, 100));
+        lastAdaption = groupArrival;
+        if(magnitude > threshold + 15) {
+            // A spike, such as a route change, rather than a trend
+            return;
+        }
+        double k = magnitude < threshold ? THRESHOLD_DOWN : THRESHOLD_UP;
+        threshold += k * (magnitude - threshold) * elapsed;
+        threshold = Math.max(MIN_THRESHOLD, Math.min(MAX_THRESHOLD, threshold));
+    }
+
+    /**
+     * Keeps a rate within the bounds of the target.
+     *
+     * @param rate the rate, in bits per second
+     * @return the rate within the bounds
+     */
+    private long clamp(long rate) {
+        return Math.max(minBitrate, Math.min(maxBitrate, rate));
+    }
+}
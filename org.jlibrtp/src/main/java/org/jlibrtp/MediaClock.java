@@ -0,0 +1,193 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+/**
+ * The media clocks of a session: the clock rate of every payload type,
+ * and the RTP timestamps of the data sent.
+ *
+ * RTP timestamps count in units of the payload's clock rate (RFC 3550,
+ * 5.1), 8000 Hz for most telephony audio and 90000 Hz for video. The
+ * defaults are those of the static payload types in RFC 3551, dynamic
+ * payload types have to be registered by the application, and are
+ * otherwise assumed to be audio at 8000 Hz.
+ *
+ * Timestamps are derived from System.nanoTime(), which, unlike the wall
+ * clock, does not jump, starting from a random offset.
+ *
+ * @author agent
+ */
+public class MediaClock {
+    /** Nanoseconds per second */
+    private static final long NANOS = 1000000000L;
+
+    /**
+     * Clock rate in Hz, indexed by payload type. Replaced, never modified,
+     * so that the sending and receiving threads see registered rates.
+     */
+    private volatile int[] clockRates;
+    /** System.nanoTime() at which the clock started */
+    private final long origin;
+    /** RTP timestamp at origin, random as recommended by RFC 3550 */
+    private final long offset;
+
+    /** RTP timestamp of the data sent last, -1 if nothing has been sent */
+    private long lastSentTimeStamp = -1;
+    /** System.nanoTime() when the data was sent */
+    private long lastSentTime;
+    /** Clock rate of the data sent last */
+    private int lastSentClockRate;
+
+    /**
+     * Creates the clocks of a session.
+     *
+     * @param offset the RTP timestamp the clock starts at
+     */
+    protected MediaClock(long offset) {
+        this.origin = System.nanoTime();
+        this.offset = offset & 0xFFFFFFFFL;
+        int[] rates = new int[128];
+        for(int i=0; i<rates.length; i++) {
+            rates[i] = defaultClockRate(i);
+        }
+        this.clockRates = rates;
+    }
+
+    /**
+     * The default clock rates of the static payload types in RFC 3551.
+     * Dynamic payload types are assumed to be audio at 8000 Hz.
+     *
+     * @param payloadType the RTP payload type
+     * @return the clock rate in Hz
+     */
+    static int defaultClockRate(int payloadType) {
+        switch(payloadType) {
+        case 6:	// DVI4 16 kHz
+            return 16000;
+        case 10:	// L16 stereo
+        case 11:	// L16 mono
+            return 44100;
+        case 16:	// DVI4 11 kHz
+            return 11025;
+        case 17:	// DVI4 22 kHz
+            return 22050;
+        case 14:	// MPA
+        case 25:	// CelB
+        case 26:	// JPEG
+        case 28:	// nv
+        case 31:	// H261
+        case 32:	// MPV
+        case 33:	// MP2T
+        case 34:	// H263
+            return 90000;
+        default:
+            return 8000;
+        }
+    }
+
+    /**
+     * The clock rate of a payload type.
+     *
+     * @param payloadType the RTP payload type, 0 to 127
+     * @return the clock rate in Hz
+     */
+    public int clockRate(int payloadType) {
+        return clockRates[payloadType & 0x7F];
+    }
+
+    /**
+     * Registers the clock rate of a payload type, usually a dynamic one
+     * negotiated through SDP.
+     *
+     * @param payloadType the RTP payload type, 0 to 127
+     * @param clockRate the clock rate in Hz
+     * @return the clock rate, -1 if either argument is out of range
+     */
+    public synchronized int clockRate(int payloadType, int clockRate) {
+        if(payloadType < 0 || payloadType > 127 || clockRate <= 0) {
+            return -1;
+        }
+        int[] rates = clockRates.clone();
+        rates[payloadType] = clockRate;
+        clockRates = rates;
+        return clockRate;
+    }
+
+    /**
+     * Converts nanoseconds into ticks of a media clock, without overflowing
+     * for clocks that have run for years.
+     *
+     * @param nanos the duration in nanoseconds
+     * @param clockRate the clock rate in Hz
+     * @return the duration in ticks
+     */
+    static long toTicks(long nanos, int clockRate) {
+        return (nanos / NANOS) * clockRate + (nanos % NANOS) * clockRate / NANOS;
+    }
+
+    /**
+     * Converts ticks of a media clock into nanoseconds.
+     *
+     * @param ticks the duration in ticks
+     * @param clockRate the clock rate in Hz
+     * @return the duration in nanoseconds
+     */
+    static long toNanos(long ticks, int clockRate) {
+        return (ticks / clockRate) * NANOS + (ticks % clockRate) * NANOS / clockRate;
+    }
+
+    /**
+     * The RTP timestamp of the present moment, for data sent now.
+     *
+     * @param payloadType the payload type of the data
+     * @return the RTP timestamp, 32 bits
+     */
+    protected long now(int payloadType) {
+        long ticks = toTicks(System.nanoTime() - origin, clockRate(payloadType));
+        return (offset + ticks) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Records the timestamp of data that was just sent, whether it came from
+     * now() or from the application, so that sender reports match it.
+     *
+     * @param timeStamp the RTP timestamp
+     * @param payloadType the payload type of the data
+     */
+    protected synchronized void sent(long timeStamp, int payloadType) {
+        lastSentTimeStamp = timeStamp & 0xFFFFFFFFL;
+        lastSentTime = System.nanoTime();
+        lastSentClockRate = clockRate(payloadType);
+    }
+
+    /**
+     * The RTP timestamp for a sender report sent now: that of the last data
+     * sent, advanced by the time passed since (RFC 3550, 6.4.1).
+     *
+     * @param payloadType the payload type to use if nothing has been sent yet
+     * @return the RTP timestamp, 32 bits
+     */
+    protected synchronized long reportTimeStamp(int payloadType) {
+        if(lastSentTimeStamp < 0) {
+            return now(payloadType);
+        }
+        long ticks = toTicks(System.nanoTime() - lastSentTime, lastSentClockRate);
+        return (lastSentTimeStamp + ticks) & 0xFFFFFFFFL;
+    }
+}
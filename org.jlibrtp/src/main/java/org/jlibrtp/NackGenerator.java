@@ -0,0 +1,224 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the packets missing from one participant's stream, and
+ * turns them into the Feedback Control Information of generic NACKs
+ * (RFC 4585, 6.2.1).
+ *
+ * A packet is missing when packets with higher sequence numbers arrive
+ * before it. It is asked for again every RETRY_INTERVAL until it arrives,
+ * possibly retransmitted, or until it has been asked for MAX_TRIES times.
+ * The owner runs collect() when nextRetry() says, even if the stream stalls.
+ * Large jumps in the sequence numbers are taken as a restart of the stream
+ * rather than a loss.
+ *
+ * @author agent
+ */
+class NackGenerator {
+    /** The most packets tracked at a time, the oldest are given up first */
+    protected static final int MAX_MISSING = 128;
+    /** A jump larger than this is not considered a loss */
+    protected static final int MAX_GAP = MAX_MISSING;
+    /** How often a packet is asked for */
+    protected static final int MAX_TRIES = 3;
+    /** Nanoseconds between two NACKs for the same packet */
+    protected static final long RETRY_INTERVAL = 100000000L;
+
+    /** The highest sequence number received, -1 before the first packet */
+    private int highest = -1;
+    /** Sequence numbers of the missing packets, oldest first */
+    private final int[] missing = new int[MAX_MISSING];
+    /** When each missing packet was last asked for, as in System.nanoTime(), 0 if never */
+    private final long[] nackedAt = new long[MAX_MISSING];
+    /** How often each missing packet has been asked for */
+    private final int[] tries = new int[MAX_MISSING];
+    /** The number of missing packets */
+    private int count = 0;
+
+    /** Reused by collect(), packet IDs */
+    private final int[] pid = new int[MAX_MISSING];
+    /** Reused by collect(), bitmasks of following lost packets */
+    private final int[] blp = new int[MAX_MISSING];
+
+    /**
+     * Notes the arrival of a packet.
+     *
+     * @param seqNum the sequence number of the packet
+     */
+    protected synchronized void received(int seqNum) {
+        if(highest < 0) {
+            highest = seqNum;
+            return;
+        }
+        int delta = (seqNum - highest) & 0xFFFF;
+        if(delta == 0) {
+            return;
+        }
+        if(delta >= 0x8000) {
+            // Late, or the retransmission of a packet we asked for
+            remove(seqNum);
+            return;
+        }
+        if(delta > MAX_GAP) {
+            count = 0;
+        } else {
+            for(int i=1; i<delta; i++) {
+                add((highest + i) & 0xFFFF);
+            }
+        }
+        highest = seqNum;
+    }
+
+    /**
+     * Whether a packet is missing, and not given up yet.
+     *
+     * @param seqNum the sequence number of the packet
+     * @return true if it is missing
+     */
+    protected synchronized boolean isMissing(int seqNum) {
+        return indexOf(seqNum) >= 0;
+    }
+
+    /**
+     * Gathers the missing packets that are due to be asked for, and counts
+     * them as asked for now.
+     *
+     * @param now the current time, as in System.nanoTime()
+     * @return {PID, BLP}, the FCI fields of a generic NACK, null if nothing is due
+     */
+    protected synchronized int[][] collect(long now) {
+        int fci = -1;
+        int kept = 0;
+        for(int i=0; i<count; i++) {
+            int seqNum = missing[i];
+            if(nackedAt[i] != 0 && now - nackedAt[i] < RETRY_INTERVAL) {
+                keep(i, kept++);
+                continue;
+            }
+            if(tries[i] >= MAX_TRIES) {
+                // Given up, drop it
+                continue;
+            }
+            nackedAt[i] = now;
+            tries[i]++;
+            keep(i, kept++);
+
+            int offset = fci < 0 ? 0 : (seqNum - pid[fci]) & 0xFFFF;
+            if(fci >= 0 && offset >= 1 && offset <= 16) {
+                blp[fci] |= 1 << (offset - 1);
+            } else {
+                fci++;
+                pid[fci] = seqNum;
+                blp[fci] = 0;
+            }
+        }
+        count = kept;
+        if(fci < 0) {
+            return null;
+        }
+        return new int[][] {Arrays.copyOf(pid, fci + 1), Arrays.copyOf(blp, fci + 1)};
+    }
+
+    /**
+     * How long until collect() has a packet to ask for again, so that the
+     * retries do not depend on the arrival of further packets.
+     *
+     * @param now the current time, as in System.nanoTime()
+     * @return nanoseconds until the next retry is due, 0 if one is due now, -1 if none is pending
+     */
+    protected synchronized long nextRetry(long now) {
+        long next = -1;
+        for(int i=0; i<count; i++) {
+            if(tries[i] >= MAX_TRIES) {
+                continue;
+            }
+            long due = nackedAt[i] == 0 ? 0 : Math.max(0, nackedAt[i] + RETRY_INTERVAL - now);
+            if(next < 0 || due < next) {
+                next = due;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Moves a missing packet to a lower index, closing gaps left by dropped ones.
+     *
+     * @param from the index of the packet
+     * @param to the new index
+     */
+    private void keep(int from, int to) {
+        if(from != to) {
+            missing[to] = missing[from];
+            nackedAt[to] = nackedAt[from];
+            tries[to] = tries[from];
+        }
+    }
+
+    /**
+     * Adds a missing packet, giving up the oldest if there are too many.
+     *
+     * @param seqNum the sequence number
+     */
+    private void add(int seqNum) {
+        if(count == MAX_MISSING) {
+            for(int i=1; i<count; i++) {
+                keep(i, i - 1);
+            }
+            count--;
+        }
+        missing[count] = seqNum;
+        nackedAt[count] = 0;
+        tries[count] = 0;
+        count++;
+    }
+
+    /**
+     * Removes a packet that has arrived.
+     *
+     * @param seqNum the sequence number
+     */
+    private void remove(int seqNum) {
+        int index = indexOf(seqNum);
+        if(index >= 0) {
+            for(int i=index+1; i<count; i++) {
+                keep(i, i - 1);
+            }
+            count--;
+        }
+    }
+
+    /**
+     * Finds a missing packet.
+     *
+     * @param seqNum the sequence number
+     * @return its index, -1 if it is not missing
+     */
+    private int indexOf(int seqNum) {
+        for(int i=0; i<count; i++) {
+            if(missing[i] == seqNum) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
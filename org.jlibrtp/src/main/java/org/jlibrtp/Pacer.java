@@ -0,0 +1,310 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks at nanosecond deadlines, for many streams, on a few threads.
+ *
+ * Every thread owns a hashed timer wheel: WHEEL_SIZE buckets of tick
+ * nanoseconds each, a task goes into the bucket of its deadline, along
+ * with the number of whole revolutions still to wait. Scheduling and
+ * expiring are O(1), however many tasks are pending. Between ticks that
+ * have something due the threads are parked, rather than sleeping a
+ * millisecond at a time.
+ *
+ * Tasks are never run before their deadline, and at most about a tick
+ * after it. A task is linked into the wheel itself, so scheduling does
+ * not allocate, but it can only be pending once at a time; a task that
+ * paces a stream schedules itself again when it runs.
+ *
+ * @author agent
+ */
+public class Pacer {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(Pacer.class.getName());
+
+    /** Default length of a tick, in nanoseconds */
+    public static final long DEFAULT_TICK = 250000L;
+    /** Buckets per wheel, a power of two */
+    private static final int WHEEL_SIZE = 512;
+
+    /** The pacer shared by streams that were not given one, created on first use */
+    private static Pacer defaultPacer = null;
+
+    /** The wheels, one per thread */
+    private final Wheel[] wheels;
+    /** Length of a tick, in nanoseconds */
+    private final long tick;
+    /** Picks the wheel for the next task */
+    private final AtomicInteger nextWheel = new AtomicInteger();
+    /** Cleared by shutdown() */
+    private volatile boolean running = true;
+
+    /**
+     * A task run by a Pacer. Subclasses implement run().
+     */
+    public abstract static class Task implements Runnable {
+        /** The time to run at, as in System.nanoTime() */
+        private long deadline;
+        /** Revolutions of the wheel left before the task is due */
+        private long rounds;
+        /** The next task in the bucket, or on the wheel's incoming stack */
+        private Task next;
+        /** The wheel this task was last scheduled on */
+        private Wheel wheel;
+        /** 1 from being scheduled until it is run */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * Whether the task is waiting to be run.
+         *
+         * @return true if scheduled and not run yet
+         */
+        public boolean isPending() {
+            return pending.get() != 0;
+        }
+    }
+
+    /**
+     * Creates a pacer with a single thread and the default tick.
+     */
+    public Pacer() {
+        this(1, DEFAULT_TICK);
+    }
+
+    /**
+     * Creates a pacer and starts its threads, which are daemon threads.
+     *
+     * @param threads the number of threads running the tasks
+     * @param tick the resolution, in nanoseconds, e.g. DEFAULT_TICK
+     */
+    public Pacer(int threads, long tick) {
+        this.tick = tick;
+        this.wheels = new Wheel[threads];
+        for(int i=0; i<threads; i++) {
+            wheels[i] = new Wheel("Pacer-" + i);
+        }
+        for(int i=0; i<threads; i++) {
+            wheels[i].thread.start();
+        }
+    }
+
+    /**
+     * The pacer shared by streams that are not given one, with a thread
+     * for every four processors.
+     *
+     * @return the default pacer
+     */
+    public static synchronized Pacer getDefault() {
+        if(defaultPacer == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+            defaultPacer = new Pacer(threads, DEFAULT_TICK);
+        }
+        return defaultPacer;
+    }
+
+    /**
+     * Schedules a task. A task keeps to the thread it was first scheduled on,
+     * so that it never runs on two threads at once.
+     *
+     * @param task the task
+     * @param deadline when to run it, as in System.nanoTime(), may be in the past
+     * @return 0 if scheduled, -1 if the task is pending already or the pacer was shut down
+     */
+    public int schedule(Task task, long deadline) {
+        if(!running || !task.pending.compareAndSet(0, 1)) {
+            return -1;
+        }
+        if(task.wheel == null) {
+            task.wheel = wheels[(nextWheel.getAndIncrement() & 0x7FFFFFFF) % wheels.length];
+        }
+        task.deadline = deadline;
+        task.wheel.add(task);
+        return 0;
+    }
+
+    /**
+     * Stops the threads. Pending tasks are not run.
+     */
+    public void shutdown() {
+        running = false;
+        for(int i=0; i<wheels.length; i++) {
+            LockSupport.unpark(wheels[i].thread);
+        }
+    }
+
+    /**
+     * A timer wheel and the thread that turns it.
+     */
+    private final class Wheel implements Runnable {
+        /** The thread */
+        final Thread thread;
+        /** Tasks scheduled from any thread, not yet in a bucket */
+        private final AtomicReference<Task> incoming = new AtomicReference<Task>();
+        /** The buckets, linked lists of tasks */
+        private final Task[] buckets = new Task[WHEEL_SIZE];
+        /** System.nanoTime() when tick 0 began */
+        private final long start;
+        /** The tick being processed */
+        private long current = 0;
+        /** The number of tasks in the buckets */
+        private int count = 0;
+        /** When the parked thread will wake up by itself, Long.MAX_VALUE if it waits for a task, 0 while awake */
+        private volatile long wakeAt = 0;
+
+        /**
+         * Creates the thread, but does not start it.
+         *
+         * @param name the name of the thread
+         */
+        Wheel(String name) {
+            this.start = System.nanoTime();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Hands a task to the thread, waking it if it would sleep past the deadline.
+         *
+         * @param task the task
+         */
+        void add(Task task) {
+            Task head;
+            do {
+                head = incoming.get();
+                task.next = head;
+            } while(!incoming.compareAndSet(head, task));
+            // 0 while the thread is awake, it will see the task before parking
+            long w = wakeAt;
+            if(w != 0 && (w == Long.MAX_VALUE || task.deadline - w < 0)) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Puts the tasks handed over since the last tick into their buckets.
+         */
+        private void transfer() {
+            Task task = incoming.getAndSet(null);
+            while(task != null) {
+                Task next = task.next;
+                long ticks = (task.deadline - start) / tick;
+                if(ticks < current) {
+                    // Overdue, run it with the current tick
+                    ticks = current;
+                }
+                task.rounds = (ticks - current) / WHEEL_SIZE;
+                int idx = (int) (ticks & (WHEEL_SIZE - 1));
+                task.next = buckets[idx];
+                buckets[idx] = task;
+                count++;
+                task = next;
+            }
+        }
+
+        /**
+         * Runs the tasks of the current tick that are due, the others wait another revolution.
+         */
+        private void expire() {
+            int idx = (int) (current & (WHEEL_SIZE - 1));
+            Task prev = null;
+            Task task = buckets[idx];
+            while(task != null) {
+                Task next = task.next;
+                if(task.rounds > 0) {
+                    task.rounds--;
+                    prev = task;
+                } else {
+                    if(prev == null) {
+                        buckets[idx] = next;
+                    } else {
+                        prev.next = next;
+                    }
+                    count--;
+                    task.next = null;
+                    task.pending.set(0);
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Pacer: task failed", e);
+                    }
+                }
+                task = next;
+            }
+        }
+
+        /**
+         * The first tick from the current one whose bucket holds a task.
+         *
+         * @return the tick, current + WHEEL_SIZE if only later revolutions have tasks
+         */
+        private long nextOccupied() {
+            for(long t=current; t<current + WHEEL_SIZE; t++) {
+                if(buckets[(int) (t & (WHEEL_SIZE - 1))] != null) {
+                    return t;
+                }
+            }
+            return current + WHEEL_SIZE;
+        }
+
+        /**
+         * Turns the wheel until the pacer is shut down.
+         */
+        public void run() {
+            while(running) {
+                transfer();
+                long now = System.nanoTime();
+                if(count == 0) {
+                    // Nothing to do, wait for add() instead of ticking
+                    wakeAt = Long.MAX_VALUE;
+                    if(incoming.get() == null) {
+                        LockSupport.park(this);
+                    }
+                    wakeAt = 0;
+                    current = Math.max(current, (System.nanoTime() - start) / tick);
+                    continue;
+                }
+
+                // A bucket is processed once its tick has ended, so nothing runs early
+                long next = nextOccupied();
+                long due = start + (next + 1) * tick;
+                if(due - now > 0) {
+                    wakeAt = due;
+                    if(incoming.get() == null) {
+                        LockSupport.parkNanos(this, due - now);
+                    }
+                    wakeAt = 0;
+                    continue;
+                }
+
+                // Skip the empty ticks, then run the due tasks
+                current = next;
+                expire();
+                current++;
+            }
+        }
+    }
+}
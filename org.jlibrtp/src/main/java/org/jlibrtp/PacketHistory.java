@@ -0,0 +1,187 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copies of the most recent RTP packets of a stream, indexed by sequence
+ * number. Senders keep the packets they send, so that packets reported lost
+ * by a NACK (RFC 4585) can be sent again. Receivers keep the packets they
+ * receive, from which FecDecoder recovers lost ones.
+ *
+ * The history is a ring of slots, one per sequence number modulo its size,
+ * so a packet is found without searching and the oldest packet is
+ * overwritten when the ring has gone round. The slots keep their arrays, so
+ * once every slot has been used, storing a packet does not allocate.
+ *
+ * Not thread safe. RTPSession serializes access to its send history
+ * through its send lock, decoders belong to the thread receiving the stream.
+ *
+ * @author agent
+ */
+class PacketHistory {
+    /** The size of the slot arrays, larger packets get an array of their own */
+    protected static final int SLOT_SIZE = RtpSender.SEND_BUFFER_SIZE;
+
+    /** The number of slots minus one, the number of slots is a power of two */
+    private final int mask;
+    /** The packets, header and payload */
+    private final byte[][] packets;
+    /** Buffers wrapping the arrays in packets */
+    private final ByteBuffer[] buffers;
+    /** The length of each packet */
+    private final int[] lengths;
+    /** The sequence number of each packet, -1 for empty slots */
+    private final int[] seqNums;
+    /** When each packet was sent, as in System.nanoTime() */
+    private final long[] sentAt;
+    /** When each packet was last sent again, as in System.nanoTime(), 0 if never */
+    private final long[] resentAt;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param capacity the number of packets kept, rounded up to a power of two
+     */
+    protected PacketHistory(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, Math.min(capacity, 1 << 15)) * 2 - 1);
+        this.mask = size - 1;
+        this.packets = new byte[size][];
+        this.buffers = new ByteBuffer[size];
+        this.lengths = new int[size];
+        this.seqNums = new int[size];
+        this.sentAt = new long[size];
+        this.resentAt = new long[size];
+        for(int i=0; i<size; i++) {
+            seqNums[i] = -1;
+        }
+    }
+
+    /**
+     * Keeps a copy of a packet that has just been sent or received.
+     *
+     * @param pkt the packet, from position to limit, which are not changed
+     * @param now the current time, as in System.nanoTime()
+     */
+    protected void store(ByteBuffer pkt, long now) {
+        int length = pkt.remaining();
+        int seqNum = pkt.getShort(pkt.position() + 2) & 0xFFFF;
+        int slot = seqNum & mask;
+
+        byte[] copy = packets[slot];
+        if(copy == null || copy.length < length || copy.length > SLOT_SIZE && length <= SLOT_SIZE) {
+            copy = new byte[Math.max(length, SLOT_SIZE)];
+            packets[slot] = copy;
+            buffers[slot] = ByteBuffer.wrap(copy);
+        }
+        ByteBuffer src = pkt.duplicate();
+        src.get(copy, 0, length);
+
+        lengths[slot] = length;
+        seqNums[slot] = seqNum;
+        sentAt[slot] = now;
+        resentAt[slot] = 0;
+    }
+
+    /**
+     * Looks up a packet that is to be sent again.
+     *
+     * Packets that have been overwritten, that were sent longer ago than
+     * maxAge, or that were already sent again less than minInterval ago are
+     * not found.
+     *
+     * @param seqNum the sequence number of the packet
+     * @param now the current time, as in System.nanoTime()
+     * @param maxAge the age, in nanoseconds, after which a packet is no longer useful
+     * @param minInterval nanoseconds between two retransmissions of the same packet
+     * @return the slot of the packet, -1 if it should not be sent
+     */
+    protected int find(int seqNum, long now, long maxAge, long minInterval) {
+        int slot = slot(seqNum);
+        if(slot < 0 || now - sentAt[slot] > maxAge) {
+            return -1;
+        }
+        if(resentAt[slot] != 0 && now - resentAt[slot] < minInterval) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Looks up a packet.
+     *
+     * @param seqNum the sequence number of the packet
+     * @return the slot of the packet, -1 if it is not kept
+     */
+    protected int slot(int seqNum) {
+        int slot = seqNum & mask;
+        return seqNums[slot] == seqNum ? slot : -1;
+    }
+
+    /**
+     * Notes that the packet in a slot has been sent again.
+     *
+     * @param slot the slot, as returned by find()
+     * @param now the current time, as in System.nanoTime()
+     */
+    protected void resent(int slot, long now) {
+        resentAt[slot] = now == 0 ? 1 : now;
+    }
+
+    /**
+     * The packet in a slot, valid until the next call to store().
+     *
+     * @param slot the slot, as returned by find() or slot()
+     * @return the array holding the packet, from index 0
+     */
+    protected byte[] packet(int slot) {
+        return packets[slot];
+    }
+
+    /**
+     * The packet in a slot as a buffer, for word-wide access. The buffer is
+     * shared, only absolute gets and puts should be used on it.
+     *
+     * @param slot the slot, as returned by find() or slot()
+     * @return the buffer wrapping packet(slot)
+     */
+    protected ByteBuffer buffer(int slot) {
+        return buffers[slot];
+    }
+
+    /**
+     * The length of the packet in a slot.
+     *
+     * @param slot the slot, as returned by find() or slot()
+     * @return the length in octets
+     */
+    protected int length(int slot) {
+        return lengths[slot];
+    }
+
+    /**
+     * Forgets every packet, for instance when the SSRC has changed.
+     */
+    protected void clear() {
+        for(int i=0; i<seqNums.length; i++) {
+            seqNums[i] = -1;
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.jlibrtp;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,10 +77,14 @@ public class Participant {
     protected int receivedSinceLastSR = 0;
     /** RR Sequence number associated with last SR */
     protected int lastSRRseqNumber = 0;
-    /** RR Interarrival jitter */
+    /** RR Interarrival jitter, in RTP timestamp units */
     protected double interArrivalJitter = -1.0;
     /** RR Last received RTP Timestamp */
     protected long lastRtpTimestamp = 0;
+    /** RR Relative transit time of the last packet, in RTP timestamp units, modulo 2^32 */
+    protected int lastTransit = 0;
+    /** RR Clock rate lastTransit was measured in, 0 before the first packet */
+    protected int transitClockRate = 0;
 
     /** RR Middle 32 bits of the NTP timestamp in the last SR */
     protected long timeStampLSR = 0;
@@ -100,8 +105,37 @@ public class Participant {
     /** UNIX time when a BYE was received from this participant, for pruning */
     protected long timestampBYE = -1;	// The user said BYE at this time
 
-    /** Store the packets received from this participant */
+    /** Store the packets received from this participant, only used by the thread delivering frames */
     protected PktBuffer pktBuffer = null;
+    /** Packets on their way from the RTPReceiverThread to pktBuffer, null until the first one arrives */
+    protected volatile PktQueue inbox = null;
+    /** Tracks the packets lost from this participant, null unless NACKs are generated */
+    protected volatile NackGenerator nackGenerator = null;
+    /** Asks for the lost packets again when they are due, set before nackGenerator */
+    protected Pacer.Task nackRetry = null;
+    /** Recovers lost packets from FEC packets, null until FEC is expected, used by the receiver thread */
+    protected FecDecoder fecDecoder = null;
+    /** Recovers lost packets from redundant blocks, null until RED is expected, used by the receiver thread */
+    protected RedDecoder redDecoder = null;
+    /** Records when this participant's packets arrived, null until they carry transport-wide sequence numbers */
+    protected TransportFeedback transportFeedback = null;
+    /** 1 from when the RTPReceiverThread queues the participant until its inbox is drained */
+    protected volatile int inboxSignalled = 0;
+    /** Whether the participant is queued for the AppCallerThread, guarded by rtpSession.pktBufLock */
+    protected boolean readyQueued = false;
+    /** The next participant in the queue for the AppCallerThread, guarded by rtpSession.pktBufLock */
+    protected Participant nextReady = null;
+    /** The earliest time the AppCallerThread will look at pktBuffer again, only used by that thread */
+    protected long playoutTime = Long.MAX_VALUE;
+    /** The RTPReceiverThread that adds to pktBuffer, when the session has several, -1 until one claims it */
+    protected volatile int reader = -1;
+
+    /** RTP packets sent to this participant */
+    protected final AtomicLong sentPkts = new AtomicLong();
+    /** RTP octets, headers included, sent to this participant */
+    protected final AtomicLong sentOctets = new AtomicLong();
+    /** RTP packets that could not be sent to this participant */
+    protected final AtomicLong sendFailures = new AtomicLong();
 
     /** UNIX time of last RTP packet, to check whether this participant has sent anything recently */
     protected long lastRtpPkt = -1; //Time of last RTP packet
@@ -295,13 +329,42 @@ public class Participant {
         return this.ssrc;
     }
 
+    /**
+     * The number of RTP packets sent to this participant.
+     *
+     * @return packets sent
+     */
+    public long getSentPktCount() {
+        return this.sentPkts.get();
+    }
+
+    /**
+     * The number of RTP octets, headers included, sent to this participant.
+     *
+     * @return octets sent
+     */
+    public long getSentOctetCount() {
+        return this.sentOctets.get();
+    }
+
+    /**
+     * The number of RTP packets that could not be sent to this participant,
+     * because of an error or because the socket buffer was full.
+     *
+     * @return packets not sent
+     */
+    public long getSendFailureCount() {
+        return this.sendFailures.get();
+    }
+
     /**
      * Updates the participant with information for receiver reports.
      *
      * @param packetLength to keep track of received octets
      * @param pkt the most recently received packet
+     * @param clockRate the clock rate of the packet's payload type, in Hz
      */
-    protected void updateRRStats(int packetLength, RtpPkt pkt) {
+    protected void updateRRStats(int packetLength, RtpPkt pkt, int clockRate) {
         int curSeqNum = pkt.getSeqNumber();
 
         if(firstSeqNumber < 0) {
@@ -312,8 +375,6 @@ public class Participant {
         receivedSinceLastSR++;
         receivedPkts++;
 
-        long curTime =  System.currentTimeMillis();
-
         if( this.lastSeqNumber < curSeqNum ) {
             //In-line packet, best thing you could hope for
             this.lastSeqNumber = curSeqNum;
@@ -327,17 +388,22 @@ public class Participant {
             //This was probably a duplicate or a late arrival.
         }
 
-        // Calculate jitter
-        if(this.lastRtpPkt > 0) {
-
-            long D = (pkt.getTimeStamp() - curTime) - (this.lastRtpTimestamp - this.lastRtpPkt);
+        // Calculate jitter, RFC 3550 A.8. The arrival time is measured in the same
+        // units as the RTP timestamp, the offset between the two cancels out.
+        int arrival = (int) MediaClock.toTicks(System.nanoTime(), clockRate);
+        int transit = arrival - (int) pkt.getTimeStamp();
+        if(this.transitClockRate == clockRate) {
+            int D = transit - this.lastTransit;
             if(D < 0)
                 D = (-1)*D;
 
+            if(this.interArrivalJitter < 0)
+                this.interArrivalJitter = 0;
             this.interArrivalJitter += ((double)D - this.interArrivalJitter) / 16.0;
         }
 
-        lastRtpPkt = curTime;
+        lastTransit = transit;
+        transitClockRate = clockRate;
         lastRtpTimestamp = pkt.getTimeStamp();
     }
 
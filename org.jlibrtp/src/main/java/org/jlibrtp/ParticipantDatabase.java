@@ -18,8 +18,11 @@
  */
 package org.jlibrtp;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.BiFunction;
 import java.util.logging.Logger;
 
 /**
@@ -44,17 +47,27 @@ public class ParticipantDatabase {
 
     /** The parent RTP Session */
     RTPSession rtpSession = null;
-    /** 
-	  * A copy on write list to hold participants explicitly added by the application
-	  * In unicast mode this is the list used for RTP and RTCP transmission, 
-	  * in multicast it should not be in use. 
-	  */
-	CopyOnWriteArrayList<Participant> receivers = new CopyOnWriteArrayList<Participant>();
     /**
-     * The hashtable holds participants added through received RTP and RTCP packets,
+     * The participants explicitly added by the application, in the order they were added.
+     * In unicast mode this is the list used for RTP and RTCP transmission,
+     * in multicast it should not be in use.
+     */
+    ReceiverList receivers = new ReceiverList();
+    /** The receivers by their RTP and their RTCP address */
+    ConcurrentHashMap<InetSocketAddress,Participant> receiverAddresses =
+        new ConcurrentHashMap<InetSocketAddress,Participant>();
+    /** The receivers on every host that has any, for sources that send from other ports */
+    ConcurrentHashMap<InetAddress,Participant[]> receiverHosts =
+        new ConcurrentHashMap<InetAddress,Participant[]>();
+    /** Participants discovered through RTP or RTCP that match no receiver, by the address they sent from */
+    ConcurrentHashMap<InetSocketAddress,Participant> unmatched =
+        new ConcurrentHashMap<InetSocketAddress,Participant>();
+    /**
+     * The table holds participants added through received RTP and RTCP packets,
      * as well as participants that have been linked to an SSRC by ip address (in unicast mode).
+     * Looked up on every received packet, so it is keyed by primitive longs.
      */
-    ConcurrentHashMap<Long,Participant> ssrcTable = new ConcurrentHashMap<Long,Participant>();
+    SsrcTable ssrcTable = new SsrcTable();
 
     /**
      * Simple constructor
@@ -95,7 +108,7 @@ public class ParticipantDatabase {
             return -1;
         } else {
             // Check this one is not redundant
-            if(this.ssrcTable.contains(p.ssrc)) {
+            if(this.ssrcTable.containsKey(p.ssrc)) {
                 LOGGER.info("ParticipantDatabase.addParticipant() SSRC "
                         +"already known " + Long.toString(p.ssrc));
                 return -2;
@@ -117,77 +130,210 @@ public class ParticipantDatabase {
      */
     private int addParticipantUnicast(int cameFrom, Participant p) {
         if(cameFrom == 0) {
-            //Check whether there is a match in the ssrcTable
-            boolean notDone = true;
-
-            Enumeration<Participant> enu = this.ssrcTable.elements();
-            while(notDone && enu.hasMoreElements()) {
-                Participant part = enu.nextElement();
-                if(part.unexpected &&
-                        ((part.rtcpReceivedFromAddress!=null && part.rtcpAddress!=null && part.rtcpReceivedFromAddress.equals(part.rtcpAddress.getAddress())) ||
-                        ( part.rtpReceivedFromAddress!=null && part.rtpAddress!=null && part.rtpReceivedFromAddress.equals(part.rtpAddress.getAddress())))) {
+            //Check whether we already receive from this participant
+            Participant part = null;
+            if(p.rtpAddress != null) {
+                part = this.unmatched.get(p.rtpAddress);
+            }
+            if(part == null && p.rtcpAddress != null) {
+                part = this.unmatched.get(p.rtcpAddress);
+            }
 
-                    part.rtpAddress = p.rtpAddress;
-                    part.rtcpAddress = p.rtcpAddress;
-                    part.unexpected = false;
+            if(part != null) {
+                unindexUnmatched(part);
+                part.rtpAddress = p.rtpAddress;
+                part.rtcpAddress = p.rtcpAddress;
+                part.unexpected = false;
 
-                    //Report the match back to the application
-                    Participant[] partArray = {part};
-                    this.rtpSession.appIntf.userEvent(5, partArray);
+                //Report the match back to the application
+                Participant[] partArray = {part};
+                this.rtpSession.appIntf.userEvent(5, partArray);
 
-                    notDone = false;
-                    p = part;
-                }
+                p = part;
             }
 
             //Add to the table of people that we send packets to
             this.receivers.add(p);
+            indexReceiver(p);
             return 0;
 
         } else {
             //Check whether there's a match in the receivers table
-            boolean notDone = true;
-            //System.out.println("GOT " + p.cname);
-            Iterator<Participant> iter = this.receivers.iterator();
+            InetSocketAddress from = cameFrom == 1 ? p.rtpReceivedFromAddress : p.rtcpReceivedFromAddress;
+            Participant part = findReceiver(from, p.ssrc);
 
-            while(notDone && iter.hasNext()) {
-                Participant part = iter.next();
+            if(part != null) {
+                part.rtpReceivedFromAddress = p.rtpReceivedFromAddress;
+                part.rtcpReceivedFromAddress = p.rtcpReceivedFromAddress;
 
-                //System.out.println(part.rtpAddress.getAddress().toString()
-                //		+ " " + part.rtcpAddress.getAddress().toString()
-                //		+ " " + p.rtpReceivedFromAddress.getAddress().toString()
-                //		+ " " + p.rtcpReceivedFromAddress.getAddress().toString());
+                // Move information
+                part.ssrc = p.ssrc;
+                part.cname = p.cname;
+                part.name = p.name;
+                part.loc = p.loc;
+                part.phone = p.phone;
+                part.email = p.email;
+                part.note = p.note;
+                part.tool = p.tool;
+                part.priv = p.priv;
 
-                //System.out.println(" HUUHHHH?  " + p.rtcpReceivedFromAddress.getAddress().equals(part.rtcpAddress.getAddress()));
-                if((cameFrom == 1 && p.rtpReceivedFromAddress.getAddress().equals(part.rtpAddress.getAddress()))
-                        || (cameFrom == 2 && p.rtcpReceivedFromAddress.getAddress().equals(part.rtcpAddress.getAddress()))) {
+                this.ssrcTable.put(part.ssrc, part);
 
-                    part.rtpReceivedFromAddress = p.rtpReceivedFromAddress;
-                    part.rtcpReceivedFromAddress = p.rtcpReceivedFromAddress;
+                //Report the match back to the application
+                Participant[] partArray = {part};
+                this.rtpSession.appIntf.userEvent(5, partArray);
+                return 0;
+            }
 
-                    // Move information
-                    part.ssrc = p.ssrc;
-                    part.cname = p.cname;
-                    part.name = p.name;
-                    part.loc = p.loc;
-                    part.phone = p.phone;
-                    part.email = p.email;
-                    part.note = p.note;
-                    part.tool = p.tool;
-                    part.priv = p.priv;
+            // No match? ok
+            this.ssrcTable.put(p.ssrc, p);
+            if(from != null) {
+                this.unmatched.putIfAbsent(from, p);
+            }
+            return 0;
+        }
+    }
 
-                    this.ssrcTable.put(part.ssrc, part);
+    /**
+     * Finds the receiver a packet came from, by the address and port it was
+     * sent from, or failing that by the address alone.
+     *
+     * A receiver whose SSRC is known only matches packets with that SSRC.
+     * The address alone only matches when exactly one receiver on that host
+     * has no SSRC yet, so that two endpoints behind one NAT, or two streams
+     * from one host, do not end up as one participant.
+     *
+     * @param from where the packet came from
+     * @param ssrc the SSRC of the packet
+     * @return the receiver, null if there is no unambiguous match
+     */
+    protected Participant findReceiver(InetSocketAddress from, long ssrc) {
+        if(from == null) {
+            return null;
+        }
+        Participant p = this.receiverAddresses.get(from);
+        if(p != null) {
+            return p.ssrc < 0 || p.ssrc == ssrc ? p : null;
+        }
+        Participant[] onHost = this.receiverHosts.get(from.getAddress());
+        if(onHost == null) {
+            return null;
+        }
+        Participant match = null;
+        for(int i=0; i<onHost.length; i++) {
+            Participant part = onHost[i];
+            if(part.ssrc == ssrc) {
+                return part;
+            }
+            if(part.ssrc < 0) {
+                if(match != null) {
+                    // Several candidates, no telling which one this is
+                    return null;
+                }
+                match = part;
+            }
+        }
+        return match;
+    }
 
-                    //Report the match back to the application
-                    Participant[] partArray = {part};
-                    this.rtpSession.appIntf.userEvent(5, partArray);
-                    return 0;
+    /**
+     * Adds a receiver to the address indexes.
+     *
+     * @param p the receiver
+     */
+    private void indexReceiver(Participant p) {
+        if(p.rtpAddress != null) {
+            this.receiverAddresses.putIfAbsent(p.rtpAddress, p);
+            indexHost(p.rtpAddress.getAddress(), p);
+        }
+        if(p.rtcpAddress != null) {
+            this.receiverAddresses.putIfAbsent(p.rtcpAddress, p);
+            indexHost(p.rtcpAddress.getAddress(), p);
+        }
+    }
+
+    /**
+     * Adds a receiver to the receivers of a host, once.
+     *
+     * @param host the host, null if unresolved
+     * @param p the receiver
+     */
+    private void indexHost(InetAddress host, final Participant p) {
+        if(host == null) {
+            return;
+        }
+        this.receiverHosts.compute(host, new BiFunction<InetAddress,Participant[],Participant[]>() {
+            public Participant[] apply(InetAddress key, Participant[] onHost) {
+                if(onHost == null) {
+                    return new Participant[] {p};
                 }
+                for(int i=0; i<onHost.length; i++) {
+                    if(onHost[i] == p) {
+                        return onHost;
+                    }
+                }
+                Participant[] grown = Arrays.copyOf(onHost, onHost.length + 1);
+                grown[onHost.length] = p;
+                return grown;
             }
+        });
+    }
 
-            // No match? ok
-            this.ssrcTable.put(p.ssrc, p);
-            return 0;
+    /**
+     * Removes a receiver from the address indexes.
+     *
+     * @param p the receiver
+     */
+    private void unindexReceiver(Participant p) {
+        if(p.rtpAddress != null) {
+            this.receiverAddresses.remove(p.rtpAddress, p);
+            unindexHost(p.rtpAddress.getAddress(), p);
+        }
+        if(p.rtcpAddress != null) {
+            this.receiverAddresses.remove(p.rtcpAddress, p);
+            unindexHost(p.rtcpAddress.getAddress(), p);
+        }
+    }
+
+    /**
+     * Removes a receiver from the receivers of a host.
+     *
+     * @param host the host, null if unresolved
+     * @param p the receiver
+     */
+    private void unindexHost(InetAddress host, final Participant p) {
+        if(host == null) {
+            return;
+        }
+        this.receiverHosts.computeIfPresent(host, new BiFunction<InetAddress,Participant[],Participant[]>() {
+            public Participant[] apply(InetAddress key, Participant[] onHost) {
+                for(int i=0; i<onHost.length; i++) {
+                    if(onHost[i] == p) {
+                        if(onHost.length == 1) {
+                            return null;
+                        }
+                        Participant[] shrunk = new Participant[onHost.length - 1];
+                        System.arraycopy(onHost, 0, shrunk, 0, i);
+                        System.arraycopy(onHost, i + 1, shrunk, i, onHost.length - i - 1);
+                        return shrunk;
+                    }
+                }
+                return onHost;
+            }
+        });
+    }
+
+    /**
+     * Removes a participant from the index of unmatched participants.
+     *
+     * @param p the participant
+     */
+    private void unindexUnmatched(Participant p) {
+        if(p.rtpReceivedFromAddress != null) {
+            this.unmatched.remove(p.rtpReceivedFromAddress, p);
+        }
+        if(p.rtcpReceivedFromAddress != null) {
+            this.unmatched.remove(p.rtcpReceivedFromAddress, p);
         }
     }
 
@@ -197,8 +343,12 @@ public class ParticipantDatabase {
      * @param p the participant to be removed
      */
     protected void removeParticipant(Participant p) {
-        if(! this.rtpSession.mcSession)
-            this.receivers.remove(p);
+        if(! this.rtpSession.mcSession) {
+            if(this.receivers.remove(p)) {
+                unindexReceiver(p);
+            }
+            unindexUnmatched(p);
+        }
 
         this.ssrcTable.remove(p.ssrc, p);
     }
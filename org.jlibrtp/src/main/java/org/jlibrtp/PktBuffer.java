@@ -32,6 +32,9 @@ import java.util.logging.Logger;
  * Note that newest is the most recently received, i.e. highest timeStamp
  * Next means new to old (from recently received to previously received)
  *
+ * Packet buffers are not synchronized. Only the thread delivering frames uses
+ * them, the receiver hands packets over through the participant's PktQueue.
+ *
  * @author Arne Kepp
  */
 public class PktBuffer {
@@ -76,6 +79,41 @@ public class PktBuffer {
         length = 1;
     }
 
+    /**
+     * Creates an empty buffer, for subclasses that keep packets their own way.
+     *
+     * @param rtpSession the parent RTPSession
+     * @param p the participant to which this packetbuffer belongs.
+     * @param ssrc the SSRC of the participant
+     */
+    protected PktBuffer(RTPSession rtpSession, Participant p, long ssrc) {
+        this.rtpSession = rtpSession;
+        this.p = p;
+        SSRC = ssrc;
+    }
+
+    /**
+     * Creates the kind of packet buffer selected through rtpSession.packetBufferBehavior(int, int).
+     *
+     * The ring and adaptive buffers do not keep packets in the order they
+     * arrived, so the linked list is used whenever the behavior is -1.
+     *
+     * @param rtpSession the parent RTPSession
+     * @param p the participant to which this packetbuffer belongs.
+     * @param aPkt The first RTP packet, to be added to the buffer
+     * @return a new packet buffer holding aPkt
+     */
+    protected static PktBuffer create(RTPSession rtpSession, Participant p, RtpPkt aPkt) {
+        if(rtpSession.pktBufBehavior > -1) {
+            if(rtpSession.pktBufType == RTPSession.PKTBUF_RING) {
+                return new RingPktBuffer(rtpSession, p, aPkt);
+            } else if(rtpSession.pktBufType == RTPSession.PKTBUF_ADAPTIVE) {
+                return new AdaptivePktBuffer(rtpSession, p, aPkt);
+            }
+        }
+        return new PktBuffer(rtpSession, p, aPkt);
+    }
+
     /**
      * Adds a packet, this happens in constant time if they arrive in order.
      * Optimized for the case where each pkt is a complete frame.
@@ -83,7 +121,7 @@ public class PktBuffer {
      * @param aPkt the packet to be added to the buffer.
      * @return integer, negative if operation failed (see code)
      */
-    protected synchronized int addPkt(RtpPkt aPkt) {
+    protected int addPkt(RtpPkt aPkt) {
         if(aPkt == null) {
             LOGGER.info("! PktBuffer.addPkt(aPkt) aPkt was null");
             return -5;
@@ -215,11 +253,16 @@ public class PktBuffer {
 
                 //Need to do some real work, find out where it belongs (linear search from the back).
                 PktBufNode tmpNode = newest;
-                while(tmpNode.timeStamp > newNode.timeStamp) {
+                while(tmpNode.timeStamp > newNode.timeStamp && tmpNode.nextFrameQueueNode != null) {
                     tmpNode = tmpNode.nextFrameQueueNode;
                 }
 
-                if( tmpNode.timeStamp == newNode.timeStamp
+                if(tmpNode.timeStamp > newNode.timeStamp) {
+                    // Older than anything in the buffer, but not too late
+                    newNode.prevFrameQueueNode = tmpNode;
+                    tmpNode.nextFrameQueueNode = newNode;
+                    oldest = newNode;
+                } else if( tmpNode.timeStamp == newNode.timeStamp
                         && rtpSession.frameReconstruction
                         && newNode.seqNum != tmpNode.seqNum) {
                     //Packet has same timestamp, presumably belongs to frame. Need to order within frame.
@@ -321,7 +364,7 @@ public class PktBuffer {
      * Checks the oldest frame, if there is one, sees whether it is complete.
      * @return Returns null if there are no complete frames available.
      */
-    protected synchronized DataFrame popOldestFrame() {
+    protected DataFrame popOldestFrame() {
         if(LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.finest("-> PktBuffer.popOldestFrame()");
             this.debugPrint();
@@ -346,8 +389,10 @@ public class PktBuffer {
 
             popFrameQueueCleanup(retNode, retNode.seqNum);
 
-            return new DataFrame(retNode, this.p,
+            DataFrame df = rtpSession.framePool.acquire();
+            df.fill(retNode, this.p,
                     rtpSession.appIntf.frameSize(retNode.pkt.getPayloadType()));
+            return df;
         } else {
             return null;
         }
@@ -381,12 +426,12 @@ public class PktBuffer {
                 LOGGER.finest("<- PktBuffer.popOldestFrame() returns frame");
             }
 
-            DataFrame df;
+            DataFrame df = rtpSession.framePool.acquire();
             if (rtpSession.isRegistered()) {
-                df = new DataFrame(retNode, this.p,
+                df.fill(retNode, this.p,
                     rtpSession.appIntf.frameSize(oldest.pkt.getPayloadType()));
             } else {
-                df = new DataFrame(retNode, this.p, 1);
+                df.fill(retNode, this.p, 1);
             }
             popFrameQueueCleanup(retNode, df.lastSeqNum);
 
@@ -436,6 +481,17 @@ public class PktBuffer {
         return length;
     }
 
+    /**
+     * The time at which the oldest frame will be ready, for buffers that
+     * hand frames over at a deadline. This one does not, it only changes when
+     * packets are added.
+     *
+     * @return the time, as in System.nanoTime(), or Long.MAX_VALUE if there is no such time
+     */
+    protected long nextPlayoutTime() {
+        return Long.MAX_VALUE;
+    }
+
     /**
      * Checks whether a packet is not too late, i.e. the next packet has already been returned.
      * @param timeStamp the RTP timestamp of the packet under consideration
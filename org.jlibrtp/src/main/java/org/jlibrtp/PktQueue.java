@@ -0,0 +1,121 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue of packets from one producer to one consumer.
+ *
+ * Every participant that sends has one. The RTPReceiverThread that owns the
+ * participant offers packets, and the thread delivering frames polls them and
+ * sorts them into the participant's PktBuffer, which no other thread touches.
+ * Neither side ever blocks or takes a lock.
+ *
+ * The indices only grow. Each side caches the other side's index, so that
+ * it reads the shared one only when the queue looks full or empty.
+ *
+ * @author agent
+ */
+public class PktQueue {
+    /** The default number of slots */
+    protected static final int DEFAULT_CAPACITY = 1024;
+
+    /** The packets, at index (sequence &amp; mask) */
+    private final RtpPkt[] slots;
+    /** slots.length - 1 */
+    private final int mask;
+    /** The number of packets polled, written by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    /** The number of packets offered, written by the producer */
+    private final AtomicLong tail = new AtomicLong();
+    /** The producer's copy of head */
+    private long headCache = 0;
+    /** The consumer's copy of tail */
+    private long tailCache = 0;
+
+    /**
+     * Creates a queue with the default capacity.
+     */
+    public PktQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a queue.
+     *
+     * @param capacity the number of packets it holds, rounded up to a power of two
+     */
+    public PktQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new RtpPkt[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a packet. Only called by the producer.
+     *
+     * The tail is written with a full barrier, so that a consumer that
+     * clears its wake-up flag before polling cannot miss the packet.
+     *
+     * @param pkt the packet
+     * @return false if the queue is full
+     */
+    public boolean offer(RtpPkt pkt) {
+        long t = tail.get();
+        if(t - headCache >= slots.length) {
+            headCache = head.get();
+            if(t - headCache >= slots.length) {
+                return false;
+            }
+        }
+        slots[(int) (t & mask)] = pkt;
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest packet. Only called by the consumer.
+     *
+     * @return the packet, null if the queue is empty
+     */
+    public RtpPkt poll() {
+        long h = head.get();
+        if(h >= tailCache) {
+            tailCache = tail.get();
+            if(h >= tailCache) {
+                return null;
+            }
+        }
+        int idx = (int) (h & mask);
+        RtpPkt pkt = slots[idx];
+        slots[idx] = null;
+        head.lazySet(h + 1);
+        return pkt;
+    }
+
+    /**
+     * The number of packets in the queue, which may be out of date by the time it returns.
+     *
+     * @return the number of packets
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
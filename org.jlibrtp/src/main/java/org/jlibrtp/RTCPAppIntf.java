@@ -115,4 +115,17 @@ public interface RTCPAppIntf {
 	 * @param data in the packet
 	 */
 	public void APPPktReceived(Participant part, int subtype, byte[] name, byte[] data);
+
+	/**
+	 * This function is called whenever the bandwidth estimator moves the target
+	 * bitrate by more than a few percent, see RTPSession.bandwidthEstimation().
+	 *
+	 * Encoders should adapt their bitrate to it, the streams sent are paced to it.
+	 * It is called without the session's locks held, so it may wait for a thread
+	 * that sends. Does nothing by default.
+	 *
+	 * @param bitsPerSecond the new target bitrate
+	 */
+	public default void targetBitrateChanged(long bitsPerSecond) {
+	}
 }
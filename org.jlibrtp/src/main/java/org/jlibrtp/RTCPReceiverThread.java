@@ -21,8 +21,10 @@ package org.jlibrtp;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,7 +35,7 @@ import java.util.logging.Logger;
  * @author Arne Kepp
  *
  */
-public class RTCPReceiverThread extends Thread {
+public class RTCPReceiverThread extends SessionThread {
     /** Logger instance. */
     private static final Logger LOGGER =
         Logger.getLogger(RTCPReceiverThread.class.getName());
@@ -49,13 +51,13 @@ public class RTCPReceiverThread extends Thread {
      * @param rtpSession parent RTP session
      */
     RTCPReceiverThread(RTCPSession rtcpSession, RTPSession rtpSession) {
+        super("RTCPReceiverThread", rtpSession);
         this.rtpSession = rtpSession;
         this.rtcpSession = rtcpSession;
 
         if(LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.finest("<-> RTCPReceiverThread created");
         }
-        setName("RTCPReceiverThread");
     }
 
     /**
@@ -72,26 +74,20 @@ public class RTCPReceiverThread extends Thread {
     private Participant findParticipant(long ssrc, DatagramPacket packet) {
         Participant p = rtpSession.partDb.getParticipant(ssrc);
         if(p == null) {
-            Enumeration<Participant> enu = rtpSession.partDb.getParticipants();
-            while(enu.hasMoreElements()) {
-                Participant tmp = (Participant) enu.nextElement();
-                if(tmp.ssrc < 0 &&
-                        (tmp.rtcpAddress.getAddress().equals(packet.getAddress())
-                                || tmp.rtpAddress.getAddress().equals(packet.getAddress()))) {
-
-                    // Best guess
-                    LOGGER.warning("RTCPReceiverThread: Got an unexpected packet from SSRC:"
-                            + ssrc  + " @" + packet.getAddress().toString() + ", WAS able to match it." );
-
-                    tmp.ssrc = ssrc;
-                    return tmp;
-                }
-            }
-            // Create an unknown sender
-            LOGGER.warning("RTCPReceiverThread: Got an unexpected packet from SSRC:"
-                    + ssrc  + " @" + packet.getAddress().toString() + ", was NOT able to match it." );
+            // Create an unknown sender, the database matches it to a receiver by address
             p = new Participant((InetSocketAddress) null, (InetSocketAddress) packet.getSocketAddress(), ssrc);
             rtpSession.partDb.addParticipant(2,p);
+
+            Participant known = rtpSession.partDb.getParticipant(ssrc);
+            if(known != null && known != p) {
+                // Best guess
+                LOGGER.warning("RTCPReceiverThread: Got an unexpected packet from SSRC:"
+                        + ssrc  + " @" + packet.getAddress().toString() + ", WAS able to match it." );
+                p = known;
+            } else {
+                LOGGER.warning("RTCPReceiverThread: Got an unexpected packet from SSRC:"
+                        + ssrc  + " @" + packet.getAddress().toString() + ", was NOT able to match it." );
+            }
         }
         return p;
     }
@@ -191,6 +187,8 @@ public class RTCPReceiverThread extends Thread {
                     Participant p = findParticipant(rrPkt.ssrc, packet);
                     p.lastRtcpPkt = curTime;
 
+                    reportBlocks(rrPkt.ssrc, rrPkt);
+
                     if(rtpSession.rtcpAppIntf != null) {
                         rtpSession.rtcpAppIntf.RRPktReceived(rrPkt.ssrc, rrPkt.reporteeSsrc,
                                 rrPkt.lossFraction, rrPkt.lostPktCount, rrPkt.extHighSeqRecv,
@@ -227,6 +225,9 @@ public class RTCPReceiverThread extends Thread {
 
                     }
 
+                    if(srPkt.rReports != null) {
+                        reportBlocks(srPkt.ssrc, srPkt.rReports);
+                    }
 
                     if(rtpSession.rtcpAppIntf != null) {
                         if(srPkt.rReports != null) {
@@ -270,6 +271,7 @@ public class RTCPReceiverThread extends Thread {
                         if(partArray[i] != null)
                             partArray[i].timestampBYE = time;
                     }
+                    rtpSession.pruneSources(time);
 
                     if (rtpSession.appIntf != null) {
                         rtpSession.appIntf.userEvent(1, partArray);
@@ -297,6 +299,24 @@ public class RTCPReceiverThread extends Thread {
         return 0;
     }
 
+    /**
+     * Hands the report blocks about the stream we send to the RTCP session,
+     * for bandwidth estimation.
+     *
+     * @param reporterSsrc the SSRC of the participant that sent the report
+     * @param rrPkt the report blocks
+     */
+    private void reportBlocks(long reporterSsrc, RtcpPktRR rrPkt) {
+        if(rrPkt.reporteeSsrc == null) {
+            return;
+        }
+        for(int i=0; i<rrPkt.reporteeSsrc.length; i++) {
+            if(rrPkt.reporteeSsrc[i] == rtpSession.ssrc) {
+                rtcpSession.receiverReport(reporterSsrc, rrPkt.lossFraction[i], rrPkt.interArvJitter[i]);
+            }
+        }
+    }
+
     /**
      * Returns a legible message when an error occurs
      *
@@ -393,13 +413,7 @@ public class RTCPReceiverThread extends Thread {
                 break;
             }
 
-            // Check whether this is one of our own
-            if( (rtpSession.mcSession && ! packet.getSocketAddress().equals(rtcpSession.rtcpMCSock) )
-                    || ! packet.getSocketAddress().equals(rtcpSession.rtcpSock) ) {
-                //System.out.println("Packet received from: " + packet.getSocketAddress().toString());
-                parsePacket(packet);
-                //rtpSession.partDb.debugPrint();
-            }
+            handlePacket(packet);
         }
 
         if(LOGGER.isLoggable(Level.FINEST)) {
@@ -407,4 +421,50 @@ public class RTCPReceiverThread extends Thread {
         }
     }
 
+    /**
+     * Parses a received datagram, unless it is one of our own.
+     *
+     * @param packet the datagram
+     */
+    protected void handlePacket(DatagramPacket packet) {
+        // Check whether this is one of our own
+        if( (rtpSession.mcSession && ! packet.getSocketAddress().equals(rtcpSession.rtcpMCSock) )
+                || ! packet.getSocketAddress().equals(rtcpSession.rtcpSock) ) {
+            //System.out.println("Packet received from: " + packet.getSocketAddress().toString());
+            parsePacket(packet);
+            //rtpSession.partDb.debugPrint();
+        }
+    }
+
+    /**
+     * Receives and parses a single datagram from a non-blocking channel.
+     *
+     * Sessions run by an RTPSessionEngine call this from a selector thread,
+     * without ever starting this thread.
+     *
+     * @param channel the RTCP channel
+     * @param buf a scratch buffer of at least 1500 octets, the contents are copied out
+     * @return true if a datagram was received, false if there was none or receiving failed
+     */
+    protected boolean receiveFromChannel(DatagramChannel channel, ByteBuffer buf) {
+        buf.clear();
+        SocketAddress from;
+        try {
+            from = channel.receive(buf);
+        } catch (IOException e) {
+            if(!rtpSession.endSession) {
+                LOGGER.log(Level.WARNING, "RTCPReceiverThread: receive failed", e);
+            }
+            return false;
+        }
+        if(from == null || rtpSession.endSession) {
+            return false;
+        }
+        buf.flip();
+        byte[] rawPkt = new byte[buf.remaining()];
+        buf.get(rawPkt);
+        handlePacket(new DatagramPacket(rawPkt, rawPkt.length, from));
+        return true;
+    }
+
 }
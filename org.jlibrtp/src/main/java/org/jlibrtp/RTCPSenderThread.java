@@ -20,6 +20,7 @@ package org.jlibrtp;
 
 import java.net.DatagramPacket;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.logging.Level;
@@ -34,7 +35,7 @@ import java.util.logging.Logger;
  * @author Arne Kepp
  *
  */
-public class RTCPSenderThread extends Thread {
+public class RTCPSenderThread extends SessionThread {
     /** Logger instance. */
     private static final Logger LOGGER =
         Logger.getLogger(RTCPSenderThread.class.getName());
@@ -53,12 +54,12 @@ public class RTCPSenderThread extends Thread {
      * @param rtpSession parent RTP session
      */
     protected RTCPSenderThread(RTCPSession rtcpSession, RTPSession rtpSession) {
+        super("RTCPSenderThread", rtpSession);
         this.rtpSession = rtpSession;
         this.rtcpSession = rtcpSession;
         if(LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.finest("<-> RTCPSenderThread created");
         }
-        setName("RTCPSenderThread");
     }
 
     /**
@@ -72,6 +73,7 @@ public class RTCPSenderThread extends Thread {
         //Need a SR for validation
         RtcpPktSR srPkt = new RtcpPktSR(this.rtpSession.ssrc,
                 this.rtpSession.sentPktCount, this.rtpSession.sentOctetCount, null);
+        srPkt.rtpTs = this.rtpSession.mediaClock.reportTimeStamp(this.rtpSession.payloadType);
         compPkt.addPacket(srPkt);
 
         byte[] reasonBytes;
@@ -171,7 +173,12 @@ public class RTCPSenderThread extends Thread {
             LOGGER.finest("<-> RTCPSenderThread.SendCompRtcpPkt() unicast to " + receiver + str);
         }
         try {
-            rtcpSession.rtcpSock.send(packet);
+            if(rtcpSession.rtcpChannel != null && !rtcpSession.rtcpChannel.isBlocking()) {
+                // Sockets of non-blocking channels cannot send
+                rtcpSession.rtcpChannel.send(ByteBuffer.wrap(pktBytes), receiver);
+            } else {
+                rtcpSession.rtcpSock.send(packet);
+            }
             //Debug
             if(this.rtpSession.debugAppIntf != null) {
                 this.rtpSession.debugAppIntf.packetSent(2, (InetSocketAddress) packet.getSocketAddress(),
@@ -275,6 +282,7 @@ public class RTCPSenderThread extends Thread {
         if(incSR) {
             RtcpPktSR srPkt = new RtcpPktSR(this.rtpSession.ssrc,
                     this.rtpSession.sentPktCount, this.rtpSession.sentOctetCount, null);
+            srPkt.rtpTs = this.rtpSession.mediaClock.reportTimeStamp(this.rtpSession.payloadType);
             compPkt.addPacket(srPkt);
 
 
@@ -331,6 +339,78 @@ public class RTCPSenderThread extends Thread {
         return compPkt;
     }
 
+    /**
+     * Sends the regularly scheduled RTCP packet, once the delay has passed.
+     *
+     * Sessions run by an RTPSessionEngine call this from the engine's
+     * scheduler, without ever starting this thread.
+     */
+    protected void sendRegular() {
+        this.rtcpSession.fbAllowEarly = true;
+
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("<-> RTCPSenderThread waking up");
+        }
+
+        // Regenerate nextDelay, before anything happens.
+        rtcpSession.calculateDelay();
+
+        // We'll wait here until a conflict (if any) has been resolved,
+        // so that the bye packets for our current SSRC can be sent.
+        if(rtpSession.conflict) {
+            if(! this.byesSent) {
+                sendByes();
+                this.byesSent = true;
+            }
+            return;
+        }
+        this.byesSent = false;
+
+        //Grab the next person
+        Participant part = null;
+
+        //Multicast
+        if(this.rtpSession.mcSession) {
+            Enumeration<Participant> enu = rtpSession.partDb.getParticipants();
+
+            if( enu.hasMoreElements() ) {
+                part = enu.nextElement();
+            } else {
+                return;
+            }
+
+            //Unicast
+        } else {
+            Iterator<Participant> iter = rtpSession.partDb.getUnicastReceivers();
+
+            while (iter.hasNext() &&
+                   (part == null || part.rtcpAddress == null)) {
+                part = iter.next();//Some times there's a ConcurrentModificationException here
+            }
+
+            if(part == null || part.rtcpAddress == null)
+                return;
+        }
+
+        CompRtcpPkt compPkt = preparePacket(part, true);
+
+        /*********** Send the packet ***********/
+        // Keep track of sent packet length for average;
+        int datagramLength;
+        if(rtpSession.mcSession) {
+            datagramLength = this.mcSendCompRtcpPkt(compPkt);
+        } else {
+            //part.debugPrint();
+            datagramLength = this.sendCompRtcpPkt(compPkt, part.rtcpAddress);
+        }
+
+        /*********** Administrative tasks ***********/
+        //Update average packet size
+        if(datagramLength > 0) {
+            rtcpSession.updateAvgPacket(datagramLength);
+        }
+    }
+
     /**
      * Start the RTCP sender thread.
      *
@@ -350,16 +430,6 @@ public class RTCPSenderThread extends Thread {
         try { Thread.sleep(10); }
         catch (Exception e) { LOGGER.warning("RTCPSenderThread didn't get any initial rest."); }
 
-        // Set up an iterator for the member list
-        Enumeration<Participant> enu = null;
-        Iterator<Participant> iter = null;
-
-        // TODO Change to rtcpReceivers
-        /*if(rtpSession.mcSession) {
-            enu = rtpSession.partDb.getParticipants();
-        } else {
-            iter = rtpSession.partDb.getUnicastReceivers();
-        }*/
         while(! rtpSession.endSession) {
             if(LOGGER.isLoggable(Level.FINEST)) {
                 LOGGER.finest("<-> RTCPSenderThread sleeping for " +rtcpSession.nextDelay+" ms");
@@ -380,82 +450,8 @@ public class RTCPSenderThread extends Thread {
             }
 
             /** Came here the regular way */
-            this.rtcpSession.fbAllowEarly = true;
-
-
-            if(LOGGER.isLoggable(Level.FINEST)) {
-                LOGGER.finest("<-> RTCPSenderThread waking up");
-            }
-
-            // Regenerate nextDelay, before anything happens.
-            rtcpSession.calculateDelay();
-
-            // We'll wait here until a conflict (if any) has been resolved,
-            // so that the bye packets for our current SSRC can be sent.
-            if(rtpSession.conflict) {
-                if(! this.byesSent) {
-                    sendByes();
-                    this.byesSent = true;
-                }
-                continue;
-            }
-            this.byesSent = false;
-
-            //Grab the next person
-            Participant part = null;
-
-            //copied from above to reduce the ConcurrentModificationException freq.
-            if(rtpSession.mcSession) {
-                enu = rtpSession.partDb.getParticipants();
-            } else {
-                iter = rtpSession.partDb.getUnicastReceivers();
-            }
-
-            //Multicast
-            if(this.rtpSession.mcSession) {
-                if(! enu.hasMoreElements())
-                    enu = rtpSession.partDb.getParticipants();
-
-                if( enu.hasMoreElements() ) {
-                    part = enu.nextElement();
-                } else {
-                    continue;
-                }
-
-                //Unicast
-            } else {
-                if(! iter.hasNext()) {
-                    iter = rtpSession.partDb.getUnicastReceivers();
-                }
-
-                if(iter.hasNext() ) {
-                    while (iter.hasNext() &&
-                           (part == null || part.rtcpAddress == null)) {
-                        part = iter.next();//Some times there's a ConcurrentModificationException here
-                    }
-                }
-
-                if(part == null || part.rtcpAddress == null)
-                    continue;
-            }
-
-            CompRtcpPkt compPkt = preparePacket(part, true);
-
-            /*********** Send the packet ***********/
-            // Keep track of sent packet length for average;
-            int datagramLength;
-            if(rtpSession.mcSession) {
-                datagramLength = this.mcSendCompRtcpPkt(compPkt);
-            } else {
-                //part.debugPrint();
-                datagramLength = this.sendCompRtcpPkt(compPkt, part.rtcpAddress);
-            }
-
-            /*********** Administrative tasks ***********/
-            //Update average packet size
-            if(datagramLength > 0) {
-                rtcpSession.updateAvgPacket(datagramLength);
-            }
+            sendRegular();
+            rtpSession.pruneSources(System.currentTimeMillis());
         }
 
         // Be polite, say Bye to everyone
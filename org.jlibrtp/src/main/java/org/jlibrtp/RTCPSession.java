@@ -21,11 +21,14 @@ package org.jlibrtp;
 import java.util.Enumeration;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.nio.channels.DatagramChannel;
 import java.util.LinkedList;
 import java.util.Hashtable;
 import java.util.ListIterator;
 import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
@@ -46,6 +49,8 @@ public class RTCPSession {
 
     /** Unicast socket */
     protected DatagramSocket rtcpSock = null;
+    /** Unicast channel, if the session was created with one. rtcpSock is its socket. */
+    protected DatagramChannel rtcpChannel = null;
     /** Multicast socket */
     protected MulticastSocket rtcpMCSock = null;
     /** Multicast group */
@@ -64,6 +69,13 @@ public class RTCPSession {
     protected int avgPktSize = 200; //
     /** Pessimistic case estimate of the current number of senders */
     protected int senderCount = 1;
+    /** Counts the participants that sent RTP since prevTime into senderCount */
+    private final SsrcTable.Visitor senderCounter = new SsrcTable.Visitor() {
+        public void visit(Participant part) {
+            if(part.lastRtpPkt > prevTime)
+                senderCount++;
+        }
+    };
     /** Whether next RTCP packet can be sent early */
     protected boolean fbAllowEarly = false;
     /** Feedback queue , index is SSRC of target */
@@ -75,6 +87,17 @@ public class RTCPSession {
     /** Is there a feedback packet waiting? SSRC of destination */
     protected long fbWaiting = -1;
 
+    /** The target bitrate must move by more than 1/TARGET_STEP before the application is told */
+    private static final int TARGET_STEP = 20;
+    /** Estimates the bitrate we can send at, null if the application sets it */
+    protected volatile BandwidthEstimator estimator = null;
+    /** The session bandwidth the application set, restored when the estimator is removed */
+    protected int appBandwidth = -1;
+    /** Paces the streams sent to the target bitrate, null without an estimator */
+    protected TokenBucket pacingBucket = null;
+    /** The target bitrate the application was last told about, -1 if none yet */
+    protected volatile long targetBitrate = -1;
+
     /**
      * Constructor for unicast sessions
      *
@@ -100,7 +123,8 @@ public class RTCPSession {
     }
 
     /**
-     * Starts the session, calculates delays and fires up the threads.
+     * Starts the session, calculates delays and fires up the threads,
+     * or hands the session to its RTPSessionEngine.
      *
      */
     protected void start() {
@@ -108,8 +132,15 @@ public class RTCPSession {
         this.calculateDelay();
         recvThrd = new RTCPReceiverThread(this, this.rtpSession);
         senderThrd = new RTCPSenderThread(this, this.rtpSession);
-        recvThrd.start();
-        senderThrd.start();
+        if(rtpSession.engine != null) {
+            rtpSession.engine.startRtcp(this);
+        } else {
+            if(!rtpSession.rtcpMux) {
+                // Otherwise the RTP receiver hands RTCP packets to recvThrd
+                recvThrd.start(rtpSession.threadFactory);
+            }
+            senderThrd.start(rtpSession.threadFactory);
+        }
     }
 
     /**
@@ -145,12 +176,7 @@ public class RTCPSession {
             double randDouble =  ((double) 1000 + rand)/1000.0;
 
 
-            Enumeration<Participant> enu = rtpSession.partDb.getParticipants();
-            while(enu.hasMoreElements()) {
-                Participant part = enu.nextElement();
-                if(part.lastRtpPkt > this.prevTime)
-                    senderCount++;
-            }
+            rtpSession.partDb.ssrcTable.visit(senderCounter);
 
             double bw;
             if(rtpSession.rtcpBandwidth > -1) {
@@ -299,6 +325,7 @@ public class RTCPSession {
      * @return 0 if the packet was added, 1 if it was dropped
      */
     synchronized protected int addToFbQueue(long targetSsrc, RtcpPkt aPkt) {
+        aPkt.time = System.currentTimeMillis();
         if(this.fbQueue == null)
             this.fbQueue = new Hashtable<Long, LinkedList<RtcpPkt>>();
 
@@ -374,6 +401,8 @@ public class RTCPSession {
                     if(! aPkt.received) {
                         ret[ret.length - count] = aPkt;
                         count--;
+                        // Sent now, so not again with the next report
+                        li.remove();
                     }
                 }
                 return ret;
@@ -454,12 +483,179 @@ public class RTCPSession {
      */
     protected void wakeSenderThread(long ssrc) {
         this.fbWaiting = ssrc;
+        if(rtpSession.engine != null) {
+            rtpSession.engine.wakeRtcp(this);
+            return;
+        }
         this.senderThrd.interrupt();
 
         // Give it a chance to catch up
         try { Thread.sleep(0,1); } catch (Exception e){ };
     }
 
+    /**
+     * Sends a transport feedback message to a participant right away, behind an
+     * empty receiver report. These messages go out every few hundred packets or
+     * milliseconds, far more often than the RTCP timing rules would allow, so
+     * they bypass the feedback queue.
+     *
+     * Called by the RTP receiver thread, see TransportFeedback.
+     *
+     * @param part the participant whose packets are reported
+     * @param fci the feedback control information
+     * @return the length of the datagram sent, -1 if it could not be sent
+     */
+    protected int sendTransportFeedback(Participant part, byte[] fci) {
+        RTCPSenderThread sender = this.senderThrd;
+        if(sender == null) {
+            return -1;
+        }
+        CompRtcpPkt compPkt = new CompRtcpPkt();
+        compPkt.addPacket(new RtcpPktRR(null, rtpSession.ssrc));
+        compPkt.addPacket(new RtcpPktRTPFB(rtpSession.ssrc, part.ssrc, fci));
+
+        if(rtpSession.mcSession) {
+            return sender.mcSendCompRtcpPkt(compPkt);
+        }
+        InetSocketAddress receiver = part.rtcpAddress != null ? part.rtcpAddress : part.rtcpReceivedFromAddress;
+        if(receiver == null) {
+            return -1;
+        }
+        return sender.sendCompRtcpPkt(compPkt, receiver);
+    }
+
+    /**
+     * Takes the delay signal of a transport feedback message, parsed into the
+     * send history's arrays. Called with the RTPSession's send lock held,
+     * which must be released before calling targetChanged().
+     *
+     * @param history the transport history holding the signal
+     * @return true if the target bitrate changed
+     */
+    protected boolean transportFeedback(TransportHistory history) {
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            long delay = 0;
+            for(int i=0; i<history.count; i++) {
+                delay += history.arrivalDeltas[i] - history.sendDeltas[i];
+            }
+            LOGGER.finest("<-> RTCPSession.transportFeedback() " + history.count + " packets, "
+                    + history.lost + " lost, delay changed by " + delay / 1000 + " us");
+        }
+        BandwidthEstimator est = this.estimator;
+        if(est == null) {
+            return false;
+        }
+        synchronized(est) {
+            est.transportFeedback(history.sendDeltas, history.arrivalDeltas, history.sizes,
+                    history.count, history.lost, System.nanoTime());
+            return updateTarget(est);
+        }
+    }
+
+    /**
+     * Takes a report block about the stream we send, from a sender or receiver report,
+     * and hands it to the bandwidth estimator, if there is one.
+     *
+     * @param reporterSsrc the SSRC of the participant that sent the report
+     * @param lossFraction the fraction of packets lost, out of 256
+     * @param interArrivalJitter the interarrival jitter, in RTP timestamp units
+     */
+    protected void receiverReport(long reporterSsrc, int lossFraction, long interArrivalJitter) {
+        BandwidthEstimator est = this.estimator;
+        if(est == null) {
+            return;
+        }
+        boolean changed;
+        synchronized(est) {
+            est.receiverReport(reporterSsrc, lossFraction, interArrivalJitter, System.nanoTime());
+            changed = updateTarget(est);
+        }
+        if(changed) {
+            targetChanged();
+        }
+    }
+
+    /**
+     * Sets the bandwidth estimator, and the pacing bucket that follows its target.
+     *
+     * @param estimator the estimator, null to let the application set the bandwidth
+     */
+    protected void bandwidthEstimator(BandwidthEstimator estimator) {
+        if(estimator == null) {
+            BandwidthEstimator old = this.estimator;
+            if(old == null) {
+                return;
+            }
+            synchronized(old) {
+                this.estimator = null;
+                this.pacingBucket = null;
+                this.targetBitrate = -1;
+                rtpSession.bandwidth = this.appBandwidth;
+            }
+            return;
+        }
+        synchronized(estimator) {
+            if(this.estimator == null) {
+                this.appBandwidth = rtpSession.bandwidth;
+            }
+            long rate = estimator.targetBitrate();
+            // Bursts of a quarter of a second, at least one full packet
+            this.pacingBucket = new TokenBucket(rate,
+                    (int) Math.max(RtpSender.SEND_BUFFER_SIZE, rate / 32));
+            this.targetBitrate = -1;
+            this.estimator = estimator;
+            updateTarget(estimator);
+        }
+        targetChanged();
+    }
+
+    /**
+     * Applies the target of the estimator to the pacing bucket and the session
+     * bandwidth, and records it when it has moved far enough to tell the application.
+     * Called with the estimator locked, the caller calls targetChanged() once
+     * it has released its locks.
+     *
+     * @param est the estimator
+     * @return true if the recorded target changed
+     */
+    private boolean updateTarget(BandwidthEstimator est) {
+        if(this.estimator != est) {
+            // Removed or replaced while this report was on its way
+            return false;
+        }
+        long rate = est.targetBitrate();
+        TokenBucket bucket = this.pacingBucket;
+        if(bucket != null) {
+            bucket.setRate(rate);
+        }
+        // RTCP gets its share of the estimate, rather than of a guess
+        rtpSession.bandwidth = (int) Math.max(1, Math.min(Integer.MAX_VALUE, rate / 8));
+
+        long last = this.targetBitrate;
+        if(last > 0 && Math.abs(rate - last) * TARGET_STEP <= last) {
+            return false;
+        }
+        this.targetBitrate = rate;
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("<-> RTCPSession.updateTarget() target bitrate " + rate + " bps");
+        }
+        return true;
+    }
+
+    /**
+     * Tells the application about the recorded target bitrate.
+     *
+     * Must not be called with the estimator or the send lock held, the application
+     * may wait for a thread that is sending. It reads the latest target rather than
+     * taking one, so that when two threads race the last call reports the current value.
+     */
+    protected void targetChanged() {
+        long rate = this.targetBitrate;
+        if(rate > 0 && rtpSession.rtcpAppIntf != null) {
+            rtpSession.rtcpAppIntf.targetBitrateChanged(rate);
+        }
+    }
+
     /**
      * Compares two packets to check whether they are equivalent feedback messages,
      * to avoid sending the same feedback to a host twice.
@@ -486,11 +682,11 @@ public class RTCPSession {
             if(pktone.ssrcMediaSource != pkttwo.ssrcMediaSource)
                 return false;
 
-            if(Arrays.equals(pktone.BLP,pkttwo.BLP)
+            if(Arrays.equals(pktone.PID,pkttwo.PID)
                     && Arrays.equals(pktone.BLP,pkttwo.BLP))
                 return true;
 
-            return true;
+            return false;
         } else if(one.packetType == 206) {
             RtcpPktPSFB pktone = (RtcpPktPSFB) one;
             RtcpPktPSFB pkttwo = (RtcpPktPSFB) two;
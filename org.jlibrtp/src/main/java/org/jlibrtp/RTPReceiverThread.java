@@ -21,6 +21,13 @@ package org.jlibrtp;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,30 +35,71 @@ import java.util.logging.Logger;
  * The RTP receiver thread waits on the designated UDP socket for new packets.
  *
  * Once one arrives, it is parsed and tested. We also check the ip-address of the sender.
- * If accepted, the packet is added onto the packet buffer of the participant.
+ * If accepted, the packet is put in the inbox of the participant, a PktQueue, and the
+ * participant is queued for the thread that sorts it into the packet buffer.
  *
  * A separate thread moves the packet from the packet buffer to the application.
  *
+ * Sessions created with a DatagramChannel receive into pooled direct buffers
+ * instead, see RTPSession(DatagramChannel, DatagramChannel).
+ *
+ * Sessions created with several channels bound with SO_REUSEPORT have a
+ * receiver per channel, see RTPSession(DatagramChannel[], DatagramChannel).
+ * Each participant belongs to the receiver that got its first packet, which
+ * is where the kernel keeps sending its flow. Packets that turn up at another
+ * receiver are handed over to the owner, so that only one thread ever adds
+ * to a packet buffer or updates the reception statistics of a participant.
+ *
  * @author Arne Kepp
  */
-public class RTPReceiverThread extends Thread {
+public class RTPReceiverThread extends SessionThread {
     /** Logger instance. */
     private static final Logger LOGGER =
         Logger.getLogger(RTPReceiverThread.class.getName());
 
+    /** The most datagrams read at a time, before looking at handed over packets */
+    private static final int RECEIVE_BATCH = 64;
+    /** Claims participants for a receiver */
+    private static final AtomicIntegerFieldUpdater<Participant> READER =
+        AtomicIntegerFieldUpdater.newUpdater(Participant.class, "reader");
+    /** Queues participants for delivery once per drained inbox */
+    private static final AtomicIntegerFieldUpdater<Participant> INBOX_SIGNALLED =
+        AtomicIntegerFieldUpdater.newUpdater(Participant.class, "inboxSignalled");
+
     /** Parent RTP Session */
     private RTPSession rtpSession = null;
+    /** The channel this receives on, null for rtpSession.rtpChannel */
+    private final DatagramChannel channel;
+    /** Index of this receiver in rtpSession.rtpReaders */
+    private final int reader;
+    /** Packets handed over by other receivers, and other work for the receiving thread */
+    ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    /** Woken up when there is something in tasks, null until the thread is running */
+    volatile Selector selector = null;
 
     /**
      * Constructs a new object.
      * @param session the session
      */
     public RTPReceiverThread(RTPSession session) {
+        this(session, null, 0);
+    }
+
+    /**
+     * Constructs one of several receivers of a session.
+     *
+     * @param session the session
+     * @param channel the channel to receive on, null for the session's
+     * @param reader index of this receiver in session.rtpReaders
+     */
+    protected RTPReceiverThread(RTPSession session, DatagramChannel channel, int reader) {
+        super("RTPReceiverThread", session);
         rtpSession = session;
+        this.channel = channel;
+        this.reader = reader;
         if(LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.finest("<-> RTPReceiverThread created");
         }
-        setName("RTPReceiverThread");
     }
 
     /**
@@ -66,7 +114,17 @@ public class RTPReceiverThread extends Thread {
             }
         }
 
+        if(rtpSession.rtpReaders != null) {
+            runSelector();
+            return;
+        }
+
         while(!rtpSession.endSession) {
+            if(rtpSession.rtpChannel != null) {
+                receiveFromChannel();
+                continue;
+            }
+
             if(LOGGER.isLoggable(Level.FINEST)) {
                 if(rtpSession.mcSession) {
                     LOGGER.finest("-> RTPReceiverThread.run() waiting for MC packet on " + rtpSession.rtpMCSock.getLocalPort() );
@@ -103,80 +161,581 @@ public class RTPReceiverThread extends Thread {
                 }
             }
 
+            if(rtpSession.rtcpMux && packet.getLength() > 1 && isRtcp(rawPkt[1])) {
+                handleRtcp(packet);
+                continue;
+            }
+
             // Parse the received RTP (?) packet
             RtpPkt pkt = new RtpPkt(rawPkt, packet.getLength());
-            if(pkt.getVersion() != 2) {
-                // Some old phones, like the SNOM 190, are transmitting one
-                // Version=0 RTP packet before sending Version=2 RTP packets.
-                System.out.println("Received invalid RTP packet. Ignoring");
-                continue;
+            processPacket(pkt, (InetSocketAddress) packet.getSocketAddress(), packet.getLength(), false);
+        }
+    }
+
+    /**
+     * Receives with a selector of its own, for sessions with several receivers,
+     * so that the thread can be woken up when packets are handed over.
+     */
+    private void runSelector() {
+        DatagramChannel ch = channel();
+        Selector sel;
+        try {
+            sel = Selector.open();
+            ch.configureBlocking(false);
+            ch.register(sel, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "RTPReceiverThread: can't select on the channel", e);
+            return;
+        }
+        selector = sel;
+
+        while(!rtpSession.endSession) {
+            try {
+                sel.select();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "RTPReceiverThread: select failed", e);
+                break;
             }
-            long pktSsrc = pkt.getSsrc();
+            sel.selectedKeys().clear();
+            runTasks();
+            for(int i=0; i<RECEIVE_BATCH && !rtpSession.endSession && receiveFromChannel(); i++);
+        }
+
+        try {
+            sel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "RTPReceiverThread: closing the selector failed", e);
+        }
+    }
 
-            // Check for loops and SSRC collisions
-            if( rtpSession.ssrc == pktSsrc )
+    /**
+     * Runs what other threads queued for this receiver.
+     */
+    protected void runTasks() {
+        Runnable task;
+        while((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Wakes up the thread, if it is waiting in a selector.
+     */
+    protected void wakeup() {
+        Selector sel = selector;
+        if(sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    /**
+     * The channel this receives on.
+     *
+     * @return the channel, null if the session uses sockets
+     */
+    private DatagramChannel channel() {
+        return channel != null ? channel : rtpSession.rtpChannel;
+    }
+
+    /**
+     * Receives a single packet for sessions created with a DatagramChannel.
+     *
+     * The datagram is received into a direct buffer from the session's
+     * pool. The buffer travels with the packet and is returned to the pool
+     * when the packet is dropped, or when the application releases the
+     * DataFrame containing it.
+     *
+     * Sessions run by an RTPSessionEngine call this from a selector thread,
+     * without ever starting this thread.
+     *
+     * @return true if a datagram was received, false if there was none or receiving failed
+     */
+    protected boolean receiveFromChannel() {
+        BufferPool pool = rtpSession.rtpBufferPool;
+        ByteBuffer buf = pool.acquire();
+        InetSocketAddress from;
+        try {
+            from = (InetSocketAddress) channel().receive(buf);
+        } catch (IOException e) {
+            pool.release(buf);
+            if(!rtpSession.endSession) {
+                LOGGER.log(Level.WARNING, "RTPReceiverThread: receive failed", e);
+            }
+            return false;
+        }
+        if(from == null) {
+            // Nothing there, the channel is not in blocking mode
+            pool.release(buf);
+            return false;
+        }
+        buf.flip();
+        int length = buf.remaining();
+
+        if(rtpSession.rtcpMux && length > 1 && isRtcp(buf.get(1))) {
+            byte[] rawPkt = new byte[length];
+            buf.get(rawPkt);
+            pool.release(buf);
+            handleRtcp(new DatagramPacket(rawPkt, length, from));
+            return true;
+        }
+
+        RtpPkt pkt = new RtpPkt(buf, pool);
+        processPacket(pkt, from, length, false);
+        return true;
+    }
+
+    /**
+     * Whether this receiver handles the packets of a participant,
+     * claiming it if no receiver does yet.
+     *
+     * @param part the participant
+     * @return true if this receiver owns the participant
+     */
+    private boolean owns(Participant part) {
+        int owner = part.reader;
+        if(owner < 0 && READER.compareAndSet(part, -1, reader)) {
+            return true;
+        }
+        return part.reader == reader;
+    }
+
+    /**
+     * Queues a packet that another receiver got for a participant of this one.
+     *
+     * @param pkt the packet
+     * @param from the address the datagram came from
+     * @param length the size of the datagram, in octets
+     */
+    protected void handOver(RtpPkt pkt, InetSocketAddress from, int length) {
+        rtpSession.handedOverPktCount.incrementAndGet();
+        tasks.add(new HandOver(pkt, from, length));
+        wakeup();
+    }
+
+    /**
+     * A packet received by another receiver, processed once this receiver gets to it.
+     */
+    private final class HandOver implements Runnable {
+        /** The packet */
+        private final RtpPkt pkt;
+        /** Where it came from */
+        private final InetSocketAddress from;
+        /** The size of the datagram */
+        private final int length;
+
+        /**
+         * Creates a hand-over.
+         *
+         * @param pkt the packet
+         * @param from the address the datagram came from
+         * @param length the size of the datagram, in octets
+         */
+        HandOver(RtpPkt pkt, InetSocketAddress from, int length) {
+            this.pkt = pkt;
+            this.from = from;
+            this.length = length;
+        }
+
+        public void run() {
+            if(rtpSession.endSession) {
+                pkt.release();
+            } else {
+                processPacket(pkt, from, length, false);
+            }
+        }
+    }
+
+    /**
+     * Whether a datagram on a multiplexed socket is RTCP rather than RTP (RFC 5761, 4).
+     * RTCP packet types 192 to 223 would be RTP payload types 64 to 95 with the
+     * marker bit set, which are not used for RTP.
+     *
+     * @param secondOctet the second octet of the datagram
+     * @return true if it is RTCP
+     */
+    private static boolean isRtcp(byte secondOctet) {
+        int pt = secondOctet & 0xFF;
+        return pt >= 192 && pt <= 223;
+    }
+
+    /**
+     * Passes an RTCP datagram received on a multiplexed socket to the RTCP receiver.
+     *
+     * @param packet the datagram
+     */
+    private void handleRtcp(DatagramPacket packet) {
+        RTCPReceiverThread rtcpRecv = rtpSession.rtcpSession.recvThrd;
+        if(rtcpRecv != null) {
+            rtcpRecv.handlePacket(packet);
+        }
+    }
+
+    /**
+     * Checks a parsed packet, updates the statistics of the participant
+     * that sent it and adds it to the participant's packet buffer.
+     *
+     * Packets that are not accepted are released.
+     *
+     * @param pkt the received packet
+     * @param from the address the datagram came from
+     * @param length the size of the datagram, in octets
+     * @param recovered whether the packet was recovered rather than received
+     */
+    private void processPacket(RtpPkt pkt, InetSocketAddress from, int length, boolean recovered) {
+        if(pkt.getVersion() != 2) {
+            // Some old phones, like the SNOM 190, are transmitting one
+            // Version=0 RTP packet before sending Version=2 RTP packets.
+            System.out.println("Received invalid RTP packet. Ignoring");
+            pkt.release();
+            return;
+        }
+        // Retransmissions in an RTX stream become the packets they carry
+        if(rtpSession.rtxPayloadType >= 0 && pkt.getPayloadType() == rtpSession.rtxPayloadType
+                && unwrapRtx(pkt) < 0) {
+            if(LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("RTPReceiverThread: RTX packet from unknown stream " + pkt.getSsrc());
+            }
+            pkt.release();
+            return;
+        }
+        long pktSsrc = pkt.getSsrc();
+
+        // Check for loops and SSRC collisions
+        if( rtpSession.ssrc == pktSsrc )
+            rtpSession.resolveSsrcConflict();
+
+        int csrcCount = pkt.getCsrcCount();
+        for(int i=0; i< csrcCount; i++) {
+            if(pkt.getCsrc(i) == rtpSession.ssrc) {
                 rtpSession.resolveSsrcConflict();
+            }
+        }
 
-            long[] csrcArray = pkt.getCsrcArray();
-            if( csrcArray != null) {
-                for(int i=0; i< csrcArray.length; i++) {
-                    if(csrcArray[i] == rtpSession.ssrc) {
-                        rtpSession.resolveSsrcConflict();
-                    }
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("-> RTPReceiverThread.run() rcvd packet, seqNum " + rtpSession.seqNum + ", ssrc " + pktSsrc);
+            String str = new String(pkt.getPayload());
+            LOGGER.finest("-> RTPReceiverThread.run() payload is " + str );
+        }
+
+        // FEC packets come in a stream of their own, and belong to the participant they protect
+        boolean isFec = rtpSession.fecPayloadType >= 0 && pkt.getPayloadType() == rtpSession.fecPayloadType;
+
+        //Find the participant in the database based on SSRC
+        Participant part = isFec ? fecSource(pktSsrc, from) : rtpSession.partDb.getParticipant(pktSsrc);
+
+        if(part == null && isFec) {
+            if(LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("RTPReceiverThread: FEC packet from unknown stream " + pktSsrc);
+            }
+            pkt.release();
+            return;
+        }
+
+        if(part != null && rtpSession.rtpReaders != null && !owns(part)) {
+            rtpSession.rtpReaders[part.reader].handOver(pkt, from, length);
+            return;
+        }
+
+        if(part == null) {
+            InetSocketAddress nullSocket = null;
+            part = new Participant(from, nullSocket, pkt.getSsrc());
+            part.unexpected = true;
+            rtpSession.partDb.addParticipant(1, part);
+            // Note: when adding participant, the result may be an updated pre-existing participant that lacked
+            // a ssrc. Thus, we need to find the participant that is really stored in the partDb after adding.
+            // Otherwise the packet will be added to a participant not connected to a rtpSession.
+            part = rtpSession.partDb.getParticipant(pktSsrc);
+            if(rtpSession.rtpReaders != null && !owns(part)) {
+                rtpSession.rtpReaders[part.reader].handOver(pkt, from, length);
+                return;
+            }
+        }
+
+        if(rtpSession.transportExtensionId >= 0 && !recovered) {
+            recordArrival(part, pkt);
+        }
+
+        // FEC packets recover lost packets, they are not delivered themselves
+        FecDecoder fec = null;
+        if(rtpSession.fecPayloadType >= 0) {
+            fec = part.fecDecoder;
+            if(fec == null) {
+                fec = new FecDecoder(part.ssrc);
+                part.fecDecoder = fec;
+            }
+            if(isFec) {
+                rtpSession.fecReceivedPktCount.incrementAndGet();
+                fec.fec(pkt);
+                pkt.release();
+                recover(part, fec, from);
+                return;
+            }
+            fec.media(pkt);
+        }
+
+        // Statistics for receiver report. This has to happen before the packet is handed
+        // over, from there on it may be released at any time.
+        part.updateRRStats(length, pkt, rtpSession.mediaClock.clockRate(pkt.getPayloadType()));
+        // Upate liveness
+        part.lastRtpPkt = System.currentTimeMillis();
+
+        // RED packets (RFC 2198) become their primary block, preceded by the redundant
+        // blocks that stand in for lost packets, which are then not asked for
+        boolean added = false;
+        boolean deliver = true;
+        int redPayloadType = rtpSession.redPayloadType;
+        if(redPayloadType >= 0) {
+            RedDecoder red = part.redDecoder;
+            if(red == null) {
+                red = new RedDecoder();
+                part.redDecoder = red;
+            }
+            deliver = red.decode(pkt, redPayloadType) == 0;
+            RtpPkt block;
+            while((block = red.poll()) != null) {
+                rtpSession.redRecoveredPktCount.incrementAndGet();
+                if(rtpSession.nackGeneration) {
+                    requestLost(part, block.getSeqNumber());
                 }
+                added |= enqueue(part, block, from);
             }
+        }
+        if(deliver) {
+            if(rtpSession.nackGeneration) {
+                requestLost(part, pkt.getSeqNumber());
+            }
+            added |= enqueue(part, pkt, from);
+        } else {
+            pkt.release();
+        }
 
+        // Only this participant's buffer changed, so only this participant needs a look.
+        // Once it is queued, more packets need no signal until the inbox has been drained.
+        if(added && (!part.unexpected || rtpSession.naiveReception)
+                && part.inboxSignalled == 0 && INBOX_SIGNALLED.compareAndSet(part, 0, 1)) {
             if(LOGGER.isLoggable(Level.FINEST)) {
-                LOGGER.finest("-> RTPReceiverThread.run() rcvd packet, seqNum " + rtpSession.seqNum + ", ssrc " + pktSsrc);
-                String str = new String(pkt.getPayload());
-                LOGGER.finest("-> RTPReceiverThread.run() payload is " + str );
+                LOGGER.finest("<-> RTPReceiverThread signalling pktBufDataReady");
+            }
+            rtpSession.frameReady(part);
+        }
+
+        if(fec != null) {
+            recover(part, fec, from);
+        }
+    }
+
+    /**
+     * Puts a packet in the participant's inbox, from which the thread delivering
+     * frames sorts it into the packet buffer.
+     *
+     * @param part the participant
+     * @param pkt the packet, released if it is not queued
+     * @param from the address the datagram came from
+     * @return true if the packet was queued
+     */
+    private boolean enqueue(Participant part, RtpPkt pkt, InetSocketAddress from) {
+        // Do checks on whether the datagram came from the expected source for that SSRC.
+        if(part.rtpAddress != null && !from.getAddress().equals(part.rtpAddress.getAddress())) {
+            LOGGER.warning("RTPReceiverThread: Got an unexpected packet from " + pkt.getSsrc()
+                    + " the sending ip-address was " + from.getAddress().toString()
+                    + ", we expected from " + part.rtpAddress.toString());
+            pkt.release();
+            return false;
+        }
+        PktQueue inbox = part.inbox;
+        if(inbox == null) {
+            inbox = new PktQueue();
+            part.inbox = inbox;
+        }
+        if(inbox.offer(pkt)) {
+            return true;
+        }
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("RTPReceiverThread: inbox of " + part.ssrc + " is full, dropped a packet");
+        }
+        pkt.release();
+        return false;
+    }
+
+    /**
+     * Records when a packet with a transport-wide sequence number arrived, and
+     * sends the participant transport feedback when it is due.
+     *
+     * @param part the participant
+     * @param pkt the packet
+     */
+    private void recordArrival(Participant part, RtpPkt pkt) {
+        int index = pkt.getExtensionElement(rtpSession.transportExtensionId);
+        if(index < 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        TransportFeedback feedback = part.transportFeedback;
+        if(feedback == null) {
+            feedback = new TransportFeedback();
+            part.transportFeedback = feedback;
+        }
+        feedback.received(pkt.getBuffer().getShort(index) & 0xFFFF, now);
+        if(feedback.due(now)) {
+            byte[] fci = feedback.build(now);
+            if(fci != null) {
+                rtpSession.rtcpSession.sendTransportFeedback(part, fci);
             }
+        }
+    }
 
-            //Find the participant in the database based on SSRC
-            Participant part = rtpSession.partDb.getParticipant(pktSsrc);
+    /**
+     * Processes the packets an FEC decoder has recovered, as if they had been received.
+     *
+     * @param part the participant whose packets they are
+     * @param fec the participant's FEC decoder
+     * @param from the address the packet that recovered them came from
+     */
+    private void recover(Participant part, FecDecoder fec, InetSocketAddress from) {
+        RtpPkt pkt = fec.poll();
+        while(pkt != null) {
+            if(LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("RTPReceiverThread: recovered packet " + pkt.getSeqNumber() + " of " + part.ssrc);
+            }
+            rtpSession.fecRecoveredPktCount.incrementAndGet();
+            // The whole packet, with whatever CSRCs, extension and padding it had
+            processPacket(pkt, from, pkt.getBuffer().remaining(), true);
+            pkt = fec.poll();
+        }
+    }
 
+    /**
+     * Finds the participant whose stream an FEC stream protects. An FEC stream
+     * seen for the first time belongs to the one participant whose media
+     * comes from the same address, and that FEC is expected from.
+     *
+     * @param fecSsrc the SSRC of the FEC stream
+     * @param from the address the FEC packet came from
+     * @return the participant, null if not known or ambiguous
+     */
+    private Participant fecSource(long fecSsrc, InetSocketAddress from) {
+        Participant part = rtpSession.fecSources.get(fecSsrc);
+        if(part == null) {
+            Enumeration<Participant> enu = rtpSession.partDb.getParticipants();
+            while(enu.hasMoreElements()) {
+                Participant p = enu.nextElement();
+                if(p.fecDecoder != null && p.ssrc != fecSsrc && from.equals(p.rtpReceivedFromAddress)) {
+                    if(part != null) {
+                        // Ambiguous, drop FEC packets rather than recover the wrong ones
+                        return null;
+                    }
+                    part = p;
+                }
+            }
             if(part == null) {
-                InetSocketAddress nullSocket = null;
-                part = new Participant((InetSocketAddress) packet.getSocketAddress(), nullSocket, pkt.getSsrc());
-                part.unexpected = true;
-                rtpSession.partDb.addParticipant(1, part);
-                // Note: when adding participant, the result may be an updated pre-existing participant that lacked
-                // a ssrc. Thus, we need to find the participant that is really stored in the partDb after adding.
-                // Otherwise the packet will be added to a participant not connected to a rtpSession.
-                part = rtpSession.partDb.getParticipant(pktSsrc);
-            }
-
-            // Do checks on whether the datagram came from the expected source for that SSRC.
-            if(part.rtpAddress == null || packet.getAddress().equals(part.rtpAddress.getAddress())) {
-                PktBuffer pktBuffer = part.pktBuffer;
-
-                if(pktBuffer != null) {
-                    //A buffer already exists, append to it
-                    pktBuffer.addPkt(pkt);
-                } else {
-                    // Create a new packet/frame buffer
-                    pktBuffer = new PktBuffer(this.rtpSession, part,pkt);
-                    part.pktBuffer = pktBuffer;
+                return null;
+            }
+            rtpSession.fecSources.put(fecSsrc, part);
+        }
+        return part;
+    }
+
+    /**
+     * Turns an RTX packet (RFC 4588) back into the packet it carries. An RTX
+     * stream seen for the first time belongs to the one participant that was
+     * sent a NACK for the packet it carries (RFC 4588, 5.3).
+     *
+     * @param pkt the RTX packet
+     * @return 0 if successful, -1 if the original stream is not known
+     */
+    private int unwrapRtx(RtpPkt pkt) {
+        long rtxSsrc = pkt.getSsrc();
+        Participant part = rtpSession.rtxSources.get(rtxSsrc);
+        if(part == null) {
+            ByteBuffer buf = pkt.getBuffer();
+            if(buf == null || pkt.getPayloadLength() < 2) {
+                return -1;
+            }
+            int osn = buf.getShort(pkt.getPayloadOffset()) & 0xFFFF;
+            Enumeration<Participant> enu = rtpSession.partDb.getParticipants();
+            while(enu.hasMoreElements()) {
+                Participant p = enu.nextElement();
+                NackGenerator nacks = p.nackGenerator;
+                if(nacks != null && nacks.isMissing(osn)) {
+                    if(part != null) {
+                        // Ambiguous, wait for another packet
+                        return -1;
+                    }
+                    part = p;
                 }
-            } else {
-                LOGGER.warning("RTPReceiverThread: Got an unexpected packet from " + pkt.getSsrc()
-                        + " the sending ip-address was " + packet.getAddress().toString()
-                        + ", we expected from " + part.rtpAddress.toString());
             }
+            if(part == null) {
+                return -1;
+            }
+            rtpSession.rtxSources.put(rtxSsrc, part);
+        }
+        return pkt.unwrapRtx(part.ssrc, rtpSession.payloadType);
+    }
 
-            // Statistics for receiver report.
-            part.updateRRStats(packet.getLength(), pkt);
-            // Upate liveness
-            part.lastRtpPkt = System.currentTimeMillis();
+    /**
+     * Notes the arrival of a packet, and asks for the packets that are
+     * missing from the participant's stream, see RTPSession.nackGeneration().
+     *
+     * @param part the participant
+     * @param seqNum the sequence number of the packet
+     */
+    private void requestLost(Participant part, int seqNum) {
+        NackGenerator nacks = part.nackGenerator;
+        if(nacks == null) {
+            nacks = new NackGenerator();
+            part.nackRetry = new NackRetry(rtpSession, part);
+            part.nackGenerator = nacks;
+        }
+        nacks.received(seqNum);
+        sendNacks(rtpSession, part, nacks);
+    }
 
-            if(LOGGER.isLoggable(Level.FINEST)) {
-                LOGGER.finest("<-> RTPReceiverThread signalling pktBufDataReady");
-            }
+    /**
+     * Asks for the packets that are due to be asked for, and schedules the
+     * participant's NackRetry for the next ones.
+     *
+     * @param rtpSession the session
+     * @param part the participant
+     * @param nacks the participant's NackGenerator
+     */
+    private static void sendNacks(RTPSession rtpSession, Participant part, NackGenerator nacks) {
+        long now = System.nanoTime();
+        int[][] fci = nacks.collect(now);
+        if(fci != null) {
+            rtpSession.fbNack(part.ssrc, fci[0], fci[1]);
+        }
+        long delay = nacks.nextRetry(now);
+        if(delay >= 0) {
+            // Fails harmlessly if the retry is pending already
+            Pacer.getDefault().schedule(part.nackRetry, now + delay);
+        }
+    }
+
+    /**
+     * Asks for lost packets again when they are due, so that a stream that
+     * stalls is not left waiting for the packets it lost last.
+     */
+    private static final class NackRetry extends Pacer.Task {
+        /** The session */
+        private final RTPSession rtpSession;
+        /** The participant whose packets are asked for */
+        private final Participant part;
+
+        /**
+         * Creates the retry task of a participant.
+         *
+         * @param rtpSession the session
+         * @param part the participant
+         */
+        NackRetry(RTPSession rtpSession, Participant part) {
+            this.rtpSession = rtpSession;
+            this.part = part;
+        }
 
-            // Signal the thread that pushes data to application
-            rtpSession.pktBufLock.lock();
-            try { rtpSession.pktBufDataReady.signalAll(); } finally {
-                rtpSession.pktBufLock.unlock();
+        public void run() {
+            NackGenerator nacks = part.nackGenerator;
+            if(nacks != null && !rtpSession.endSession && part.timestampBYE < 0) {
+                sendNacks(rtpSession, part, nacks);
             }
         }
     }
@@ -18,14 +18,20 @@
  */
 package org.jlibrtp;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -53,10 +59,32 @@ public class RTPSession {
     protected MulticastSocket rtpMCSock = null;
     /** RTP multicast group */
     protected InetAddress mcGroup = null;
+    /** RTP unicast channel, if the session was created with one. rtpSock is its socket. */
+    protected DatagramChannel rtpChannel = null;
+    /** Pool of direct buffers that RTP packets are received into when using rtpChannel */
+    protected BufferPool rtpBufferPool = null;
+    /** The engine that runs this session, null if the session runs its own threads */
+    protected RTPSessionEngine engine = null;
+    /** What the engine keeps for this session, set once it is registered */
+    protected RTPSessionEngine.Registration engineReg = null;
+    /** The channels received on in parallel, rtpChannel first, null if there is only rtpChannel */
+    protected DatagramChannel[] rtpChannels = null;
+    /** A receiver per channel in rtpChannels, recvThrd first, null if there is only recvThrd */
+    protected RTPReceiverThread[] rtpReaders = null;
+    /** Packets a receiver in rtpReaders handed to the receiver owning their participant */
+    protected final AtomicLong handedOverPktCount = new AtomicLong();
+    /** The number of receive buffers kept in rtpBufferPool */
+    protected static final int RECEIVE_POOL_SIZE = 256;
+    /** Frames handed to the application, reused once it releases them */
+    protected final FramePool framePool = new FramePool(FRAME_POOL_SIZE);
+    /** The number of released frames kept in framePool */
+    protected static final int FRAME_POOL_SIZE = 32;
 
     // Internal state
     /** Whether this session is a multicast session or not */
     protected boolean mcSession = false;
+    /** Whether RTCP shares the RTP socket (RFC 5761) */
+    protected boolean rtcpMux = false;
     /** Current payload type, can be changed by application */
     protected int payloadType = 0;
     /** SSRC of this session */
@@ -72,6 +100,8 @@ public class RTPSession {
 
     /** The random seed */
     protected Random random = null;
+    /** Clock rates of the payload types, and the clock RTP timestamps are taken from */
+    protected final MediaClock mediaClock;
 
     /** Session bandwidth in BYTES per second */
     protected int bandwidth = 8000;
@@ -85,6 +115,19 @@ public class RTPSession {
     /** Maximum number of packets used for reordering */
     protected int pktBufBehavior = 3;
 
+    /** Packet buffers keep packets in a linked list, ordered by RTP timestamp */
+    public static final int PKTBUF_LINKED_LIST = 0;
+    /** Packet buffers keep packets in a ring, indexed by sequence number */
+    public static final int PKTBUF_RING = 1;
+    /** Packet buffers hand over frames at a playout deadline that adapts to the jitter */
+    public static final int PKTBUF_ADAPTIVE = 2;
+    /** The kind of packet buffer created for new participants */
+    protected int pktBufType = PKTBUF_LINKED_LIST;
+    /** Lower bound of the playout delay of adaptive packet buffers, in milliseconds */
+    protected int minPlayoutDelay = 20;
+    /** Upper bound of the playout delay of adaptive packet buffers, in milliseconds */
+    protected int maxPlayoutDelay = 500;
+
     /** Participant database */
     protected ParticipantDatabase partDb = new ParticipantDatabase(this);
     /** Handle to application interface for RTP */
@@ -102,11 +145,78 @@ public class RTPSession {
     protected RTPReceiverThread recvThrd = null;
     /** The thread for invoking callbacks for RTP packets */
     protected AppCallerThread appCallerThrd = null;
+    /** Creates the threads of the session, null if they start themselves */
+    protected ThreadFactory threadFactory = SessionThreads.defaultFactory();
+
+    /** Assembles and sends RTP packets, created by the first sendData() */
+    protected RtpSender rtpSender = null;
+    /** Serializes sendData(), guards rtpSender */
+    final protected Object sendLock = new Object();
+    /** Sends to the unicast receivers in parallel, null if they are sent to one after the other */
+    protected FanOutSender fanOutSender = null;
+
+    /** Nanoseconds before the same packet is retransmitted again */
+    protected static final long RESEND_INTERVAL = 50000000L;
+    /** Copies of the packets sent, for answering NACKs and for redundancy, null if neither is on */
+    protected PacketHistory sendHistory = null;
+    /** Limits the bitrate of retransmissions, null if NACKs are not answered, guarded by sendLock */
+    protected TokenBucket rtxBucket = null;
+    /** Payload type of RTX packets (RFC 4588), -1 to retransmit packets unchanged */
+    protected int rtxPayloadType = -1;
+    /** SSRC of the RTX stream, -1 until an RTX payload type is set */
+    protected long rtxSsrc = -1;
+    /** Last sequence number used in the RTX stream, guarded by sendLock */
+    private int rtxSeqNum = 0;
+    /** Number of packets retransmitted */
+    protected long retransmittedPktCount = 0;
+    /** Whether lost packets are asked for with NACKs */
+    protected boolean nackGeneration = false;
+    /** The participants whose RTX streams have been identified, by RTX SSRC */
+    protected Hashtable<Long, Participant> rtxSources = new Hashtable<Long, Participant>();
+
+    /** Payload type of FEC packets (RFC 5109), -1 if they are neither sent nor expected */
+    protected int fecPayloadType = -1;
+    /** SSRC of the FEC stream, -1 until an FEC payload type is set */
+    protected long fecSsrc = -1;
+    /** Generates the FEC packets sent, null if none are, guarded by sendLock */
+    protected FecEncoder fecEncoder = null;
+    /** Number of FEC packets sent */
+    protected long fecSentPktCount = 0;
+    /** Number of FEC packets received, counted by all the receiver threads */
+    protected final AtomicLong fecReceivedPktCount = new AtomicLong();
+    /** Number of packets recovered from FEC packets, counted by all the receiver threads */
+    protected final AtomicLong fecRecoveredPktCount = new AtomicLong();
+    /** The participants whose FEC streams have been identified, by FEC SSRC */
+    protected Hashtable<Long, Participant> fecSources = new Hashtable<Long, Participant>();
+
+    /** The most redundant blocks in a RED packet */
+    protected static final int MAX_REDUNDANCY = 8;
+    /** The number of packets kept for redundancy when NACKs are not answered */
+    private static final int REDUNDANCY_HISTORY = 16;
+    /** Payload type of RED packets (RFC 2198), -1 if they are neither sent nor expected */
+    protected int redPayloadType = -1;
+    /** The number of earlier packets repeated in each RED packet, guarded by sendLock */
+    protected int redDepth = 0;
+    /** Number of packets recovered from redundant blocks, counted by all the receiver threads */
+    protected final AtomicLong redRecoveredPktCount = new AtomicLong();
+
+    /** ID of the transport-wide sequence number header extension, -1 if it is neither sent nor expected */
+    protected int transportExtensionId = -1;
+    /** When the packets sent went out, by transport-wide sequence number, guarded by sendLock */
+    protected TransportHistory transportHistory = null;
+    /** Number of transport feedback messages received */
+    protected long transportFeedbackCount = 0;
 
     /** Lock to protect the packet buffers */
     final protected Lock pktBufLock = new ReentrantLock();
     /** Condition variable, to tell the  */
     final protected Condition pktBufDataReady = pktBufLock.newCondition();
+    /** First participant whose packet buffer may have a frame ready, guarded by pktBufLock */
+    protected Participant readyHead = null;
+    /** Last participant whose packet buffer may have a frame ready, guarded by pktBufLock */
+    protected Participant readyTail = null;
+    /** Whether the engine has been asked to deliver frames and has not finished yet, guarded by pktBufLock */
+    protected boolean dispatchScheduled = false;
 
     /** Enough is enough, set to true when you want to quit. */
     protected boolean endSession = false;
@@ -161,12 +271,126 @@ public class RTPSession {
         rtpSock = rtpSocket;
         this.generateCNAME();
         this.generateSsrc();
+        this.mediaClock = new MediaClock(this.random.nextInt());
         this.rtcpSession = new RTCPSession(this,rtcpSocket);
 
         // The sockets are not always imediately available?
         try { Thread.sleep(1); } catch (InterruptedException e) { LOGGER.log(Level.WARNING, "RTPSession sleep failed", e); }
     }
 
+    /**
+     * Returns an instance of a <b>unicast</b> RTP session that multiplexes RTP and
+     * RTCP on a single socket, as described in RFC 5761.
+     *
+     * RTCP packets are told apart from RTP packets by their packet type, and are
+     * received by the same thread. They are sent to the RTP address of the participants,
+     * whatever RTCP port they were given. The peers must have agreed to rtcp-mux,
+     * through SDP or otherwise.
+     *
+     * @param	socket UDP socket to receive RTP and RTCP communication on
+     */
+    public RTPSession(DatagramSocket socket) {
+        this(socket, socket);
+        this.rtcpMux = true;
+    }
+
+    /**
+     * Returns an instance of a <b>unicast</b> RTP session that receives through
+     * NIO datagram channels.
+     *
+     * RTP packets are received into pooled direct buffers, which are reused as soon as
+     * their payload has been copied into a frame. Frames are reused once the application
+     * calls DataFrame.release() on them, so that steady-state reception does not allocate
+     * any arrays.
+     *
+     * The channels must be bound and in blocking mode.
+     *
+     * @param	rtpChannel UDP channel to receive RTP communication on
+     * @param	rtcpChannel UDP channel to receive RTCP communication on, null if none.
+     */
+    public RTPSession(DatagramChannel rtpChannel, DatagramChannel rtcpChannel) {
+        this(rtpChannel.socket(), rtcpChannel == null ? null : rtcpChannel.socket());
+        this.rtpChannel = rtpChannel;
+        this.rtcpSession.rtcpChannel = rtcpChannel;
+        this.rtpBufferPool = new BufferPool(RECEIVE_POOL_SIZE, 1500);
+    }
+
+    /**
+     * Returns an instance of a <b>unicast</b> RTP session that is run by a shared
+     * RTPSessionEngine instead of threads of its own.
+     *
+     * The engine's selector threads receive on the channels, which are switched
+     * to non-blocking mode when the application registers. RTCP is scheduled on
+     * the engine's timer threads and the application is called from its dispatcher
+     * threads, never from more than one at a time. Otherwise the session behaves
+     * like one created with RTPSession(DatagramChannel, DatagramChannel).
+     *
+     * @param	rtpChannel UDP channel to receive RTP communication on
+     * @param	rtcpChannel UDP channel to receive RTCP communication on, null if none.
+     * @param	engine the engine that will run the session
+     */
+    public RTPSession(DatagramChannel rtpChannel, DatagramChannel rtcpChannel, RTPSessionEngine engine) {
+        this(rtpChannel, rtcpChannel);
+        this.engine = engine;
+    }
+
+    /**
+     * Returns an instance of a <b>unicast</b> RTP session that receives RTP on several
+     * channels in parallel, for sessions with more packets than one thread can take.
+     *
+     * The channels must be bound to the same address with SO_REUSEPORT, see ReusePort.open(),
+     * so that the kernel spreads the flows over them. Each channel has a receiver of its
+     * own, and every participant sticks to the receiver that got its first packet.
+     * RTP is sent through the first channel. The channels are switched to non-blocking
+     * mode when the application registers.
+     *
+     * @param	rtpChannels UDP channels to receive RTP communication on
+     * @param	rtcpChannel UDP channel to receive RTCP communication on, null if none.
+     */
+    public RTPSession(DatagramChannel[] rtpChannels, DatagramChannel rtcpChannel) {
+        this(rtpChannels[0], rtcpChannel);
+        if(rtpChannels.length > 1) {
+            this.rtpChannels = rtpChannels.clone();
+        }
+    }
+
+    /**
+     * Returns an instance of a <b>unicast</b> RTP session that receives RTP on several
+     * channels in parallel, run by a shared RTPSessionEngine. The channels are spread
+     * over the selector threads of the engine, see RTPSession(DatagramChannel[], DatagramChannel).
+     *
+     * @param	rtpChannels UDP channels to receive RTP communication on
+     * @param	rtcpChannel UDP channel to receive RTCP communication on, null if none.
+     * @param	engine the engine that will run the session
+     */
+    public RTPSession(DatagramChannel[] rtpChannels, DatagramChannel rtcpChannel, RTPSessionEngine engine) {
+        this(rtpChannels, rtcpChannel);
+        this.engine = engine;
+    }
+
+    /**
+     * Returns an instance of a <b>unicast</b> RTP session that multiplexes RTP and
+     * RTCP on a single NIO datagram channel (RFC 5761), see RTPSession(DatagramSocket).
+     *
+     * @param	channel UDP channel to receive RTP and RTCP communication on
+     */
+    public RTPSession(DatagramChannel channel) {
+        this(channel, channel);
+        this.rtcpMux = true;
+    }
+
+    /**
+     * Returns an instance of a <b>unicast</b> RTP session that multiplexes RTP and
+     * RTCP on a single NIO datagram channel (RFC 5761), run by a shared RTPSessionEngine.
+     *
+     * @param	channel UDP channel to receive RTP and RTCP communication on
+     * @param	engine the engine that will run the session
+     */
+    public RTPSession(DatagramChannel channel, RTPSessionEngine engine) {
+        this(channel, channel, engine);
+        this.rtcpMux = true;
+    }
+
     /**
      * Returns an instance of a <b>multicast</b> RTP session.
      * Following this you should register your application.
@@ -189,6 +413,7 @@ public class RTPSession {
         rtcpSock.joinGroup(mcGroup);
         this.generateCNAME();
         this.generateSsrc();
+        this.mediaClock = new MediaClock(this.random.nextInt());
         this.rtcpSession = new RTCPSession(this,rtcpSock,mcGroup);
 
         // The sockets are not always imediately available?
@@ -221,9 +446,28 @@ public class RTPSession {
             this.debugAppIntf = debugApp;
 
             recvThrd = new RTPReceiverThread(this);
+            if(rtpChannels != null) {
+                rtpReaders = new RTPReceiverThread[rtpChannels.length];
+                rtpReaders[0] = recvThrd;
+                for(int i=1; i<rtpChannels.length; i++) {
+                    rtpReaders[i] = new RTPReceiverThread(this, rtpChannels[i], i);
+                }
+            }
             appCallerThrd = new AppCallerThread(this, rtpApp);
-            recvThrd.start();
-            appCallerThrd.start();
+            if(engine != null) {
+                if(engine.register(this) < 0) {
+                    registered = false;
+                    return -1;
+                }
+            } else if(rtpReaders != null) {
+                for(int i=0; i<rtpReaders.length; i++) {
+                    rtpReaders[i].start(threadFactory);
+                }
+                appCallerThrd.start(threadFactory);
+            } else {
+                recvThrd.start(threadFactory);
+                appCallerThrd.start(threadFactory);
+            }
             rtcpSession.start();
             return 0;
         }
@@ -241,6 +485,7 @@ public class RTPSession {
     /**
      * Send data to all participants registered as receivers, using the current timeStamp,
      * dynamic sequence number and the current payload type specified for the session.
+     * The timestamp is the present time in units of the payload type's clock rate, see clockRate(int, int).
      *
      * @param buf A buffer of bytes, less than 1496 bytes
      * @return	null if there was a problem, {RTP Timestamp, Sequence number} otherwise
@@ -275,6 +520,58 @@ public class RTPSession {
         return null;
     }
 
+    /**
+     * Send the remaining bytes of a buffer, which may be direct, as one packet to all
+     * participants registered as receivers, using the dynamic sequence number and the
+     * current payload type. The payload is copied once, straight into the packet.
+     *
+     * @param buf the payload, its position is advanced to its limit
+     * @param rtpTimestamp the RTP timestamp, negative for the present time, see sendData(byte[])
+     * @return null if there was a problem, {RTP Timestamp, Sequence number} otherwise
+     */
+    public long[] sendData(ByteBuffer buf, long rtpTimestamp) {
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("-> RTPSession.sendData(ByteBuffer)");
+        }
+
+        if(rtpTimestamp < 0)
+            rtpTimestamp = mediaClock.now(payloadType);
+
+        if(this.conflict) {
+            LOGGER.warning("RTPSession.sendData() called while trying to resolve conflict.");
+            return null;
+        }
+
+        int octets = buf.remaining();
+        if(octets > 1500) {
+            LOGGER.warning("RTPSession.sendData() called with buffer exceeding 1500 bytes ("+octets+")");
+        }
+
+        long[] ret = new long[2];
+        synchronized(this.sendLock) {
+            if(this.endSession) {
+                LOGGER.warning("RTPSession.sendData() called after endSession()");
+                return null;
+            }
+            if(this.rtpSender == null) {
+                this.rtpSender = new RtpSender(this);
+            }
+
+            ret[0] = rtpTimestamp;
+            ret[1] = getNextSeqNum();
+            this.rtpSender.add(buf, null, false, rtpTimestamp, (int) ret[1]);
+
+            if(this.rtpSender.send() < 0) {
+                return null;
+            }
+            this.mediaClock.sent(rtpTimestamp, payloadType);
+
+            this.sentPktCount++;
+            this.sentOctetCount += octets;
+        }
+        return ret;
+    }
+
     /**
      * Send data to all participants registered as receivers, using the current timeStamp and
      * payload type. The RTP timestamp will be the same for all the packets.
@@ -293,121 +590,97 @@ public class RTPSession {
 
         // Same RTP timestamp for all
         if(rtpTimestamp < 0)
-            rtpTimestamp = System.currentTimeMillis();
+            rtpTimestamp = mediaClock.now(payloadType);
+
+        // Pre-flight check, are resolving an SSRC conflict?
+        if(this.conflict) {
+            LOGGER.warning("RTPSession.sendData() called while trying to resolve conflict.");
+            return null;
+        }
 
         // Return values
         long[][] ret = new long[buffers.length][2];
 
-        for(int i=0; i<buffers.length; i++) {
-            byte[] buf = buffers[i];
-
-            boolean marker = false;
-            if(markers != null)
-                marker = markers[i];
-
-            if(buf.length > 1500) {
-                LOGGER.warning("RTPSession.sendData() called with buffer exceeding 1500 bytes ("+buf.length+")");
-            }
-
-            // Get the return values
-            ret[i][0] = rtpTimestamp;
-            if(seqNumbers == null) {
-                ret[i][1] = getNextSeqNum();
-            } else {
-                ret[i][1] = seqNumbers[i];
-            }
-            // Create a new RTP Packet
-            RtpPkt pkt = new RtpPkt(rtpTimestamp,this.ssrc,(int) ret[i][1],this.payloadType,buf);
-
-            if(csrcArray != null)
-                pkt.setCsrcs(csrcArray);
-
-            pkt.setMarked(marker);
-
-            // Creates a raw packet
-            byte[] pktBytes = pkt.encode();
-
-            //System.out.println(Integer.toString(StaticProcs.bytesToUIntInt(pktBytes, 2)));
-
-            // Pre-flight check, are resolving an SSRC conflict?
-            if(this.conflict) {
-                LOGGER.warning("RTPSession.sendData() called while trying to resolve conflict.");
+        synchronized(this.sendLock) {
+            if(this.endSession) {
+                LOGGER.warning("RTPSession.sendData() called after endSession()");
                 return null;
             }
+            if(this.rtpSender == null) {
+                this.rtpSender = new RtpSender(this);
+            }
 
+            // Assemble the whole batch, then send it to one receiver after the other
+            int octets = 0;
+            for(int i=0; i<buffers.length; i++) {
+                byte[] buf = buffers[i];
 
-            if(this.mcSession) {
-                DatagramPacket packet = null;
-
+                boolean marker = false;
+                if(markers != null)
+                    marker = markers[i];
 
-                try {
-                    packet = new DatagramPacket(pktBytes,pktBytes.length,this.mcGroup,this.rtpMCSock.getPort());
-                } catch (Exception e) {
-                    LOGGER.log(Level.WARNING, "RTPSession.sendData() packet creation failed.", e);
-                    return null;
+                if(buf.length > 1500) {
+                    LOGGER.warning("RTPSession.sendData() called with buffer exceeding 1500 bytes ("+buf.length+")");
                 }
 
-                try {
-                    rtpMCSock.send(packet);
-                    //Debug
-                    if(this.debugAppIntf != null) {
-                        this.debugAppIntf.packetSent(1, (InetSocketAddress) packet.getSocketAddress(),
-                                new String("Sent multicast RTP packet of size " + packet.getLength() +
-                                        " to " + packet.getSocketAddress().toString() + " via "
-                                        + rtpMCSock.getLocalSocketAddress().toString()));
-                    }
-                } catch (Exception e) {
-                    LOGGER.log(Level.WARNING, "RTPSession.sendData() multicast failed.", e);
-                    return null;
+                // Get the return values
+                ret[i][0] = rtpTimestamp;
+                if(seqNumbers == null) {
+                    ret[i][1] = getNextSeqNum();
+                } else {
+                    ret[i][1] = seqNumbers[i];
                 }
 
-            } else {
-                // Loop over recipients
-                Iterator<Participant> iter = partDb.getUnicastReceivers();
-                while(iter.hasNext()) {
-                    InetSocketAddress receiver = iter.next().rtpAddress;
-                    DatagramPacket packet = null;
-
-                    if(LOGGER.isLoggable(Level.FINEST)) {
-                        LOGGER.finest("   Sending to " + receiver.toString());
-                    }
-
-                    try {
-                        packet = new DatagramPacket(pktBytes,pktBytes.length,receiver);
-                    } catch (Exception e) {
-                        LOGGER.log(Level.WARNING, "RTPSession.sendData() packet creation failed.", e);
-                        return null;
-                    }
+                this.rtpSender.add(buf, csrcArray, marker, rtpTimestamp, (int) ret[i][1]);
+                octets += buf.length;
+            }
 
-                    //Actually send the packet
-                    try {
-                        rtpSock.send(packet);
-                        //Debug
-                        if(this.debugAppIntf != null) {
-                            this.debugAppIntf.packetSent(0, (InetSocketAddress) packet.getSocketAddress(),
-                                    new String("Sent unicast RTP packet of size " + packet.getLength() +
-                                            " to " + packet.getSocketAddress().toString() + " via "
-                                            + rtpSock.getLocalSocketAddress().toString()));
-                        }
-                    } catch (Exception e) {
-                        LOGGER.log(Level.WARNING, "RTPSession.sendData() unicast failed.", e);
-                        return null;
-                    }
-                }
+            if(this.rtpSender.send() < 0) {
+                return null;
             }
+            this.mediaClock.sent(rtpTimestamp, payloadType);
 
             //Update our stats
-            this.sentPktCount++;
-            this.sentOctetCount++;
-
-            if(LOGGER.isLoggable(Level.FINEST)) {
-                LOGGER.finest("<- RTPSession.sendData(byte[]) " + pkt.getSeqNumber());
-            }
+            this.sentPktCount += buffers.length;
+            this.sentOctetCount += octets;
         }
 
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("<- RTPSession.sendData(byte[]) sent " + buffers.length + " packets");
+        }
         return ret;
     }
 
+    /**
+     * Send RTP packets to the unicast receivers through several channels in parallel,
+     * one thread per channel, for sessions with many receivers.
+     *
+     * The packets are still encoded only once. The receivers are divided between
+     * the channels, and a receiver that cannot be reached does not keep the others
+     * from getting their packets, see Participant.getSendFailureCount().
+     * The channels should be bound to the address the receivers expect packets from,
+     * the session's own RTP channel can be one of them. They are not closed by the session.
+     *
+     * @param channels the channels to send from, null to send through the RTP socket again
+     * @return 0 if successful, -1 if this is a multicast session
+     */
+    public int fanOut(DatagramChannel[] channels) {
+        if(this.mcSession) {
+            LOGGER.warning("RTPSession.fanOut() is for unicast sessions");
+            return -1;
+        }
+        synchronized(this.sendLock) {
+            if(this.fanOutSender != null) {
+                this.fanOutSender.shutdown();
+                this.fanOutSender = null;
+            }
+            if(channels != null && channels.length > 0) {
+                this.fanOutSender = new FanOutSender(this, channels);
+            }
+        }
+        return 0;
+    }
+
     /**
      * Send RTCP App packet to receiver specified by ssrc
      *
@@ -460,6 +733,9 @@ public class RTPSession {
     public int addParticipant(Participant p) {
         //For now we make all participants added this way persistent
         p.unexpected = false;
+        if(this.rtcpMux) {
+            p.rtcpAddress = p.rtpAddress;
+        }
         return this.partDb.addParticipant(0, p);
     }
 
@@ -480,6 +756,57 @@ public class RTPSession {
         return partDb.getParticipants();
     }
 
+    /**
+     * Queues a participant whose packet buffer may have a frame ready,
+     * and wakes up the AppCallerThread. Takes constant time, a participant
+     * that is already queued is not queued again.
+     *
+     * @param p the participant
+     */
+    protected void frameReady(Participant p) {
+        boolean dispatch = false;
+        this.pktBufLock.lock();
+        try {
+            if(!p.readyQueued) {
+                p.readyQueued = true;
+                p.nextReady = null;
+                if(this.readyTail == null) {
+                    this.readyHead = p;
+                } else {
+                    this.readyTail.nextReady = p;
+                }
+                this.readyTail = p;
+                this.pktBufDataReady.signal();
+                if(this.engine != null && !this.dispatchScheduled) {
+                    this.dispatchScheduled = true;
+                    dispatch = true;
+                }
+            }
+        } finally {
+            this.pktBufLock.unlock();
+        }
+        if(dispatch) {
+            this.engine.dispatch(this);
+        }
+    }
+
+    /** Queues a participant if it has sent packets, see allFramesReady() */
+    private final SsrcTable.Visitor frameReadyVisitor = new SsrcTable.Visitor() {
+        public void visit(Participant p) {
+            if(p.inbox != null) {
+                frameReady(p);
+            }
+        }
+    };
+
+    /**
+     * Queues every participant that has sent packets, for changes
+     * that may affect all of them.
+     */
+    private void allFramesReady() {
+        this.partDb.ssrcTable.visit(this.frameReadyVisitor);
+    }
+
     /**
      * End the RTP Session. This will halt all threads and send bye-messages to other participants.
      *
@@ -488,12 +815,32 @@ public class RTPSession {
     public void endSession() {
         this.endSession = true;
 
+        synchronized(this.sendLock) {
+            if(this.fanOutSender != null) {
+                this.fanOutSender.shutdown();
+            }
+        }
+
+        if(this.engine != null) {
+            // No threads to wake up, just stop the timers and say bye
+            this.engine.unregister(this);
+            if(this.rtcpSession.rtcpSock != null) {
+                this.rtcpSession.sendByes();
+                this.rtcpSession.rtcpSock.close();
+            }
+            this.rtpSock.close();
+            closeReaders();
+            return;
+        }
+
         // No more RTP packets, please
         if(this.mcSession) {
             this.rtpMCSock.close();
-        } else {
+        } else if(!this.rtcpMux) {
+            // Multiplexed sockets stay open for the byes, and are closed with RTCP below
             this.rtpSock.close();
         }
+        closeReaders();
 
         // Signal the thread that pushes data to application
         this.pktBufLock.lock();
@@ -522,6 +869,25 @@ public class RTPSession {
     }
 
 
+    /**
+     * Closes the channels of the receivers other than recvThrd, and wakes them all up.
+     */
+    private void closeReaders() {
+        if(this.rtpReaders == null) {
+            return;
+        }
+        for(int i=1; i<this.rtpChannels.length; i++) {
+            try {
+                this.rtpChannels[i].close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "RTPSession: closing a receiving channel failed", e);
+            }
+        }
+        for(int i=0; i<this.rtpReaders.length; i++) {
+            this.rtpReaders[i].wakeup();
+        }
+    }
+
     /**
      * Check whether this session is ending.
      *
@@ -584,8 +950,22 @@ public class RTPSession {
      * @return 0 if OK
      */
     public int updateRTPSock(DatagramSocket newSock) {
-        if(!mcSession) {
+        if(engine != null) {
+            LOGGER.warning("Can't switch the socket of a session run by an RTPSessionEngine.");
+            return -1;
+        } else if(rtpChannels != null) {
+            LOGGER.warning("Can't switch the socket of a session receiving on several channels.");
+            return -1;
+        } else if(!mcSession) {
             rtpSock = newSock;
+            rtpChannel = newSock.getChannel();
+            if(rtcpMux) {
+                this.rtcpSession.rtcpSock = newSock;
+                this.rtcpSession.rtcpChannel = rtpChannel;
+            }
+            if(rtpChannel != null && rtpBufferPool == null) {
+                rtpBufferPool = new BufferPool(RECEIVE_POOL_SIZE, 1500);
+            }
             return 0;
         } else {
             LOGGER.warning("Can't switch from multicast to unicast.");
@@ -602,7 +982,13 @@ public class RTPSession {
      * @return 0 if OK
      */
     public int updateRTCPSock(DatagramSocket newSock) {
-        if(!mcSession) {
+        if(engine != null) {
+            LOGGER.warning("Can't switch the socket of a session run by an RTPSessionEngine.");
+            return -1;
+        } else if(rtcpMux) {
+            LOGGER.warning("RTCP is multiplexed on the RTP socket, use updateRTPSock().");
+            return -1;
+        } else if(!mcSession) {
             this.rtcpSession.rtcpSock = newSock;
             return 0;
         } else {
@@ -671,6 +1057,32 @@ public class RTPSession {
         return this.payloadType;
     }
 
+    /**
+     * Registers the clock rate of a payload type, as negotiated through SDP or
+     * otherwise. The static payload types of RFC 3551 have their rates registered
+     * already, dynamic payload types default to 8000 Hz.
+     *
+     * The clock rate determines the RTP timestamps of packets sent without one,
+     * and the units of the interarrival jitter reported for received packets.
+     *
+     * @param payloadT the payload type, 0 to 127
+     * @param clockRate the clock rate in Hz, e.g. 90000 for video
+     * @return the clock rate, -1 if either argument is out of range
+     */
+    public int clockRate(int payloadT, int clockRate) {
+        return this.mediaClock.clockRate(payloadT, clockRate);
+    }
+
+    /**
+     * Get the clock rate registered for a payload type.
+     *
+     * @param payloadT the payload type, 0 to 127
+     * @return the clock rate in Hz
+     */
+    public int clockRate(int payloadT) {
+        return this.mediaClock.clockRate(payloadT);
+    }
+
     /**
      * Should packets from unknown participants be returned to the application? This can be dangerous.
      *
@@ -689,6 +1101,59 @@ public class RTPSession {
         return naiveReception;
     }
 
+    /**
+     * Is RTCP multiplexed on the RTP socket (RFC 5761)? Decided by the constructor.
+     *
+     * @return true if the session was created with a single socket or channel
+     */
+    public boolean rtcpMux() {
+        return rtcpMux;
+    }
+
+    /**
+     * The number of packets that arrived on one of several receiving channels,
+     * see RTPSession(DatagramChannel[], DatagramChannel), and were handed to the
+     * receiver of the channel that got the first packet of their participant.
+     * Many hand-overs mean the kernel spreads the flows of a participant.
+     *
+     * @return the number of packets
+     */
+    public long getHandedOverPktCount() {
+        return this.handedOverPktCount.get();
+    }
+
+    /**
+     * Set the ThreadFactory that creates the threads receiving packets, calling
+     * the application and sending RTCP. Must be called before the application is registered.
+     *
+     * By default there is none, the session's threads start themselves and are daemon
+     * threads only if the thread that registers the application is one. On Java 21 and
+     * later, the system property org.jlibrtp.virtualThreads set to true makes virtual
+     * threads the default. With a factory the RTPReceiverThread and the other session
+     * threads are run by threads it creates, see SessionThread.getThread().
+     * Sessions run by an RTPSessionEngine do not start threads of their own.
+     *
+     * @param factory the factory, null for the default
+     * @return 0 if successful, -1 if the application is already registered
+     */
+    public int threadFactory(ThreadFactory factory) {
+        if(registered) {
+            LOGGER.warning("RTPSession.threadFactory() can't change the threads of a running session");
+            return -1;
+        }
+        this.threadFactory = factory == null ? SessionThreads.defaultFactory() : factory;
+        return 0;
+    }
+
+    /**
+     * The ThreadFactory that creates the threads of this session.
+     *
+     * @return the factory, null if the threads start themselves
+     */
+    public ThreadFactory threadFactory() {
+        return threadFactory;
+    }
+
     /**
      * Set the number of RTP packets that should be buffered when a packet is
      * missing or received out of order. Setting this number high increases
@@ -713,16 +1178,72 @@ public class RTPSession {
         if(behavior > -2) {
             this.pktBufBehavior = behavior;
             // Signal the thread that pushes data to application
-            this.pktBufLock.lock();
-            try { this.pktBufDataReady.signalAll(); } finally {
-                this.pktBufLock.unlock();
-            }
+            allFramesReady();
             return this.pktBufBehavior;
         } else {
             return this.pktBufBehavior;
         }
     }
 
+    /**
+     * Sets the packet buffer behavior, see packetBufferBehavior(int), and the
+     * kind of packet buffer used to implement it.
+     *
+     * PKTBUF_LINKED_LIST orders packets by RTP timestamp in a linked list, which
+     * takes linear time for packets that arrive out of order.
+     *
+     * PKTBUF_RING orders packets by sequence number in a ring, in constant time
+     * and correctly across the sequence number wraparound.
+     *
+     * PKTBUF_ADAPTIVE hands frames over at a playout deadline computed from their
+     * RTP timestamp and the measured jitter, see playoutDelay(int, int). The behavior
+     * only matters in that -1 still disables it.
+     *
+     * The ring and adaptive buffers fall back to the linked list for a behavior of -1.
+     *
+     * The type applies to the packet buffers of participants that send their first
+     * packet afterwards, so it should be set before the session is registered.
+     *
+     * @param behavior the behavior, see packetBufferBehavior(int)
+     * @param type PKTBUF_LINKED_LIST, PKTBUF_RING or PKTBUF_ADAPTIVE
+     * @return the behavior set, unchanged in the case of a erroneous value
+     */
+    public int packetBufferBehavior(int behavior, int type) {
+        if(type == PKTBUF_LINKED_LIST || type == PKTBUF_RING || type == PKTBUF_ADAPTIVE) {
+            this.pktBufType = type;
+        }
+        return packetBufferBehavior(behavior);
+    }
+
+    /**
+     * The kind of packet buffer used for new participants.
+     *
+     * @return PKTBUF_LINKED_LIST, PKTBUF_RING or PKTBUF_ADAPTIVE
+     */
+    public int packetBufferType() {
+        return this.pktBufType;
+    }
+
+    /**
+     * Sets the range that adaptive packet buffers keep their playout delay in.
+     *
+     * The delay starts at the minimum and follows the measured jitter
+     * from there. A higher minimum protects the first frames against jitter
+     * that has not been measured yet, the maximum bounds the latency.
+     *
+     * @param minDelay lower bound, in milliseconds
+     * @param maxDelay upper bound, in milliseconds
+     * @return 0 if the range was set, -1 if it is invalid
+     */
+    public int playoutDelay(int minDelay, int maxDelay) {
+        if(minDelay < 0 || maxDelay < minDelay) {
+            return -1;
+        }
+        this.minPlayoutDelay = minDelay;
+        this.maxPlayoutDelay = maxDelay;
+        return 0;
+    }
+
     /**
      * The number of RTP packets that should be buffered when a packet is
      * missing or received out of order. A high number  increases the chance
@@ -809,6 +1330,10 @@ public class RTPSession {
      *
      * Since the actual value may change a conservative
      * estimate should be used to avoid RTCP flooding.
+     * With a bandwidth estimator the value follows its
+     * target, see bandwidthEstimation(BandwidthEstimator),
+     * until the estimator is removed and the value set
+     * through sessionBandwidth(int) is restored.
      *
      * see rtcpBandwidth(void)
      *
@@ -832,6 +1357,10 @@ public class RTPSession {
         } else {
             this.bandwidth = bandwidth;
         }
+        if(this.rtcpSession != null) {
+            // Restored when the bandwidth estimator is removed
+            this.rtcpSession.appBandwidth = this.bandwidth;
+        }
         return this.bandwidth;
     }
 
@@ -984,6 +1513,486 @@ public class RTPSession {
         return ret;
     }
 
+    /**
+     * Adds a generic NACK (RFC 4585, 6.2.1) to the feedback queue.
+     *
+     * @param ssrcMediaSource SSRC of the media source
+     * @param PID RTP sequence numbers of lost packets
+     * @param BLP bitmask of following lost packets, shared index with PID
+     * @return 0 if packet was queued, -1 if no feedback support, 1 if redundant
+     */
+    public int fbNack(long ssrcMediaSource, int[] PID, int[] BLP) {
+        return fbPictureLossIndication(ssrcMediaSource, 1, PID, BLP);
+    }
+
+    /********************************************* Retransmission ***************************************/
+
+    /**
+     * Answer NACKs by sending the lost packets again.
+     *
+     * The last historySize packets sent are kept. When a NACK arrives, the packets
+     * it lists that are still kept, and that are not older than the feedback
+     * max delay, are sent again, unchanged or as RTX packets, see rtxPayloadType(int).
+     * Retransmissions are limited to bitsPerSecond, packets over the limit are not sent.
+     *
+     * @param historySize the number of packets kept, 0 to stop answering NACKs
+     * @param bitsPerSecond the most bandwidth spent on retransmissions
+     * @return 0 if successful, -1 if the parameters are invalid
+     */
+    public int retransmission(int historySize, long bitsPerSecond) {
+        if(historySize < 0 || historySize > 0 && bitsPerSecond < 1) {
+            return -1;
+        }
+        synchronized(this.sendLock) {
+            if(historySize == 0) {
+                // Redundancy keeps a history of its own
+                this.sendHistory = this.redPayloadType < 0 ? null : new PacketHistory(REDUNDANCY_HISTORY);
+                this.rtxBucket = null;
+            } else {
+                this.sendHistory = new PacketHistory(historySize);
+                // Bursts of a quarter of a second, at least one full packet
+                this.rtxBucket = new TokenBucket(bitsPerSecond,
+                        (int) Math.max(RtpSender.SEND_BUFFER_SIZE, bitsPerSecond / 32));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Retransmit lost packets as RTX packets (RFC 4588), in a stream of their own with
+     * a separate SSRC, see rtxSsrc(). The same payload type identifies incoming RTX
+     * packets, which are turned back into the packets they carry, with the payload
+     * type of the session. An RTX stream is associated with the stream that was
+     * sent a NACK for the first packet it carries (RFC 4588, 5.3).
+     *
+     * @param rtxPayloadType the payload type, -1 to retransmit packets unchanged in the original stream
+     * @return 0 if successful, -1 if the payload type is invalid or that of the session
+     */
+    public int rtxPayloadType(int rtxPayloadType) {
+        if(rtxPayloadType < -1 || rtxPayloadType > 127 || rtxPayloadType == this.payloadType
+                || rtxPayloadType >= 0 && (rtxPayloadType == this.fecPayloadType
+                        || rtxPayloadType == this.redPayloadType)) {
+            return -1;
+        }
+        synchronized(this.sendLock) {
+            if(rtxPayloadType >= 0 && this.rtxSsrc < 0) {
+                do {
+                    this.rtxSsrc = this.random.nextInt() & 0xFFFFFFFFL;
+                } while(this.rtxSsrc == this.ssrc);
+                this.rtxSeqNum = this.random.nextInt(65536);
+            }
+            this.rtxPayloadType = rtxPayloadType;
+        }
+        return 0;
+    }
+
+    /**
+     * The payload type of RTX packets, see rtxPayloadType(int).
+     *
+     * @return the payload type, -1 if packets are retransmitted unchanged
+     */
+    public int rtxPayloadType() {
+        return this.rtxPayloadType;
+    }
+
+    /**
+     * The SSRC of the RTX stream, see rtxPayloadType(int).
+     *
+     * @return the SSRC, -1 if no RTX payload type has been set
+     */
+    public long rtxSsrc() {
+        return this.rtxSsrc;
+    }
+
+    /**
+     * The number of packets sent again in answer to NACKs.
+     *
+     * @return the number of packets
+     */
+    public long getRetransmittedPktCount() {
+        return this.retransmittedPktCount;
+    }
+
+    /**
+     * Ask the senders for lost packets with generic NACKs, as soon as a gap in
+     * the sequence numbers shows, and again if the packets do not arrive.
+     *
+     * NACKs are feedback messages, so the AVPF interface has to be registered,
+     * see registerAVPFIntf().
+     *
+     * @param toggle on or off
+     */
+    public void nackGeneration(boolean toggle) {
+        this.nackGeneration = toggle;
+    }
+
+    /**
+     * Whether lost packets are asked for, see nackGeneration(boolean).
+     *
+     * @return the status
+     */
+    public boolean nackGeneration() {
+        return this.nackGeneration;
+    }
+
+    /**
+     * Forgets the RTX and FEC streams of participants that have said BYE,
+     * have been removed, or have sent neither RTP nor RTCP for five reporting
+     * intervals (RFC 3550, 6.3.5), so that rtxSources and fecSources do not
+     * grow for as long as the session runs.
+     *
+     * @param now the current time, as in System.currentTimeMillis()
+     */
+    protected void pruneSources(long now) {
+        long timeout = 5L * Math.max(rtcpSession.nextDelay, 5000);
+        pruneSources(rtxSources, now, timeout);
+        pruneSources(fecSources, now, timeout);
+    }
+
+    /**
+     * Removes the participants that have left from a table of associated streams.
+     *
+     * @param sources the table, by the SSRC of the associated stream
+     * @param now the current time, as in System.currentTimeMillis()
+     * @param timeout milliseconds of silence after which a participant has left
+     */
+    private void pruneSources(Hashtable<Long, Participant> sources, long now, long timeout) {
+        synchronized(sources) {
+            Iterator<Participant> iter = sources.values().iterator();
+            while(iter.hasNext()) {
+                Participant p = iter.next();
+                if(p.timestampBYE >= 0 || partDb.getParticipant(p.ssrc) != p
+                        || now - Math.max(p.lastRtpPkt, p.lastRtcpPkt) > timeout) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends again the packets that a NACK reports lost, as far as they
+     * are still kept and the rate limit allows.
+     *
+     * @param PID RTP sequence numbers of lost packets
+     * @param BLP bitmask of following lost packets, shared index with PID
+     * @return the number of packets sent again, -1 if NACKs are not answered
+     */
+    protected int resend(int[] PID, int[] BLP) {
+        long now = System.nanoTime();
+        long maxAge = this.fbMaxDelay * 1000000L;
+        int count = 0;
+
+        synchronized(this.sendLock) {
+            PacketHistory history = this.sendHistory;
+            if(history == null || this.rtxBucket == null || this.rtpSender == null) {
+                return -1;
+            }
+            for(int i=0; i<PID.length; i++) {
+                // The packet ID, then the packets in the bitmask
+                for(int bit=-1; bit<16; bit++) {
+                    if(bit >= 0 && (BLP[i] & (1 << bit)) == 0) {
+                        continue;
+                    }
+                    int slot = history.find((PID[i] + bit + 1) & 0xFFFF, now, maxAge, RESEND_INTERVAL);
+                    if(slot < 0) {
+                        continue;
+                    }
+                    int length = history.length(slot) + (this.rtxPayloadType < 0 ? 0 : 2);
+                    if(!this.rtxBucket.tryTake(length, now)) {
+                        if(LOGGER.isLoggable(Level.FINEST)) {
+                            LOGGER.finest("<-> RTPSession.resend() over the rate limit");
+                        }
+                        continue;
+                    }
+                    history.resent(slot, now);
+                    if(this.rtxPayloadType >= 0) {
+                        this.rtxSeqNum = (this.rtxSeqNum + 1) & 0xFFFF;
+                    }
+                    this.rtpSender.addRetransmission(slot, this.rtxPayloadType, this.rtxSsrc, this.rtxSeqNum);
+                    count++;
+                }
+            }
+            if(count > 0) {
+                this.rtpSender.resend();
+                this.retransmittedPktCount += count;
+            }
+        }
+        return count;
+    }
+
+    /********************************************* Forward error correction ***************************************/
+
+    /**
+     * Protect the packets sent with XOR parity packets (RFC 5109), and recover lost
+     * packets from the parity packets received.
+     *
+     * The packets sent are arranged in blocks of rows by columns. A parity packet
+     * is sent for each row if there is more than one column, which recovers a single
+     * loss in the row, and for each column if there is more than one row, which
+     * recovers a burst of up to columns losses. FEC packets have the given payload
+     * type, and are sent in a stream of their own, with a separate SSRC and sequence
+     * numbers (RFC 5109, 9), see fecSsrc(). Receivers that do not expect them see
+     * another source, rather than packets out of place in the media stream.
+     *
+     * The same payload type identifies incoming FEC packets. An FEC stream belongs
+     * to the one participant whose media comes from the same address. Packets
+     * received are recovered before they reach the packet buffer, whatever the
+     * sender's layout.
+     *
+     * @param fecPayloadType the payload type, -1 to neither send nor expect FEC packets
+     * @param columns the number of packets in a row
+     * @param rows the number of rows in a block
+     * @return 0 if successful, -1 if the payload type is invalid or the block too large
+     */
+    public int fec(int fecPayloadType, int columns, int rows) {
+        if(fecPayloadType < -1 || fecPayloadType > 127 || fecPayloadType == this.payloadType
+                || fecPayloadType >= 0 && (fecPayloadType == this.rtxPayloadType
+                        || fecPayloadType == this.redPayloadType)) {
+            return -1;
+        }
+        if(fecPayloadType >= 0 && (columns < 1 || rows < 1 || columns * rows < 2
+                || columns > Fec.MAX_SPAN || (rows - 1) * columns + 1 > Fec.MAX_SPAN)) {
+            return -1;
+        }
+        synchronized(this.sendLock) {
+            if(fecPayloadType >= 0 && this.fecSsrc < 0) {
+                do {
+                    this.fecSsrc = this.random.nextInt() & 0xFFFFFFFFL;
+                } while(this.fecSsrc == this.ssrc || this.fecSsrc == this.rtxSsrc);
+            }
+            this.fecPayloadType = fecPayloadType;
+            this.fecEncoder = fecPayloadType < 0 ? null
+                    : new FecEncoder(fecPayloadType, this.fecSsrc, columns, rows);
+        }
+        return 0;
+    }
+
+    /**
+     * The payload type of FEC packets, see fec(int, int, int).
+     *
+     * @return the payload type, -1 if FEC is off
+     */
+    public int fecPayloadType() {
+        return this.fecPayloadType;
+    }
+
+    /**
+     * The SSRC of the FEC stream, see fec(int, int, int).
+     *
+     * @return the SSRC, -1 if no FEC payload type has been set
+     */
+    public long fecSsrc() {
+        return this.fecSsrc;
+    }
+
+    /**
+     * The number of FEC packets sent.
+     *
+     * @return the number of packets
+     */
+    public long getFecSentPktCount() {
+        return this.fecSentPktCount;
+    }
+
+    /**
+     * The number of FEC packets received.
+     *
+     * @return the number of packets
+     */
+    public long getFecReceivedPktCount() {
+        return this.fecReceivedPktCount.get();
+    }
+
+    /**
+     * The number of lost packets recovered from FEC packets.
+     *
+     * @return the number of packets
+     */
+    public long getFecRecoveredPktCount() {
+        return this.fecRecoveredPktCount.get();
+    }
+
+    /********************************************* Redundancy ***************************************/
+
+    /**
+     * Repeat the data of the depth packets sent before in each packet, as redundant
+     * blocks of a RED packet (RFC 2198), and recover lost packets from the redundant
+     * blocks received. Meant for streams of small frames, one per packet, like voice.
+     *
+     * The earlier packets are taken from the send history, so each RED packet costs
+     * only its block headers and the repeated data. Blocks that would make the packet
+     * larger than a send buffer, or that are too far back for the 14 bit timestamp
+     * offset, are left out. The packets' payload type, that of the session, becomes
+     * that of the primary block.
+     *
+     * The same payload type identifies incoming RED packets. The receiver thread turns
+     * them into their primary block, and the redundant blocks that stand in for lost
+     * packets into packets of their own, before the losses are asked for with NACKs.
+     *
+     * @param redPayloadType the payload type, -1 to neither send nor expect RED packets
+     * @param depth the number of earlier packets repeated, up to MAX_REDUNDANCY
+     * @return 0 if successful, -1 if the payload type or depth is invalid
+     */
+    public int redundancy(int redPayloadType, int depth) {
+        if(redPayloadType < -1 || redPayloadType > 127 || redPayloadType == this.payloadType
+                || redPayloadType >= 0 && (redPayloadType == this.rtxPayloadType
+                        || redPayloadType == this.fecPayloadType || depth < 0 || depth > MAX_REDUNDANCY)) {
+            return -1;
+        }
+        synchronized(this.sendLock) {
+            this.redPayloadType = redPayloadType;
+            this.redDepth = redPayloadType < 0 ? 0 : depth;
+            if(redPayloadType >= 0 && this.sendHistory == null) {
+                this.sendHistory = new PacketHistory(REDUNDANCY_HISTORY);
+            } else if(redPayloadType < 0 && this.rtxBucket == null) {
+                this.sendHistory = null;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The payload type of RED packets, see redundancy(int, int).
+     *
+     * @return the payload type, -1 if redundancy is off
+     */
+    public int redPayloadType() {
+        return this.redPayloadType;
+    }
+
+    /**
+     * The number of lost packets recovered from redundant blocks.
+     *
+     * @return the number of packets
+     */
+    public long getRedRecoveredPktCount() {
+        return this.redRecoveredPktCount.get();
+    }
+
+    /********************************************* Transport-wide congestion control ***************************************/
+
+    /**
+     * Number every packet sent with a transport-wide sequence number, in a one-byte
+     * header extension (RFC 8285) with the given ID, and report when the packets
+     * received with one arrived (draft-holmer-rmcat-transport-wide-cc-extensions-01).
+     *
+     * Each participant that sends numbered packets gets a transport feedback message
+     * (RTPFB, FMT 15) every 100 ms, or every TransportFeedback.MAX_STATUS packets. The
+     * feedback received for our own packets gives the change in delay from one packet
+     * to the next, which grows when a queue builds up on the path.
+     *
+     * Retransmissions get a sequence number of their own. FEC packets are not numbered.
+     *
+     * @param extensionId the ID of the extension, 1 to 14, -1 to stop numbering packets
+     * @return 0 if successful, -1 if the ID is invalid
+     */
+    public int transportSequenceNumbers(int extensionId) {
+        if(extensionId != -1 && (extensionId < 1 || extensionId > 14)) {
+            return -1;
+        }
+        synchronized(this.sendLock) {
+            this.transportExtensionId = extensionId;
+            if(extensionId < 0) {
+                this.transportHistory = null;
+            } else if(this.transportHistory == null) {
+                this.transportHistory = new TransportHistory();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The ID of the transport-wide sequence number extension, see transportSequenceNumbers(int).
+     *
+     * @return the ID, -1 if packets are not numbered
+     */
+    public int transportSequenceNumbers() {
+        return this.transportExtensionId;
+    }
+
+    /**
+     * The number of transport feedback messages received for the packets we sent.
+     *
+     * @return the number of messages
+     */
+    public long getTransportFeedbackCount() {
+        return this.transportFeedbackCount;
+    }
+
+    /**
+     * Turns a transport feedback message for the packets we sent into
+     * the delay signal, and hands it to the RTCP session.
+     *
+     * @param raw the array holding the message
+     * @param start where the feedback control information starts
+     * @param length the length of the feedback control information
+     */
+    protected void transportFeedback(byte[] raw, int start, int length) {
+        boolean changed;
+        synchronized(this.sendLock) {
+            TransportHistory history = this.transportHistory;
+            if(history == null || history.feedback(raw, start, length) < 0) {
+                return;
+            }
+            this.transportFeedbackCount++;
+            changed = this.rtcpSession.transportFeedback(history);
+        }
+        // Outside the lock, the application may wait for a thread in sendData()
+        if(changed) {
+            this.rtcpSession.targetChanged();
+        }
+    }
+
+    /**
+     * Estimate the bitrate the session can send at from what the receivers report,
+     * rather than leaving it at the static sessionBandwidth(int).
+     *
+     * The estimator gets the loss fraction of every report block about our stream,
+     * and the delay signal of transport feedback if packets are numbered, see
+     * transportSequenceNumbers(int). Its target drives sessionBandwidth(),
+     * and hence the RTCP interval, and the pacing bucket that RTPOutputStream and
+     * the channels of RTPURLConnection send through unless given a bucket of their own.
+     * RTCPAppIntf.targetBitrateChanged(long) tells encoders when it moves.
+     *
+     * @param estimator the estimator, for instance a LossDelayEstimator, null to stop estimating
+     * @return 0 if successful, -1 if the session has no RTCP
+     */
+    public int bandwidthEstimation(BandwidthEstimator estimator) {
+        if(this.rtcpSession == null) {
+            return -1;
+        }
+        this.rtcpSession.bandwidthEstimator(estimator);
+        return 0;
+    }
+
+    /**
+     * The bandwidth estimator, see bandwidthEstimation(BandwidthEstimator).
+     *
+     * @return the estimator, null if there is none
+     */
+    public BandwidthEstimator bandwidthEstimation() {
+        return this.rtcpSession == null ? null : this.rtcpSession.estimator;
+    }
+
+    /**
+     * The token bucket that paces the streams sent to the estimated bitrate.
+     *
+     * @return the bucket, null without a bandwidth estimator
+     */
+    public TokenBucket getPacingBucket() {
+        return this.rtcpSession == null ? null : this.rtcpSession.pacingBucket;
+    }
+
+    /**
+     * The bitrate the bandwidth estimator currently targets.
+     *
+     * @return the target, in bits per second, -1 without a bandwidth estimator
+     */
+    public long getTargetBitrate() {
+        TokenBucket bucket = getPacingBucket();
+        return bucket == null ? -1 : bucket.getRate();
+    }
+
     /**
      * Fetches the next sequence number for RTP packets.
      * @return the next sequence number
@@ -1060,6 +2069,11 @@ public class RTPSession {
 
             //Generate a new Ssrc for ourselves
             generateSsrc();
+            synchronized(this.sendLock) {
+                if(this.sendHistory != null) {
+                    this.sendHistory.clear();
+                }
+            }
 
             //Get the SDES packets out faster
             rtcpSession.initial = true;
@@ -0,0 +1,506 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many RTPSessions on a small, fixed set of threads.
+ *
+ * Normally every session starts four threads of its own: RTPReceiverThread,
+ * AppCallerThread, RTCPReceiverThread and RTCPSenderThread. Sessions created
+ * with RTPSession(DatagramChannel, DatagramChannel, RTPSessionEngine) start
+ * none. Instead
+ *  - selector threads wait for datagrams on the channels of many sessions,
+ *  - RTCP packets are sent from a shared scheduler,
+ *  - frames are handed to the applications by a pool of dispatcher threads,
+ *    one thread at a time for any given session.
+ *
+ * The threads of an engine keep running until shutdown() is called,
+ * the sessions should be ended before that.
+ *
+ * @author agent
+ */
+public class RTPSessionEngine {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(RTPSessionEngine.class.getName());
+
+    /** The most datagrams read from one channel before the others get a turn */
+    private static final int RECEIVE_BATCH = 64;
+
+    /** The selector threads, sessions are spread over them */
+    private final SelectorLoop[] loops;
+    /** Runs RTCP transmissions and playout deadlines */
+    private final ScheduledThreadPoolExecutor scheduler;
+    /** Calls the applications */
+    private final ExecutorService dispatcher;
+    /** Picks the selector thread for the next session */
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    /** Cleared by shutdown() */
+    private volatile boolean running = true;
+
+    /**
+     * Creates an engine with a selector thread and a dispatcher thread per processor,
+     * and a single scheduler thread.
+     *
+     * @throws IOException if a selector could not be opened
+     */
+    public RTPSessionEngine() throws IOException {
+        this(Runtime.getRuntime().availableProcessors(), 1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an engine and starts its threads.
+     *
+     * @param selectorThreads the number of threads receiving RTP and RTCP packets
+     * @param schedulerThreads the number of threads sending RTCP packets
+     * @param dispatcherThreads the number of threads calling the applications
+     * @throws IOException if a selector could not be opened
+     */
+    public RTPSessionEngine(int selectorThreads, int schedulerThreads, int dispatcherThreads) throws IOException {
+        scheduler = new ScheduledThreadPoolExecutor(schedulerThreads, new NamedThreadFactory("RTPSessionEngine-scheduler-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        dispatcher = Executors.newFixedThreadPool(dispatcherThreads, new NamedThreadFactory("RTPSessionEngine-dispatcher-"));
+
+        loops = new SelectorLoop[selectorThreads];
+        for(int i=0; i<selectorThreads; i++) {
+            loops[i] = new SelectorLoop(Selector.open(), "RTPSessionEngine-selector-" + i);
+        }
+        for(int i=0; i<selectorThreads; i++) {
+            loops[i].thread.start();
+        }
+    }
+
+    /**
+     * Stops all threads of the engine. Sessions still running on it stop receiving.
+     */
+    public void shutdown() {
+        running = false;
+        for(int i=0; i<loops.length; i++) {
+            loops[i].selector.wakeup();
+        }
+        scheduler.shutdownNow();
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Takes over receiving RTP and delivering frames for a session whose application
+     * has just registered. Called by RTPSession.registerRTPSession().
+     *
+     * @param rtpSession the session
+     * @return 0 if successful, -1 if the channel could not be switched to non-blocking mode
+     */
+    protected int register(RTPSession rtpSession) {
+        int first = nextLoop.getAndIncrement() & 0x7FFFFFFF;
+        SelectorLoop loop = loops[first % loops.length];
+        Registration reg = new Registration(rtpSession, loop);
+        try {
+            rtpSession.rtpChannel.configureBlocking(false);
+            if(rtpSession.rtpChannels != null) {
+                for(int i=1; i<rtpSession.rtpChannels.length; i++) {
+                    rtpSession.rtpChannels[i].configureBlocking(false);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "RTPSessionEngine.register() failed", e);
+            return -1;
+        }
+        rtpSession.engineReg = reg;
+        if(rtpSession.rtpReaders == null) {
+            loop.register(rtpSession.rtpChannel, new ChannelReader(rtpSession, rtpSession.recvThrd));
+        } else {
+            // One selector thread per channel, as far as they go
+            for(int i=0; i<rtpSession.rtpReaders.length; i++) {
+                SelectorLoop readerLoop = loops[(first + i) % loops.length];
+                RTPReceiverThread reader = rtpSession.rtpReaders[i];
+                reader.tasks = readerLoop.tasks;
+                reader.selector = readerLoop.selector;
+                readerLoop.register(rtpSession.rtpChannels[i], new ChannelReader(rtpSession, reader));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Takes over receiving and sending RTCP for a session. Called by RTCPSession.start().
+     *
+     * @param rtcpSession the RTCP part of a registered session
+     */
+    protected void startRtcp(RTCPSession rtcpSession) {
+        Registration reg = rtcpSession.rtpSession.engineReg;
+        if(rtcpSession.rtcpChannel != null && !rtcpSession.rtpSession.rtcpMux) {
+            try {
+                rtcpSession.rtcpChannel.configureBlocking(false);
+                reg.loop.register(rtcpSession.rtcpChannel, new ChannelReader(rtcpSession.rtpSession, null));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "RTPSessionEngine.startRtcp() can't receive RTCP", e);
+            }
+        }
+        // Like RTCPSenderThread, give the application a chance to register some participants
+        reg.scheduleRtcp(10 + rtcpSession.nextDelay);
+    }
+
+    /**
+     * Lets a session send feedback before its next regular RTCP packet,
+     * the counterpart of interrupting the RTCPSenderThread.
+     *
+     * @param rtcpSession the RTCP part of a registered session
+     */
+    protected void wakeRtcp(RTCPSession rtcpSession) {
+        Registration reg = rtcpSession.rtpSession.engineReg;
+        if(reg != null) {
+            scheduler.execute(reg.rtcpWake);
+        }
+    }
+
+    /**
+     * Asks a dispatcher thread to hand the frames a session has ready to its application.
+     * Called by RTPSession.frameReady(), which makes sure a session is only dispatched
+     * once until it has been drained.
+     *
+     * @param rtpSession the session
+     */
+    protected void dispatch(RTPSession rtpSession) {
+        if(running) {
+            dispatcher.execute(rtpSession.engineReg);
+        }
+    }
+
+    /**
+     * Stops the timers of an ending session. Its channels are closed by the session.
+     *
+     * @param rtpSession the session
+     */
+    protected void unregister(RTPSession rtpSession) {
+        Registration reg = rtpSession.engineReg;
+        if(reg != null) {
+            reg.cancel();
+        }
+    }
+
+    /**
+     * The state the engine keeps for a session. Running it delivers the
+     * frames of the session, on a dispatcher thread.
+     */
+    final class Registration implements Runnable {
+        /** The session */
+        final RTPSession rtpSession;
+        /** The selector thread that receives for the session */
+        final SelectorLoop loop;
+        /** The next regular RTCP transmission, guarded by this */
+        private ScheduledFuture<?> rtcpTask = null;
+        /** Wakes the dispatcher at the next playout deadline, only used by the dispatching thread */
+        private ScheduledFuture<?> wakeup = null;
+        /** The time wakeup is set for, as in System.nanoTime() */
+        private long wakeupTime;
+        /** Set when a playout deadline has passed, guarded by rtpSession.pktBufLock */
+        private boolean wakeupDue = false;
+
+        /** Sends a regular RTCP packet and schedules the next one */
+        final Runnable rtcpTick = new Runnable() {
+            public void run() {
+                if(rtpSession.endSession) {
+                    return;
+                }
+                try {
+                    rtpSession.rtcpSession.senderThrd.sendRegular();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "RTPSessionEngine: sending RTCP failed", e);
+                }
+                scheduleRtcp(rtpSession.rtcpSession.nextDelay);
+            }
+        };
+
+        /** Sends feedback early if possible, then waits for the regular RTCP packet again */
+        final Runnable rtcpWake = new Runnable() {
+            public void run() {
+                synchronized(Registration.this) {
+                    if(rtcpTask != null) {
+                        rtcpTask.cancel(false);
+                    }
+                }
+                if(rtpSession.endSession) {
+                    return;
+                }
+                RTCPSession rtcpSession = rtpSession.rtcpSession;
+                if(rtcpSession.fbWaiting != -1) {
+                    rtcpSession.senderThrd.reconsiderTiming(rtcpSession.fbWaiting);
+                }
+                scheduleRtcp(rtcpSession.nextDelay);
+            }
+        };
+
+        /** Dispatches the session once a playout deadline has passed */
+        private final Runnable wakeupTask = new Runnable() {
+            public void run() {
+                boolean go = false;
+                rtpSession.pktBufLock.lock();
+                try {
+                    wakeupDue = true;
+                    if(!rtpSession.dispatchScheduled) {
+                        rtpSession.dispatchScheduled = true;
+                        go = true;
+                    }
+                } finally {
+                    rtpSession.pktBufLock.unlock();
+                }
+                if(go) {
+                    dispatch(rtpSession);
+                }
+            }
+        };
+
+        /**
+         * Creates the state for a session.
+         *
+         * @param rtpSession the session
+         * @param loop the selector thread that receives for the session
+         */
+        Registration(RTPSession rtpSession, SelectorLoop loop) {
+            this.rtpSession = rtpSession;
+            this.loop = loop;
+        }
+
+        /**
+         * Schedules the next regular RTCP transmission.
+         *
+         * @param delay in milliseconds
+         */
+        synchronized void scheduleRtcp(long delay) {
+            if(!rtpSession.endSession && running) {
+                rtcpTask = scheduler.schedule(rtcpTick, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Cancels the timers of the session.
+         */
+        synchronized void cancel() {
+            if(rtcpTask != null) {
+                rtcpTask.cancel(false);
+            }
+            if(wakeup != null) {
+                wakeup.cancel(false);
+            }
+        }
+
+        /**
+         * Delivers the frames the session has ready, like one pass of AppCallerThread.run().
+         */
+        public void run() {
+            AppCallerThread appCaller = rtpSession.appCallerThrd;
+            rtpSession.pktBufLock.lock();
+            try {
+                appCaller.takeReady();
+                wakeupDue = false;
+            } finally {
+                rtpSession.pktBufLock.unlock();
+            }
+
+            long next = Long.MAX_VALUE;
+            try {
+                next = appCaller.deliverReady();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "RTPSessionEngine: delivering frames failed", e);
+            }
+
+            if(next != Long.MAX_VALUE
+                    && (wakeup == null || wakeup.isDone() || next - wakeupTime < 0)) {
+                // Timers that are no longer the earliest fire harmlessly
+                wakeupTime = next;
+                synchronized(this) {
+                    if(!rtpSession.endSession && running) {
+                        wakeup = scheduler.schedule(wakeupTask, next - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+
+            // Go again if anything was queued in the meantime, otherwise let the next packet dispatch
+            boolean again;
+            rtpSession.pktBufLock.lock();
+            try {
+                again = (rtpSession.readyHead != null || wakeupDue) && !rtpSession.endSession;
+                if(!again) {
+                    rtpSession.dispatchScheduled = false;
+                }
+            } finally {
+                rtpSession.pktBufLock.unlock();
+            }
+            if(again) {
+                dispatch(rtpSession);
+            }
+        }
+    }
+
+    /**
+     * Attached to the selection key of a channel, reads from it when it is readable.
+     */
+    private static final class ChannelReader {
+        /** The session the channel belongs to */
+        final RTPSession rtpSession;
+        /** The receiver of an RTP channel, null for the RTCP channel */
+        final RTPReceiverThread rtpReader;
+
+        /**
+         * Creates a reader.
+         *
+         * @param rtpSession the session the channel belongs to
+         * @param rtpReader the receiver of an RTP channel, null for the RTCP channel
+         */
+        ChannelReader(RTPSession rtpSession, RTPReceiverThread rtpReader) {
+            this.rtpSession = rtpSession;
+            this.rtpReader = rtpReader;
+        }
+
+        /**
+         * Reads the datagrams waiting on the channel, up to RECEIVE_BATCH of them.
+         *
+         * @param loop the selector thread, for its scratch buffer
+         */
+        void read(SelectorLoop loop) {
+            if(rtpReader == null) {
+                RTCPSession rtcpSession = rtpSession.rtcpSession;
+                for(int i=0; i<RECEIVE_BATCH
+                        && rtcpSession.recvThrd.receiveFromChannel(rtcpSession.rtcpChannel, loop.rtcpBuf); i++);
+            } else {
+                for(int i=0; i<RECEIVE_BATCH && rtpReader.receiveFromChannel(); i++);
+            }
+        }
+    }
+
+    /**
+     * A selector thread.
+     */
+    private final class SelectorLoop implements Runnable {
+        /** The selector of the channels this thread receives on */
+        final Selector selector;
+        /** The thread */
+        final Thread thread;
+        /** Registrations, which have to happen on this thread */
+        final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        /** RTCP datagrams are received into this before they are parsed */
+        final ByteBuffer rtcpBuf = ByteBuffer.allocate(1500);
+
+        /**
+         * Creates the thread, but does not start it.
+         *
+         * @param selector the selector
+         * @param name the name of the thread
+         */
+        SelectorLoop(Selector selector, String name) {
+            this.selector = selector;
+            this.thread = new Thread(this, name);
+        }
+
+        /**
+         * Registers a channel for reading, on the selector thread.
+         *
+         * @param channel a non-blocking channel
+         * @param reader what to do when it is readable
+         */
+        void register(final DatagramChannel channel, final ChannelReader reader) {
+            tasks.add(new Runnable() {
+                public void run() {
+                    try {
+                        channel.register(selector, SelectionKey.OP_READ, reader);
+                    } catch (ClosedChannelException e) {
+                        LOGGER.log(Level.FINE, "RTPSessionEngine: channel closed before it was registered", e);
+                    }
+                }
+            });
+            selector.wakeup();
+        }
+
+        /**
+         * Waits for readable channels and reads them, until the engine is shut down.
+         */
+        public void run() {
+            while(running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "RTPSessionEngine: select failed", e);
+                }
+
+                Runnable task;
+                while((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while(iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    if(key.isValid()) {
+                        try {
+                            ((ChannelReader) key.attachment()).read(this);
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.WARNING, "RTPSessionEngine: receiving failed", e);
+                        }
+                    }
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "RTPSessionEngine: closing selector failed", e);
+            }
+        }
+    }
+
+    /**
+     * Names the threads of the engine.
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+        /** Prefix of the thread names */
+        private final String prefix;
+        /** Number of the next thread */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Creates a factory.
+         *
+         * @param prefix prefix of the thread names
+         */
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + count.getAndIncrement());
+        }
+    }
+}
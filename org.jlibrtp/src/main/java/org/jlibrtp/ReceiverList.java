@@ -0,0 +1,149 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The unicast receivers of a session, in the order they were added.
+ *
+ * Iterators work on a snapshot, like those of CopyOnWriteArrayList, so the
+ * sending threads never lock. Adding a receiver does not copy the list
+ * though: the new receiver is written past the end of the array, which no
+ * snapshot covers, and a new snapshot is published. The array only grows
+ * by doubling, so joins take amortized constant time. Removing a receiver
+ * copies the array, since older snapshots must not see it change.
+ *
+ * @author agent
+ */
+class ReceiverList implements Iterable<Participant> {
+    /** The receivers as of the last change */
+    private volatile Snapshot snapshot = new Snapshot(new Participant[8], 0);
+    /** Incremented on every change, after the snapshot is published */
+    private volatile int version = 0;
+
+    /**
+     * A prefix of an array. The array may be longer, and filled further by
+     * later additions, but the first size elements never change.
+     */
+    private static final class Snapshot {
+        /** The receivers */
+        final Participant[] items;
+        /** The number of receivers */
+        final int size;
+
+        /**
+         * Creates a snapshot.
+         *
+         * @param items the receivers
+         * @param size the number of receivers
+         */
+        Snapshot(Participant[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Adds a receiver at the end.
+     *
+     * @param p the receiver
+     */
+    synchronized void add(Participant p) {
+        Snapshot s = snapshot;
+        Participant[] items = s.items;
+        if(s.size == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+        }
+        items[s.size] = p;
+        snapshot = new Snapshot(items, s.size + 1);
+        version++;
+    }
+
+    /**
+     * Removes a receiver.
+     *
+     * @param p the receiver
+     * @return true if it was in the list
+     */
+    synchronized boolean remove(Participant p) {
+        Snapshot s = snapshot;
+        for(int i=0; i<s.size; i++) {
+            if(s.items[i] == p) {
+                Participant[] items = new Participant[s.items.length];
+                System.arraycopy(s.items, 0, items, 0, i);
+                System.arraycopy(s.items, i + 1, items, i, s.size - i - 1);
+                snapshot = new Snapshot(items, s.size - 1);
+                version++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the list changed. Read it before iterating: if it is
+     * unchanged the next time, so are the receivers iterated over.
+     *
+     * @return a number that changes whenever a receiver is added or removed
+     */
+    int version() {
+        return version;
+    }
+
+    /**
+     * The number of receivers.
+     *
+     * @return the number of receivers
+     */
+    int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * Iterates over the receivers there were when this was called.
+     * The iterator does not support remove().
+     *
+     * @return the iterator
+     */
+    public Iterator<Participant> iterator() {
+        final Snapshot s = snapshot;
+        return new Iterator<Participant>() {
+            /** Index of the next receiver */
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < s.size;
+            }
+
+            public Participant next() {
+                if(next >= s.size) {
+                    throw new NoSuchElementException();
+                }
+                return s.items[next++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
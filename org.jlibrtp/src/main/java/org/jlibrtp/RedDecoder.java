@@ -0,0 +1,187 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Recovers lost packets of one participant's stream from the redundant
+ * blocks (RFC 2198) of the packets that follow them.
+ *
+ * Each RED packet is turned into its primary block, in place. A redundant
+ * block becomes a packet of its own if the packet it is a copy of has not
+ * been seen. As with most RED senders, the blocks of a packet are assumed
+ * to be copies of the packets right before it, in order, so the block n
+ * from the end has the sequence number of the packet minus n.
+ *
+ * Not thread safe, used by the thread that receives the participant's packets,
+ * so that recovered packets are not asked for with NACKs.
+ *
+ * @author agent
+ */
+class RedDecoder {
+    /** The number of sequence numbers up to the highest one that are tracked */
+    private static final int WINDOW = 64;
+    /** The most redundant blocks in a packet */
+    private static final int MAX_BLOCKS = 16;
+
+    /** The highest sequence number seen, -1 before the first packet */
+    private int highest = -1;
+    /** The sequence numbers seen, bit i is highest - i */
+    private long seen = 0;
+    /** Packets recovered and not yet taken by poll() */
+    private final ArrayDeque<RtpPkt> recovered = new ArrayDeque<RtpPkt>();
+
+    /** Payload type of each redundant block of the current packet */
+    private final int[] payloadTypes = new int[MAX_BLOCKS];
+    /** Timestamp offset of each redundant block of the current packet */
+    private final int[] timeStampOffsets = new int[MAX_BLOCKS];
+    /** Length of each redundant block of the current packet */
+    private final int[] lengths = new int[MAX_BLOCKS];
+
+    /**
+     * Notes a packet, and turns it into its primary block if it is a RED packet.
+     * The redundant blocks that stand in for lost packets are queued for poll().
+     *
+     * @param pkt the packet, received into a buffer
+     * @param redPayloadType the payload type of RED packets
+     * @return 0 if the packet is to be delivered, -1 if it was seen before or is malformed
+     */
+    protected int decode(RtpPkt pkt, int redPayloadType) {
+        int seqNum = pkt.getSeqNumber();
+        if(isSeen(seqNum)) {
+            return -1;
+        }
+        if(pkt.getPayloadType() != redPayloadType) {
+            mark(seqNum);
+            return 0;
+        }
+
+        ByteBuffer buf = pkt.getBuffer();
+        if(buf == null) {
+            return -1;
+        }
+        int start = pkt.getPayloadOffset();
+        int end = start + pkt.getPayloadLength();
+        int pos = start;
+        int blocks = 0;
+        int redundantLength = 0;
+        while(pos < end && (buf.get(pos) & 0x80) != 0) {
+            if(pos + 4 > end || blocks == MAX_BLOCKS) {
+                return -1;
+            }
+            int header = buf.getInt(pos);
+            payloadTypes[blocks] = (header >>> 24) & 0x7F;
+            timeStampOffsets[blocks] = (header >>> 10) & 0x3FFF;
+            lengths[blocks] = header & 0x3FF;
+            redundantLength += lengths[blocks];
+            blocks++;
+            pos += 4;
+        }
+        if(pos == end || pos + 1 + redundantLength > end) {
+            return -1;
+        }
+        int primaryPayloadType = buf.get(pos++) & 0x7F;
+
+        int headerStart = buf.position();
+        int headerLength = start - headerStart;
+        long timeStamp = pkt.getTimeStamp();
+        // Nothing before the first packet is recovered
+        boolean first = highest < 0;
+        for(int i=0; i<blocks; i++) {
+            int blockSeqNum = (seqNum - (blocks - i)) & 0xFFFF;
+            if(!first && !isSeen(blockSeqNum)) {
+                byte[] raw = new byte[headerLength + lengths[i]];
+                ByteBuffer out = ByteBuffer.wrap(raw);
+                for(int j=0; j<headerLength; j++) {
+                    raw[j] = buf.get(headerStart + j);
+                }
+                // No padding, no marker
+                raw[0] &= ~0x20;
+                raw[1] = (byte) payloadTypes[i];
+                out.putShort(2, (short) blockSeqNum);
+                out.putInt(4, (int) (timeStamp - timeStampOffsets[i]));
+                for(int j=0; j<lengths[i]; j++) {
+                    raw[headerLength + j] = buf.get(pos + j);
+                }
+                RtpPkt block = new RtpPkt(out, null);
+                if(block.getVersion() == 2) {
+                    mark(blockSeqNum);
+                    recovered.add(block);
+                }
+            }
+            pos += lengths[i];
+        }
+
+        mark(seqNum);
+        return pkt.unwrapRed(pos - start, primaryPayloadType);
+    }
+
+    /**
+     * Takes the next recovered packet.
+     *
+     * @return the packet, null if there is none
+     */
+    protected RtpPkt poll() {
+        return recovered.poll();
+    }
+
+    /**
+     * Whether a packet has been seen. Packets older than the window count
+     * as seen, they would be too late anyway.
+     *
+     * @param seqNum the sequence number
+     * @return true if it has been seen
+     */
+    private boolean isSeen(int seqNum) {
+        if(highest < 0) {
+            return false;
+        }
+        int back = (highest - seqNum) & 0xFFFF;
+        if(back >= 0x8000) {
+            // Newer than the highest
+            return false;
+        }
+        return back >= WINDOW || (seen & (1L << back)) != 0;
+    }
+
+    /**
+     * Notes that a packet has been seen.
+     *
+     * @param seqNum the sequence number
+     */
+    private void mark(int seqNum) {
+        if(highest < 0) {
+            highest = seqNum;
+            seen = 1;
+            return;
+        }
+        int ahead = (seqNum - highest) & 0xFFFF;
+        if(ahead < 0x8000) {
+            seen = ahead >= WINDOW ? 1 : (seen << ahead) | 1;
+            highest = seqNum;
+        } else {
+            int back = 0x10000 - ahead;
+            if(back < WINDOW) {
+                seen |= 1L << back;
+            }
+        }
+    }
+}
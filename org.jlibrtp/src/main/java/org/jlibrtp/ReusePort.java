@@ -0,0 +1,116 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Opens several datagram channels on the same address and port, with SO_REUSEPORT.
+ *
+ * The kernel then spreads the incoming datagrams over the channels, keeping
+ * each flow (source address and port) on one channel. An RTPSession created
+ * with such channels, see RTPSession(DatagramChannel[], DatagramChannel),
+ * receives on all of them in parallel.
+ *
+ * SO_REUSEPORT is looked up by name among the options the platform supports,
+ * since StandardSocketOptions has it only from Java 9 on. Linux, the BSDs and
+ * macOS support it, but only Linux balances the datagrams between the sockets.
+ *
+ * @author agent
+ */
+public final class ReusePort {
+
+    /**
+     * Not instantiated.
+     */
+    private ReusePort() {
+    }
+
+    /**
+     * Finds SO_REUSEPORT among the options of a channel.
+     *
+     * @param channel the channel
+     * @return the option, null if it is not supported
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> option(DatagramChannel channel) {
+        for(SocketOption<?> opt : channel.supportedOptions()) {
+            if("SO_REUSEPORT".equals(opt.name()) && opt.type() == Boolean.class) {
+                return (SocketOption<Boolean>) opt;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether datagram channels support SO_REUSEPORT on this platform.
+     *
+     * @return true if they do
+     */
+    public static boolean isSupported() {
+        try {
+            DatagramChannel channel = DatagramChannel.open();
+            try {
+                return option(channel) != null;
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens channels bound to the same local address, in blocking mode.
+     *
+     * @param local the address to bind to, with port 0 the channels share an ephemeral port
+     * @param count the number of channels
+     * @return the channels
+     * @throws IOException if SO_REUSEPORT is not supported, or binding failed
+     */
+    public static DatagramChannel[] open(InetSocketAddress local, int count) throws IOException {
+        DatagramChannel[] channels = new DatagramChannel[count];
+        try {
+            for(int i=0; i<count; i++) {
+                channels[i] = DatagramChannel.open();
+                SocketOption<Boolean> opt = option(channels[i]);
+                if(opt == null) {
+                    throw new IOException("SO_REUSEPORT is not supported");
+                }
+                channels[i].setOption(opt, Boolean.TRUE);
+                channels[i].bind(local);
+                if(i == 0) {
+                    // The others join whatever port the first one got
+                    local = (InetSocketAddress) channels[0].getLocalAddress();
+                }
+            }
+        } catch (IOException e) {
+            for(int i=0; i<count; i++) {
+                if(channels[i] != null) {
+                    channels[i].close();
+                }
+            }
+            throw e;
+        }
+        return channels;
+    }
+}
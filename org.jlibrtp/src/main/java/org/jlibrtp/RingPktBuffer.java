@@ -0,0 +1,324 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A packet buffer backed by a ring of slots, indexed by the extended
+ * sequence number of the packets (the 16 bit sequence number plus the
+ * number of times it has wrapped around).
+ *
+ * Inserting a packet, detecting a duplicate and popping the oldest frame
+ * take constant time regardless of the order packets arrive in, and no
+ * nodes are allocated per packet. Sequence numbers are compared modulo
+ * 2^16, so ordering survives the wraparound.
+ *
+ * The behavior follows rtpSession.pktBufBehavior():
+ *  &gt;0 - Wait for missing packets until more than that many packets are buffered
+ *  0 - Hand over packets in order, skip missing ones right away
+ *
+ * Packets older than the last one handed to the application are dropped.
+ *
+ * @author agent
+ */
+public class RingPktBuffer extends PktBuffer {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(RingPktBuffer.class.getName());
+
+    /** The default number of slots, must be a power of two */
+    protected static final int DEFAULT_CAPACITY = 256;
+
+    /** The packets, at index (extended sequence number &amp; mask) */
+    private final RtpPkt[] slots;
+    /** slots.length - 1 */
+    private final int mask;
+    /** Extended sequence number of the next packet to hand to the application */
+    private long headSeq;
+    /** Highest extended sequence number received so far */
+    private long highestSeq;
+    /** Whether a frame has been handed to the application yet */
+    private boolean started = false;
+    /** Packets skipped because they did not arrive in time */
+    protected long skippedPkts = 0;
+
+    /**
+     * Creates a new ring buffer with the default capacity.
+     *
+     * @param rtpSession the parent RTPSession
+     * @param p the participant to which this packetbuffer belongs.
+     * @param aPkt The first RTP packet, to be added to the buffer
+     */
+    protected RingPktBuffer(RTPSession rtpSession, Participant p, RtpPkt aPkt) {
+        this(rtpSession, p, aPkt, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new ring buffer.
+     *
+     * @param rtpSession the parent RTPSession
+     * @param p the participant to which this packetbuffer belongs.
+     * @param aPkt The first RTP packet, to be added to the buffer
+     * @param capacity the number of slots, rounded up to a power of two
+     */
+    protected RingPktBuffer(RTPSession rtpSession, Participant p, RtpPkt aPkt, int capacity) {
+        super(rtpSession, p, aPkt.getSsrc());
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new RtpPkt[size];
+        mask = size - 1;
+
+        // Start one cycle in, so that early reordering cannot go negative
+        highestSeq = 0x10000 | aPkt.getSeqNumber();
+        headSeq = highestSeq;
+        slots[(int) (highestSeq & mask)] = aPkt;
+        length = 1;
+    }
+
+    /**
+     * Extends a 16 bit sequence number, using the highest one received as reference.
+     *
+     * @param seqNum the sequence number from the packet
+     * @return the extended sequence number
+     */
+    private long extendSeq(int seqNum) {
+        // Signed distance, modulo 2^16
+        int delta = (short) (seqNum - (int) (highestSeq & 0xFFFF));
+        return highestSeq + delta;
+    }
+
+    /**
+     * Adds a packet in constant time.
+     *
+     * @param aPkt the packet to be added to the buffer.
+     * @return 0 if the packet was added, -1 if it was too late, -2 if it is a duplicate
+     */
+    protected int addPkt(RtpPkt aPkt) {
+        if(aPkt == null) {
+            LOGGER.info("! RingPktBuffer.addPkt(aPkt) aPkt was null");
+            return -5;
+        }
+        if(aPkt.getSsrc() != SSRC) {
+            LOGGER.warning("RingPktBuffer.addPkt() SSRCs don't match!");
+        }
+
+        long seq = extendSeq(aPkt.getSeqNumber());
+
+        if(seq < headSeq) {
+            if(started || highestSeq - seq >= slots.length) {
+                if(LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.finest("RingPktBuffer.addPkt Dropped a packet due to lag! " + seq + " vs " + headSeq);
+                }
+                return -1;
+            }
+            // Nothing was handed over yet, the first packet was simply not the first one sent
+            headSeq = seq;
+        } else if(seq - headSeq >= slots.length) {
+            // Too far ahead to fit, give up on the oldest packets
+            advanceHead(seq - slots.length + 1);
+        }
+
+        int idx = (int) (seq & mask);
+        if(slots[idx] != null) {
+            if(LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("RingPktBuffer.addPkt Dropped a duplicate packet! " + aPkt.getSeqNumber());
+            }
+            return -2;
+        }
+        slots[idx] = aPkt;
+        length++;
+        if(seq > highestSeq) {
+            highestSeq = seq;
+        }
+
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("<- RingPktBuffer.addPkt() , length:" + length + " seq " + seq);
+        }
+        return 0;
+    }
+
+    /**
+     * Moves the head forward, releasing the packets it passes.
+     *
+     * @param newHead the extended sequence number the head is moved to
+     */
+    private void advanceHead(long newHead) {
+        // Never more than one lap, whatever is further back has been cleared already
+        long from = Math.max(headSeq, newHead - slots.length);
+        for(long s = from; s < newHead && length > 0; s++) {
+            int idx = (int) (s & mask);
+            if(slots[idx] != null) {
+                slots[idx].release();
+                slots[idx] = null;
+                length--;
+            }
+        }
+        skippedPkts += newHead - headSeq;
+        headSeq = newHead;
+    }
+
+    /**
+     * Moves the head to the oldest packet in the buffer, skipping missing ones.
+     * The buffer must not be empty.
+     */
+    protected void skipToOldest() {
+        long s = headSeq;
+        while(slots[(int) (s & mask)] == null) {
+            s++;
+        }
+        skippedPkts += s - headSeq;
+        headSeq = s;
+    }
+
+    /**
+     * The packet at the head of the ring, i.e. the next one in sequence.
+     *
+     * @return the packet, null if it is missing
+     */
+    protected RtpPkt headPkt() {
+        return slots[(int) (headSeq & mask)];
+    }
+
+    /**
+     * The oldest packet in the buffer, which may be behind missing ones.
+     *
+     * @return the packet, null if the buffer is empty
+     */
+    protected RtpPkt oldestPkt() {
+        if(length == 0) {
+            return null;
+        }
+        long s = headSeq;
+        RtpPkt pkt;
+        while((pkt = slots[(int) (s & mask)]) == null) {
+            s++;
+        }
+        return pkt;
+    }
+
+    /**
+     * Counts the consecutive packets at the head that share the RTP timestamp
+     * of the head packet, if frame reconstruction is enabled.
+     *
+     * @return the number of packets in the frame at the head, at least 1
+     */
+    protected int frameLength() {
+        int count = 1;
+        if(rtpSession.frameReconstruction) {
+            long timeStamp = headPkt().getTimeStamp();
+            RtpPkt next;
+            while(count < length
+                    && (next = slots[(int) ((headSeq + count) & mask)]) != null
+                    && next.getTimeStamp() == timeStamp) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The number of packets the application expects in the frame at the head.
+     *
+     * @return see RTPAppIntf.frameSize()
+     */
+    protected int expectedFrameSize() {
+        if(rtpSession.isRegistered()) {
+            return rtpSession.appIntf.frameSize(headPkt().getPayloadType());
+        }
+        return 1;
+    }
+
+    /**
+     * Takes packets off the head of the ring and turns them into a frame.
+     *
+     * @param count the number of packets, see frameLength()
+     * @param noPkts the number of packets the application expects
+     * @return the frame
+     */
+    protected DataFrame takeFrame(int count, int noPkts) {
+        DataFrame frame = rtpSession.framePool.acquire();
+        RtpPkt first = slots[(int) (headSeq & mask)];
+        lastTimestamp = first.getTimeStamp();
+        frame.begin(first, lastTimestamp, this.p, noPkts, count);
+        for(int i=0; i<count; i++) {
+            int idx = (int) ((headSeq + i) & mask);
+            RtpPkt pkt = slots[idx];
+            slots[idx] = null;
+            frame.add(pkt, pkt.getSeqNumber());
+        }
+        frame.finish();
+        headSeq += count;
+        length -= count;
+        started = true;
+
+        lastSeqNumber = frame.lastSeqNum;
+
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("<- RingPktBuffer.takeFrame() returns frame of " + count + " packets, length " + length);
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the frame at the head of the ring if it may be handed over.
+     *
+     * @return the oldest frame, null if there is none or if we should wait for missing packets
+     */
+    protected DataFrame popOldestFrame() {
+        if(length == 0) {
+            return null;
+        }
+
+        int behavior = rtpSession.pktBufBehavior;
+        if(headPkt() == null) {
+            if(behavior > 0 && length <= behavior) {
+                // Wait a little longer for the missing packet
+                return null;
+            }
+            skipToOldest();
+        }
+
+        int noPkts = expectedFrameSize();
+        int count = 1;
+        if(behavior > 0) {
+            count = frameLength();
+            // The rest of the frame may still be on its way
+            if(count < noPkts && length <= behavior
+                    && slots[(int) ((headSeq + count) & mask)] == null) {
+                return null;
+            }
+        }
+        return takeFrame(count, noPkts);
+    }
+
+    /**
+     * Prints out the packet buffer, oldest packet first.
+     */
+    protected void debugPrint() {
+        LOGGER.finest("RingPktBuffer.debugPrint() : length " + length + " SSRC " + SSRC
+                + " head " + headSeq + " highest " + highestSeq + " skipped " + skippedPkts);
+        for(long s = headSeq; s <= highestSeq; s++) {
+            RtpPkt pkt = slots[(int) (s & mask)];
+            if(pkt != null) {
+                LOGGER.finest("   seqNum:" + pkt.getSeqNumber() + " timeStamp: " + pkt.getTimeStamp());
+            }
+        }
+    }
+}
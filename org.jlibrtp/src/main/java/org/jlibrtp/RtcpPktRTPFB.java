@@ -24,7 +24,10 @@ import java.util.logging.Logger;
 /**
  * RTCP packets for RTP Feedback Messages
  *
- * In line with RFC 4585, this packet currently only supports NACKs
+ * In line with RFC 4585, this packet supports NACKs, as well as transport
+ * feedback messages (FMT 15, draft-holmer-rmcat-transport-wide-cc-extensions-01),
+ * whose feedback control information is written by TransportFeedback and read
+ * by TransportHistory.
  *
  * @author Arne Kepp
  */
@@ -41,6 +44,8 @@ public class RtcpPktRTPFB extends RtcpPkt {
     protected int PID[];
     /** bitmask of following lost packets, shared index with PID */
     protected int BLP[];
+    /** Feedback control information of a transport feedback message, null for NACKs */
+    protected byte[] fci = null;
 
     /**
      * Constructor for RTP Feedback Message
@@ -52,12 +57,29 @@ public class RtcpPktRTPFB extends RtcpPkt {
      * @param BLP bitmask of following lost packets, shared index with PID
      */
     protected RtcpPktRTPFB(long ssrcPacketSender, long ssrcMediaSource, int FMT, int[] PID, int[] BLP) {
+        super.ssrc = ssrcPacketSender;
+        this.ssrcMediaSource = ssrcMediaSource;
         super.packetType = 205; //RTPFB
         super.itemCount = FMT;
         this.PID = PID;
         this.BLP = BLP;
     }
 
+    /**
+     * Constructor for a transport feedback message
+     *
+     * @param ssrcPacketSender SSRC of sender, taken from RTPSession
+     * @param ssrcMediaSource SSRC of recipient of this message
+     * @param fci the feedback control information, see TransportFeedback
+     */
+    protected RtcpPktRTPFB(long ssrcPacketSender, long ssrcMediaSource, byte[] fci) {
+        super.ssrc = ssrcPacketSender;
+        this.ssrcMediaSource = ssrcMediaSource;
+        super.packetType = 205; //RTPFB
+        super.itemCount = 15;
+        this.fci = fci;
+    }
+
     /**
      * Constructor that parses a raw packet to retrieve information
      *
@@ -82,12 +104,16 @@ public class RtcpPktRTPFB extends RtcpPkt {
 
             ssrcMediaSource = StaticProcs.bytesToUIntLong(aRawPkt,8+start);
 
-            if(ssrcMediaSource == rtpSession.ssrc) {
+            if(ssrcMediaSource == rtpSession.ssrc && super.itemCount == 15) {
+                // Transport feedback, the delays of the packets we sent
+                super.ssrc = StaticProcs.bytesToUIntLong(aRawPkt,4+start);
+                rtpSession.transportFeedback(aRawPkt, start + 12, (super.length - 2)*4);
+            } else if(ssrcMediaSource == rtpSession.ssrc) {
                 super.ssrc = StaticProcs.bytesToUIntLong(aRawPkt,4+start);
                 int loopStop = super.length - 2;
                 PID = new int[loopStop];
                 BLP = new int[loopStop];
-                int curStart = 12;
+                int curStart = start + 12;
 
                 // Loop over Feedback Control Information (FCI) fields
                 for(int i=0; i< loopStop; i++) {
@@ -96,8 +122,15 @@ public class RtcpPktRTPFB extends RtcpPkt {
                     curStart += 4;
                 }
 
-                rtpSession.rtcpAVPFIntf.RTPFBPktReceived(
-                        super.ssrc, super.itemCount, PID, BLP);
+                if(rtpSession.rtcpAVPFIntf != null) {
+                    rtpSession.rtcpAVPFIntf.RTPFBPktReceived(
+                            super.ssrc, super.itemCount, PID, BLP);
+                }
+
+                // Generic NACK, send the lost packets again if we still have them
+                if(super.itemCount == 1 && rtpSession.sendHistory != null) {
+                    rtpSession.resend(PID, BLP);
+                }
             }
         }
 
@@ -114,13 +147,23 @@ public class RtcpPktRTPFB extends RtcpPkt {
      * CompRtcpPkt will call this automatically
      */
     protected void encode() {
-        super.rawPkt = new byte[12 + this.PID.length*4];
+        if(this.fci != null) {
+            super.rawPkt = new byte[12 + this.fci.length];
+            System.arraycopy(this.fci, 0, super.rawPkt, 12, this.fci.length);
+        } else {
+            super.rawPkt = new byte[12 + this.PID.length*4];
+        }
 
         byte[] someBytes = StaticProcs.uIntLongToByteWord(super.ssrc);
         System.arraycopy(someBytes, 0, super.rawPkt, 4, 4);
         someBytes = StaticProcs.uIntLongToByteWord(this.ssrcMediaSource);
         System.arraycopy(someBytes, 0, super.rawPkt, 8, 4);
 
+        if(this.fci != null) {
+            writeHeaders();
+            return;
+        }
+
         // Loop over Feedback Control Information (FCI) fields
         int curStart = 12;
         for(int i=0; i < this.PID.length; i++ ) {
@@ -149,8 +192,14 @@ public class RtcpPktRTPFB extends RtcpPkt {
         LOGGER.finest("->RtcpPktRTPFB.debugPrint() ");
         LOGGER.finest("  ssrcPacketSender: " + super.ssrc + "  ssrcMediaSource: " + ssrcMediaSource);
 
-        if(this.PID != null && this.PID.length < 1) {
+        if(this.fci != null) {
+            LOGGER.finest("  Transport feedback, " + this.fci.length + " octets of FCI");
+            return;
+        }
+
+        if(this.PID == null || this.PID.length < 1) {
             LOGGER.finest("  No Feedback Control Information (FCI) fields");
+            return;
         }
 
         for(int i=0; i < this.PID.length; i++ ) {
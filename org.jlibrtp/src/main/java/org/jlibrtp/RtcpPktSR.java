@@ -35,7 +35,7 @@ public class RtcpPktSR extends RtcpPkt {
     protected long ntpTs1 = -1; //32 bits
     /** NTP timestamp, LSB */
     protected long ntpTs2 = -1; //32 bits
-    /** RTP timestamp */
+    /** RTP timestamp of the same instant as the NTP timestamp, the system clock if not set */
     protected long rtpTs = -1; //32 bits
     /** Senders packet count */
     protected long sendersPktCount = -1; //32 bits
@@ -142,7 +142,8 @@ public class RtcpPktSR extends RtcpPkt {
         double tmp = ((double)ms) / 1000.0;
         tmp = tmp * (double)4294967295L;
         ntpTs2 = (long) tmp;
-        rtpTs = System.currentTimeMillis();
+        if(rtpTs < 0)
+            rtpTs = System.currentTimeMillis();
 
         //Write SR stuff
         byte[] someBytes;
@@ -18,6 +18,7 @@
  */
 package org.jlibrtp;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,8 +31,9 @@ import java.util.logging.Logger;
  * sent across the network, excluding the UDP headers.
  *
  * The other way is by passing a bytebuffer. The assumption is that this is a packet
- * that has been received from the network, excluding UDP headers, and the bytebuffer will
- * be parsed into the correct fields.
+ * that has been received from the network, excluding UDP headers. Such a packet is a
+ * view on the buffer, the fields are only decoded when they are asked for and the
+ * payload is never copied unless getPayload() is called.
  *
  * The class keeps track of changes. Therefore, modifications are possible after calling encode(),
  * if necessary, the raw version of the packet will be regenerated on subsequent requests.
@@ -69,6 +71,19 @@ public class RtpPkt {
     /** The actual data, without any RTP stuff */
     private byte[] payload = null;
 
+    /** Whether the header fields are decoded from rawBuf, rather than kept in the fields above */
+    private boolean view = false;
+    /** The buffer the packet was received into, null if the packet is backed by rawPkt */
+    private ByteBuffer rawBuf = null;
+    /** The pool that rawBuf is returned to by release() */
+    private BufferPool pool = null;
+    /** Where the packet starts in rawBuf */
+    private int bufOffset = 0;
+    /** Where the payload starts in rawBuf */
+    private int payloadOffset = 0;
+    /** The number of payload octets in rawBuf */
+    private int payloadLength = 0;
+
     /**
      * Construct a packet-instance. The ByteBuffer required for UDP transmission can afterwards be obtained from getRawPkt(). If you need to set additional parameters, such as the marker bit or contributing sources, you should do so before calling getRawPkt;
      *
@@ -96,49 +111,86 @@ public class RtpPkt {
     /**
      * Construct a packet-instance from an raw packet (believed to be RTP). The UDP-headers must be removed before invoking this method. Call checkPkt on the instance to verify that it was successfully parsed.
      *
+     * The array is not copied, the packet is a view on it, see RtpPkt(ByteBuffer, BufferPool).
+     *
      * @param aRawPkt The data-part of a UDP-packet believed to be RTP
      * @param packetSize the number of valid octets in the packet, should be aRawPkt.length
      */
     protected RtpPkt(byte[] aRawPkt, int packetSize){
-        if(LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.finest("-> RtpPkt(aRawPkt)");
-        }
-        //Check size, need to have at least a complete header
         if(aRawPkt == null) {
             LOGGER.warning("RtpPkt(byte[]) Packet null");
+            version = 0;
+            return;
+        }
+        wrap(ByteBuffer.wrap(aRawPkt, 0, packetSize), null);
+    }
+
+    /**
+     * Construct a packet-instance from a buffer that a datagram was received into.
+     * The packet is read from position to limit of the buffer.
+     *
+     * Nothing is copied and nothing is allocated: the packet is a flyweight view
+     * that decodes header fields from the buffer when they are asked for, and
+     * keeps a reference to the buffer until release() is called.
+     *
+     * @param aRawBuf the buffer holding the data-part of a UDP-packet believed to be RTP
+     * @param aPool the pool the buffer is returned to by release(), may be null
+     */
+    protected RtpPkt(ByteBuffer aRawBuf, BufferPool aPool) {
+        wrap(aRawBuf, aPool);
+    }
+
+    /**
+     * Checks the fixed header and the CSRC list, and turns this packet into
+     * a view on the buffer if they are sane.
+     *
+     * @param aRawBuf the buffer holding the packet, from position to limit
+     * @param aPool the pool the buffer is returned to by release(), may be null
+     */
+    private void wrap(ByteBuffer aRawBuf, BufferPool aPool) {
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("-> RtpPkt.wrap(aRawBuf)");
         }
+        rawBuf = aRawBuf;
+        pool = aPool;
+        bufOffset = aRawBuf.position();
+        int length = aRawBuf.remaining();
 
-        int remOct = packetSize - 12;
-        if(remOct >= 0) {
-            rawPkt = aRawPkt;	//Store it
-            //Interrogate the packet
-            sliceFirstLine();
+        // Make sure nobody mistakes this for a valid packet, unless we get to the end
+        version = 0;
+        if(length >= 12) {
+            int firstByte = aRawBuf.get(bufOffset) & 0xFF;
+            version = ((firstByte & 0xC0) >>> 6);
             if(version == 2) {
-                sliceTimeStamp();
-                sliceSSRC();
-                if(remOct > 4 && getCsrcCount() > 0) {
-                    sliceCSRCs();
-                    remOct -= csrcArray.length * 4; //4 octets per CSRC
+                int headerLen = 12 + 4*(firstByte & 0x0F);
+                if((firstByte & 0x10) != 0) {
+                    // Header extension, its length in 32 bit words follows the profile
+                    headerLen += 4;
+                    if(headerLen <= length) {
+                        headerLen += 4*(aRawBuf.getShort(bufOffset + headerLen - 2) & 0xFFFF);
+                    }
                 }
-                // TODO Extension
-                if(remOct > 0) {
-                    slicePayload(remOct);
+                int padLen = 0;
+                if((firstByte & 0x20) != 0) {
+                    padLen = aRawBuf.get(bufOffset + length - 1) & 0xFF;
+                }
+                if(headerLen + padLen <= length) {
+                    payloadOffset = bufOffset + headerLen;
+                    payloadLength = length - headerLen - padLen;
+                    view = true;
+                } else {
+                    LOGGER.warning("RtpPkt.wrap() Packet shorter than its header says, giving up.");
+                    version = 0;
                 }
-
-                //Sanity checks
-                checkPkt();
-
-                //Mark the buffer as current
-                rawPktCurrent = true;
             } else {
-                LOGGER.warning("RtpPkt(byte[]) Packet is not version 2, giving up.");
+                LOGGER.warning("RtpPkt.wrap() Packet is not version 2, giving up.");
             }
         } else {
-            LOGGER.warning("RtpPkt(byte[]) Packet too small to be sliced");
+            LOGGER.warning("RtpPkt.wrap() Packet too small to be sliced");
         }
         rawPktCurrent = true;
         if(LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.finest("<- RtpPkt(aRawPkt)");
+            LOGGER.finest("<- RtpPkt.wrap(aRawBuf)");
         }
     }
 
@@ -159,7 +211,10 @@ public class RtpPkt {
      * @return the header length
      */
     protected int getHeaderLength() {
-        //TODO include extension
+        // Received packets include their extension, others cannot have one yet
+        if(view) {
+            return payloadOffset - bufOffset;
+        }
         return 12 + 4*getCsrcCount();
     }
     
@@ -168,6 +223,7 @@ public class RtpPkt {
      * @return the payload length.
      */
     protected int getPayloadLength() {
+        if (view) return payloadLength;
         if (payload != null) return payload.length;
         return 0;
     }
@@ -198,6 +254,9 @@ public class RtpPkt {
      * @return {@code true} if marked
      */
     protected boolean isMarked() {
+        if(view) {
+            return (rawBuf.get(bufOffset + 1) & 0x80) != 0;
+        }
         return (marker != 0);
     }
     
@@ -206,6 +265,9 @@ public class RtpPkt {
      * @return the payload type
      */
     protected int getPayloadType() {
+        if(view) {
+            return rawBuf.get(bufOffset + 1) & 0x7F;
+        }
         return payloadType;
     }
 
@@ -214,6 +276,9 @@ public class RtpPkt {
      * @return the sequence number
      */
     protected int getSeqNumber() {
+        if(view) {
+            return rawBuf.getShort(bufOffset + 2) & 0xFFFF;
+        }
         return seqNumber;
     }
     
@@ -222,6 +287,9 @@ public class RtpPkt {
      * @return the time stamp
      */
     protected long getTimeStamp() {
+        if(view) {
+            return rawBuf.getInt(bufOffset + 4) & 0xFFFFFFFFL;
+        }
         return timeStamp;
     }
     
@@ -230,6 +298,9 @@ public class RtpPkt {
      * @return the SSRC
      */
     protected long getSsrc() {
+        if(view) {
+            return rawBuf.getInt(bufOffset + 8) & 0xFFFFFFFFL;
+        }
         return ssrc;
     }
 
@@ -238,7 +309,9 @@ public class RtpPkt {
      * @return the CSRC count
      */
     protected int getCsrcCount() {
-        if(csrcArray != null) {
+        if(view) {
+            return rawBuf.get(bufOffset) & 0x0F;
+        } else if(csrcArray != null) {
             return csrcArray.length;
         }else{
             return 0;
@@ -246,10 +319,25 @@ public class RtpPkt {
     }
     
     /**
-     * Retrieves the CSRC array.
-     * @return the CSRC array
+     * Retrieves a single CSRC, without allocating an array.
+     * @param index the position in the CSRC list, less than getCsrcCount()
+     * @return the CSRC
+     */
+    protected long getCsrc(int index) {
+        if(view) {
+            return rawBuf.getInt(bufOffset + 12 + 4*index) & 0xFFFFFFFFL;
+        }
+        return csrcArray[index];
+    }
+
+    /**
+     * Retrieves the CSRC array. Received packets create the array on first request.
+     * @return the CSRC array, null if there are no contributing sources
      */
     protected long[] getCsrcArray() {
+        if(view && csrcArray == null && getCsrcCount() > 0) {
+            csrcArray = sliceCSRCs();
+        }
         return csrcArray;
     }
 
@@ -258,6 +346,9 @@ public class RtpPkt {
      *  @return encoded packet
      */
     protected byte[] encode() {
+        if(view) {
+            detach();
+        }
         if(! rawPktCurrent || rawPkt == null) {
             writePkt();
         }
@@ -268,6 +359,9 @@ public class RtpPkt {
      * Dump for For debugging purposes
      */
     protected void printPkt() {
+        if(view) {
+            detach();
+        }
         LOGGER.finest("V:" + version + " P:" + padding + " EXT:" + extension
                 + " CC:" + getCsrcCount() + " M:"+ marker +" PT:" + payloadType + " SN: "+ seqNumber);
         LOGGER.finest("Timestamp:" + timeStamp + "(long output as int, may be 2s complement)");
@@ -276,7 +370,9 @@ public class RtpPkt {
             LOGGER.finest("CSRC:" + csrcArray[i] + "(long output as int, may be 2s complement)");
         }
         //TODO Extension
-        LOGGER.finest("Payload, first four bytes: " + payload[0] + " " + payload[1] + " " + payload[2] + " " + payload[3]);
+        if(payload != null && payload.length >= 4) {
+            LOGGER.finest("Payload, first four bytes: " + payload[0] + " " + payload[1] + " " + payload[2] + " " + payload[3]);
+        }
     }
     /*********************************************************************************************************
      *                                                Setting stuff
@@ -287,6 +383,9 @@ public class RtpPkt {
      * @param mark marker on on off
      */
     protected void setMarked(boolean mark) {
+        if(view) {
+            detach();
+        }
         rawPktCurrent = false;
         if(mark) {
             marker = 1;
@@ -304,6 +403,9 @@ public class RtpPkt {
      * @return {@code 0} if valid type was set
      */
     protected int setPayloadType(int plType) {
+        if(view) {
+            detach();
+        }
         int temp = (plType & 0x0000007F); // 7 bits, checks in RTPSession as well.
         if(temp == plType) {
             rawPktCurrent = false;
@@ -320,6 +422,9 @@ public class RtpPkt {
      * @return {@code 0} if a valid number was set
      */
     protected int setSeqNumber(int number) {
+        if(view) {
+            detach();
+        }
         if(number <= 65536 && number >= 0) {
             rawPktCurrent = false;
             seqNumber = number;
@@ -336,6 +441,9 @@ public class RtpPkt {
      * @return 0
      */
     protected int setTimeStamp(long time) {
+        if(view) {
+            detach();
+        }
         rawPktCurrent = false;
         timeStamp = time;
         return 0;	//Naive for now
@@ -347,6 +455,9 @@ public class RtpPkt {
      * @return 0
      */
     protected int setSsrc(long source) {
+        if(view) {
+            detach();
+        }
         rawPktCurrent = false;
         ssrc = source;
         return 0;	//Naive for now
@@ -358,6 +469,9 @@ public class RtpPkt {
      * @return 0 if valid
      */
     protected int setCsrcs(long[] contributors) {
+        if(view) {
+            detach();
+        }
         if(contributors.length <= 16) {
             csrcArray = contributors;
             return 0;
@@ -373,6 +487,9 @@ public class RtpPkt {
      * @return 0 if valid
      */
     protected int setPayload(byte[] data) {
+        if(view) {
+            detach();
+        }
         // TODO Padding
         if(data.length < (1500 - 12)) {
             rawPktCurrent = false;
@@ -386,12 +503,218 @@ public class RtpPkt {
     
     /**
      * Retrieves the payload.
-     * @return the payload
+     *
+     * Received packets copy their payload into a new array the first
+     * time this is called. Use copyPayload() or getPayloadBuffer() to avoid that.
+     *
+     * @return the payload, null if the packet has been released
      */
     protected byte[] getPayload() {
+        if(payload == null && view) {
+            payload = new byte[payloadLength];
+            copyPayload(payload, 0);
+        }
         return payload;
     }
 
+    /**
+     * The buffer a received packet is a view on. Use getPayloadOffset() and
+     * getPayloadLength() to find the payload in it.
+     *
+     * @return the buffer, null if this packet was not received or has been released
+     */
+    protected ByteBuffer getBuffer() {
+        return view ? rawBuf : null;
+    }
+
+    /**
+     * Where the payload of a received packet starts in getBuffer().
+     *
+     * @return the absolute index of the first payload octet
+     */
+    protected int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    /**
+     * The payload as a read-only buffer sharing its content with the packet.
+     * Nothing is copied, but the buffer is only valid until release() is called.
+     *
+     * @return the payload, from position 0 to limit
+     */
+    protected ByteBuffer getPayloadBuffer() {
+        if(view) {
+            ByteBuffer dup = rawBuf.asReadOnlyBuffer();
+            dup.limit(payloadOffset + payloadLength);
+            dup.position(payloadOffset);
+            return dup.slice();
+        } else if(payload != null) {
+            return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+        return null;
+    }
+
+    /**
+     * Copies the payload into an array, without allocating anything.
+     *
+     * @param dest the array to copy into
+     * @param offset where in dest to put the first octet
+     * @return the number of octets copied
+     */
+    protected int copyPayload(byte[] dest, int offset) {
+        if(view) {
+            if(rawBuf.hasArray()) {
+                System.arraycopy(rawBuf.array(), rawBuf.arrayOffset() + payloadOffset, dest, offset, payloadLength);
+                return payloadLength;
+            }
+            // The buffer belongs to this packet alone, so we can move its markers around
+            int pos = rawBuf.position();
+            int lim = rawBuf.limit();
+            rawBuf.limit(payloadOffset + payloadLength);
+            rawBuf.position(payloadOffset);
+            rawBuf.get(dest, offset, payloadLength);
+            rawBuf.limit(lim);
+            rawBuf.position(pos);
+            return payloadLength;
+        } else if(payload != null) {
+            System.arraycopy(payload, 0, dest, offset, payload.length);
+            return payload.length;
+        }
+        return 0;
+    }
+
+    /**
+     * Finds an element of the header extension of a received packet, in the
+     * one-byte header format (RFC 8285).
+     *
+     * @param id the ID of the element, 1 to 14
+     * @return the absolute index of the element's data in getBuffer(), -1 if there is none
+     */
+    protected int getExtensionElement(int id) {
+        if(!view || (rawBuf.get(bufOffset) & 0x10) == 0) {
+            return -1;
+        }
+        return findExtensionElement(rawBuf, bufOffset, payloadOffset, id);
+    }
+
+    /**
+     * Finds an element of the header extension of a packet, in the one-byte
+     * header format (RFC 8285).
+     *
+     * @param buf the buffer holding the packet
+     * @param start where the packet starts in buf
+     * @param headerEnd where the header, with the extension, ends in buf
+     * @param id the ID of the element, 1 to 14
+     * @return the absolute index of the element's data in buf, -1 if there is none
+     */
+    protected static int findExtensionElement(ByteBuffer buf, int start, int headerEnd, int id) {
+        int pos = start + 12 + 4*(buf.get(start) & 0x0F);
+        if(pos + 4 > headerEnd || (buf.getShort(pos) & 0xFFFF) != 0xBEDE) {
+            return -1;
+        }
+        int end = Math.min(headerEnd, pos + 4 + 4*(buf.getShort(pos + 2) & 0xFFFF));
+        pos += 4;
+        while(pos < end) {
+            int b = buf.get(pos) & 0xFF;
+            if(b == 0) {
+                // Padding
+                pos++;
+                continue;
+            }
+            int elementId = b >>> 4;
+            if(elementId == 15) {
+                break;
+            }
+            int elementLength = (b & 0x0F) + 1;
+            if(pos + 1 + elementLength > end) {
+                break;
+            }
+            if(elementId == id) {
+                return pos + 1;
+            }
+            pos += 1 + elementLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Turns a received RTX packet (RFC 4588) back into the packet it carries.
+     * The original sequence number, which starts the payload, replaces the
+     * sequence number, and the SSRC and payload type become those of the
+     * original stream. Only the header is moved, up against the original payload.
+     *
+     * @param originalSsrc the SSRC of the original stream
+     * @param originalPayloadType the payload type of the original stream
+     * @return 0 if successful, -1 if this is not a received packet or too short
+     */
+    protected int unwrapRtx(long originalSsrc, int originalPayloadType) {
+        if(!view || payloadLength < 2) {
+            return -1;
+        }
+        int osn = rawBuf.getShort(payloadOffset) & 0xFFFF;
+        for(int i=payloadOffset - 1; i >= bufOffset; i--) {
+            rawBuf.put(i + 2, rawBuf.get(i));
+        }
+        bufOffset += 2;
+        payloadOffset += 2;
+        payloadLength -= 2;
+        rawBuf.position(bufOffset);
+
+        rawBuf.put(bufOffset + 1, (byte) ((rawBuf.get(bufOffset + 1) & 0x80) | (originalPayloadType & 0x7F)));
+        rawBuf.putShort(bufOffset + 2, (short) osn);
+        rawBuf.putInt(bufOffset + 8, (int) originalSsrc);
+        payload = null;
+        return 0;
+    }
+
+    /**
+     * Turns a received RED packet (RFC 2198) into its primary block. The block
+     * headers and redundant blocks that start the payload are skipped, and the
+     * payload type becomes that of the primary block. Only the header is moved,
+     * up against the primary data.
+     *
+     * @param skip the length of the block headers and redundant blocks
+     * @param primaryPayloadType the payload type of the primary block
+     * @return 0 if successful, -1 if this is not a received packet or too short
+     */
+    protected int unwrapRed(int skip, int primaryPayloadType) {
+        if(!view || skip < 0 || skip > payloadLength) {
+            return -1;
+        }
+        for(int i=payloadOffset - 1; i >= bufOffset; i--) {
+            rawBuf.put(i + skip, rawBuf.get(i));
+        }
+        bufOffset += skip;
+        payloadOffset += skip;
+        payloadLength -= skip;
+        rawBuf.position(bufOffset);
+
+        rawBuf.put(bufOffset + 1, (byte) ((rawBuf.get(bufOffset + 1) & 0x80) | (primaryPayloadType & 0x7F)));
+        payload = null;
+        return 0;
+    }
+
+    /**
+     * Hands the buffer the packet was received into back to its pool.
+     *
+     * The header fields remain available, the payload does not, unless getPayload()
+     * was called before. Does nothing for packets not backed by a buffer.
+     */
+    protected void release() {
+        if(rawBuf != null) {
+            if(view) {
+                sliceHeader();
+                view = false;
+            }
+            if(pool != null) {
+                pool.release(rawBuf);
+            }
+            rawBuf = null;
+            pool = null;
+            payloadLength = 0;
+        }
+    }
+
     /*********************************************************************************************************
      *                                           Private functions
      *********************************************************************************************************/
@@ -447,49 +770,49 @@ public class RtpPkt {
     }
     
     /**
-     * Picks apart the first 4 octets of an RTP packet
+     * Decodes the header of a received packet into the fields, so that the
+     * packet no longer depends on the buffer for it.
      */
-    private void sliceFirstLine() {
-        version = ((rawPkt[0] & 0xC0) >>> 6);
-        padding = ((rawPkt[0] & 0x20) >>> 5);
-        extension = ((rawPkt[0] & 0x10) >>> 4);
-        csrcArray = new long[(rawPkt[0] & 0x0F)];
-        marker = ((rawPkt[1] & 0x80) >> 7);
-        payloadType = (rawPkt[1] & 0x7F);
-        seqNumber = StaticProcs.bytesToUIntInt(rawPkt, 2);
-    }
-    
-    /**
-     * Takes the 4 octets representing the timestamp
-     */
-    private void sliceTimeStamp() {
-        timeStamp = StaticProcs.bytesToUIntLong(rawPkt, 4);
+    private void sliceHeader() {
+        int firstByte = rawBuf.get(bufOffset);
+        int secondByte = rawBuf.get(bufOffset + 1);
+        version = ((firstByte & 0xC0) >>> 6);
+        padding = ((firstByte & 0x20) >>> 5);
+        extension = ((firstByte & 0x10) >>> 4);
+        marker = ((secondByte & 0x80) >> 7);
+        payloadType = (secondByte & 0x7F);
+        seqNumber = getSeqNumber();
+        timeStamp = getTimeStamp();
+        ssrc = getSsrc();
+        if(csrcArray == null && getCsrcCount() > 0) {
+            csrcArray = sliceCSRCs();
+        }
     }
-    
+
     /**
-     * Takes the 4 octets representing the SSRC.
+     * Turns a received packet into one that can be modified and encoded,
+     * by decoding the header and copying the payload.
      */
-    private void sliceSSRC() {
-        ssrc = StaticProcs.bytesToUIntLong(rawPkt,8);
+    private void detach() {
+        getPayload();
+        sliceHeader();
+        // The header is rewritten without padding or extension, they are not supported yet
+        padding = 0;
+        extension = 0;
+        view = false;
+        rawPktCurrent = false;
     }
-    
+
     /**
-     * Check the length of the csrcArray (set during sliceFirstLine).
+     * Reads the CSRC list of a received packet.
+     *
+     * @return the CSRCs, getCsrcCount() of them
      */
-    private void  sliceCSRCs() {
-        for(int i=0; i< csrcArray.length; i++) {
-            csrcArray[i] = StaticProcs.bytesToUIntLong(rawPkt, i*4 + 12);
+    private long[] sliceCSRCs() {
+        long[] csrcs = new long[getCsrcCount()];
+        for(int i=0; i< csrcs.length; i++) {
+            csrcs[i] = getCsrc(i);
         }
-    }
-    
-    /**
-     * Extensions //TODO
-     * @param bytes payload
-     */
-    private void slicePayload(int bytes) {
-        payload = new byte[bytes];
-        int headerLen = getHeaderLength();
-
-        System.arraycopy(rawPkt, headerLen, payload, 0, bytes);
+        return csrcs;
     }
 }
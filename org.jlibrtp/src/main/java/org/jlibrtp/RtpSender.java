@@ -0,0 +1,551 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Assembles the RTP packets of one sendData() call and sends them.
+ *
+ * The fixed part of the header (version, payload type, SSRC and CSRCs) is
+ * kept as an encoded template, which is only rebuilt when one of these
+ * changes. Every packet is the template, with marker, sequence number and
+ * timestamp patched in, followed by the payload, written into a pooled buffer.
+ *
+ * The whole batch is assembled before anything is sent, and then sent to
+ * one receiver after the other. The same buffers and DatagramPacket are used
+ * for every receiver, so once the pool has warmed up nothing is allocated
+ * per packet. Sessions with a DatagramChannel send direct buffers through it,
+ * the others send arrays through their DatagramSocket.
+ *
+ * Sessions that answer NACKs keep a copy of every packet sent in their
+ * PacketHistory, from which addRetransmission() assembles the packets that
+ * are sent again, either unchanged or as RTX packets (RFC 4588). Sessions
+ * that send RED packets (RFC 2198) repeat the data of earlier packets from
+ * the same history. Sessions that number their packets for transport-wide
+ * congestion control put the number in a header extension of the template,
+ * and note when each packet went out in their TransportHistory.
+ *
+ * Not thread safe, RTPSession serializes access.
+ *
+ * @author agent
+ */
+public class RtpSender {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(RtpSender.class.getName());
+
+    /** The number of send buffers kept for reuse */
+    protected static final int SEND_POOL_SIZE = 64;
+    /** The size of the send buffers, larger packets get a buffer of their own */
+    protected static final int SEND_BUFFER_SIZE = 1500;
+
+    /** The session the packets are sent for */
+    private final RTPSession rtpSession;
+    /** Buffers the packets are assembled in */
+    private final BufferPool pool;
+    /** Whether packets go through rtpSession.rtpChannel */
+    private final boolean useChannel;
+    /** Reused for every packet sent through a DatagramSocket */
+    private final DatagramPacket packet = new DatagramPacket(new byte[0], 0);
+
+    /** The encoded fixed part of the header, null until the first packet */
+    private byte[] header = null;
+    /** The payload type in header */
+    private int headerPayloadType = -1;
+    /** The SSRC in header */
+    private long headerSsrc = -1;
+    /** The CSRCs in header, null if none */
+    private long[] headerCsrcs = null;
+    /** The ID of the transport-wide sequence number extension in header, -1 if none */
+    private int headerExtensionId = -1;
+    /** The last transport-wide sequence number */
+    private int transportSeqNum = 0;
+
+    /** Send history slot of each redundant block of the packet being assembled, newest first */
+    private final int[] redSlots = new int[RTPSession.MAX_REDUNDANCY];
+    /** Where in its stored packet each redundant block starts */
+    private final int[] redOffsets = new int[RTPSession.MAX_REDUNDANCY];
+    /** Length of each redundant block */
+    private final int[] redLengths = new int[RTPSession.MAX_REDUNDANCY];
+    /** Payload type of each redundant block */
+    private final int[] redPayloadTypes = new int[RTPSession.MAX_REDUNDANCY];
+    /** Timestamp offset of each redundant block */
+    private final int[] redTimeStampOffsets = new int[RTPSession.MAX_REDUNDANCY];
+
+    /** The packets assembled so far, flipped and ready to be sent */
+    private ByteBuffer[] batch = new ByteBuffer[32];
+    /** The number of packets in batch */
+    private int batchSize = 0;
+
+    /**
+     * Creates a sender for a session.
+     *
+     * @param rtpSession the session
+     */
+    protected RtpSender(RTPSession rtpSession) {
+        this.rtpSession = rtpSession;
+        this.useChannel = rtpSession.rtpChannel != null;
+        this.pool = new BufferPool(SEND_POOL_SIZE, SEND_BUFFER_SIZE, useChannel);
+    }
+
+    /**
+     * Rebuilds the header template if the payload type, SSRC, CSRCs or
+     * header extension have changed.
+     *
+     * The transport-wide sequence number is the only extension, in the
+     * one-byte header format (RFC 8285), as the last four octets of the template.
+     *
+     * @param payloadType the payload type
+     * @param ssrc the SSRC
+     * @param csrcs the CSRCs, null if none
+     * @param extensionId the ID of the transport-wide sequence number extension, -1 if none
+     */
+    private void updateHeader(int payloadType, long ssrc, long[] csrcs, int extensionId) {
+        if(header != null && payloadType == headerPayloadType && ssrc == headerSsrc
+                && extensionId == headerExtensionId
+                && (csrcs == headerCsrcs || Arrays.equals(csrcs, headerCsrcs))) {
+            return;
+        }
+        int csrcCount = csrcs == null ? 0 : Math.min(csrcs.length, 15);
+        header = new byte[12 + 4*csrcCount + (extensionId < 0 ? 0 : 8)];
+        ByteBuffer buf = ByteBuffer.wrap(header);
+        buf.put(0, (byte) (0x80 | (extensionId < 0 ? 0 : 0x10) | csrcCount));
+        buf.put(1, (byte) (payloadType & 0x7F));
+        buf.putInt(8, (int) ssrc);
+        for(int i=0; i<csrcCount; i++) {
+            buf.putInt(12 + 4*i, (int) csrcs[i]);
+        }
+        if(extensionId >= 0) {
+            // One word of elements: ID and length - 1, the sequence number, padding
+            int pos = 12 + 4*csrcCount;
+            buf.putShort(pos, (short) 0xBEDE);
+            buf.putShort(pos + 2, (short) 1);
+            buf.put(pos + 4, (byte) (extensionId << 4 | 1));
+        }
+        headerPayloadType = payloadType;
+        headerSsrc = ssrc;
+        headerCsrcs = csrcs == null ? null : csrcs.clone();
+        headerExtensionId = extensionId;
+
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("<-> RtpSender.updateHeader() payload type " + payloadType + " CSRCs " + csrcCount);
+        }
+    }
+
+    /**
+     * Assembles a packet and adds it to the batch.
+     *
+     * @param payload the payload
+     * @param csrcs the CSRCs, null if none
+     * @param marker whether the marker bit is set
+     * @param timeStamp the RTP timestamp
+     * @param seqNum the sequence number
+     */
+    protected void add(byte[] payload, long[] csrcs, boolean marker, long timeStamp, int seqNum) {
+        ByteBuffer buf = begin(payload.length, csrcs, marker, timeStamp, seqNum);
+        buf.put(payload);
+        append(buf);
+    }
+
+    /**
+     * Assembles a packet from the remaining octets of a buffer, which may be direct,
+     * and adds it to the batch. The payload is copied once, straight into the packet.
+     *
+     * @param payload the payload, its position is advanced to its limit
+     * @param csrcs the CSRCs, null if none
+     * @param marker whether the marker bit is set
+     * @param timeStamp the RTP timestamp
+     * @param seqNum the sequence number
+     */
+    protected void add(ByteBuffer payload, long[] csrcs, boolean marker, long timeStamp, int seqNum) {
+        ByteBuffer buf = begin(payload.remaining(), csrcs, marker, timeStamp, seqNum);
+        buf.put(payload);
+        append(buf);
+    }
+
+    /**
+     * Gets a buffer for a packet and writes its header.
+     *
+     * @param payloadLength the length of the payload that follows
+     * @param csrcs the CSRCs, null if none
+     * @param marker whether the marker bit is set
+     * @param timeStamp the RTP timestamp
+     * @param seqNum the sequence number
+     * @return the buffer, positioned where the payload goes
+     */
+    private ByteBuffer begin(int payloadLength, long[] csrcs, boolean marker, long timeStamp, int seqNum) {
+        int redPayloadType = rtpSession.redPayloadType;
+        int extensionId = rtpSession.transportHistory == null ? -1 : rtpSession.transportExtensionId;
+        if(redPayloadType < 0) {
+            updateHeader(rtpSession.payloadType, rtpSession.ssrc, csrcs, extensionId);
+        } else {
+            updateHeader(redPayloadType, rtpSession.ssrc, csrcs, extensionId);
+        }
+
+        int blocks = 0;
+        int redLength = 0;
+        if(redPayloadType >= 0) {
+            blocks = findRedundant(header.length + 1 + payloadLength, timeStamp, seqNum);
+            redLength = 4*blocks + 1;
+            for(int i=0; i<blocks; i++) {
+                redLength += redLengths[i];
+            }
+        }
+
+        ByteBuffer buf = buffer(header.length + redLength + payloadLength);
+        int start = buf.position();
+        buf.put(header);
+        // Only marker, sequence number and timestamp differ from the template
+        buf.put(start + 1, (byte) ((marker ? 0x80 : 0) | headerPayloadType));
+        buf.putShort(start + 2, (short) seqNum);
+        buf.putInt(start + 4, (int) timeStamp);
+        if(headerExtensionId >= 0) {
+            stamp(buf, start + header.length - 3, header.length + redLength + payloadLength);
+        }
+
+        if(redPayloadType >= 0) {
+            // RFC 2198: the block headers, oldest first, then the primary's, then the blocks
+            for(int i=blocks - 1; i >= 0; i--) {
+                buf.putInt(0x80000000 | redPayloadTypes[i] << 24 | redTimeStampOffsets[i] << 10 | redLengths[i]);
+            }
+            buf.put((byte) rtpSession.payloadType);
+            PacketHistory history = rtpSession.sendHistory;
+            for(int i=blocks - 1; i >= 0; i--) {
+                buf.put(history.packet(redSlots[i]), redOffsets[i], redLengths[i]);
+            }
+        }
+        return buf;
+    }
+
+    /**
+     * Finds the primary blocks of the packets sent right before a packet, which
+     * it repeats as redundant blocks (RFC 2198). They are looked up in the send
+     * history, newest first, until one is missing, too far back, too long, or
+     * would make the packet larger than a send buffer. Packets of the batch
+     * being assembled are not in the history yet, so only the first packet of
+     * a batch gets redundant blocks, which suits one frame per sendData().
+     *
+     * @param length the length of the packet without redundant blocks
+     * @param timeStamp the RTP timestamp of the packet
+     * @param seqNum the sequence number of the packet
+     * @return the number of blocks found, in redSlots and the other red arrays
+     */
+    private int findRedundant(int length, long timeStamp, int seqNum) {
+        PacketHistory history = rtpSession.sendHistory;
+        if(history == null) {
+            return 0;
+        }
+        int depth = Math.min(rtpSession.redDepth, RTPSession.MAX_REDUNDANCY);
+        int redPayloadType = rtpSession.redPayloadType;
+        int blocks = 0;
+        while(blocks < depth) {
+            int slot = history.slot((seqNum - blocks - 1) & 0xFFFF);
+            if(slot < 0) {
+                break;
+            }
+            byte[] stored = history.packet(slot);
+            int storedLength = history.length(slot);
+            int offset = headerLength(stored);
+            int payloadType = stored[1] & 0x7F;
+            if(payloadType == redPayloadType) {
+                // The primary block is the last one, after the redundant ones
+                int redundant = 0;
+                while(offset < storedLength && (stored[offset] & 0x80) != 0) {
+                    redundant += ((stored[offset + 2] & 0x03) << 8) | (stored[offset + 3] & 0xFF);
+                    offset += 4;
+                }
+                if(offset >= storedLength) {
+                    break;
+                }
+                payloadType = stored[offset] & 0x7F;
+                offset += 1 + redundant;
+            }
+            int blockLength = storedLength - offset;
+            long timeStampOffset = (timeStamp - history.buffer(slot).getInt(4)) & 0xFFFFFFFFL;
+            if(blockLength < 0 || blockLength > 0x3FF || timeStampOffset > 0x3FFF
+                    || length + 4 + blockLength > SEND_BUFFER_SIZE) {
+                break;
+            }
+            length += 4 + blockLength;
+            redSlots[blocks] = slot;
+            redOffsets[blocks] = offset;
+            redLengths[blocks] = blockLength;
+            redPayloadTypes[blocks] = payloadType;
+            redTimeStampOffsets[blocks] = (int) timeStampOffset;
+            blocks++;
+        }
+        return blocks;
+    }
+
+    /**
+     * The length of the header of a stored packet, with CSRCs and header extension.
+     *
+     * @param stored the packet, from index 0
+     * @return the length in octets
+     */
+    private static int headerLength(byte[] stored) {
+        int headerLength = 12 + 4*(stored[0] & 0x0F);
+        if((stored[0] & 0x10) != 0) {
+            // Header extension, its length in 32 bit words follows the profile
+            headerLength += 4 + 4*(((stored[headerLength + 2] & 0xFF) << 8) | (stored[headerLength + 3] & 0xFF));
+        }
+        return headerLength;
+    }
+
+    /**
+     * Assembles a packet from the send history and adds it to the batch.
+     *
+     * Without an RTX payload type the packet is sent unchanged. Otherwise it
+     * becomes an RTX packet (RFC 4588, 4): the original header with the RTX
+     * payload type, sequence number and SSRC, followed by the original
+     * sequence number and the original payload.
+     *
+     * @param slot the slot of the packet, as returned by PacketHistory.find()
+     * @param rtxPayloadType the RTX payload type, -1 to send the packet unchanged
+     * @param rtxSsrc the SSRC of the retransmission stream
+     * @param rtxSeqNum the sequence number in the retransmission stream
+     * @return the length of the packet
+     */
+    protected int addRetransmission(int slot, int rtxPayloadType, long rtxSsrc, int rtxSeqNum) {
+        PacketHistory history = rtpSession.sendHistory;
+        byte[] stored = history.packet(slot);
+        int length = history.length(slot);
+
+        int headerLength = headerLength(stored);
+        if(rtxPayloadType < 0) {
+            ByteBuffer buf = buffer(length);
+            int start = buf.position();
+            buf.put(stored, 0, length);
+            restamp(buf, start, headerLength, length);
+            append(buf);
+            return length;
+        }
+
+        ByteBuffer buf = buffer(length + 2);
+        int start = buf.position();
+        buf.put(stored, 0, headerLength);
+        buf.put(start + 1, (byte) ((stored[1] & 0x80) | rtxPayloadType));
+        buf.putShort(start + 2, (short) rtxSeqNum);
+        buf.putInt(start + 8, (int) rtxSsrc);
+        // The original sequence number
+        buf.put(stored, 2, 2);
+        buf.put(stored, headerLength, length - headerLength);
+        restamp(buf, start, headerLength, length + 2);
+        append(buf);
+        return length + 2;
+    }
+
+    /**
+     * Writes the next transport-wide sequence number into a packet being
+     * assembled, and notes when it was sent.
+     *
+     * @param buf the packet
+     * @param index where the sequence number goes in buf
+     * @param length the length of the packet
+     */
+    private void stamp(ByteBuffer buf, int index, int length) {
+        TransportHistory history = rtpSession.transportHistory;
+        transportSeqNum = (transportSeqNum + 1) & 0xFFFF;
+        buf.putShort(index, (short) transportSeqNum);
+        if(history != null) {
+            history.sent(transportSeqNum, System.nanoTime(), length);
+        }
+    }
+
+    /**
+     * Gives a packet that is sent again a transport-wide sequence number of its
+     * own, if it carries one, as the receiver reports each packet that arrives.
+     *
+     * @param buf the packet
+     * @param start where the packet starts in buf
+     * @param headerLength the length of its header, with the extension
+     * @param length the length of the packet
+     */
+    private void restamp(ByteBuffer buf, int start, int headerLength, int length) {
+        int extensionId = rtpSession.transportExtensionId;
+        if(extensionId < 0 || (buf.get(start) & 0x10) == 0) {
+            return;
+        }
+        int index = RtpPkt.findExtensionElement(buf, start, start + headerLength, extensionId);
+        if(index >= 0) {
+            stamp(buf, index, length);
+        }
+    }
+
+    /**
+     * Gets a buffer for a packet, from the pool if it fits.
+     *
+     * @param length the length of the packet
+     * @return the buffer
+     */
+    protected ByteBuffer buffer(int length) {
+        return length <= pool.bufferSize() ? pool.acquire() : ByteBuffer.allocate(length);
+    }
+
+    /**
+     * Flips an assembled packet and adds it to the batch.
+     *
+     * @param buf the packet
+     */
+    protected void append(ByteBuffer buf) {
+        buf.flip();
+
+        if(batchSize == batch.length) {
+            batch = Arrays.copyOf(batch, batchSize * 2);
+        }
+        batch[batchSize++] = buf;
+    }
+
+    /**
+     * Sends every packet in the batch to every receiver, or to the multicast group,
+     * and returns the buffers to the pool.
+     *
+     * A receiver that cannot be reached does not keep the others from getting
+     * the packets, failures are counted per participant. The packets are kept
+     * in the session's send history, if it has one, and the FEC packets that
+     * protect them are added to the batch, if the session generates them.
+     *
+     * @return 0 if successful, -1 if no receiver got all the packets
+     */
+    protected int send() {
+        PacketHistory history = rtpSession.sendHistory;
+        if(history != null) {
+            long now = System.nanoTime();
+            for(int i=0; i<batchSize; i++) {
+                history.store(batch[i], now);
+            }
+        }
+        FecEncoder fec = rtpSession.fecEncoder;
+        if(fec != null) {
+            int pkts = batchSize;
+            for(int i=0; i<pkts; i++) {
+                rtpSession.fecSentPktCount += fec.add(batch[i], this);
+            }
+        }
+        return sendAll();
+    }
+
+    /**
+     * Sends the retransmissions in the batch, like send(), without keeping them.
+     *
+     * @return 0 if successful, -1 if no receiver got all the packets
+     */
+    protected int resend() {
+        return sendAll();
+    }
+
+    /**
+     * Sends the batch, see send().
+     *
+     * @return 0 if successful, -1 if no receiver got all the packets
+     */
+    private int sendAll() {
+        try {
+            if(rtpSession.mcSession) {
+                // Members of the group listen on the port we are bound to
+                InetSocketAddress group = new InetSocketAddress(rtpSession.mcGroup, rtpSession.rtpMCSock.getLocalPort());
+                return sendBatch(group, null) == 0 ? 0 : -1;
+            }
+            if(rtpSession.fanOutSender != null) {
+                return rtpSession.fanOutSender.send(batch, batchSize);
+            }
+
+            int receivers = 0;
+            int failed = 0;
+            Iterator<Participant> iter = rtpSession.partDb.getUnicastReceivers();
+            while(iter.hasNext()) {
+                Participant p = iter.next();
+                receivers++;
+                if(sendBatch(p.rtpAddress, p) > 0) {
+                    failed++;
+                }
+            }
+            return receivers > 0 && failed == receivers ? -1 : 0;
+        } finally {
+            for(int i=0; i<batchSize; i++) {
+                pool.release(batch[i]);
+                batch[i] = null;
+            }
+            batchSize = 0;
+        }
+    }
+
+    /**
+     * Sends every packet in the batch to one receiver.
+     *
+     * @param receiver the address RTP packets are sent to
+     * @param p the participant, whose counters are updated, null for the multicast group
+     * @return the number of packets that could not be sent
+     */
+    private int sendBatch(InetSocketAddress receiver, Participant p) {
+        if(LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest("   Sending " + batchSize + " packets to " + receiver);
+        }
+        int failed = 0;
+        long octets = 0;
+        for(int i=0; i<batchSize; i++) {
+            ByteBuffer buf = batch[i];
+            buf.rewind();
+            int length = buf.remaining();
+            try {
+                if(useChannel) {
+                    if(rtpSession.rtpChannel.send(buf, receiver) == 0) {
+                        // Non-blocking and the socket buffer is full
+                        failed++;
+                        continue;
+                    }
+                } else {
+                    packet.setData(buf.array(), buf.arrayOffset(), length);
+                    packet.setSocketAddress(receiver);
+                    if(rtpSession.mcSession) {
+                        rtpSession.rtpMCSock.send(packet);
+                    } else {
+                        rtpSession.rtpSock.send(packet);
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "RtpSender.send() to " + receiver + " failed.", e);
+                // The rest of the batch would fail the same way
+                failed += batchSize - i;
+                break;
+            }
+            octets += length;
+
+            //Debug
+            if(rtpSession.debugAppIntf != null) {
+                rtpSession.debugAppIntf.packetSent(rtpSession.mcSession ? 1 : 0, receiver,
+                        new String("Sent " + (rtpSession.mcSession ? "multicast" : "unicast")
+                                + " RTP packet of size " + length + " to " + receiver));
+            }
+        }
+        if(p != null) {
+            p.sentPkts.addAndGet(batchSize - failed);
+            p.sentOctets.addAndGet(octets);
+            p.sendFailures.addAndGet(failed);
+        }
+        return failed;
+    }
+}
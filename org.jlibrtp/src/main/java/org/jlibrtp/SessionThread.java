@@ -0,0 +1,101 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Base class of the threads that run an RTPSession: RTPReceiverThread,
+ * AppCallerThread, RTCPReceiverThread and RTCPSenderThread.
+ *
+ * By default each of them is started as a thread of its own, as before. If the
+ * application has set a ThreadFactory, see RTPSession.threadFactory(ThreadFactory),
+ * start() runs it on a thread created by the factory instead. The object itself
+ * is then never started: interrupt() reaches the factory's thread, but join()
+ * and isAlive() must be called on getThread().
+ *
+ * @author agent
+ */
+public abstract class SessionThread extends Thread {
+    /** The session whose ThreadFactory start() uses */
+    private final RTPSession session;
+    /** The thread created by the factory, null if there is none */
+    private volatile Thread carrier = null;
+
+    /**
+     * Creates a new thread, it is not started.
+     *
+     * @param name name given to the thread
+     * @param session the session whose ThreadFactory start() uses
+     */
+    protected SessionThread(String name, RTPSession session) {
+        super(name);
+        this.session = session;
+    }
+
+    /**
+     * Starts the thread, or a thread created by the session's ThreadFactory if it has one.
+     *
+     * @throws IllegalThreadStateException if it was started before
+     */
+    public void start() {
+        start(session.threadFactory);
+    }
+
+    /**
+     * Starts the thread, or a thread created by the given factory.
+     *
+     * @param threadFactory creates the thread, null to start this thread
+     * @throws IllegalThreadStateException if it was started before
+     */
+    protected synchronized void start(ThreadFactory threadFactory) {
+        if(threadFactory == null) {
+            super.start();
+            return;
+        }
+        if(carrier != null) {
+            throw new IllegalThreadStateException(getName() + " already started");
+        }
+        Thread t = threadFactory.newThread(this);
+        t.setName(getName());
+        carrier = t;
+        t.start();
+    }
+
+    /**
+     * Interrupts the thread, and the thread created by the factory if there is one.
+     */
+    public void interrupt() {
+        Thread t = carrier;
+        if(t != null) {
+            t.interrupt();
+        }
+        super.interrupt();
+    }
+
+    /**
+     * The thread this runs on.
+     *
+     * @return the thread created by the session's ThreadFactory, this thread without one
+     */
+    public Thread getThread() {
+        Thread t = carrier;
+        return t != null ? t : this;
+    }
+}
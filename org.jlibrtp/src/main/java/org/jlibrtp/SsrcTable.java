@@ -0,0 +1,312 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent map from SSRC to Participant, keyed by primitive longs.
+ *
+ * The table is open addressing with linear probing, over an array of
+ * immutable entries. Lookups take no lock and allocate nothing, so the
+ * receiver threads can look up the sender of every packet without boxing
+ * the SSRC. Changes are synchronized, they only happen when participants
+ * join or leave. Removed entries leave a tombstone, which is reused by
+ * later inserts and dropped when the table is rebuilt.
+ *
+ * Iterating with visit() is allocation-free as well. Like the iterators of
+ * java.util.concurrent, it is weakly consistent: it sees every participant
+ * that was in the table when it started, and maybe some that were added since.
+ *
+ * @author agent
+ */
+public class SsrcTable {
+    /** Marks a removed entry, so that probing continues past it */
+    private static final Entry TOMBSTONE = new Entry(-1, null);
+    /** The table is rebuilt when more than this fraction of the slots, in 1/16, is taken */
+    private static final int LOAD_FACTOR = 8;
+
+    /** The slots, replaced as a whole when the table is rebuilt */
+    private volatile AtomicReferenceArray<Entry> table;
+    /** The number of participants */
+    private volatile int size = 0;
+    /** Slots that are not empty, tombstones included, guarded by this */
+    private int used = 0;
+
+    /**
+     * Receives the participants of a table, see visit().
+     */
+    public interface Visitor {
+        /**
+         * Called once for every participant.
+         *
+         * @param p the participant
+         */
+        void visit(Participant p);
+    }
+
+    /**
+     * A participant and the SSRC it is filed under. Immutable, so that
+     * readers never see a half-written entry.
+     */
+    private static final class Entry {
+        /** The SSRC */
+        final long ssrc;
+        /** The participant */
+        final Participant participant;
+
+        /**
+         * Creates an entry.
+         *
+         * @param ssrc the SSRC
+         * @param participant the participant
+         */
+        Entry(long ssrc, Participant participant) {
+            this.ssrc = ssrc;
+            this.participant = participant;
+        }
+    }
+
+    /**
+     * Creates an empty table.
+     */
+    public SsrcTable() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty table with room for the given number of participants.
+     *
+     * @param expected the number of participants that fit without rebuilding the table
+     */
+    public SsrcTable(int expected) {
+        table = new AtomicReferenceArray<Entry>(capacityFor(expected));
+    }
+
+    /**
+     * The number of slots needed for a number of participants.
+     *
+     * @param count the number of participants
+     * @return a power of two
+     */
+    private static int capacityFor(int count) {
+        int needed = Math.max(16, (int) Math.min(1 << 30, (count * 16L) / LOAD_FACTOR + 1));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    /**
+     * The slot probing starts at, for an SSRC.
+     *
+     * @param ssrc the SSRC
+     * @param mask the number of slots minus one
+     * @return the slot
+     */
+    static int slot(long ssrc, int mask) {
+        // SSRCs are meant to be random, but nothing stops a sender from counting up
+        int h = (int) (ssrc ^ (ssrc >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Looks up a participant, without locking or allocating.
+     *
+     * @param ssrc the SSRC
+     * @return the participant, null if unknown
+     */
+    public Participant get(long ssrc) {
+        AtomicReferenceArray<Entry> t = table;
+        int mask = t.length() - 1;
+        int i = slot(ssrc, mask);
+        Entry e;
+        while((e = t.get(i)) != null) {
+            if(e.ssrc == ssrc && e != TOMBSTONE) {
+                return e.participant;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Whether a participant is filed under an SSRC.
+     *
+     * @param ssrc the SSRC
+     * @return true if there is one
+     */
+    public boolean containsKey(long ssrc) {
+        return get(ssrc) != null;
+    }
+
+    /**
+     * Files a participant under an SSRC, replacing the one that was there.
+     *
+     * @param ssrc the SSRC
+     * @param p the participant, not null
+     * @return the participant that was replaced, null if there was none
+     */
+    public synchronized Participant put(long ssrc, Participant p) {
+        AtomicReferenceArray<Entry> t = table;
+        int mask = t.length() - 1;
+        int i = slot(ssrc, mask);
+        int free = -1;
+        Entry e;
+        while((e = t.get(i)) != null) {
+            if(e == TOMBSTONE) {
+                if(free < 0) {
+                    free = i;
+                }
+            } else if(e.ssrc == ssrc) {
+                t.set(i, new Entry(ssrc, p));
+                return e.participant;
+            }
+            i = (i + 1) & mask;
+        }
+        if(free >= 0) {
+            t.set(free, new Entry(ssrc, p));
+        } else {
+            t.set(i, new Entry(ssrc, p));
+            used++;
+        }
+        size++;
+        if(used * 16 > t.length() * LOAD_FACTOR) {
+            rebuild();
+        }
+        return null;
+    }
+
+    /**
+     * Removes a participant, if it is still filed under the SSRC.
+     *
+     * @param ssrc the SSRC
+     * @param p the participant
+     * @return true if it was removed
+     */
+    public synchronized boolean remove(long ssrc, Participant p) {
+        AtomicReferenceArray<Entry> t = table;
+        int mask = t.length() - 1;
+        int i = slot(ssrc, mask);
+        Entry e;
+        while((e = t.get(i)) != null) {
+            if(e.ssrc == ssrc && e != TOMBSTONE) {
+                if(e.participant != p) {
+                    return false;
+                }
+                t.set(i, TOMBSTONE);
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Copies the participants into a new table, sized for them, without tombstones.
+     * Readers keep using the old table until the new one is published.
+     */
+    private void rebuild() {
+        AtomicReferenceArray<Entry> old = table;
+        AtomicReferenceArray<Entry> t = new AtomicReferenceArray<Entry>(capacityFor(size * 2));
+        int mask = t.length() - 1;
+        for(int j=0; j<old.length(); j++) {
+            Entry e = old.get(j);
+            if(e != null && e != TOMBSTONE) {
+                int i = slot(e.ssrc, mask);
+                while(t.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+                t.set(i, e);
+            }
+        }
+        used = size;
+        table = t;
+    }
+
+    /**
+     * The number of participants.
+     *
+     * @return the number of participants
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the visitor for every participant, without locking or allocating.
+     *
+     * @param visitor the visitor
+     */
+    public void visit(Visitor visitor) {
+        AtomicReferenceArray<Entry> t = table;
+        for(int i=0; i<t.length(); i++) {
+            Entry e = t.get(i);
+            if(e != null && e != TOMBSTONE) {
+                visitor.visit(e.participant);
+            }
+        }
+    }
+
+    /**
+     * Enumerates the participants, for callers that cannot use visit().
+     *
+     * @return a weakly consistent enumeration
+     */
+    public Enumeration<Participant> elements() {
+        final AtomicReferenceArray<Entry> t = table;
+        return new Enumeration<Participant>() {
+            /** The next participant, null at the end */
+            private Participant next = advance(0);
+            /** The slot after the one next was found in */
+            private int index;
+
+            /**
+             * Finds the next participant.
+             *
+             * @param from the slot to start at
+             * @return the participant, null if there are no more
+             */
+            private Participant advance(int from) {
+                for(int i=from; i<t.length(); i++) {
+                    Entry e = t.get(i);
+                    if(e != null && e != TOMBSTONE) {
+                        index = i + 1;
+                        return e.participant;
+                    }
+                }
+                index = t.length();
+                return null;
+            }
+
+            public boolean hasMoreElements() {
+                return next != null;
+            }
+
+            public Participant nextElement() {
+                Participant p = next;
+                if(p == null) {
+                    throw new NoSuchElementException();
+                }
+                next = advance(index);
+                return p;
+            }
+        };
+    }
+}
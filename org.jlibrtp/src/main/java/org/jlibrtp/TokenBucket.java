@@ -0,0 +1,122 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+/**
+ * A token bucket, limiting a stream to a bitrate while allowing bursts.
+ *
+ * Tokens are octets. They accumulate at the configured rate, up to the
+ * size of the bucket. Sending takes tokens, and may take more than there
+ * are; the debt then delays the following packets, so the long-term rate
+ * never exceeds the limit. The rate can be changed at any time, for
+ * instance by a bandwidth estimator.
+ *
+ * @author agent
+ */
+public class TokenBucket {
+    /** Nanoseconds per second */
+    private static final double NANOS = 1000000000.0;
+
+    /** Rate, in bits per second */
+    private long rate;
+    /** The most tokens that can accumulate, in octets */
+    private final int size;
+    /** Tokens available, negative while in debt */
+    private double tokens;
+    /** When tokens was last brought up to date, as in System.nanoTime() */
+    private long lastUpdate;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param bitsPerSecond the rate
+     * @param size the largest burst, in octets
+     */
+    public TokenBucket(long bitsPerSecond, int size) {
+        this.rate = Math.max(1, bitsPerSecond);
+        this.size = size;
+        this.tokens = size;
+        this.lastUpdate = System.nanoTime();
+    }
+
+    /**
+     * Adds the tokens that have accumulated since the last update.
+     *
+     * @param now the current time, as in System.nanoTime()
+     */
+    private void update(long now) {
+        long elapsed = now - lastUpdate;
+        if(elapsed > 0) {
+            tokens = Math.min(size, tokens + elapsed * (rate / 8.0) / NANOS);
+            lastUpdate = now;
+        }
+    }
+
+    /**
+     * Takes tokens for a packet and tells when it may be sent.
+     *
+     * @param octets the size of the packet
+     * @param now the current time, as in System.nanoTime()
+     * @return when to send the packet, as in System.nanoTime(), now if there were tokens enough
+     */
+    public synchronized long take(int octets, long now) {
+        update(now);
+        tokens -= octets;
+        if(tokens >= 0) {
+            return now;
+        }
+        return now + (long) (-tokens * NANOS / (rate / 8.0));
+    }
+
+    /**
+     * Takes tokens for a packet only if there are enough, for traffic that
+     * is dropped rather than delayed when over the limit.
+     *
+     * @param octets the size of the packet
+     * @param now the current time, as in System.nanoTime()
+     * @return true if the packet may be sent now
+     */
+    public synchronized boolean tryTake(int octets, long now) {
+        update(now);
+        if(tokens < octets) {
+            return false;
+        }
+        tokens -= octets;
+        return true;
+    }
+
+    /**
+     * Changes the rate. Tokens accumulated so far are kept.
+     *
+     * @param bitsPerSecond the new rate
+     */
+    public synchronized void setRate(long bitsPerSecond) {
+        update(System.nanoTime());
+        this.rate = Math.max(1, bitsPerSecond);
+    }
+
+    /**
+     * The current rate.
+     *
+     * @return the rate in bits per second
+     */
+    public synchronized long getRate() {
+        return this.rate;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.Arrays;
+
+/**
+ * Records when the packets of one participant arrive, by transport-wide
+ * sequence number, and writes them into transport feedback messages
+ * (draft-holmer-rmcat-transport-wide-cc-extensions-01, 3.1): RTPFB
+ * packets of FMT 15, from which the sender learns the delay of every packet.
+ *
+ * Arrival times go into a ring of primitives, so recording a packet does not
+ * allocate. A feedback message reports every sequence number since the last
+ * one, as run length or status vector chunks, followed by the receive
+ * deltas in multiples of 250 microseconds.
+ *
+ * Not thread safe, used by the thread that receives the participant's packets.
+ *
+ * @author agent
+ */
+class TransportFeedback {
+    /** Nanoseconds between two feedback messages */
+    protected static final long FEEDBACK_INTERVAL = 100000000L;
+    /** The most packets reported in one feedback message */
+    protected static final int MAX_STATUS = 1024;
+    /** Nanoseconds per unit of the reference time */
+    protected static final long REFERENCE_UNIT = 64000000L;
+    /** Nanoseconds per unit of the receive deltas */
+    protected static final long DELTA_UNIT = 250000L;
+
+    /** Packet status symbol, not received */
+    protected static final int NOT_RECEIVED = 0;
+    /** Packet status symbol, received with a one octet delta */
+    protected static final int SMALL_DELTA = 1;
+    /** Packet status symbol, received with a two octet delta */
+    protected static final int LARGE_DELTA = 2;
+
+    /** The number of packets recorded, a power of two */
+    private static final int SIZE = 2 * MAX_STATUS;
+
+    /** When each packet arrived, as in System.nanoTime() */
+    private final long[] arrivals = new long[SIZE];
+    /** The extended sequence number of each packet, -1 for empty slots */
+    private final long[] seqNums = new long[SIZE];
+    /** The first extended sequence number not reported yet, -1 before the first packet */
+    private long nextSeqNum = -1;
+    /** The highest extended sequence number received */
+    private long highestSeqNum = -1;
+    /** When the last feedback message was written, as in System.nanoTime() */
+    private long lastFeedback;
+    /** Counts the feedback messages, 8 bits */
+    private int feedbackCount = 0;
+
+    /** The status symbol of each packet of the message being written */
+    private final int[] symbols = new int[MAX_STATUS];
+    /** The receive delta of each packet of the message being written */
+    private final int[] deltas = new int[MAX_STATUS];
+    /** The message being written, the largest possible */
+    private final byte[] fci = new byte[8 + 2*MAX_STATUS + 2*MAX_STATUS + 3];
+
+    /**
+     * Creates an empty record.
+     */
+    protected TransportFeedback() {
+        Arrays.fill(seqNums, -1);
+        lastFeedback = System.nanoTime();
+    }
+
+    /**
+     * Records the arrival of a packet. Packets that were already
+     * reported as lost are ignored.
+     *
+     * @param seqNum the transport-wide sequence number, 16 bits
+     * @param now the current time, as in System.nanoTime()
+     */
+    protected void received(int seqNum, long now) {
+        long extended;
+        if(highestSeqNum < 0) {
+            extended = seqNum;
+            nextSeqNum = extended;
+            highestSeqNum = extended;
+        } else {
+            extended = highestSeqNum + (short) (seqNum - highestSeqNum);
+            if(extended < nextSeqNum) {
+                return;
+            }
+            if(extended > highestSeqNum) {
+                highestSeqNum = extended;
+            }
+        }
+        int slot = (int) extended & (SIZE - 1);
+        arrivals[slot] = now;
+        seqNums[slot] = extended;
+    }
+
+    /**
+     * Whether a feedback message should be sent, because the interval has passed
+     * or as many packets as one message reports are waiting.
+     *
+     * @param now the current time, as in System.nanoTime()
+     * @return true if one should
+     */
+    protected boolean due(long now) {
+        if(nextSeqNum < 0 || highestSeqNum < nextSeqNum) {
+            return false;
+        }
+        return now - lastFeedback >= FEEDBACK_INTERVAL || highestSeqNum - nextSeqNum + 1 >= MAX_STATUS;
+    }
+
+    /**
+     * Writes the feedback control information of a feedback message for the
+     * packets not reported yet, which are reported by it.
+     *
+     * @param now the current time, as in System.nanoTime()
+     * @return the FCI, null if no packet was received since the last message
+     */
+    protected byte[] build(long now) {
+        lastFeedback = now;
+        if(highestSeqNum - nextSeqNum + 1 > SIZE) {
+            // The oldest packets are no longer recorded
+            nextSeqNum = highestSeqNum - SIZE + 1;
+        }
+        long base = nextSeqNum;
+        int count = (int) Math.min(highestSeqNum - base + 1, MAX_STATUS);
+
+        int first = 0;
+        while(first < count && seqNums[(int) (base + first) & (SIZE - 1)] != base + first) {
+            first++;
+        }
+        if(first == count) {
+            nextSeqNum = base + count;
+            return null;
+        }
+
+        // The reference time, then each delta from the packet received before
+        long reference = Math.floorDiv(arrivals[(int) (base + first) & (SIZE - 1)], REFERENCE_UNIT);
+        long previous = reference * REFERENCE_UNIT;
+        for(int i=0; i<count; i++) {
+            int slot = (int) (base + i) & (SIZE - 1);
+            if(seqNums[slot] != base + i) {
+                symbols[i] = NOT_RECEIVED;
+                continue;
+            }
+            long delta = Math.floorDiv(arrivals[slot] - previous, DELTA_UNIT);
+            if(delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+                // The rest goes into the next message
+                count = i;
+                break;
+            }
+            symbols[i] = delta >= 0 && delta <= 0xFF ? SMALL_DELTA : LARGE_DELTA;
+            deltas[i] = (int) delta;
+            previous += delta * DELTA_UNIT;
+        }
+        nextSeqNum = base + count;
+
+        fci[0] = (byte) (base >>> 8);
+        fci[1] = (byte) base;
+        fci[2] = (byte) (count >>> 8);
+        fci[3] = (byte) count;
+        fci[4] = (byte) (reference >>> 16);
+        fci[5] = (byte) (reference >>> 8);
+        fci[6] = (byte) reference;
+        fci[7] = (byte) feedbackCount;
+        feedbackCount = (feedbackCount + 1) & 0xFF;
+
+        int pos = 8;
+        int i = 0;
+        while(i < count) {
+            int run = 1;
+            while(i + run < count && symbols[i + run] == symbols[i] && run < 0x1FFF) {
+                run++;
+            }
+            int chunk;
+            if(run >= 7) {
+                // Run length chunk
+                chunk = symbols[i] << 13 | run;
+                i += run;
+            } else {
+                // Status vector chunk of seven two bit symbols
+                chunk = 0xC000;
+                for(int j=0; j<7 && i < count; j++, i++) {
+                    chunk |= symbols[i] << (12 - 2*j);
+                }
+            }
+            fci[pos++] = (byte) (chunk >>> 8);
+            fci[pos++] = (byte) chunk;
+        }
+        for(i=0; i<count; i++) {
+            if(symbols[i] == SMALL_DELTA) {
+                fci[pos++] = (byte) deltas[i];
+            } else if(symbols[i] == LARGE_DELTA) {
+                fci[pos++] = (byte) (deltas[i] >>> 8);
+                fci[pos++] = (byte) deltas[i];
+            }
+        }
+        // Zeros up to the next 32 bit boundary
+        int length = (pos + 3) & ~3;
+        byte[] ret = Arrays.copyOf(fci, length);
+        for(int j=pos; j<length; j++) {
+            ret[j] = 0;
+        }
+        return ret;
+    }
+}
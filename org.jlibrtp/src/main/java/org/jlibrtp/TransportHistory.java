@@ -0,0 +1,224 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.Arrays;
+
+/**
+ * Remembers when the packets a session sends went out, by transport-wide
+ * sequence number, and turns the transport feedback messages that come back
+ * (see TransportFeedback) into the delay signal a bandwidth estimator needs.
+ *
+ * For every packet a message reports as received, and that was sent after
+ * another received packet, the difference of their send times and of their
+ * arrival times are kept, along with its size. Arrival minus send delta is
+ * the change in one way delay, which grows as a queue builds up on the path.
+ * Packets reported as not received are counted as lost.
+ *
+ * Send and arrival times go into rings of primitives and the results into
+ * arrays that are reused, so neither sending nor feedback allocates.
+ *
+ * Not thread safe, RTPSession serializes access through its send lock.
+ *
+ * @author agent
+ */
+class TransportHistory {
+    /** The number of packets remembered, a power of two */
+    protected static final int SIZE = 4096;
+
+    /** When each packet was sent, as in System.nanoTime() */
+    private final long[] sentAt = new long[SIZE];
+    /** The length of each packet */
+    private final int[] lengths = new int[SIZE];
+    /** The sequence number of each packet, -1 for empty slots */
+    private final int[] seqNums = new int[SIZE];
+
+    /** The reference time of the last message, 24 bits */
+    private int lastReference = -1;
+    /** The reference time of the last message, in nanoseconds of the receiver's clock */
+    private long reference = 0;
+    /** The send time of the last packet reported as received, -1 if none yet */
+    private long lastSent = -1;
+    /** The arrival time of the last packet reported as received, in nanoseconds of the receiver's clock */
+    private long lastArrival = 0;
+    /** The feedback message count expected next, -1 before the first message */
+    private int expectedFeedbackCount = -1;
+
+    /** Send time minus that of the packet received before, for each packet of the last message */
+    protected final long[] sendDeltas = new long[TransportFeedback.MAX_STATUS];
+    /** Arrival time minus that of the packet received before, for each packet of the last message */
+    protected final long[] arrivalDeltas = new long[TransportFeedback.MAX_STATUS];
+    /** The length of each packet of the last message */
+    protected final int[] sizes = new int[TransportFeedback.MAX_STATUS];
+    /** The number of entries in sendDeltas, arrivalDeltas and sizes */
+    protected int count = 0;
+    /** The number of packets the last message reported as not received */
+    protected int lost = 0;
+    /** The number of feedback messages that went missing before the last one */
+    protected int missedFeedback = 0;
+
+    /**
+     * Creates an empty history.
+     */
+    protected TransportHistory() {
+        Arrays.fill(seqNums, -1);
+    }
+
+    /**
+     * Notes that a packet has been sent.
+     *
+     * @param seqNum the transport-wide sequence number
+     * @param now the current time, as in System.nanoTime()
+     * @param length the length of the packet
+     */
+    protected void sent(int seqNum, long now, int length) {
+        int slot = seqNum & (SIZE - 1);
+        sentAt[slot] = now;
+        lengths[slot] = length;
+        seqNums[slot] = seqNum;
+    }
+
+    /**
+     * Parses the feedback control information of a transport feedback message
+     * into sendDeltas, arrivalDeltas, sizes, count and lost.
+     *
+     * @param raw the array holding the message
+     * @param start where the FCI starts
+     * @param length the length of the FCI
+     * @return the number of packets reported, -1 if the message is malformed
+     */
+    protected int feedback(byte[] raw, int start, int length) {
+        count = 0;
+        lost = 0;
+        missedFeedback = 0;
+        if(length < 8) {
+            return -1;
+        }
+        int end = start + length;
+        int base = ((raw[start] & 0xFF) << 8) | (raw[start + 1] & 0xFF);
+        int statusCount = ((raw[start + 2] & 0xFF) << 8) | (raw[start + 3] & 0xFF);
+        int ref = ((raw[start + 4] & 0xFF) << 16) | ((raw[start + 5] & 0xFF) << 8) | (raw[start + 6] & 0xFF);
+        int feedbackCount = raw[start + 7] & 0xFF;
+
+        // The chunks, until there is a symbol for every packet
+        int pos = start + 8;
+        int chunksStart = pos;
+        int symbols = 0;
+        while(symbols < statusCount) {
+            if(pos + 2 > end) {
+                return -1;
+            }
+            int chunk = ((raw[pos] & 0xFF) << 8) | (raw[pos + 1] & 0xFF);
+            pos += 2;
+            if((chunk & 0x8000) == 0) {
+                symbols += chunk & 0x1FFF;
+            } else if((chunk & 0x4000) == 0) {
+                symbols += 14;
+            } else {
+                symbols += 7;
+            }
+        }
+        int deltaPos = pos;
+
+        if(lastReference >= 0) {
+            // Reference times are 24 bit, and wrap around
+            int diff = ((ref - lastReference) << 8) >> 8;
+            reference += diff * TransportFeedback.REFERENCE_UNIT;
+        }
+        lastReference = ref;
+        if(expectedFeedbackCount >= 0) {
+            missedFeedback = (feedbackCount - expectedFeedbackCount) & 0xFF;
+        }
+        expectedFeedbackCount = (feedbackCount + 1) & 0xFF;
+
+        // Walk the chunks again, symbol by symbol, reading the deltas as they come
+        long arrival = reference;
+        int seqNum = base;
+        int reported = 0;
+        pos = chunksStart;
+        while(reported < statusCount) {
+            int chunk = ((raw[pos] & 0xFF) << 8) | (raw[pos + 1] & 0xFF);
+            pos += 2;
+            int n;
+            if((chunk & 0x8000) == 0) {
+                n = chunk & 0x1FFF;
+            } else if((chunk & 0x4000) == 0) {
+                n = 14;
+            } else {
+                n = 7;
+            }
+            for(int i=0; i<n && reported < statusCount; i++, reported++, seqNum = (seqNum + 1) & 0xFFFF) {
+                int symbol;
+                if((chunk & 0x8000) == 0) {
+                    symbol = (chunk >>> 13) & 0x03;
+                } else if((chunk & 0x4000) == 0) {
+                    symbol = (chunk >>> (13 - i)) & 0x01;
+                } else {
+                    symbol = (chunk >>> (12 - 2*i)) & 0x03;
+                }
+                if(symbol == TransportFeedback.NOT_RECEIVED) {
+                    lost++;
+                    continue;
+                }
+                int delta;
+                if(symbol == TransportFeedback.SMALL_DELTA) {
+                    if(deltaPos + 1 > end) {
+                        return -1;
+                    }
+                    delta = raw[deltaPos++] & 0xFF;
+                } else if(symbol == TransportFeedback.LARGE_DELTA) {
+                    if(deltaPos + 2 > end) {
+                        return -1;
+                    }
+                    delta = (short) (((raw[deltaPos] & 0xFF) << 8) | (raw[deltaPos + 1] & 0xFF));
+                    deltaPos += 2;
+                } else {
+                    return -1;
+                }
+                arrival += delta * TransportFeedback.DELTA_UNIT;
+
+                int slot = seqNum & (SIZE - 1);
+                if(seqNums[slot] != seqNum) {
+                    // Sent too long ago, or not by us
+                    continue;
+                }
+                if(lastSent >= 0 && count < sendDeltas.length) {
+                    sendDeltas[count] = sentAt[slot] - lastSent;
+                    arrivalDeltas[count] = arrival - lastArrival;
+                    sizes[count] = lengths[slot];
+                    count++;
+                }
+                lastSent = sentAt[slot];
+                lastArrival = arrival;
+            }
+        }
+        return statusCount;
+    }
+
+    /**
+     * Forgets every packet, for instance when the SSRC has changed.
+     */
+    protected void clear() {
+        Arrays.fill(seqNums, -1);
+        lastSent = -1;
+        lastReference = -1;
+        reference = 0;
+        expectedFeedbackCount = -1;
+    }
+}
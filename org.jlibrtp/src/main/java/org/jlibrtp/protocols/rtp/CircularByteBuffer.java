@@ -20,218 +20,470 @@ package org.jlibrtp.protocols.rtp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
-public class CircularByteBuffer {	
-	private int readOfs = 0; 
-	
-	private int writeOfs = 0;
-
-        private int initialSize;
-	
-	private CircularByteBufferInputStream is;
-	
-	private CircularByteBufferOutputStream os;
-	
-	private byte[] buf;
-	
-	public CircularByteBuffer(int initialSize) {
-		buf = new byte[initialSize];
-		this.initialSize = initialSize;
-		is = new CircularByteBufferInputStream(this);
-		os = new CircularByteBufferOutputStream(this);
-	}
-	
-	private synchronized int bytesLeft() {
-		return buf.length - bytesUsed();
-	}
-	
-	private synchronized int bytesUsed() {
-		if(readOfs == writeOfs)
-			return 0;
-		
-		if(readOfs < writeOfs)
-			return writeOfs - readOfs;
-	
-		return buf.length - (writeOfs - readOfs);
-	}
-	
-	private void doubleBuf() {
-		byte[] oldBuf = buf;
-		buf = new byte[oldBuf.length*2];
-		
-		System.arraycopy(oldBuf, 0, buf, 0, oldBuf.length);
-	}
-	
-	private synchronized void write(byte[] data, int offset, int length) {
-		while(length > bytesLeft()) {
-			doubleBuf();
-		}
-		
-		if(writeOfs + length > buf.length) {
-			int endLength = buf.length - this.writeOfs;
-			
-			System.arraycopy(data, 0, buf, writeOfs, endLength);
-			
-			writeOfs = 0;
-			length = length - endLength;
-			offset = endLength + offset;
-		}
-		
-		System.arraycopy(data, offset, buf, writeOfs, length);
-		
-		writeOfs += length;
-	}
-	
-	private synchronized int read(byte[] buffer, int offset, int length) {
-		int maxLeft= this.bytesUsed();
-		int bytesLeft = length;
-		
-		if(maxLeft < bytesLeft) {
-			bytesLeft = maxLeft;
-			length = maxLeft;
-		}
-		
-		if(readOfs + length > buf.length) {
-			int endLength = buf.length - readOfs;
-
-			System.arraycopy(buf, readOfs, buffer, offset, endLength);
-			
-			readOfs = 0;
-			bytesLeft = bytesLeft - endLength;
-			offset = offset + endLength;
-		}
-		
-		System.arraycopy(buf, readOfs, buffer, offset, bytesLeft);
-		
-		readOfs += bytesLeft;
-		
-		return length;
-	}
-
-        public synchronized void clear() {
-	    readOfs = 0;
-            writeOfs = 0;
-            buf = new byte[this.initialSize];
-	}
-
-	public String debugPrintFunction() {
-		return this.buf.length + " " + readOfs + " " + writeOfs + " " + this.bytesLeft() + " " + this.bytesUsed(); 
-	}
-	
-	public String debugPrintData() {
-		String str = "";
-		for(int i=0; i<buf.length; i++) {
-			String tmpstr = "" + buf[i];
-			if(i == this.readOfs) {
-				tmpstr = "(" +tmpstr+ ")";
-			} 
-			if(i == this.writeOfs) {
-				tmpstr = "[" +tmpstr+ "]";
-			}
-			str += " " + tmpstr;
-		}
-		
-		return str + "   []:writeOfs ():readOfs";
-	}
-	
-	
-	public OutputStream getOutputStream() {
-		return os;
-	}
-	
-	public InputStream getInputStream() {
-		return is;
-	}
-	
-	protected class CircularByteBufferOutputStream extends OutputStream {
-		CircularByteBuffer cbb;
-		boolean closed = false;
-		
-		protected CircularByteBufferOutputStream(CircularByteBuffer cbb) {
-			this.cbb = cbb;
-		}
-		
-		public void write(int b) throws IOException {
-			byte[] bytes = new byte[1];
-			bytes[0] = (byte) b;
-			write(bytes);
-		}
-		
-		public void write(byte[] data) throws IOException {
-			if(closed)
-				throw new IOException("Stream has been closed");
-			
-			cbb.write(data, 0, data.length);
-		}
-		
-		public void write(byte[] data, int offset, int length) throws IOException {
-			if(closed)
-				throw new IOException("Stream has been closed");
-			
-			cbb.write(data, offset, length);
-		}
-		
-		public void flush() throws IOException {
-			if(closed)
-				throw new IOException("Stream has been closed");
-			
-		}
-		
-		public void close() throws IOException {
-			closed = true;
-		}
-	}
-	
-	protected class CircularByteBufferInputStream extends InputStream {
-		CircularByteBuffer cbb;
-		boolean closed = false;
-		
-		protected CircularByteBufferInputStream(CircularByteBuffer cbb) {
-			this.cbb = cbb;
-		}
-		
-		public int available() throws IOException {
-			if(closed)
-				throw new IOException("Stream has been closed");
-			
-			return cbb.bytesUsed();
-		}
-		
-		public void close() throws IOException {
-			closed = true;
-		}
-		
-		public boolean markSupported() {
-			return false;
-		}
-	
-		
-		public int read() throws IOException {
-			byte[] bytes = new byte[0];
-			this.read(bytes);
-			return (int) bytes[0];
-		}
-		
-		public int read(byte[] buffer) throws IOException {
-			if(closed)
-				throw new IOException("Stream has been closed");
-			
-			return cbb.read(buffer, 0, buffer.length);
-		}
-		
-		public int read(byte[] buffer, int offset, int length) throws IOException {
-			if(closed)
-				throw new IOException("Stream has been closed");
-			
-			return cbb.read(buffer, offset, length);
-		}
-		
-		public long skip(long n) throws IOException  {
-			int skipn = (int) n;
-			byte[] bytes = new byte[skipn];
-			
-			return (long) read(bytes);
-		}
-	}	
+/**
+ * A fixed-size byte ring between one writing and one reading thread,
+ * exposed as an OutputStream and an InputStream.
+ *
+ * Neither side takes a lock. The writer publishes bytes by advancing the
+ * tail, the reader consumes them by advancing the head. What happens when
+ * the writer finds the ring full is decided by the policy:
+ *  - BLOCK, the writer waits for the reader to make room,
+ *  - DROP_OLDEST, the oldest unread bytes are discarded, which suits live
+ *    media read by a consumer that may fall behind,
+ *  - DROP_NEWEST, the bytes that do not fit are discarded.
+ *
+ * Bulk reads return what is available without waiting, 0 if nothing is.
+ * Single-byte reads wait for a byte, and return -1 once the output side
+ * has been closed and everything has been read.
+ *
+ * @author Arne Kepp
+ */
+public class CircularByteBuffer {
+    /** The writer waits while the ring is full */
+    public static final int BLOCK = 0;
+    /** The oldest unread bytes make room for new ones */
+    public static final int DROP_OLDEST = 1;
+    /** Bytes that do not fit are discarded */
+    public static final int DROP_NEWEST = 2;
+
+    /** The ring, its length a power of two */
+    private final byte[] buf;
+    /** buf.length - 1 */
+    private final int mask;
+    /** BLOCK, DROP_OLDEST or DROP_NEWEST */
+    private final int policy;
+    /** Bytes read, skipped or dropped, advanced by compare-and-set only */
+    private final AtomicLong head = new AtomicLong();
+    /** Bytes written, advanced by the writer only */
+    private final AtomicLong tail = new AtomicLong();
+    /** Bytes discarded because the ring was full, written by the writer only */
+    private volatile long dropped = 0;
+    /** The writer, while it waits for room */
+    private volatile Thread waitingWriter = null;
+    /** The reader, while it waits for a byte */
+    private volatile Thread waitingReader = null;
+
+    private final CircularByteBufferInputStream is;
+
+    private final CircularByteBufferOutputStream os;
+
+    /**
+     * Creates a ring whose writer blocks while it is full.
+     *
+     * @param capacity the number of bytes it holds, rounded up to a power of two
+     */
+    public CircularByteBuffer(int capacity) {
+        this(capacity, BLOCK);
+    }
+
+    /**
+     * Creates a ring.
+     *
+     * @param capacity the number of bytes it holds, rounded up to a power of two
+     * @param policy BLOCK, DROP_OLDEST or DROP_NEWEST
+     */
+    public CircularByteBuffer(int capacity, int policy) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.buf = new byte[size];
+        this.mask = size - 1;
+        this.policy = policy;
+        is = new CircularByteBufferInputStream(this);
+        os = new CircularByteBufferOutputStream(this);
+    }
+
+    /**
+     * The number of bytes the ring holds.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return buf.length;
+    }
+
+    /**
+     * The number of bytes discarded so far because the ring was full.
+     *
+     * @return dropped bytes
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    private int bytesLeft() {
+        return buf.length - bytesUsed();
+    }
+
+    private int bytesUsed() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Makes room for bytes about to be written, according to the policy.
+     * Only called by the writer.
+     *
+     * @param length the number of bytes to be written, at most the capacity
+     * @return the number of bytes that may be written now
+     * @throws IOException if the reader has gone while the writer waits
+     */
+    private int reserve(int length) throws IOException {
+        while(true) {
+            long h = head.get();
+            int free = buf.length - (int) (tail.get() - h);
+            if(free >= length) {
+                return length;
+            }
+            if(policy == DROP_NEWEST) {
+                return free;
+            } else if(policy == DROP_OLDEST) {
+                // Fails if the reader has just consumed something, then there may be room
+                if(head.compareAndSet(h, h + length - free)) {
+                    dropped += length - free;
+                    return length;
+                }
+            } else if(free > 0) {
+                return free;
+            } else {
+                awaitRoom();
+            }
+        }
+    }
+
+    /**
+     * Parks the writer until the reader has consumed something.
+     *
+     * @throws IOException if the reader has gone, or the writer is interrupted
+     */
+    private void awaitRoom() throws IOException {
+        waitingWriter = Thread.currentThread();
+        if(bytesLeft() == 0 && !is.closed) {
+            LockSupport.park(this);
+        }
+        waitingWriter = null;
+        if(is.closed) {
+            throw new IOException("Stream has been closed");
+        }
+        if(Thread.interrupted()) {
+            throw new InterruptedIOException("Interrupted while the buffer was full");
+        }
+    }
+
+    /**
+     * Publishes written bytes and wakes the reader if it waits for them.
+     *
+     * @param t the new tail
+     */
+    private void publish(long t) {
+        tail.set(t);
+        Thread r = waitingReader;
+        if(r != null) {
+            LockSupport.unpark(r);
+        }
+    }
+
+    /**
+     * Wakes the writer if it waits for room.
+     */
+    private void consumed() {
+        Thread w = waitingWriter;
+        if(w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    private void write(byte[] data, int offset, int length) throws IOException {
+        if(length > buf.length && policy == DROP_OLDEST) {
+            // Only the end would survive anyway
+            dropped += length - buf.length;
+            offset += length - buf.length;
+            length = buf.length;
+        }
+        while(length > 0) {
+            int n = reserve(Math.min(length, buf.length));
+            long t = tail.get();
+            int idx = (int) (t & mask);
+            int first = Math.min(n, buf.length - idx);
+            System.arraycopy(data, offset, buf, idx, first);
+            System.arraycopy(data, offset + first, buf, 0, n - first);
+            publish(t + n);
+            offset += n;
+            length -= n;
+            if(policy == DROP_NEWEST && length > 0) {
+                // What did not fit
+                dropped += length;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer, as OutputStream.write() would.
+     *
+     * @param src the bytes, from position to limit, its position is advanced
+     * @throws IOException if the ring has been closed, or the writer is interrupted
+     */
+    public void write(ByteBuffer src) throws IOException {
+        if(os.closed)
+            throw new IOException("Stream has been closed");
+
+        if(src.remaining() > buf.length && policy == DROP_OLDEST) {
+            dropped += src.remaining() - buf.length;
+            src.position(src.limit() - buf.length);
+        }
+        while(src.hasRemaining()) {
+            int n = reserve(Math.min(src.remaining(), buf.length));
+            long t = tail.get();
+            int idx = (int) (t & mask);
+            int first = Math.min(n, buf.length - idx);
+            src.get(buf, idx, first);
+            src.get(buf, 0, n - first);
+            publish(t + n);
+            if(policy == DROP_NEWEST && src.hasRemaining()) {
+                dropped += src.remaining();
+                src.position(src.limit());
+                return;
+            }
+        }
+    }
+
+    private int read(byte[] buffer, int offset, int length) {
+        while(true) {
+            long h = head.get();
+            int n = (int) Math.min(length, tail.get() - h);
+            if(n <= 0) {
+                return 0;
+            }
+            int idx = (int) (h & mask);
+            int first = Math.min(n, buf.length - idx);
+            System.arraycopy(buf, idx, buffer, offset, first);
+            System.arraycopy(buf, 0, buffer, offset + first, n - first);
+            if(head.compareAndSet(h, h + n)) {
+                consumed();
+                return n;
+            }
+            // The writer dropped what we were copying, start over
+        }
+    }
+
+    /**
+     * Reads as many bytes as are available and fit, without waiting.
+     *
+     * @param dst where to put them, its position is advanced
+     * @return the number of bytes read, 0 if there were none
+     * @throws IOException if the ring has been closed
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if(is.closed)
+            throw new IOException("Stream has been closed");
+
+        int pos = dst.position();
+        while(true) {
+            long h = head.get();
+            int n = (int) Math.min(dst.remaining(), tail.get() - h);
+            if(n <= 0) {
+                return 0;
+            }
+            int idx = (int) (h & mask);
+            int first = Math.min(n, buf.length - idx);
+            dst.put(buf, idx, first);
+            dst.put(buf, 0, n - first);
+            if(head.compareAndSet(h, h + n)) {
+                consumed();
+                return n;
+            }
+            dst.position(pos);
+        }
+    }
+
+    /**
+     * Reads one byte, waiting for it if necessary.
+     *
+     * @return the byte, 0 to 255, or -1 if the output side is closed and the ring is empty
+     * @throws IOException if the reader is interrupted
+     */
+    private int readByte() throws IOException {
+        while(true) {
+            long h = head.get();
+            if(tail.get() > h) {
+                int b = buf[(int) (h & mask)] & 0xFF;
+                if(head.compareAndSet(h, h + 1)) {
+                    consumed();
+                    return b;
+                }
+                continue;
+            }
+            if(os.closed) {
+                return -1;
+            }
+            waitingReader = Thread.currentThread();
+            if(bytesUsed() == 0 && !os.closed && !is.closed) {
+                LockSupport.park(this);
+            }
+            waitingReader = null;
+            if(is.closed) {
+                throw new IOException("Stream has been closed");
+            }
+            if(Thread.interrupted()) {
+                throw new InterruptedIOException("Interrupted while the buffer was empty");
+            }
+        }
+    }
+
+    /**
+     * Discards up to n unread bytes.
+     *
+     * @param n the number of bytes
+     * @return the number of bytes discarded
+     */
+    private long skipBytes(long n) {
+        while(true) {
+            long h = head.get();
+            long skip = Math.min(n, tail.get() - h);
+            if(skip <= 0) {
+                return 0;
+            }
+            if(head.compareAndSet(h, h + skip)) {
+                consumed();
+                return skip;
+            }
+        }
+    }
+
+    /**
+     * Discards everything that has not been read yet.
+     */
+    public void clear() {
+        skipBytes(Long.MAX_VALUE);
+    }
+
+    public String debugPrintFunction() {
+        return this.buf.length + " " + (head.get() & mask) + " " + (tail.get() & mask)
+                + " " + this.bytesLeft() + " " + this.bytesUsed();
+    }
+
+    public String debugPrintData() {
+        StringBuilder str = new StringBuilder();
+        int readOfs = (int) (head.get() & mask);
+        int writeOfs = (int) (tail.get() & mask);
+        for(int i=0; i<buf.length; i++) {
+            String tmpstr = "" + buf[i];
+            if(i == readOfs) {
+                tmpstr = "(" +tmpstr+ ")";
+            }
+            if(i == writeOfs) {
+                tmpstr = "[" +tmpstr+ "]";
+            }
+            str.append(' ').append(tmpstr);
+        }
+
+        return str + "   []:writeOfs ():readOfs";
+    }
+
+
+    public OutputStream getOutputStream() {
+        return os;
+    }
+
+    public InputStream getInputStream() {
+        return is;
+    }
+
+    protected class CircularByteBufferOutputStream extends OutputStream {
+        CircularByteBuffer cbb;
+        volatile boolean closed = false;
+        /** Holds the argument of write(int), only used by the writer */
+        private final byte[] single = new byte[1];
+
+        protected CircularByteBufferOutputStream(CircularByteBuffer cbb) {
+            this.cbb = cbb;
+        }
+
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        public void write(byte[] data) throws IOException {
+            write(data, 0, data.length);
+        }
+
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if(closed)
+                throw new IOException("Stream has been closed");
+
+            cbb.write(data, offset, length);
+        }
+
+        public void flush() throws IOException {
+            if(closed)
+                throw new IOException("Stream has been closed");
+
+        }
+
+        public void close() throws IOException {
+            closed = true;
+            // A reader waiting for a byte gets -1
+            Thread r = waitingReader;
+            if(r != null) {
+                LockSupport.unpark(r);
+            }
+        }
+    }
+
+    protected class CircularByteBufferInputStream extends InputStream {
+        CircularByteBuffer cbb;
+        volatile boolean closed = false;
+
+        protected CircularByteBufferInputStream(CircularByteBuffer cbb) {
+            this.cbb = cbb;
+        }
+
+        public int available() throws IOException {
+            if(closed)
+                throw new IOException("Stream has been closed");
+
+            return cbb.bytesUsed();
+        }
+
+        public void close() throws IOException {
+            closed = true;
+            // A writer waiting for room gets an IOException
+            consumed();
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+
+        public int read() throws IOException {
+            if(closed)
+                throw new IOException("Stream has been closed");
+
+            return cbb.readByte();
+        }
+
+        public int read(byte[] buffer) throws IOException {
+            return read(buffer, 0, buffer.length);
+        }
+
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if(closed)
+                throw new IOException("Stream has been closed");
+
+            return cbb.read(buffer, offset, length);
+        }
+
+        public long skip(long n) throws IOException  {
+            if(closed)
+                throw new IOException("Stream has been closed");
+
+            return cbb.skipBytes(n);
+        }
+    }
 }
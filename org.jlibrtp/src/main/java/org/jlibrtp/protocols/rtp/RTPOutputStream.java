@@ -23,13 +23,19 @@ import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jlibrtp.Pacer;
 import org.jlibrtp.RTPSession;
+import org.jlibrtp.TokenBucket;
 
 /**
  * <p>Title: RTPOutputStream </p>
  *
  * <p>Description: Output stream that sends the audio in "real time"</p>
  *
+ * <p>The packets are sent at their due time by a Pacer, which many streams
+ * share, rather than by the writing thread. Writers block only while they
+ * are more than a few packets ahead.</p>
+ *
  * <p>Copyright: Copyright (c) 2008</p>
  *
  * <p>Company: www.VoiceInteraction.pt</p>
@@ -42,27 +48,54 @@ public class RTPOutputStream extends OutputStream {
     private static final Logger LOGGER =
         Logger.getLogger(RTPOutputStream.class.getName());
 
+    //Packets buffered ahead of their due time before write() blocks
+    private static final int MAX_QUEUED_PACKETS = 4;
+
     //RTPSession
     private final RTPSession rtpSession;
 
-    //Number of RTP packets that should be sent per second
+    //Number of bytes in each RTP packet
     private final long packetSize;
 
-    //The time in seconds of each frame contents
-    private final double packetDuration;
+    //Bytes of audio per second
+    private final long bytesPerSecond;
+
+    //The time in nanoseconds of each frame contents
+    private final long packetNanos;
 
     //Buffer that will store bytes to send
     private final CircularByteBuffer circularByteBuffer;
 
-    //The next packet timestamp
-    private long pktTmestamp;
-
-    //Buffer that hols temporary read data
+    //Buffer that hols temporary read data, only used by sendTask
     private final byte[] buffer;
 
+    //Releases the packets at their due time
+    private final Pacer pacer;
+
+    //Sends one packet and schedules the next
+    private final SendTask sendTask = new SendTask();
+
+    //Optional bitrate limit, null if none
+    private TokenBucket tokenBucket;
+
+    //When the next packet is due, as in System.nanoTime()
+    private long nextDue;
+
+    //RTP timestamp of the first packet since the last flush, -1 before it is sent
+    private long baseTimestamp;
+
+    //Packets sent since baseTimestamp
+    private long pktCount;
+
+    //Whether sendTask is scheduled
+    private boolean scheduled;
+
+    //Set by close()
+    private boolean closed;
+
     /**
      * Constructor
-     * Given a RTPSession builds an OutputStream to it
+     * Given a RTPSession builds an OutputStream to it, paced by the default Pacer
      *
      * @param rtpSession RTPSession
      * @param bytesPerSecond long
@@ -70,14 +103,43 @@ public class RTPOutputStream extends OutputStream {
      */
     public RTPOutputStream(RTPSession rtpSession, long bytesPerSecond,
                            int packetsPerSecond) {
+        this(rtpSession, bytesPerSecond, packetsPerSecond, Pacer.getDefault());
+    }
+
+    /**
+     * Constructor
+     * Given a RTPSession builds an OutputStream to it
+     *
+     * @param rtpSession RTPSession
+     * @param bytesPerSecond long
+     * @param packetsPerSecond int
+     * @param pacer sends the packets at their due time
+     */
+    public RTPOutputStream(RTPSession rtpSession, long bytesPerSecond,
+                           int packetsPerSecond, Pacer pacer) {
         this.rtpSession = rtpSession;
+        this.bytesPerSecond = bytesPerSecond;
+        this.pacer = pacer;
 
         packetSize = bytesPerSecond / packetsPerSecond;
-        packetDuration = 1000f * ((double) packetSize / (double) bytesPerSecond);
-        pktTmestamp = -1;
+        packetNanos = 1000000000L * packetSize / bytesPerSecond;
+        baseTimestamp = -1;
         buffer = new byte[(int) packetSize];
 
-        circularByteBuffer = new CircularByteBuffer(buffer.length);
+        //Room for the packets queued ahead and the one being written
+        circularByteBuffer = new CircularByteBuffer(
+                (int) packetSize * (MAX_QUEUED_PACKETS + 1));
+    }
+
+    /**
+     * Limits the bitrate of the stream, on top of the real time pacing.
+     * Without one the stream follows the session's bandwidth estimate, if
+     * any, see RTPSession.getPacingBucket().
+     *
+     * @param tokenBucket the limit, null for none
+     */
+    public synchronized void setTokenBucket(TokenBucket tokenBucket) {
+        this.tokenBucket = tokenBucket;
     }
 
     public void write(int b) throws IOException {
@@ -87,82 +149,178 @@ public class RTPOutputStream extends OutputStream {
     }
 
     public void write(byte b[], int off, int len) throws IOException {
-        circularByteBuffer.getOutputStream().write(b, off, len);
+        //A packet at a time, so that the buffer never fills up
+        while (len > 0) {
+            int n = (int) Math.min(len, packetSize);
+            circularByteBuffer.getOutputStream().write(b, off, n);
+            off += n;
+            len -= n;
 
-        drain();
+            drain();
+        }
+    }
+
+    /**
+     * Gets the pacer going if there is a packet to send, and blocks while
+     * the writer is too far ahead.
+     */
+    private synchronized void drain() throws IOException {
+        if (closed) {
+            throw new IOException("RTPOutputStream closed");
+        }
+        if (!scheduled && available() >= packetSize) {
+            long now = System.nanoTime();
+            if (baseTimestamp < 0 || nextDue - now < -packetNanos) {
+                //Start over after a pause, rather than catching up in a burst
+                nextDue = now;
+                baseTimestamp = -1;
+            }
+            schedule(nextDue);
+        }
+
+        while (!closed && available() >= MAX_QUEUED_PACKETS * packetSize) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(ex.getLocalizedMessage());
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
-    private void drain() throws IOException {
-        while (circularByteBuffer.getInputStream().available() >= packetSize) {
-            sendData();
+    /**
+     * Schedules the next packet, no earlier than the token bucket allows.
+     *
+     * @param due when the packet is due in real time
+     */
+    private void schedule(long due) {
+        TokenBucket bucket = tokenBucket != null ? tokenBucket
+                : rtpSession.getPacingBucket();
+        if (bucket != null) {
+            long allowed = bucket.take((int) packetSize, System.nanoTime());
+            if (allowed - due > 0) {
+                due = allowed;
+            }
+        }
+        nextDue = due;
+        scheduled = pacer.schedule(sendTask, due) == 0;
+    }
+
+    /**
+     * The number of bytes waiting to be sent.
+     *
+     * @return bytes in the buffer
+     */
+    private int available() {
+        try {
+            return circularByteBuffer.getInputStream().available();
+        } catch (IOException ex) {
+            return 0;
         }
     }
 
     public void flush() throws IOException {
-        drain();
+        synchronized (this) {
+            //Wait for the complete packets to be sent
+            while (!closed && scheduled) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
 
-        //Make sure that buffer is empty
-        if (circularByteBuffer.getInputStream().available() > 0) {
-            circularByteBuffer.clear();
-        }
+            //Make sure that buffer is empty
+            if (available() > 0) {
+                circularByteBuffer.clear();
+            }
 
-        pktTmestamp = -1;
+            baseTimestamp = -1;
+        }
     }
 
     public void close() throws IOException {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("RTPOutputStream.close() called");
         }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            //Send the complete packets still queued, as flush() does
+            while (scheduled) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            closed = true;
+            notifyAll();
+        }
         circularByteBuffer.getOutputStream().close();
         circularByteBuffer.getInputStream().close();
         rtpSession.endSession();
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("RTPOutputStream.close() done! (rtpEndSession)");
         }
-        pktTmestamp = -1;
     }
 
     /**
-     * Send data to RTP session
-     *
-     * @todo Should reset timestamp if current time has long passed
+     * Send data to RTP session, run by the pacer when the next packet is due.
      */
-    private void sendData() throws IOException {
+    private final class SendTask extends Pacer.Task {
+        public void run() {
+            long timestamp;
+            synchronized (RTPOutputStream.this) {
+                if (closed) {
+                    scheduled = false;
+                    return;
+                }
 
-        //Initialize timestamp
-        if (pktTmestamp < 0) {
-            pktTmestamp = (long) (System.nanoTime() * 1E-6);
-        }
+                //Fill buffer to send
+                int bytesRead;
+                try {
+                    bytesRead = circularByteBuffer.getInputStream().read(buffer);
+                } catch (IOException ex) {
+                    bytesRead = -1;
+                }
+                if (bytesRead != packetSize) {
+                    LOGGER.info("bytesRead != packetSize... @ RTPOutputStream");
+                }
 
-        //Fill buffer to send
-        int bytesRead = circularByteBuffer.getInputStream().read(buffer);
-        if (bytesRead != packetSize) {
-            if (bytesRead < 0) {
-                //ENDED??
-                LOGGER.info("bytesRead != packetSize... @ RTPOutputStream");
+                //Timestamps advance by the packet duration, in the payload's clock
+                timestamp = -1;
+                if (baseTimestamp >= 0) {
+                    long clockRate = rtpSession.clockRate(rtpSession.payloadType());
+                    timestamp = (baseTimestamp + pktCount * packetSize * clockRate
+                            / bytesPerSecond) & 0xFFFFFFFFL;
+                }
             }
-        }
 
-        //Send data
-        byte[][] pkt = {buffer};
-        rtpSession.sendData(pkt, null, null, pktTmestamp, null);
+            //Send data, the writer may go on meanwhile
+            byte[][] pkt = {buffer};
+            long[][] ret = rtpSession.sendData(pkt, null, null, timestamp, null);
 
-        //Try to keep send rate as "real time" as possible...
-        long sleepTime = pktTmestamp - (long) (System.nanoTime() * 1E-6);
-        while (sleepTime > 0) {
-            try {
-                Thread.sleep(0, 999999);
-                sleepTime--;
-            } catch (InterruptedException ex) {
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.fine(ex.getLocalizedMessage());
+            synchronized (RTPOutputStream.this) {
+                if (timestamp < 0 && ret != null) {
+                    baseTimestamp = ret[0][0];
+                    pktCount = 0;
                 }
-                return;
+                pktCount++;
+
+                scheduled = false;
+                nextDue += packetNanos;
+                if (!closed && available() >= packetSize) {
+                    schedule(nextDue);
+                }
+                RTPOutputStream.this.notifyAll();
             }
         }
-
-        //Update timestamp
-        pktTmestamp += packetDuration;
     }
-
 }
@@ -0,0 +1,185 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp.protocols.rtp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jlibrtp.DataFrame;
+
+/**
+ * A channel that reads the payload of received frames, back to back.
+ *
+ * The frames themselves are queued, as the session delivered them, and
+ * read() copies their payload straight into the caller's buffer, which may
+ * be direct. A frame is returned to the session's pool once it has been
+ * read completely. When the reader falls behind and the queue is full, the
+ * oldest frames are dropped.
+ *
+ * read() waits for the first frame, and returns -1 once the session has
+ * ended and every frame has been read.
+ *
+ * @author agent
+ */
+class RTPReadableChannel implements ReadableByteChannel {
+    /** How often, in milliseconds, a waiting reader checks for the end */
+    private static final long POLL_INTERVAL = 50;
+
+    /** Frames waiting to be read, oldest first */
+    private final ArrayBlockingQueue<DataFrame> frames;
+    /** The frame being read, null if none, only touched by the reader */
+    private DataFrame current = null;
+    /** The octets of current already read */
+    private int offset = 0;
+    /** Cleared by close() */
+    private volatile boolean open = true;
+    /** Set once no more frames will be offered */
+    private volatile boolean ended = false;
+    /** Frames dropped because the queue was full, only written by the session */
+    private volatile long dropped = 0;
+
+    /**
+     * Creates a channel.
+     *
+     * @param capacity the number of frames that can wait to be read
+     */
+    RTPReadableChannel(int capacity) {
+        frames = new ArrayBlockingQueue<DataFrame>(capacity);
+    }
+
+    /**
+     * Queues a frame to be read, called by the session's thread. The channel
+     * now owns the frame and releases it once it has been read or dropped.
+     *
+     * @param frame the frame
+     * @return 0 if the frame was queued, -1 if the channel is closed
+     */
+    int offer(DataFrame frame) {
+        if(!open || ended) {
+            frame.release();
+            return -1;
+        }
+        while(!frames.offer(frame)) {
+            DataFrame oldest = frames.poll();
+            if(oldest != null) {
+                oldest.release();
+                dropped++;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * No more frames will be offered, read() returns -1 once the queued
+     * ones have been read.
+     */
+    void end() {
+        ended = true;
+    }
+
+    /**
+     * Whether every frame has been read, or the channel has been closed.
+     *
+     * @return true if there is nothing left to read
+     */
+    boolean drained() {
+        return !open || frames.isEmpty() && current == null;
+    }
+
+    /**
+     * The number of frames dropped because the reader fell behind.
+     *
+     * @return the number of frames
+     */
+    long dropped() {
+        return dropped;
+    }
+
+    public int read(ByteBuffer dst) throws IOException {
+        if(!open) {
+            throw new ClosedChannelException();
+        }
+        int read = 0;
+        while(dst.hasRemaining()) {
+            if(current == null) {
+                // Only wait if nothing has been read yet
+                current = read == 0 ? take() : frames.poll();
+                if(current == null) {
+                    break;
+                }
+                offset = 0;
+            }
+            int n = current.getConcatenatedData(offset, dst);
+            offset += n;
+            read += n;
+            if(offset >= current.length()) {
+                current.release();
+                current = null;
+            }
+        }
+        if(read == 0 && current == null && dst.hasRemaining()) {
+            return -1;
+        }
+        return read;
+    }
+
+    /**
+     * Waits for the next frame.
+     *
+     * @return the frame, null once the session has ended and nothing is left
+     */
+    private DataFrame take() throws IOException {
+        try {
+            while(true) {
+                DataFrame frame = frames.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if(frame != null) {
+                    return frame;
+                }
+                if(!open) {
+                    throw new ClosedChannelException();
+                }
+                if(ended) {
+                    // A frame offered just before the end may have arrived meanwhile
+                    return frames.poll();
+                }
+            }
+        } catch (InterruptedException ex) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new ClosedByInterruptException();
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void close() {
+        open = false;
+        DataFrame frame;
+        while((frame = frames.poll()) != null) {
+            frame.release();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
 import java.util.UUID;
 import java.util.logging.Level;
@@ -74,6 +75,7 @@ public class RTPURLConnection extends URLConnection implements RTPAppIntf,
 
     //Received packets
     private CircularByteBufferAdapter receivedPktsBuffer = null;
+    private volatile RTPReadableChannel readableChannel = null;
     private boolean receivingData = false;
     private int pktsReceivedCount = 0;
 
@@ -202,6 +204,31 @@ public class RTPURLConnection extends URLConnection implements RTPAppIntf,
         return receivedPktsBuffer.getInputStream();
     }
 
+    /**
+     * Returns a channel that reads from this connection, as an alternative
+     * to getInputStream(). The payload of the received frames is copied
+     * straight into the caller's buffers, which may be direct.
+     *
+     * @return ReadableByteChannel
+     */
+    public ReadableByteChannel getReadableChannel() throws IOException {
+
+        if (!connected)
+            throw new IOException("Not connected!");
+        if (receivingData)
+            throw new IOException("Already configured inputStream");
+
+        //Queue frames for 40 seconds, as the InputStream buffers bytes
+        readableChannel = new RTPReadableChannel(pps * 40);
+
+        receivingData = true;
+
+        //Configure RTPSession
+        rtpSession.naivePktReception(true);
+
+        return readableChannel;
+    }
+
     /**
      * Returns an output stream that writes to this connection.
      *
@@ -214,6 +241,45 @@ public class RTPURLConnection extends URLConnection implements RTPAppIntf,
         if (sendingData)
             throw new IOException("Already configured outputStream");
 
+        addParticipant();
+
+        sendingData = true;
+
+        //Builds an OutputStream for this RTPSession
+        final RTPOutputStream rtpOS = new RTPOutputStream(rtpSession,
+                getAudioFormatBytesPerSecond(), pps);
+
+        return rtpOS;
+    }
+
+    /**
+     * Returns a channel that writes to this connection, as an alternative
+     * to getOutputStream(). Each packet is built straight from the caller's
+     * buffer, which may be direct, and write() blocks until it is due.
+     *
+     * @return RTPWritableChannel, whose bitrate can be limited further
+     */
+    public RTPWritableChannel getWritableChannel() throws IOException {
+
+        if (!connected)
+            throw new IOException("Not connected!");
+        if (sendingData)
+            throw new IOException("Already configured outputStream");
+
+        addParticipant();
+
+        sendingData = true;
+
+        return new RTPWritableChannel(rtpSession,
+                getAudioFormatBytesPerSecond(), pps);
+    }
+
+    /**
+     * Adds the participant in the URL as the receiver of the session.
+     *
+     * @throws IOException if the URL defines no valid participant
+     */
+    private void addParticipant() throws IOException {
         //Configure RTPSession participants
         final String participant = parameters.get("participant");
         if (participant == null) {
@@ -237,14 +303,6 @@ public class RTPURLConnection extends URLConnection implements RTPAppIntf,
                                                   partRtpPort + 1);
             rtpSession.addParticipant(p);
         }
-
-        sendingData = true;
-
-        //Builds an OutputStream for this RTPSession
-        final RTPOutputStream rtpOS = new RTPOutputStream(rtpSession,
-                getAudioFormatBytesPerSecond(), pps);
-
-        return rtpOS;
     }
 
     /**
@@ -253,8 +311,13 @@ public class RTPURLConnection extends URLConnection implements RTPAppIntf,
      * @param p Participant
      */
     public void receiveData(DataFrame frame, Participant p) {
-        if (receivingData) {
+        RTPReadableChannel channel = readableChannel;
+        if (channel != null) {
+            //The channel releases the frame once it has been read
+            channel.offer(frame);
+        } else if (receivingData) {
             byte[] data = frame.getConcatenatedData();
+            frame.release();
             try {
                 receivedPktsBuffer.getOutputStream().write(data, 0, data.length);
             } catch (IOException ex) {
@@ -289,6 +352,26 @@ public class RTPURLConnection extends URLConnection implements RTPAppIntf,
             return;
         }
 
+        RTPReadableChannel channel = readableChannel;
+        if (channel != null) {
+            //Give the reader a chance to read what was received
+            channel.end();
+            int counter = 0;
+            while (!channel.drained() && counter < 50) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex1) {
+                }
+                counter += 1;
+            }
+            if (!channel.drained()) {
+                LOGGER.warning("Channel wasn't consumed until the end "
+                        + uuid);
+            }
+            rtpSession.endSession();
+            return;
+        }
+
         try {
             receivedPktsBuffer.getOutputStream().flush();
             int available = 0;
@@ -502,7 +585,8 @@ public class RTPURLConnection extends URLConnection implements RTPAppIntf,
 
 
         public CircularByteBufferAdapter(int size) {
-            super(size); //Can be improved!!!
+            //A slow reader loses the oldest audio, rather than stalling the session
+            super(size, CircularByteBuffer.DROP_OLDEST);
             outputStreamAdapter = new OutputStreamAdapter(super.getOutputStream());
             inputStreamAdapter = new InputStreamAdapter(super.getInputStream(),
                     outputStreamAdapter);
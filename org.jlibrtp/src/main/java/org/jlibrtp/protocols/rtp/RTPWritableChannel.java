@@ -0,0 +1,233 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp.protocols.rtp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jlibrtp.RTPSession;
+import org.jlibrtp.TokenBucket;
+
+/**
+ * A channel that sends the audio in "real time", a packet at a time.
+ *
+ * Unlike RTPOutputStream, nothing is buffered ahead: write() waits for each
+ * packet's due time on the caller's thread, and the packet is then built
+ * straight from the caller's buffer, which may be direct. Only the octets of
+ * a packet that is split over several writes are collected in between.
+ *
+ * @author agent
+ */
+public class RTPWritableChannel implements WritableByteChannel {
+    /** Logger instance. */
+    private static final Logger LOGGER =
+        Logger.getLogger(RTPWritableChannel.class.getName());
+
+    /** The session the packets are sent through */
+    private final RTPSession rtpSession;
+    /** The number of octets in each packet */
+    private final int packetSize;
+    /** Octets of audio per second */
+    private final long bytesPerSecond;
+    /** The duration of each packet, in nanoseconds */
+    private final long packetNanos;
+    /** The start of a packet that did not fit into the last write */
+    private final ByteBuffer partial;
+
+    /** Optional bitrate limit, null if none */
+    private volatile TokenBucket tokenBucket;
+    /** When the next packet is due, as in System.nanoTime() */
+    private long nextDue;
+    /** RTP timestamp of the first packet since the last pause, -1 before it is sent */
+    private long baseTimestamp = -1;
+    /** Packets sent since baseTimestamp */
+    private long pktCount;
+    /** The thread blocked in write(), null if none */
+    private volatile Thread writer = null;
+    /** Cleared by close() */
+    private volatile boolean open = true;
+
+    /**
+     * Creates a channel.
+     *
+     * @param rtpSession the session the packets are sent through
+     * @param bytesPerSecond octets of audio per second
+     * @param packetsPerSecond the number of packets sent per second
+     */
+    public RTPWritableChannel(RTPSession rtpSession, long bytesPerSecond,
+                              int packetsPerSecond) {
+        this.rtpSession = rtpSession;
+        this.bytesPerSecond = bytesPerSecond;
+        packetSize = (int) (bytesPerSecond / packetsPerSecond);
+        packetNanos = 1000000000L * packetSize / bytesPerSecond;
+        partial = ByteBuffer.allocate(packetSize);
+    }
+
+    /**
+     * Limits the bitrate of the channel, on top of the real time pacing.
+     * Without one the channel follows the session's bandwidth estimate, if
+     * any, see RTPSession.getPacingBucket().
+     *
+     * @param tokenBucket the limit, null for none
+     */
+    public void setTokenBucket(TokenBucket tokenBucket) {
+        this.tokenBucket = tokenBucket;
+    }
+
+    /**
+     * Sends the complete packets in src, each at its due time, and keeps
+     * the octets of an incomplete last packet for the next write.
+     *
+     * @param src the audio
+     * @return the number of octets consumed, all that remained in src
+     */
+    public synchronized int write(ByteBuffer src) throws IOException {
+        if(!open) {
+            throw new ClosedChannelException();
+        }
+        writer = Thread.currentThread();
+        try {
+            int written = 0;
+
+            // Complete a packet begun by an earlier write
+            if(partial.position() > 0) {
+                written += collect(src);
+                if(partial.hasRemaining()) {
+                    return written;
+                }
+                partial.flip();
+                send(partial);
+                partial.clear();
+            }
+
+            int limit = src.limit();
+            while(src.remaining() >= packetSize) {
+                src.limit(src.position() + packetSize);
+                try {
+                    send(src);
+                } finally {
+                    src.limit(limit);
+                }
+                written += packetSize;
+            }
+
+            written += collect(src);
+            return written;
+        } finally {
+            writer = null;
+        }
+    }
+
+    /**
+     * Moves as much of src as fits into partial.
+     *
+     * @param src the audio
+     * @return the number of octets moved
+     */
+    private int collect(ByteBuffer src) {
+        int n = Math.min(partial.remaining(), src.remaining());
+        if(n > 0) {
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + n);
+            partial.put(part);
+            src.position(src.position() + n);
+        }
+        return n;
+    }
+
+    /**
+     * Waits for the packet's due time and sends it.
+     *
+     * @param payload the packet's audio, from position to limit
+     */
+    private void send(ByteBuffer payload) throws IOException {
+        long now = System.nanoTime();
+        if(baseTimestamp < 0 || nextDue - now < -packetNanos) {
+            //Start over after a pause, rather than catching up in a burst
+            nextDue = now;
+            baseTimestamp = -1;
+        }
+        TokenBucket bucket = tokenBucket;
+        if(bucket == null) {
+            bucket = rtpSession.getPacingBucket();
+        }
+        if(bucket != null) {
+            long allowed = bucket.take(packetSize, now);
+            if(allowed - nextDue > 0) {
+                nextDue = allowed;
+            }
+        }
+
+        while((now = System.nanoTime()) - nextDue < 0) {
+            LockSupport.parkNanos(this, nextDue - now);
+            if(!open) {
+                throw new AsynchronousCloseException();
+            }
+            if(Thread.interrupted()) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new ClosedByInterruptException();
+            }
+        }
+
+        //Timestamps advance by the packet duration, in the payload's clock
+        long timestamp = -1;
+        if(baseTimestamp >= 0) {
+            long clockRate = rtpSession.clockRate(rtpSession.payloadType());
+            timestamp = (baseTimestamp + pktCount * packetSize * clockRate
+                    / bytesPerSecond) & 0xFFFFFFFFL;
+        }
+
+        long[] ret = rtpSession.sendData(payload, timestamp);
+        if(ret == null) {
+            LOGGER.info("sendData failed @ RTPWritableChannel");
+        } else if(timestamp < 0) {
+            baseTimestamp = ret[0];
+            pktCount = 0;
+        }
+        pktCount++;
+        nextDue += packetNanos;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void close() throws IOException {
+        if(LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("RTPWritableChannel.close() called");
+        }
+        if(!open) {
+            return;
+        }
+        open = false;
+        Thread t = writer;
+        if(t != null) {
+            LockSupport.unpark(t);
+        }
+        rtpSession.endSession();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the default ThreadFactory of new sessions.
+ *
+ * This version is used on Java 21 and later. Sessions run on virtual threads
+ * if the system property org.jlibrtp.virtualThreads is true, so that the number
+ * of sessions is not limited by the cost of platform threads. Otherwise they
+ * start their threads themselves, as on Java 8.
+ *
+ * @author agent
+ */
+final class SessionThreads {
+    /**
+     * Not to be instantiated.
+     */
+    private SessionThreads() {
+    }
+
+    /**
+     * The ThreadFactory new sessions start their threads with.
+     *
+     * @return a factory of virtual threads if enabled, null otherwise
+     */
+    static ThreadFactory defaultFactory() {
+        if(Boolean.getBoolean("org.jlibrtp.virtualThreads")) {
+            return Thread.ofVirtual().factory();
+        }
+        return null;
+    }
+
+    /**
+     * A factory of platform threads for sessions without a ThreadFactory.
+     * Like threads the session starts itself, the threads are daemon threads
+     * only if the thread that creates them is one.
+     *
+     * @return a factory of platform threads
+     */
+    static ThreadFactory platformFactory() {
+        final ThreadFactory factory = Executors.defaultThreadFactory();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = factory.newThread(r);
+                t.setDaemon(Thread.currentThread().isDaemon());
+                return t;
+            }
+        };
+    }
+}
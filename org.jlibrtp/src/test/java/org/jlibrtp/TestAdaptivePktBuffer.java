@@ -0,0 +1,193 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link AdaptivePktBuffer}.
+ *
+ * @author agent
+ */
+public class TestAdaptivePktBuffer {
+	/** SSRC of the packets */
+	private static final long SSRC = 1234;
+	/** Nanoseconds per millisecond */
+	private static final long MS = 1000000L;
+
+	private DatagramSocket socket;
+	private RTPSession session;
+	private Participant participant;
+
+	@Before
+	public void setUp() throws Exception {
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		session = new RTPSession(socket, null);
+		session.frameReconstruction = false;
+		participant = new Participant("127.0.0.1", 6004, 6005);
+	}
+
+	@After
+	public void tearDown() {
+		socket.close();
+	}
+
+	/**
+	 * Creates a packet of 8 kHz audio.
+	 * @param seqNum the sequence number
+	 * @param timeStamp the RTP timestamp
+	 * @return the packet
+	 */
+	private static RtpPkt pkt(int seqNum, long timeStamp) {
+		return new RtpPkt(timeStamp, SSRC, seqNum, 0, new byte[] {(byte) seqNum});
+	}
+
+	/**
+	 * Creates a packet of 20 ms of audio, whose timestamp follows its sequence number.
+	 * @param seqNum the sequence number
+	 * @return the packet
+	 */
+	private static RtpPkt pkt(int seqNum) {
+		return pkt(seqNum, seqNum * 160L);
+	}
+
+	private static void sleepUntil(long deadline) throws InterruptedException {
+		while(System.nanoTime() - deadline <= 0) {
+			Thread.sleep(1);
+		}
+	}
+
+	private static int popSeqNum(AdaptivePktBuffer buffer) throws InterruptedException {
+		sleepUntil(buffer.nextPlayoutTime());
+		DataFrame frame = buffer.popOldestFrame();
+		int seqNum = frame.sequenceNumber(0);
+		frame.release();
+		return seqNum;
+	}
+
+	@Test
+	public void testNotBeforeDeadline() throws Exception {
+		session.playoutDelay(200, 500);
+		AdaptivePktBuffer buffer = new AdaptivePktBuffer(session, participant, pkt(0));
+		assertNull(buffer.popOldestFrame());
+		assertTrue(buffer.nextPlayoutTime() - System.nanoTime() > 100 * MS);
+		assertNull(buffer.popOldestFrame());
+
+		sleepUntil(buffer.nextPlayoutTime());
+		DataFrame frame = buffer.popOldestFrame();
+		assertEquals(0, frame.sequenceNumber(0));
+		frame.release();
+		assertNull(buffer.popOldestFrame());
+		assertEquals(Long.MAX_VALUE, buffer.nextPlayoutTime());
+	}
+
+	@Test
+	public void testGap() throws Exception {
+		session.playoutDelay(20, 500);
+		AdaptivePktBuffer buffer = new AdaptivePktBuffer(session, participant, pkt(0));
+		assertEquals(0, buffer.addPkt(pkt(1)));
+		assertEquals(0, buffer.addPkt(pkt(3)));
+		assertEquals(0, popSeqNum(buffer));
+		assertEquals(1, popSeqNum(buffer));
+
+		// 2 is missing, 3 waits for its own deadline, not for 2
+		assertNull(buffer.popOldestFrame());
+		assertEquals(3, popSeqNum(buffer));
+		assertEquals(0, buffer.getLength());
+	}
+
+	@Test
+	public void testLatePacket() throws Exception {
+		session.playoutDelay(20, 500);
+		AdaptivePktBuffer buffer = new AdaptivePktBuffer(session, participant, pkt(0));
+		buffer.addPkt(pkt(2));
+		assertEquals(0, popSeqNum(buffer));
+		assertEquals(2, popSeqNum(buffer));
+		Thread.sleep(30);
+
+		// At least 30 ms after its frame was due
+		long delay = buffer.playoutDelay;
+		assertEquals(-1, buffer.addPkt(pkt(1)));
+		assertEquals(1, buffer.latePkts);
+		assertTrue(buffer.playoutDelay >= delay + 30 * MS);
+		assertTrue(buffer.playoutDelay <= 500 * MS);
+	}
+
+	@Test
+	public void testLatePacketBounded() throws Exception {
+		session.playoutDelay(20, 100);
+		AdaptivePktBuffer buffer = new AdaptivePktBuffer(session, participant, pkt(0));
+		buffer.addPkt(pkt(2));
+		assertEquals(0, popSeqNum(buffer));
+		assertEquals(2, popSeqNum(buffer));
+		Thread.sleep(200);
+		assertEquals(-1, buffer.addPkt(pkt(1)));
+		assertEquals(100 * MS, buffer.playoutDelay);
+	}
+
+	@Test
+	public void testJitter() {
+		session.playoutDelay(20, 500);
+		long start = System.nanoTime();
+		AdaptivePktBuffer buffer = new AdaptivePktBuffer(session, participant, pkt(0));
+		assertEquals(20 * MS, buffer.playoutDelay);
+
+		// Every other packet 40 ms behind, a jitter of about 40 ms
+		for(int i=1; i<100; i++) {
+			long timeStamp = (System.nanoTime() - start) / 125000 - (i % 2) * 320;
+			buffer.addPkt(pkt(i, timeStamp));
+		}
+		assertTrue(buffer.jitter > 30 * MS);
+		assertTrue(buffer.playoutDelay >= 4 * 30 * MS);
+		assertTrue(buffer.playoutDelay <= 500 * MS);
+
+		// Steady packets, after the step from the last late one the delay shrinks back to the minimum
+		buffer.addPkt(pkt(100, (System.nanoTime() - start) / 125000));
+		long delay = buffer.playoutDelay;
+		for(int i=101; i<400; i++) {
+			long timeStamp = (System.nanoTime() - start) / 125000;
+			buffer.addPkt(pkt(i, timeStamp));
+			assertTrue(buffer.playoutDelay <= delay);
+			assertTrue(buffer.playoutDelay >= 20 * MS);
+			delay = buffer.playoutDelay;
+		}
+		assertTrue(buffer.playoutDelay < 40 * MS);
+	}
+
+	@Test
+	public void testJitterBounded() {
+		session.playoutDelay(20, 100);
+		long start = System.nanoTime();
+		AdaptivePktBuffer buffer = new AdaptivePktBuffer(session, participant, pkt(0));
+		for(int i=1; i<100; i++) {
+			long timeStamp = (System.nanoTime() - start) / 125000 - (i % 2) * 320;
+			buffer.addPkt(pkt(i, timeStamp));
+		}
+		assertEquals(100 * MS, buffer.playoutDelay);
+	}
+}
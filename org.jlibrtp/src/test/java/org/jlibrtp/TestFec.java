@@ -0,0 +1,311 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link FecEncoder} and {@link FecDecoder}, encoding the
+ * parity of a stream and recovering the packets lost from it.
+ *
+ * @author agent
+ */
+public class TestFec {
+	/** SSRC of the media packets */
+	private static final long SSRC = 0x12345678L;
+	/** SSRC of the FEC packets */
+	private static final long FEC_SSRC = 0x9ABCDEF0L;
+	/** Payload type of the FEC packets */
+	private static final int FEC_PT = 100;
+
+	private DatagramSocket socket;
+	private RTPSession session;
+
+	@Before
+	public void setUp() throws Exception {
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		session = new RTPSession(socket, null);
+	}
+
+	@After
+	public void tearDown() {
+		socket.close();
+	}
+
+	/**
+	 * Keeps the FEC packets an encoder adds to the batch.
+	 */
+	private final class Collector extends RtpSender {
+		final List<byte[]> fec = new ArrayList<byte[]>();
+
+		Collector() {
+			super(session);
+		}
+
+		protected void append(ByteBuffer buf) {
+			buf.flip();
+			byte[] copy = new byte[buf.remaining()];
+			buf.get(copy);
+			fec.add(copy);
+		}
+	}
+
+	/**
+	 * Builds a media packet.
+	 *
+	 * @param seqNum the sequence number
+	 * @param csrcCount the number of CSRCs
+	 * @param payloadLength the number of payload octets
+	 * @param padding the number of padding octets, 0 for none
+	 * @return the packet
+	 */
+	private static byte[] packet(int seqNum, int csrcCount, int payloadLength, int padding) {
+		ByteBuffer buf = ByteBuffer.allocate(12 + 4 * csrcCount + payloadLength + padding);
+		buf.put((byte) (0x80 | (padding > 0 ? 0x20 : 0) | csrcCount));
+		buf.put((byte) ((seqNum % 3 == 0 ? 0x80 : 0) | 96));
+		buf.putShort((short) seqNum);
+		buf.putInt(seqNum * 160);
+		buf.putInt((int) SSRC);
+		for(int i=0; i<csrcCount; i++) {
+			buf.putInt(1000 + i);
+		}
+		for(int i=0; i<payloadLength; i++) {
+			buf.put((byte) (seqNum * 7 + i));
+		}
+		if(padding > 0) {
+			buf.position(buf.limit() - 1);
+			buf.put((byte) padding);
+		}
+		return buf.array();
+	}
+
+	private static byte[] packet(int seqNum, int payloadLength) {
+		return packet(seqNum, 0, payloadLength, 0);
+	}
+
+	/**
+	 * Protects packets, and passes those not lost and all FEC packets to a decoder.
+	 *
+	 * @param pkts the media packets, in the order they are sent
+	 * @param lost the indexes of the packets lost
+	 * @param encoder the encoder
+	 * @return the packets recovered, by sequence number
+	 */
+	private List<byte[]> transfer(byte[][] pkts, Set<Integer> lost, FecEncoder encoder) {
+		Collector sender = new Collector();
+		List<byte[]> fecAfter = new ArrayList<byte[]>();
+		List<Integer> fecCount = new ArrayList<Integer>();
+		for(int i=0; i<pkts.length; i++) {
+			encoder.add(ByteBuffer.wrap(pkts[i]), sender);
+			fecCount.add(sender.fec.size());
+		}
+		for(byte[] fec : sender.fec) {
+			assertEquals(FEC_PT, fec[1] & 0x7F);
+			assertEquals((int) FEC_SSRC, ByteBuffer.wrap(fec).getInt(8));
+			fecAfter.add(fec);
+		}
+
+		// FEC packets go out right after the media packet that completes them
+		FecDecoder decoder = new FecDecoder(SSRC);
+		List<byte[]> recovered = new ArrayList<byte[]>();
+		int next = 0;
+		for(int i=0; i<pkts.length; i++) {
+			if(!lost.contains(i)) {
+				decoder.media(new RtpPkt(ByteBuffer.wrap(pkts[i]), null));
+			}
+			for(; next<fecCount.get(i); next++) {
+				decoder.fec(new RtpPkt(ByteBuffer.wrap(fecAfter.get(next)), null));
+			}
+			RtpPkt pkt = decoder.poll();
+			while(pkt != null) {
+				ByteBuffer buf = pkt.getBuffer();
+				byte[] raw = new byte[buf.remaining()];
+				buf.duplicate().get(raw);
+				recovered.add(raw);
+				pkt = decoder.poll();
+			}
+		}
+		return recovered;
+	}
+
+	private static Set<Integer> set(int... values) {
+		Set<Integer> set = new HashSet<Integer>();
+		for(int v : values) {
+			set.add(v);
+		}
+		return set;
+	}
+
+	private static void assertRecovered(byte[][] pkts, Set<Integer> lost, List<byte[]> recovered) {
+		assertEquals(lost.size(), recovered.size());
+		for(byte[] raw : recovered) {
+			int seqNum = ByteBuffer.wrap(raw).getShort(2) & 0xFFFF;
+			int index = -1;
+			for(int i=0; i<pkts.length; i++) {
+				if((ByteBuffer.wrap(pkts[i]).getShort(2) & 0xFFFF) == seqNum) {
+					index = i;
+				}
+			}
+			assertTrue("recovered " + seqNum + ", which was not lost", lost.contains(index));
+			assertArrayEquals(pkts[index], raw);
+		}
+	}
+
+	@Test
+	public void testRow() {
+		// Across the sequence number wrap
+		byte[][] pkts = new byte[8][];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = packet((65532 + i) & 0xFFFF, 160);
+		}
+		Set<Integer> lost = set(2, 5);
+		List<byte[]> recovered = transfer(pkts, lost, new FecEncoder(FEC_PT, FEC_SSRC, 4, 1));
+		assertRecovered(pkts, lost, recovered);
+	}
+
+	@Test
+	public void testFecSequence() {
+		Collector sender = new Collector();
+		FecEncoder encoder = new FecEncoder(FEC_PT, FEC_SSRC, 2, 1);
+		for(int i=0; i<8; i++) {
+			encoder.add(ByteBuffer.wrap(packet(i, 10)), sender);
+		}
+		assertEquals(4, sender.fec.size());
+		// A sequence of its own, not that of the media
+		int first = ByteBuffer.wrap(sender.fec.get(0)).getShort(2) & 0xFFFF;
+		for(int i=1; i<4; i++) {
+			assertEquals((first + i) & 0xFFFF, ByteBuffer.wrap(sender.fec.get(i)).getShort(2) & 0xFFFF);
+		}
+		// The timestamp of the last packet protected
+		assertEquals(1 * 160, ByteBuffer.wrap(sender.fec.get(0)).getInt(4));
+	}
+
+	@Test
+	public void testColumn() {
+		// A burst of three, one in each column
+		byte[][] pkts = new byte[9][];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = packet(100 + i, 160);
+		}
+		Set<Integer> lost = set(3, 4, 5);
+		List<byte[]> recovered = transfer(pkts, lost, new FecEncoder(FEC_PT, FEC_SSRC, 3, 3));
+		assertRecovered(pkts, lost, recovered);
+	}
+
+	@Test
+	public void testRowAndColumn() {
+		// Two in the first row and two in the first column, recovered one after the other
+		byte[][] pkts = new byte[9][];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = packet(100 + i, 160);
+		}
+		Set<Integer> lost = set(0, 1, 3);
+		List<byte[]> recovered = transfer(pkts, lost, new FecEncoder(FEC_PT, FEC_SSRC, 3, 3));
+		assertRecovered(pkts, lost, recovered);
+	}
+
+	@Test
+	public void testLengthAndPadding() {
+		byte[][] pkts = new byte[][] {
+				packet(200, 0, 20, 0),
+				packet(201, 2, 300, 0),
+				packet(202, 0, 45, 3),
+				packet(203, 1, 1, 0),
+				packet(204, 0, 500, 0),
+				packet(205, 0, 7, 1),
+				packet(206, 0, 80, 0),
+				packet(207, 3, 0, 0),
+		};
+		// Longer and shorter than the others, with CSRCs and with padding
+		Set<Integer> lost = set(1, 2, 5, 7);
+		List<byte[]> recovered = transfer(pkts, lost, new FecEncoder(FEC_PT, FEC_SSRC, 2, 1));
+		assertRecovered(pkts, lost, recovered);
+	}
+
+	@Test
+	public void testLongMask() {
+		byte[][] pkts = new byte[20][];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = packet(1000 + i, 100);
+		}
+		Collector sender = new Collector();
+		FecEncoder encoder = new FecEncoder(FEC_PT, FEC_SSRC, 20, 1);
+		for(int i=0; i<pkts.length; i++) {
+			encoder.add(ByteBuffer.wrap(pkts[i]), sender);
+		}
+		assertEquals(1, sender.fec.size());
+		ByteBuffer fec = ByteBuffer.wrap(sender.fec.get(0));
+		// L is set, and the mask covers all 20 packets from SN base
+		assertTrue((fec.get(12) & 0x40) != 0);
+		assertEquals(1000, fec.getShort(14) & 0xFFFF);
+		long mask = ((long) (fec.getShort(24) & 0xFFFF) << 32) | (fec.getInt(26) & 0xFFFFFFFFL);
+		assertEquals(0xFFFFF0000000L, mask);
+
+		// A packet beyond the reach of a 16 bit mask
+		Set<Integer> lost = set(18);
+		List<byte[]> recovered = transfer(pkts, lost, new FecEncoder(FEC_PT, FEC_SSRC, 20, 1));
+		assertRecovered(pkts, lost, recovered);
+	}
+
+	@Test
+	public void testUnrecoverable() {
+		byte[][] pkts = new byte[8][];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = packet(300 + i, 50 + i);
+		}
+		// Two in the same row, rows only
+		List<byte[]> recovered = transfer(pkts, set(1, 2), new FecEncoder(FEC_PT, FEC_SSRC, 4, 1));
+		assertEquals(0, recovered.size());
+
+		// Two in the same column, a single column of 4
+		recovered = transfer(pkts, set(0, 2), new FecEncoder(FEC_PT, FEC_SSRC, 1, 4));
+		assertEquals(0, recovered.size());
+
+		// With rows as well, each row recovers one of them
+		recovered = transfer(pkts, set(0, 4), new FecEncoder(FEC_PT, FEC_SSRC, 4, 2));
+		assertRecovered(pkts, set(0, 4), recovered);
+	}
+
+	@Test
+	public void testNothingLost() {
+		byte[][] pkts = new byte[6][];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = packet(i, 30);
+		}
+		FecDecoder decoder = new FecDecoder(SSRC);
+		assertNull(decoder.poll());
+		List<byte[]> recovered = transfer(pkts, set(), new FecEncoder(FEC_PT, FEC_SSRC, 3, 2));
+		assertEquals(0, recovered.size());
+	}
+}
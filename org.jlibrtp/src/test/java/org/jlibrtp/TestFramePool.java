@@ -0,0 +1,83 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link FramePool} and {@link DataFrame#release()}.
+ *
+ * @author agent
+ */
+public class TestFramePool {
+	@Test
+	public void testReuse() {
+		FramePool pool = new FramePool(4);
+		DataFrame frame = pool.acquire();
+		assertEquals(0, pool.available());
+		frame.release();
+		assertEquals(1, pool.available());
+		assertSame(frame, pool.acquire());
+		assertNotSame(frame, pool.acquire());
+	}
+
+	@Test
+	public void testReleaseTwice() {
+		FramePool pool = new FramePool(4);
+		DataFrame frame = pool.acquire();
+		frame.release();
+		frame.release();
+		assertEquals(1, pool.available());
+	}
+
+	@Test
+	public void testConcurrentRelease() throws InterruptedException {
+		final int threads = 4;
+		for(int round=0; round<1000; round++) {
+			FramePool pool = new FramePool(threads);
+			final DataFrame frame = pool.acquire();
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] releasers = new Thread[threads];
+			for(int i=0; i<threads; i++) {
+				releasers[i] = new Thread() {
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						frame.release();
+					}
+				};
+				releasers[i].start();
+			}
+			start.countDown();
+			for(int i=0; i<threads; i++) {
+				releasers[i].join();
+			}
+			assertEquals(1, pool.available());
+		}
+	}
+}
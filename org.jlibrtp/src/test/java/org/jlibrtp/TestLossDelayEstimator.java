@@ -0,0 +1,202 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link LossDelayEstimator}.
+ *
+ * @author agent
+ */
+public class TestLossDelayEstimator {
+	/** Nanoseconds per millisecond */
+	private static final long MS = 1000000L;
+	/** The packets of one transport feedback message */
+	private static final int PACKETS = 10;
+	/** Milliseconds between packets sent */
+	private static final long GAP = 10 * MS;
+	/** Bytes per packet, 960 kbps at one packet per GAP */
+	private static final int SIZE = 1200;
+
+	private LossDelayEstimator estimator;
+	/** The System.nanoTime() of the feedback */
+	private long now;
+
+	@Before
+	public void setUp() {
+		estimator = new LossDelayEstimator(1000000, 100000, 10000000);
+		now = 1000 * MS;
+	}
+
+	/**
+	 * Hands the estimator transport feedback about packets sent GAP apart.
+	 *
+	 * @param messages the number of feedback messages
+	 * @param arrivalGap nanoseconds between arrivals
+	 */
+	private void feedback(int messages, long arrivalGap) {
+		long[] sendDeltas = new long[PACKETS];
+		long[] arrivalDeltas = new long[PACKETS];
+		int[] sizes = new int[PACKETS];
+		for(int i=0; i<PACKETS; i++) {
+			sendDeltas[i] = GAP;
+			arrivalDeltas[i] = arrivalGap;
+			sizes[i] = SIZE;
+		}
+		for(int i=0; i<messages; i++) {
+			now += PACKETS * GAP;
+			estimator.transportFeedback(sendDeltas, arrivalDeltas, sizes, PACKETS, 0, now);
+		}
+	}
+
+	/**
+	 * Lifts the loss-based rate out of the way of the delay-based one.
+	 */
+	private void noLoss() {
+		for(int i=0; i<30; i++) {
+			estimator.receiverReport(1, 0, 0, now);
+		}
+	}
+
+	@Test
+	public void testStart() {
+		assertEquals(1000000, estimator.targetBitrate());
+		assertEquals(100000, new LossDelayEstimator(1, 100000, 200000).targetBitrate());
+		assertEquals(200000, new LossDelayEstimator(300000, 100000, 200000).targetBitrate());
+	}
+
+	@Test
+	public void testLoss() {
+		// 50% lost, drops by a quarter
+		estimator.receiverReport(1, 128, 0, now);
+		assertEquals(750000, estimator.targetBitrate());
+
+		// 5% lost, holds
+		estimator.receiverReport(1, 13, 0, now);
+		assertEquals(750000, estimator.targetBitrate());
+
+		// Nothing lost, up by 5%, but not past the delay-based rate
+		estimator.receiverReport(1, 0, 0, now);
+		assertEquals(787500, estimator.targetBitrate());
+		noLoss();
+		assertEquals(1000000, estimator.targetBitrate());
+	}
+
+	@Test
+	public void testLossBounds() {
+		for(int i=0; i<100; i++) {
+			estimator.receiverReport(1, 255, 0, now);
+		}
+		assertEquals(100000, estimator.targetBitrate());
+		noLoss();
+		assertEquals(432194, estimator.targetBitrate(), 100);
+	}
+
+	@Test
+	public void testIncrease() {
+		noLoss();
+		// Constant delay, the rate increases by 8% per second
+		feedback(10, GAP);
+		long rate = estimator.targetBitrate();
+		assertTrue(rate > 1000000);
+		feedback(10, GAP);
+		long next = estimator.targetBitrate();
+		assertTrue(next > rate);
+		assertTrue(next < rate * 1.09);
+
+		// Until it is half again the 960 kbps that arrive
+		feedback(100, GAP);
+		assertEquals(1.5 * 960000 + 10000, estimator.targetBitrate(), 1000);
+	}
+
+	/**
+	 * Queues each packet a millisecond longer than the one before,
+	 * until the estimator notices.
+	 *
+	 * @return the number of feedback messages it took
+	 */
+	private int overuse() {
+		long rate = estimator.targetBitrate();
+		int messages = 0;
+		while(estimator.targetBitrate() >= rate) {
+			assertTrue(messages++ < 20);
+			feedback(1, GAP + MS);
+		}
+		return messages;
+	}
+
+	@Test
+	public void testDecrease() {
+		noLoss();
+		feedback(30, GAP);
+		long rate = estimator.targetBitrate();
+		assertTrue(rate > 1000000);
+
+		// Down to 85% of the rate that arrived, between 872 and 960 kbps
+		overuse();
+		long decreased = estimator.targetBitrate();
+		assertTrue(decreased < rate);
+		assertEquals(0.85 * 916000, decreased, 0.85 * 44000);
+
+		// Once per DECREASE_INTERVAL at most, while the queue keeps growing
+		feedback(2, GAP + MS);
+		assertEquals(decreased, estimator.targetBitrate());
+		overuse();
+		assertTrue(estimator.targetBitrate() < decreased);
+	}
+
+	@Test
+	public void testHold() {
+		noLoss();
+		feedback(30, GAP);
+		overuse();
+
+		// The queue drains, the rate does not increase
+		long rate = estimator.targetBitrate();
+		for(int i=0; i<20; i++) {
+			feedback(1, GAP - 2 * MS);
+			assertTrue(estimator.targetBitrate() <= rate);
+			rate = estimator.targetBitrate();
+		}
+		long held = estimator.targetBitrate();
+		feedback(10, GAP - 2 * MS);
+		assertEquals(held, estimator.targetBitrate());
+
+		// Then increases again once the delay is steady
+		feedback(100, GAP);
+		assertTrue(estimator.targetBitrate() > held);
+	}
+
+	@Test
+	public void testLowerOfBoth() {
+		noLoss();
+		feedback(30, GAP);
+		long delayRate = estimator.targetBitrate();
+		assertTrue(delayRate > 1000000);
+		for(int i=0; i<3; i++) {
+			estimator.receiverReport(1, 255, 0, now);
+		}
+		assertTrue(estimator.targetBitrate() < delayRate);
+	}
+}
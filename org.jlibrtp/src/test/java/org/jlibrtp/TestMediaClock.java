@@ -0,0 +1,126 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link MediaClock}.
+ *
+ * @author agent
+ */
+public class TestMediaClock {
+	/** Nanoseconds per millisecond */
+	private static final long MS = 1000000L;
+	/** Nanoseconds per second */
+	private static final long SECOND = 1000000000L;
+
+	@Test
+	public void testAudioConversions() {
+		assertEquals(160, MediaClock.toTicks(20 * MS, 8000));
+		assertEquals(8000, MediaClock.toTicks(SECOND, 8000));
+		assertEquals(8160, MediaClock.toTicks(SECOND + 20 * MS, 8000));
+		// Rounded down to whole ticks of 125 microseconds
+		assertEquals(0, MediaClock.toTicks(124999, 8000));
+		assertEquals(1, MediaClock.toTicks(125000, 8000));
+		assertEquals(20 * MS, MediaClock.toNanos(160, 8000));
+		assertEquals(SECOND + 20 * MS, MediaClock.toNanos(8160, 8000));
+	}
+
+	@Test
+	public void testVideoConversions() {
+		assertEquals(3600, MediaClock.toTicks(40 * MS, 90000));
+		assertEquals(90000, MediaClock.toTicks(SECOND, 90000));
+		// A frame at 30 frames per second
+		assertEquals(2999, MediaClock.toTicks(SECOND / 30, 90000));
+		assertEquals(33333333, MediaClock.toNanos(3000, 90000));
+		assertEquals(40 * MS, MediaClock.toNanos(3600, 90000));
+		for(long nanos=0; nanos<SECOND; nanos+=7777777) {
+			long back = MediaClock.toNanos(MediaClock.toTicks(nanos, 90000), 90000);
+			assertTrue(back <= nanos);
+			// Less than a tick of 11111.1 nanoseconds
+			assertTrue(nanos - back <= SECOND / 90000);
+		}
+	}
+
+	@Test
+	public void testLongRunning() {
+		// A year of nanoseconds times 90000 would overflow a long
+		long year = 365L * 86400 * SECOND;
+		assertEquals(365L * 86400 * 90000, MediaClock.toTicks(year, 90000));
+		assertEquals(year, MediaClock.toNanos(365L * 86400 * 90000, 90000));
+	}
+
+	@Test
+	public void testClockRates() {
+		MediaClock clock = new MediaClock(0);
+		assertEquals(8000, clock.clockRate(0));
+		assertEquals(16000, clock.clockRate(6));
+		assertEquals(90000, clock.clockRate(26));
+		assertEquals(8000, clock.clockRate(96));
+		assertEquals(90000, clock.clockRate(96, 90000));
+		assertEquals(90000, clock.clockRate(96));
+		assertEquals(-1, clock.clockRate(128, 90000));
+		assertEquals(-1, clock.clockRate(96, 0));
+	}
+
+	@Test
+	public void testWraparound() throws Exception {
+		// 256 ticks, 32 milliseconds of 8 kHz audio, before the timestamp wraps
+		long offset = 0xFFFFFF00L;
+		MediaClock clock = new MediaClock(offset);
+		Thread.sleep(50);
+		long now = clock.now(0);
+		assertTrue(now < offset);
+		long elapsed = (now - offset) & 0xFFFFFFFFL;
+		assertTrue(elapsed >= 400);
+		assertTrue(elapsed < 8000);
+
+		// Random offsets are masked to 32 bits
+		assertTrue(new MediaClock(-1).now(0) <= 0xFFFFFFFFL);
+	}
+
+	@Test
+	public void testReportTimeStamp() throws Exception {
+		MediaClock clock = new MediaClock(1000);
+		// Nothing sent, the clock itself
+		long before = clock.now(0);
+		long report = clock.reportTimeStamp(0);
+		assertTrue(report - before >= 0 && report - before < 8000);
+
+		// The last timestamp sent, advanced by the time since, across the wrap
+		clock.sent(0xFFFFFFF0L, 0);
+		Thread.sleep(10);
+		report = clock.reportTimeStamp(0);
+		long elapsed = (report - 0xFFFFFFF0L) & 0xFFFFFFFFL;
+		assertTrue(report < 0xFFFFFFF0L);
+		assertTrue(elapsed >= 80);
+		assertTrue(elapsed < 8000);
+
+		// At the clock rate of the data sent, not of the payload type asked for
+		clock.sent(0, 26);
+		Thread.sleep(10);
+		report = clock.reportTimeStamp(0);
+		assertTrue(report >= 900);
+		assertTrue(report < 90000);
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link NackGenerator}.
+ *
+ * @author agent
+ */
+public class TestNackGenerator {
+	/** An arbitrary System.nanoTime() */
+	private static final long NOW = 1000000000L;
+
+	@Test
+	public void testInOrder() {
+		NackGenerator nacks = new NackGenerator();
+		for(int i=0; i<100; i++) {
+			nacks.received(i);
+		}
+		assertNull(nacks.collect(NOW));
+		assertEquals(-1, nacks.nextRetry(NOW));
+	}
+
+	@Test
+	public void testGap() {
+		NackGenerator nacks = new NackGenerator();
+		nacks.received(1);
+		nacks.received(4);
+		assertTrue(nacks.isMissing(2));
+		assertTrue(nacks.isMissing(3));
+		assertFalse(nacks.isMissing(4));
+		assertEquals(0, nacks.nextRetry(NOW));
+
+		int[][] fci = nacks.collect(NOW);
+		assertArrayEquals(new int[] {2}, fci[0]);
+		assertArrayEquals(new int[] {1}, fci[1]);
+	}
+
+	@Test
+	public void testLongGap() {
+		NackGenerator nacks = new NackGenerator();
+		nacks.received(0);
+		nacks.received(40);
+		// 1 to 39, each FCI covers its PID and the 16 packets after it
+		int[][] fci = nacks.collect(NOW);
+		assertArrayEquals(new int[] {1, 18, 35}, fci[0]);
+		assertArrayEquals(new int[] {0xFFFF, 0xFFFF, 0xF}, fci[1]);
+	}
+
+	@Test
+	public void testArrival() {
+		NackGenerator nacks = new NackGenerator();
+		nacks.received(1);
+		nacks.received(4);
+		// The retransmission of 2, and a duplicate
+		nacks.received(2);
+		nacks.received(4);
+		assertFalse(nacks.isMissing(2));
+		int[][] fci = nacks.collect(NOW);
+		assertArrayEquals(new int[] {3}, fci[0]);
+		assertArrayEquals(new int[] {0}, fci[1]);
+	}
+
+	@Test
+	public void testRetry() {
+		NackGenerator nacks = new NackGenerator();
+		nacks.received(1);
+		nacks.received(3);
+		long now = NOW;
+		for(int i=0; i<NackGenerator.MAX_TRIES; i++) {
+			int[][] fci = nacks.collect(now);
+			assertArrayEquals(new int[] {2}, fci[0]);
+
+			// Not again before RETRY_INTERVAL
+			assertNull(nacks.collect(now + NackGenerator.RETRY_INTERVAL / 2));
+			if(i < NackGenerator.MAX_TRIES - 1) {
+				assertEquals(NackGenerator.RETRY_INTERVAL, nacks.nextRetry(now));
+				assertEquals(NackGenerator.RETRY_INTERVAL / 2,
+						nacks.nextRetry(now + NackGenerator.RETRY_INTERVAL / 2));
+			} else {
+				// Asked for often enough, no retry left
+				assertEquals(-1, nacks.nextRetry(now));
+			}
+			now += NackGenerator.RETRY_INTERVAL;
+		}
+		// Given up
+		assertNull(nacks.collect(now));
+		assertFalse(nacks.isMissing(2));
+	}
+
+	@Test
+	public void testWrap() {
+		NackGenerator nacks = new NackGenerator();
+		nacks.received(65534);
+		nacks.received(1);
+		assertTrue(nacks.isMissing(65535));
+		assertTrue(nacks.isMissing(0));
+		int[][] fci = nacks.collect(NOW);
+		assertArrayEquals(new int[] {65535}, fci[0]);
+		assertArrayEquals(new int[] {1}, fci[1]);
+
+		// Late, not a new gap
+		nacks.received(65535);
+		assertFalse(nacks.isMissing(65535));
+		assertTrue(nacks.isMissing(0));
+	}
+
+	@Test
+	public void testRestart() {
+		NackGenerator nacks = new NackGenerator();
+		nacks.received(1);
+		nacks.received(3);
+		nacks.received(3 + NackGenerator.MAX_GAP + 1);
+		assertFalse(nacks.isMissing(2));
+		assertNull(nacks.collect(NOW));
+	}
+
+	@Test
+	public void testTooMany() {
+		NackGenerator nacks = new NackGenerator();
+		nacks.received(0);
+		// Loses every other packet, one more than can be tracked
+		for(int i=2; i<=2 * NackGenerator.MAX_MISSING + 2; i+=2) {
+			nacks.received(i);
+		}
+		// The oldest has been given up
+		assertFalse(nacks.isMissing(1));
+		assertTrue(nacks.isMissing(3));
+		assertTrue(nacks.isMissing(2 * NackGenerator.MAX_MISSING + 1));
+	}
+}
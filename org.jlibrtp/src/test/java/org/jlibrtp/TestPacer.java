@@ -0,0 +1,157 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link Pacer}.
+ *
+ * @author agent
+ */
+public class TestPacer {
+	/** Nanoseconds per millisecond */
+	private static final long MS = 1000000L;
+	/** Ticks per revolution of a wheel, see Pacer.WHEEL_SIZE */
+	private static final int WHEEL_SIZE = 512;
+
+	private Pacer pacer;
+
+	@After
+	public void tearDown() {
+		if(pacer != null) {
+			pacer.shutdown();
+		}
+	}
+
+	/**
+	 * Records when it ran.
+	 */
+	private static class Probe extends Pacer.Task {
+		final long deadline;
+		final CountDownLatch done;
+		volatile long ran = -1;
+		volatile int runs = 0;
+
+		Probe(long deadline, CountDownLatch done) {
+			this.deadline = deadline;
+			this.done = done;
+		}
+
+		public void run() {
+			ran = System.nanoTime();
+			runs++;
+			done.countDown();
+		}
+	}
+
+	private void assertOnTime(Probe[] probes, long tick) {
+		for(int i=0; i<probes.length; i++) {
+			assertEquals(1, probes[i].runs);
+			assertTrue("task " + i + " ran early", probes[i].ran - probes[i].deadline >= 0);
+			// A tick late at most, and whatever the scheduler adds
+			assertTrue("task " + i + " ran late", probes[i].ran - probes[i].deadline < tick + 50 * MS);
+		}
+	}
+
+	@Test
+	public void testNeverEarly() throws Exception {
+		pacer = new Pacer(2, Pacer.DEFAULT_TICK);
+		Random random = new Random(1);
+		CountDownLatch done = new CountDownLatch(200);
+		Probe[] probes = new Probe[200];
+		long now = System.nanoTime();
+		for(int i=0; i<probes.length; i++) {
+			probes[i] = new Probe(now + random.nextInt(100) * MS + random.nextInt(1000000), done);
+			assertEquals(0, pacer.schedule(probes[i], probes[i].deadline));
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertOnTime(probes, Pacer.DEFAULT_TICK);
+	}
+
+	@Test
+	public void testBeyondWheel() throws Exception {
+		// A revolution of 51.2 milliseconds
+		long tick = 100000L;
+		pacer = new Pacer(1, tick);
+		long now = System.nanoTime();
+		long[] offsets = {
+			1 * MS,
+			WHEEL_SIZE * tick,
+			WHEEL_SIZE * tick + tick / 2,
+			// Same bucket as the first, one and three revolutions later
+			1 * MS + WHEEL_SIZE * tick,
+			1 * MS + 3 * WHEEL_SIZE * tick,
+			250 * MS
+		};
+		CountDownLatch done = new CountDownLatch(offsets.length);
+		Probe[] probes = new Probe[offsets.length];
+		for(int i=0; i<offsets.length; i++) {
+			probes[i] = new Probe(now + offsets[i], done);
+			pacer.schedule(probes[i], probes[i].deadline);
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertOnTime(probes, tick);
+	}
+
+	@Test
+	public void testOverdue() throws Exception {
+		pacer = new Pacer();
+		CountDownLatch done = new CountDownLatch(1);
+		Probe probe = new Probe(System.nanoTime() - 100 * MS, done);
+		pacer.schedule(probe, probe.deadline);
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testPendingOnce() throws Exception {
+		pacer = new Pacer();
+		CountDownLatch done = new CountDownLatch(1);
+		Probe probe = new Probe(System.nanoTime() + 20 * MS, done);
+		assertEquals(0, pacer.schedule(probe, probe.deadline));
+		assertTrue(probe.isPending());
+		assertEquals(-1, pacer.schedule(probe, probe.deadline));
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		assertEquals(1, probe.runs);
+		assertFalse(probe.isPending());
+
+		// Can be scheduled again once it ran
+		assertEquals(0, pacer.schedule(probe, System.nanoTime()));
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		pacer = new Pacer();
+		CountDownLatch done = new CountDownLatch(1);
+		Probe probe = new Probe(System.nanoTime() + 50 * MS, done);
+		pacer.schedule(probe, probe.deadline);
+		pacer.shutdown();
+		assertEquals(-1, pacer.schedule(new Probe(0, done), System.nanoTime()));
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for matching the sources of received packets to the
+ * receivers of a unicast {@link ParticipantDatabase}.
+ *
+ * @author agent
+ */
+public class TestParticipantDatabase {
+	private DatagramSocket socket;
+	private RTPSession session;
+	private ParticipantDatabase partDb;
+
+	@Before
+	public void setUp() throws Exception {
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		session = new RTPSession(socket, null);
+		session.appIntf = new RTPAppIntf() {
+			public void receiveData(DataFrame frame, Participant participant) {
+			}
+			public void userEvent(int type, Participant[] participant) {
+			}
+			public int frameSize(int payloadType) {
+				return 1;
+			}
+		};
+		partDb = session.partDb;
+	}
+
+	@After
+	public void tearDown() {
+		socket.close();
+	}
+
+	/**
+	 * Adds the source of an RTP packet, as the receiver thread does.
+	 * @param host the address the packet came from
+	 * @param port the port the packet came from
+	 * @param ssrc the SSRC of the packet
+	 * @return the participant filed under the SSRC
+	 */
+	private Participant received(String host, int port, long ssrc) {
+		Participant p = new Participant(new InetSocketAddress(host, port), null, ssrc);
+		partDb.addParticipant(1, p);
+		return partDb.getParticipant(ssrc);
+	}
+
+	@Test
+	public void testMatchByAddress() {
+		Participant receiver = new Participant("127.0.0.1", 20000, 20001);
+		partDb.addParticipant(0, receiver);
+		assertSame(receiver, received("127.0.0.1", 20000, 11));
+		assertEquals(11, receiver.ssrc);
+	}
+
+	@Test
+	public void testMatchByHost() {
+		Participant receiver = new Participant("127.0.0.1", 20000, 20001);
+		partDb.addParticipant(0, receiver);
+		// Sending from another port than it receives on
+		assertSame(receiver, received("127.0.0.1", 30000, 11));
+		assertEquals(11, receiver.ssrc);
+	}
+
+	@Test
+	public void testKnownSsrcIsKept() {
+		Participant receiver = new Participant("127.0.0.1", 20000, 20001);
+		partDb.addParticipant(0, receiver);
+		received("127.0.0.1", 20000, 11);
+		// A second stream from the same host and port
+		Participant other = received("127.0.0.1", 20000, 12);
+		assertNotSame(receiver, other);
+		assertEquals(11, receiver.ssrc);
+		assertSame(receiver, partDb.getParticipant(11));
+		// And from another port of the same host
+		assertNotSame(receiver, received("127.0.0.1", 30000, 13));
+		assertEquals(11, receiver.ssrc);
+	}
+
+	@Test
+	public void testAmbiguousHost() {
+		// Two endpoints behind one NAT
+		Participant first = new Participant("127.0.0.1", 20000, 20001);
+		Participant second = new Participant("127.0.0.1", 20002, 20003);
+		partDb.addParticipant(0, first);
+		partDb.addParticipant(0, second);
+		Participant unknown = received("127.0.0.1", 30000, 11);
+		assertNotSame(first, unknown);
+		assertNotSame(second, unknown);
+		assertEquals(-1, first.ssrc);
+		assertEquals(-1, second.ssrc);
+
+		// Once one is matched by its port, the other is the only candidate left
+		assertSame(first, received("127.0.0.1", 20000, 12));
+		assertSame(second, received("127.0.0.1", 30002, 13));
+	}
+
+	@Test
+	public void testRemovedReceiver() {
+		Participant receiver = new Participant("127.0.0.2", 20000, 20001);
+		partDb.addParticipant(0, receiver);
+		partDb.removeParticipant(receiver);
+		assertNull(partDb.findReceiver(new InetSocketAddress("127.0.0.2", 30000), 11));
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the linked list {@link PktBuffer}.
+ *
+ * @author agent
+ */
+public class TestPktBuffer {
+	/** SSRC of the packets */
+	private static final long SSRC = 1234;
+
+	private DatagramSocket socket;
+	private RTPSession session;
+	private Participant participant;
+
+	@Before
+	public void setUp() throws Exception {
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		session = new RTPSession(socket, null);
+		session.frameReconstruction = false;
+		session.pktBufBehavior = 3;
+		participant = new Participant("127.0.0.1", 6004, 6005);
+	}
+
+	@After
+	public void tearDown() {
+		socket.close();
+	}
+
+	/**
+	 * Creates a packet whose timestamp follows its sequence number.
+	 * @param seqNum the sequence number
+	 * @return the packet
+	 */
+	private static RtpPkt pkt(int seqNum) {
+		return new RtpPkt(seqNum * 160L, SSRC, seqNum, 0, new byte[] {(byte) seqNum});
+	}
+
+	private static int popSeqNum(PktBuffer buffer) {
+		DataFrame frame = buffer.popOldestFrame();
+		int seqNum = frame.sequenceNumber(0);
+		frame.release();
+		return seqNum;
+	}
+
+	@Test
+	public void testInOrder() {
+		PktBuffer buffer = new PktBuffer(session, participant, pkt(100));
+		assertEquals(0, buffer.addPkt(pkt(101)));
+		assertEquals(0, buffer.addPkt(pkt(102)));
+		assertEquals(100, popSeqNum(buffer));
+		assertEquals(101, popSeqNum(buffer));
+		assertEquals(102, popSeqNum(buffer));
+		assertNull(buffer.popOldestFrame());
+	}
+
+	/**
+	 * A packet older than everything buffered, before any frame was handed
+	 * over, used to run the insertion search off the end of the list.
+	 */
+	@Test
+	public void testOlderThanHead() {
+		PktBuffer buffer = new PktBuffer(session, participant, pkt(100));
+		assertEquals(0, buffer.addPkt(pkt(101)));
+		assertEquals(0, buffer.addPkt(pkt(99)));
+		assertEquals(0, buffer.addPkt(pkt(98)));
+		assertEquals(4, buffer.getLength());
+		assertEquals(98, popSeqNum(buffer));
+		assertEquals(99, popSeqNum(buffer));
+		assertEquals(100, popSeqNum(buffer));
+		assertEquals(101, popSeqNum(buffer));
+		assertNull(buffer.popOldestFrame());
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link PktQueue}.
+ *
+ * @author agent
+ */
+public class TestPktQueue {
+	private static RtpPkt pkt(int seqNum) {
+		return new RtpPkt(seqNum * 160L, 1234, seqNum & 0xFFFF, 0, new byte[0]);
+	}
+
+	@Test
+	public void testEmpty() {
+		PktQueue queue = new PktQueue(4);
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testFull() {
+		PktQueue queue = new PktQueue(4);
+		RtpPkt[] pkts = new RtpPkt[4];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = pkt(i);
+			assertTrue(queue.offer(pkts[i]));
+		}
+		assertEquals(4, queue.size());
+		assertFalse(queue.offer(pkt(4)));
+		assertEquals(4, queue.size());
+
+		// Polling one makes room for one
+		assertSame(pkts[0], queue.poll());
+		RtpPkt next = pkt(5);
+		assertTrue(queue.offer(next));
+		assertFalse(queue.offer(pkt(6)));
+		for(int i=1; i<pkts.length; i++) {
+			assertSame(pkts[i], queue.poll());
+		}
+		assertSame(next, queue.poll());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testCapacityRoundedUp() {
+		PktQueue queue = new PktQueue(5);
+		for(int i=0; i<8; i++) {
+			assertTrue(queue.offer(pkt(i)));
+		}
+		assertFalse(queue.offer(pkt(8)));
+	}
+
+	@Test(timeout = 30000)
+	public void testSingleProducerSingleConsumerOrder() throws Exception {
+		final int count = 1000000;
+		final PktQueue queue = new PktQueue(64);
+		final RtpPkt[] pkts = new RtpPkt[1024];
+		for(int i=0; i<pkts.length; i++) {
+			pkts[i] = pkt(i);
+		}
+		Thread producer = new Thread() {
+			public void run() {
+				for(int i=0; i<count; i++) {
+					// Spin while the consumer catches up, the queue must never lose a packet
+					while(!queue.offer(pkts[i % pkts.length])) {
+						Thread.yield();
+					}
+				}
+			}
+		};
+		producer.start();
+		int outOfOrder = 0;
+		for(int i=0; i<count; i++) {
+			RtpPkt pkt;
+			while((pkt = queue.poll()) == null) {
+				Thread.yield();
+			}
+			if(pkt != pkts[i % pkts.length]) {
+				outOfOrder++;
+			}
+		}
+		producer.join();
+		assertEquals(0, outOfOrder);
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+	}
+}
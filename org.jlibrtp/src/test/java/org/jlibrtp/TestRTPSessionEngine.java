@@ -0,0 +1,170 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link RTPSessionEngine}, running sessions that receive
+ * RTP and RTCP over the loopback interface.
+ *
+ * @author agent
+ */
+public class TestRTPSessionEngine {
+	/** SSRC of the remote end */
+	private static final long SSRC = 0x12345678L;
+	/** Frames sent */
+	private static final int FRAMES = 5;
+
+	private RTPSessionEngine engine;
+	private DatagramSocket sender;
+	private RTPSession session;
+
+	@Before
+	public void setUp() throws Exception {
+		engine = new RTPSessionEngine(1, 1, 1);
+		sender = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+	}
+
+	@After
+	public void tearDown() {
+		if(session != null) {
+			session.endSession();
+		}
+		engine.shutdown();
+		sender.close();
+	}
+
+	/**
+	 * Counts the frames and receiver reports it gets, and notes the threads it was called on.
+	 */
+	static class Receiver implements RTPAppIntf, RTCPAppIntf {
+		final CountDownLatch frames = new CountDownLatch(FRAMES);
+		final CountDownLatch reports = new CountDownLatch(1);
+		volatile String frameThread;
+		volatile String reportThread;
+		volatile long reporter = -1;
+
+		public void receiveData(DataFrame frame, Participant participant) {
+			frame.release();
+			frameThread = Thread.currentThread().getName();
+			frames.countDown();
+		}
+
+		public void userEvent(int type, Participant[] participant) {
+		}
+
+		public int frameSize(int payloadType) {
+			return 1;
+		}
+
+		public void SRPktReceived(long ssrc, long ntpHighOrder, long ntpLowOrder,
+				long rtpTimestamp, long packetCount, long octetCount,
+				long[] reporteeSsrc, int[] lossFraction, int[] cumulPacketsLost, long[] extHighSeq,
+				long[] interArrivalJitter, long[] lastSRTimeStamp, long[] delayLastSR) {
+		}
+
+		public void RRPktReceived(long reporterSsrc, long[] reporteeSsrc,
+				int[] lossFraction, int[] cumulPacketsLost, long[] extHighSeq,
+				long[] interArrivalJitter, long[] lastSRTimeStamp, long[] delayLastSR) {
+			reporter = reporterSsrc;
+			reportThread = Thread.currentThread().getName();
+			reports.countDown();
+		}
+
+		public void SDESPktReceived(Participant[] relevantParticipants) {
+		}
+
+		public void BYEPktReceived(Participant[] relevantParticipants, String reason) {
+		}
+
+		public void APPPktReceived(Participant part, int subtype, byte[] name, byte[] data) {
+		}
+	}
+
+	private static DatagramChannel open() throws Exception {
+		DatagramChannel channel = DatagramChannel.open();
+		channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		return channel;
+	}
+
+	private void send(byte[] pkt, SocketAddress to) throws Exception {
+		sender.send(new DatagramPacket(pkt, pkt.length, to));
+	}
+
+	/**
+	 * Sends frames to one address and an empty receiver report to another,
+	 * which may be the same, and checks that the engine delivered both
+	 * without the session starting any threads.
+	 */
+	private void checkReceive(SocketAddress rtpAddr, SocketAddress rtcpAddr) throws Exception {
+		Receiver app = new Receiver();
+		session.naivePktReception(true);
+		session.registerRTPSession(app, app, null);
+
+		for(int i=0; i<FRAMES; i++) {
+			send(new RtpPkt(i * 160, SSRC, i, 0, new byte[] {(byte) i}).encode(), rtpAddr);
+		}
+		send(new byte[] {
+				(byte) 0x80, (byte) 201, 0, 1,
+				(byte) (SSRC >>> 24), (byte) (SSRC >>> 16), (byte) (SSRC >>> 8), (byte) SSRC },
+				rtcpAddr);
+
+		assertTrue(app.frames.await(5, TimeUnit.SECONDS));
+		assertTrue(app.reports.await(5, TimeUnit.SECONDS));
+		assertEquals(SSRC, app.reporter);
+		assertTrue(app.frameThread, app.frameThread.startsWith("RTPSessionEngine-dispatcher-"));
+		assertTrue(app.reportThread, app.reportThread.startsWith("RTPSessionEngine-selector-"));
+
+		assertFalse(session.recvThrd.isAlive());
+		assertFalse(session.appCallerThrd.isAlive());
+		assertFalse(session.rtcpSession.recvThrd.isAlive());
+		assertFalse(session.rtcpSession.senderThrd.isAlive());
+	}
+
+	@Test
+	public void testSeparateRtcp() throws Exception {
+		DatagramChannel rtp = open();
+		DatagramChannel rtcp = open();
+		session = new RTPSession(rtp, rtcp, engine);
+		checkReceive(rtp.getLocalAddress(), rtcp.getLocalAddress());
+	}
+
+	@Test
+	public void testRtcpMux() throws Exception {
+		DatagramChannel channel = open();
+		session = new RTPSession(channel, engine);
+		checkReceive(channel.getLocalAddress(), channel.getLocalAddress());
+	}
+}
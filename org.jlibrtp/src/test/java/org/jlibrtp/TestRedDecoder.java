@@ -0,0 +1,188 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link RedDecoder}.
+ *
+ * @author agent
+ */
+public class TestRedDecoder {
+	/** SSRC of the packets */
+	private static final long SSRC = 1234;
+	/** Payload type of the media */
+	private static final int PT = 0;
+	/** Payload type of RED packets */
+	private static final int RED_PT = 98;
+	/** Timestamp increment per packet */
+	private static final int TS_STEP = 160;
+
+	private static byte[] payload(int seqNum) {
+		byte[] data = new byte[10 + seqNum % 7];
+		for(int i=0; i<data.length; i++) {
+			data[i] = (byte) (seqNum + i);
+		}
+		return data;
+	}
+
+	/**
+	 * Builds a received packet that is not a RED packet.
+	 *
+	 * @param seqNum the sequence number
+	 * @return the packet
+	 */
+	private static RtpPkt plain(int seqNum) {
+		byte[] data = payload(seqNum);
+		ByteBuffer buf = ByteBuffer.allocate(12 + data.length);
+		buf.put((byte) 0x80).put((byte) PT).putShort((short) seqNum);
+		buf.putInt(seqNum * TS_STEP).putInt((int) SSRC);
+		buf.put(data);
+		buf.flip();
+		return new RtpPkt(buf, null);
+	}
+
+	/**
+	 * Builds a received RED packet, whose redundant blocks repeat the packets right before it.
+	 *
+	 * @param seqNum the sequence number
+	 * @param depth the number of redundant blocks
+	 * @return the packet
+	 */
+	private static RtpPkt red(int seqNum, int depth) {
+		ByteBuffer buf = ByteBuffer.allocate(1500);
+		buf.put((byte) 0x80).put((byte) (0x80 | RED_PT)).putShort((short) seqNum);
+		buf.putInt(seqNum * TS_STEP).putInt((int) SSRC);
+		for(int i=depth; i>0; i--) {
+			buf.putInt(0x80000000 | PT << 24 | (i * TS_STEP) << 10 | payload(seqNum - i).length);
+		}
+		buf.put((byte) PT);
+		for(int i=depth; i>0; i--) {
+			buf.put(payload((seqNum - i) & 0xFFFF));
+		}
+		buf.put(payload(seqNum));
+		buf.flip();
+		return new RtpPkt(buf, null);
+	}
+
+	@Test
+	public void testPlain() {
+		RedDecoder red = new RedDecoder();
+		assertEquals(0, red.decode(plain(1), RED_PT));
+		assertEquals(0, red.decode(plain(2), RED_PT));
+		assertNull(red.poll());
+	}
+
+	@Test
+	public void testPrimary() {
+		RedDecoder red = new RedDecoder();
+		assertEquals(0, red.decode(red(10, 2), RED_PT));
+		// Nothing before the first packet is recovered
+		assertNull(red.poll());
+
+		RtpPkt pkt = red(11, 1);
+		assertEquals(0, red.decode(pkt, RED_PT));
+		assertEquals(PT, pkt.getPayloadType());
+		assertEquals(11, pkt.getSeqNumber());
+		assertEquals(11 * TS_STEP, pkt.getTimeStamp());
+		assertEquals(SSRC, pkt.getSsrc());
+		assertArrayEquals(payload(11), pkt.getPayload());
+		// The marker survives, the block repeats a packet seen already
+		assertTrue(pkt.isMarked());
+		assertNull(red.poll());
+	}
+
+	@Test
+	public void testRecovery() {
+		RedDecoder red = new RedDecoder();
+		assertEquals(0, red.decode(red(10, 2), RED_PT));
+		// 11 and 12 are lost
+		assertEquals(0, red.decode(red(13, 2), RED_PT));
+		for(int seqNum=11; seqNum<=12; seqNum++) {
+			RtpPkt block = red.poll();
+			assertEquals(seqNum, block.getSeqNumber());
+			assertEquals(PT, block.getPayloadType());
+			assertEquals(seqNum * TS_STEP, block.getTimeStamp());
+			assertEquals(SSRC, block.getSsrc());
+			assertFalse(block.isMarked());
+			assertArrayEquals(payload(seqNum), block.getPayload());
+		}
+		assertNull(red.poll());
+
+		// The originals, late, are duplicates now
+		assertEquals(-1, red.decode(plain(11), RED_PT));
+		assertEquals(-1, red.decode(red(12, 2), RED_PT));
+	}
+
+	@Test
+	public void testTooFarBack() {
+		RedDecoder red = new RedDecoder();
+		assertEquals(0, red.decode(red(10, 1), RED_PT));
+		// 11 and 12 are lost, only 12 is repeated
+		assertEquals(0, red.decode(red(13, 1), RED_PT));
+		assertEquals(12, red.poll().getSeqNumber());
+		assertNull(red.poll());
+		// 11 may still arrive
+		assertEquals(0, red.decode(plain(11), RED_PT));
+	}
+
+	@Test
+	public void testWrap() {
+		RedDecoder red = new RedDecoder();
+		assertEquals(0, red.decode(red(65534, 2), RED_PT));
+		assertEquals(0, red.decode(red(1, 2), RED_PT));
+		assertEquals(65535, red.poll().getSeqNumber());
+		assertEquals(0, red.poll().getSeqNumber());
+		assertNull(red.poll());
+	}
+
+	@Test
+	public void testDuplicate() {
+		RedDecoder red = new RedDecoder();
+		assertEquals(0, red.decode(plain(5), RED_PT));
+		assertEquals(-1, red.decode(plain(5), RED_PT));
+		// Older than the window
+		assertEquals(0, red.decode(plain(200), RED_PT));
+		assertEquals(-1, red.decode(plain(100), RED_PT));
+	}
+
+	@Test
+	public void testMalformed() {
+		RedDecoder red = new RedDecoder();
+		RtpPkt pkt = red(10, 2);
+		// Cut off in the middle of the redundant data
+		ByteBuffer buf = pkt.getBuffer();
+		buf.limit(12 + 8 + 1 + 5);
+		assertEquals(-1, red.decode(new RtpPkt(buf, null), RED_PT));
+
+		// Only block headers
+		buf.limit(12 + 8);
+		assertEquals(-1, red.decode(new RtpPkt(buf, null), RED_PT));
+		assertNull(red.poll());
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for a session receiving on several channels bound with
+ * SO_REUSEPORT, see {@link ReusePort}, over the loopback interface.
+ *
+ * @author agent
+ */
+public class TestReusePort {
+	/** Receiving channels */
+	private static final int READERS = 4;
+	/** Sending sockets, enough for the kernel to spread them over the channels */
+	private static final int SOURCES = 16;
+	/** SSRC of the first source, the others follow */
+	private static final long SSRC = 0x10000L;
+
+	private DatagramChannel[] channels;
+	private DatagramChannel rtcp;
+	private DatagramSocket[] sources;
+	private RTPSession session;
+	private InetSocketAddress to;
+
+	/**
+	 * Counts the frames it gets.
+	 */
+	static class Receiver implements RTPAppIntf {
+		final Semaphore frames = new Semaphore(0);
+
+		public void receiveData(DataFrame frame, Participant participant) {
+			frame.release();
+			frames.release();
+		}
+
+		public void userEvent(int type, Participant[] participant) {
+		}
+
+		public int frameSize(int payloadType) {
+			return 1;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue(ReusePort.isSupported());
+		InetAddress lo = InetAddress.getLoopbackAddress();
+		channels = ReusePort.open(new InetSocketAddress(lo, 0), READERS);
+		to = (InetSocketAddress) channels[0].getLocalAddress();
+		rtcp = DatagramChannel.open();
+		rtcp.bind(new InetSocketAddress(lo, 0));
+		sources = new DatagramSocket[SOURCES];
+		for(int i=0; i<SOURCES; i++) {
+			sources[i] = new DatagramSocket(0, lo);
+		}
+		session = new RTPSession(channels, rtcp);
+	}
+
+	@After
+	public void tearDown() {
+		if(session != null) {
+			session.endSession();
+		}
+		if(sources != null) {
+			for(int i=0; i<SOURCES; i++) {
+				sources[i].close();
+			}
+		}
+	}
+
+	private void send(int source, long ssrc, int seq) throws Exception {
+		byte[] pkt = new RtpPkt(seq * 160L, ssrc, seq, 0, new byte[] {(byte) seq}).encode();
+		sources[source].send(new DatagramPacket(pkt, pkt.length, to));
+	}
+
+	@Test
+	public void testHandOver() throws Exception {
+		Receiver app = new Receiver();
+		session.naivePktReception(true);
+		session.registerRTPSession(app, null, null);
+
+		// Find out which receiver the kernel gives the flow of each source to
+		int[] reader = new int[SOURCES];
+		for(int i=0; i<SOURCES; i++) {
+			send(i, SSRC + i, 0);
+		}
+		assertTrue(app.frames.tryAcquire(SOURCES, 5, TimeUnit.SECONDS));
+		int a = 0;
+		int b = -1;
+		for(int i=0; i<SOURCES; i++) {
+			reader[i] = session.partDb.getParticipant(SSRC + i).reader;
+			assertTrue(reader[i] >= 0 && reader[i] < READERS);
+			if(b < 0 && reader[i] != reader[a]) {
+				b = i;
+			}
+		}
+		assertEquals(0, session.getHandedOverPktCount());
+		// The kernel hashed every flow to the same channel
+		Assume.assumeTrue(b >= 0);
+
+		// One SSRC that moves from source a to source b, as after a NAT rebinding
+		long ssrc = SSRC + SOURCES;
+		for(int seq=0; seq<10; seq++) {
+			send(a, ssrc, seq);
+		}
+		assertTrue(app.frames.tryAcquire(10, 5, TimeUnit.SECONDS));
+		for(int seq=10; seq<20; seq++) {
+			send(b, ssrc, seq);
+		}
+		assertTrue(app.frames.tryAcquire(10, 5, TimeUnit.SECONDS));
+
+		assertEquals(reader[a], session.partDb.getParticipant(ssrc).reader);
+		assertEquals(10, session.getHandedOverPktCount());
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link RingPktBuffer}.
+ *
+ * @author agent
+ */
+public class TestRingPktBuffer {
+	/** SSRC of the packets */
+	private static final long SSRC = 1234;
+
+	private DatagramSocket socket;
+	private RTPSession session;
+	private Participant participant;
+
+	@Before
+	public void setUp() throws Exception {
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		session = new RTPSession(socket, null);
+		session.frameReconstruction = false;
+		session.pktBufBehavior = 0;
+		participant = new Participant("127.0.0.1", 6004, 6005);
+	}
+
+	@After
+	public void tearDown() {
+		socket.close();
+	}
+
+	/**
+	 * Creates a packet whose timestamp and payload follow its sequence number.
+	 * @param seqNum the sequence number
+	 * @return the packet
+	 */
+	private static RtpPkt pkt(int seqNum) {
+		return new RtpPkt(seqNum * 160L, SSRC, seqNum, 0, new byte[] {(byte) seqNum});
+	}
+
+	private RingPktBuffer buffer(int firstSeqNum, int capacity) {
+		return new RingPktBuffer(session, participant, pkt(firstSeqNum), capacity);
+	}
+
+	private static int popSeqNum(RingPktBuffer buffer) {
+		DataFrame frame = buffer.popOldestFrame();
+		int seqNum = frame.sequenceNumber(0);
+		frame.release();
+		return seqNum;
+	}
+
+	@Test
+	public void testWraparound() {
+		RingPktBuffer buffer = buffer(65534, 16);
+		assertEquals(0, buffer.addPkt(pkt(0)));
+		assertEquals(0, buffer.addPkt(pkt(65535)));
+		assertEquals(0, buffer.addPkt(pkt(1)));
+		assertEquals(4, buffer.getLength());
+		assertEquals(65534, popSeqNum(buffer));
+		assertEquals(65535, popSeqNum(buffer));
+		assertEquals(0, popSeqNum(buffer));
+		assertEquals(1, popSeqNum(buffer));
+		assertNull(buffer.popOldestFrame());
+	}
+
+	@Test
+	public void testReorderedBeforeFirstFrame() {
+		RingPktBuffer buffer = buffer(10, 16);
+		// Nothing was handed over yet, an earlier packet is still in time
+		assertEquals(0, buffer.addPkt(pkt(9)));
+		assertEquals(9, popSeqNum(buffer));
+		assertEquals(10, popSeqNum(buffer));
+	}
+
+	@Test
+	public void testLatePacket() {
+		RingPktBuffer buffer = buffer(100, 16);
+		buffer.addPkt(pkt(101));
+		assertEquals(100, popSeqNum(buffer));
+		assertEquals(-1, buffer.addPkt(pkt(100)));
+		assertEquals(-1, buffer.addPkt(pkt(99)));
+		assertEquals(1, buffer.getLength());
+	}
+
+	@Test
+	public void testDuplicatePacket() {
+		RingPktBuffer buffer = buffer(100, 16);
+		assertEquals(0, buffer.addPkt(pkt(102)));
+		assertEquals(-2, buffer.addPkt(pkt(102)));
+		assertEquals(-2, buffer.addPkt(pkt(100)));
+		assertEquals(2, buffer.getLength());
+	}
+
+	@Test
+	public void testOverflow() {
+		RingPktBuffer buffer = buffer(0, 4);
+		for(int i=1; i<6; i++) {
+			assertEquals(0, buffer.addPkt(pkt(i)));
+		}
+		// The two oldest packets made room for the newest ones
+		assertEquals(4, buffer.getLength());
+		assertEquals(2, buffer.skippedPkts);
+		assertEquals(2, popSeqNum(buffer));
+		// Too old for the ring now
+		assertEquals(-1, buffer.addPkt(pkt(1)));
+	}
+
+	@Test
+	public void testWaitForMissingPacket() {
+		session.pktBufBehavior = 2;
+		RingPktBuffer buffer = buffer(1, 16);
+		buffer.addPkt(pkt(3));
+		assertEquals(1, popSeqNum(buffer));
+		// 2 is missing, wait for it while few packets are buffered
+		assertNull(buffer.popOldestFrame());
+		buffer.addPkt(pkt(4));
+		assertNull(buffer.popOldestFrame());
+		buffer.addPkt(pkt(5));
+		assertEquals(3, popSeqNum(buffer));
+		assertEquals(1, buffer.skippedPkts);
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for RTCP multiplexed on the RTP socket (RFC 5761), sent over
+ * the loopback interface to a session that receives with its own threads.
+ *
+ * @author agent
+ */
+public class TestRtcpMux {
+	/** SSRC of the remote end */
+	private static final long SSRC = 0x12345678L;
+
+	private DatagramSocket sender;
+	private RTPSession session;
+
+	@Before
+	public void setUp() throws Exception {
+		sender = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+	}
+
+	@After
+	public void tearDown() {
+		if(session != null) {
+			session.endSession();
+		}
+		sender.close();
+	}
+
+	/**
+	 * Counts the frames and receiver reports it gets.
+	 */
+	static class Receiver implements RTPAppIntf, RTCPAppIntf {
+		final CountDownLatch frames;
+		final CountDownLatch reports;
+		volatile long reporter = -1;
+
+		Receiver(int frameCount, int reportCount) {
+			frames = new CountDownLatch(frameCount);
+			reports = new CountDownLatch(reportCount);
+		}
+
+		public void receiveData(DataFrame frame, Participant participant) {
+			frame.release();
+			frames.countDown();
+		}
+
+		public void userEvent(int type, Participant[] participant) {
+		}
+
+		public int frameSize(int payloadType) {
+			return 1;
+		}
+
+		public void SRPktReceived(long ssrc, long ntpHighOrder, long ntpLowOrder,
+				long rtpTimestamp, long packetCount, long octetCount,
+				long[] reporteeSsrc, int[] lossFraction, int[] cumulPacketsLost, long[] extHighSeq,
+				long[] interArrivalJitter, long[] lastSRTimeStamp, long[] delayLastSR) {
+		}
+
+		public void RRPktReceived(long reporterSsrc, long[] reporteeSsrc,
+				int[] lossFraction, int[] cumulPacketsLost, long[] extHighSeq,
+				long[] interArrivalJitter, long[] lastSRTimeStamp, long[] delayLastSR) {
+			reporter = reporterSsrc;
+			reports.countDown();
+		}
+
+		public void SDESPktReceived(Participant[] relevantParticipants) {
+		}
+
+		public void BYEPktReceived(Participant[] relevantParticipants, String reason) {
+		}
+
+		public void APPPktReceived(Participant part, int subtype, byte[] name, byte[] data) {
+		}
+	}
+
+	/**
+	 * An empty receiver report, PT 201, from SSRC.
+	 *
+	 * @return the raw packet
+	 */
+	static byte[] receiverReport() {
+		return new byte[] {
+				(byte) 0x80, (byte) 201, 0, 1,
+				(byte) (SSRC >>> 24), (byte) (SSRC >>> 16), (byte) (SSRC >>> 8), (byte) SSRC };
+	}
+
+	private void send(byte[] pkt, SocketAddress to) throws Exception {
+		sender.send(new DatagramPacket(pkt, pkt.length, to));
+	}
+
+	/**
+	 * Sends RTP and RTCP to the one address of the session,
+	 * both must reach the application.
+	 */
+	private void checkDemux(SocketAddress to) throws Exception {
+		Receiver app = new Receiver(3, 1);
+		session.naivePktReception(true);
+		session.registerRTPSession(app, app, null);
+
+		for(int i=0; i<3; i++) {
+			send(new RtpPkt(i * 160, SSRC, i, 0, new byte[] {(byte) i}).encode(), to);
+		}
+		send(receiverReport(), to);
+
+		assertTrue(app.reports.await(5, TimeUnit.SECONDS));
+		assertEquals(SSRC, app.reporter);
+		assertTrue(app.frames.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testSocket() throws Exception {
+		DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		session = new RTPSession(socket);
+		assertTrue(session.rtcpMux());
+		checkDemux(socket.getLocalSocketAddress());
+	}
+
+	@Test
+	public void testChannel() throws Exception {
+		DatagramChannel channel = DatagramChannel.open();
+		channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		session = new RTPSession(channel);
+		assertTrue(session.rtcpMux());
+		checkDemux(channel.getLocalAddress());
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Enumeration;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link SsrcTable}.
+ *
+ * @author agent
+ */
+public class TestSsrcTable {
+	private static Participant participant() {
+		return new Participant("127.0.0.1", 6004, 6005);
+	}
+
+	/**
+	 * Finds SSRCs that start probing at the same slot of a table of 16.
+	 * @param count the number of SSRCs
+	 * @return the SSRCs
+	 */
+	private static long[] colliding(int count) {
+		long[] ssrcs = new long[count];
+		int n = 0;
+		int target = SsrcTable.slot(1, 15);
+		for(long ssrc = 1; n < count; ssrc++) {
+			if(SsrcTable.slot(ssrc, 15) == target) {
+				ssrcs[n++] = ssrc;
+			}
+		}
+		return ssrcs;
+	}
+
+	@Test
+	public void testPutAndGet() {
+		SsrcTable table = new SsrcTable();
+		Participant p1 = participant();
+		Participant p2 = participant();
+		assertNull(table.put(1, p1));
+		assertNull(table.put(0xFFFFFFFFL, p2));
+		assertSame(p1, table.get(1));
+		assertSame(p2, table.get(0xFFFFFFFFL));
+		assertTrue(table.containsKey(1));
+		assertFalse(table.containsKey(2));
+		assertNull(table.get(2));
+		assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testReplace() {
+		SsrcTable table = new SsrcTable();
+		Participant p1 = participant();
+		Participant p2 = participant();
+		table.put(7, p1);
+		assertSame(p1, table.put(7, p2));
+		assertSame(p2, table.get(7));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void testRemove() {
+		SsrcTable table = new SsrcTable();
+		Participant p1 = participant();
+		table.put(7, p1);
+		// Only the participant filed under the SSRC is removed
+		assertFalse(table.remove(7, participant()));
+		assertFalse(table.remove(8, p1));
+		assertSame(p1, table.get(7));
+		assertTrue(table.remove(7, p1));
+		assertNull(table.get(7));
+		assertFalse(table.remove(7, p1));
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void testResize() {
+		SsrcTable table = new SsrcTable();
+		Participant[] parts = new Participant[10000];
+		for(int i=0; i<parts.length; i++) {
+			parts[i] = participant();
+			// Counting up, as some senders do
+			assertNull(table.put(i, parts[i]));
+		}
+		assertEquals(parts.length, table.size());
+		for(int i=0; i<parts.length; i++) {
+			assertSame(parts[i], table.get(i));
+		}
+		assertNull(table.get(parts.length));
+	}
+
+	@Test
+	public void testCollisions() {
+		SsrcTable table = new SsrcTable(4);
+		long[] ssrcs = colliding(4);
+		Participant[] parts = new Participant[ssrcs.length];
+		for(int i=0; i<ssrcs.length; i++) {
+			parts[i] = participant();
+			table.put(ssrcs[i], parts[i]);
+		}
+		for(int i=0; i<ssrcs.length; i++) {
+			assertSame(parts[i], table.get(ssrcs[i]));
+		}
+
+		// Lookups probe past the tombstone of a removed entry
+		assertTrue(table.remove(ssrcs[1], parts[1]));
+		assertNull(table.get(ssrcs[1]));
+		assertSame(parts[2], table.get(ssrcs[2]));
+		assertSame(parts[3], table.get(ssrcs[3]));
+
+		// Inserts reuse it, and still find an entry further along
+		Participant p = participant();
+		assertSame(parts[3], table.put(ssrcs[3], p));
+		assertSame(p, table.get(ssrcs[3]));
+		assertNull(table.put(ssrcs[1], parts[1]));
+		assertSame(parts[1], table.get(ssrcs[1]));
+		assertEquals(4, table.size());
+	}
+
+	@Test
+	public void testChurn() {
+		SsrcTable table = new SsrcTable();
+		Participant p = participant();
+		// Tombstones must not fill up the table
+		for(long ssrc = 0; ssrc < 100000; ssrc++) {
+			table.put(ssrc, p);
+			assertTrue(table.remove(ssrc, p));
+		}
+		assertEquals(0, table.size());
+		assertNull(table.get(99999));
+	}
+
+	@Test
+	public void testVisitAndElements() {
+		SsrcTable table = new SsrcTable();
+		for(int i=0; i<100; i++) {
+			table.put(i * 1000003L, participant());
+		}
+		table.remove(0, table.get(0));
+		final int[] visited = new int[1];
+		table.visit(new SsrcTable.Visitor() {
+			public void visit(Participant p) {
+				visited[0]++;
+			}
+		});
+		assertEquals(99, visited[0]);
+		int enumerated = 0;
+		Enumeration<Participant> e = table.elements();
+		while(e.hasMoreElements()) {
+			e.nextElement();
+			enumerated++;
+		}
+		assertEquals(99, enumerated);
+	}
+}
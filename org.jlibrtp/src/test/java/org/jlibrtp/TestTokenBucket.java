@@ -0,0 +1,96 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link TokenBucket}.
+ *
+ * @author agent
+ */
+public class TestTokenBucket {
+	/** Nanoseconds per millisecond */
+	private static final long MS = 1000000L;
+
+	@Test
+	public void testBurst() {
+		// 1000 octets per second
+		TokenBucket bucket = new TokenBucket(8000, 1500);
+		long now = System.nanoTime();
+		assertEquals(now, bucket.take(1000, now));
+		assertEquals(now, bucket.take(500, now));
+		// Empty, the next packet waits for its tokens
+		assertEquals(now + 100 * MS, bucket.take(100, now), MS / 100);
+	}
+
+	@Test
+	public void testDebt() {
+		TokenBucket bucket = new TokenBucket(8000, 1000);
+		long now = System.nanoTime();
+		assertEquals(now, bucket.take(1000, now));
+		// Each packet waits for the debt of those before it
+		assertEquals(now + 500 * MS, bucket.take(500, now), MS / 100);
+		assertEquals(now + 1000 * MS, bucket.take(500, now), MS / 100);
+		assertEquals(now + 1500 * MS, bucket.take(500, now), MS / 100);
+
+		// Paid off as time passes, a packet sent on schedule waits for its own tokens only
+		long later = now + 1500 * MS;
+		assertEquals(later + 200 * MS, bucket.take(200, later), MS / 100);
+	}
+
+	@Test
+	public void testBurstBounded() {
+		TokenBucket bucket = new TokenBucket(8000, 1000);
+		long now = System.nanoTime() + 10000 * MS;
+		// Ten idle seconds, still only a bucket full
+		assertEquals(now, bucket.take(1000, now));
+		assertTrue(bucket.take(1, now) > now);
+	}
+
+	@Test
+	public void testTryTake() {
+		TokenBucket bucket = new TokenBucket(8000, 1000);
+		long now = System.nanoTime();
+		assertTrue(bucket.tryTake(800, now));
+		assertFalse(bucket.tryTake(300, now));
+		// Refused packets take nothing
+		assertTrue(bucket.tryTake(200, now));
+		assertFalse(bucket.tryTake(1, now));
+		assertTrue(bucket.tryTake(100, now + 100 * MS));
+	}
+
+	@Test
+	public void testSetRate() {
+		TokenBucket bucket = new TokenBucket(8000, 1000);
+		long now = System.nanoTime();
+		assertEquals(now, bucket.take(1000, now));
+		bucket.setRate(16000);
+		assertEquals(16000, bucket.getRate());
+		now = System.nanoTime();
+		// Twice the rate, half the wait
+		assertEquals(now + 500 * MS, bucket.take(1000, now), MS);
+		bucket.setRate(0);
+		assertEquals(1, bucket.getRate());
+	}
+}
@@ -0,0 +1,231 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link TransportFeedback} and {@link TransportHistory},
+ * writing transport feedback messages and parsing them back.
+ *
+ * @author agent
+ */
+public class TestTransportFeedback {
+	/** Nanoseconds per millisecond */
+	private static final long MS = 1000000L;
+	/** When the sender's clock sends the first packet */
+	private static final long SENT = 5000 * MS;
+	/** When the first packet arrives, on a reference time boundary of the receiver's clock */
+	private static final long ARRIVED = 1000 * TransportFeedback.REFERENCE_UNIT;
+	/** The length of every packet */
+	private static final int LENGTH = 200;
+
+	private TransportFeedback feedback;
+	private TransportHistory history;
+
+	@Before
+	public void setUp() {
+		feedback = new TransportFeedback();
+		history = new TransportHistory();
+	}
+
+	/**
+	 * Sends a packet, and delivers it unless arrival is negative.
+	 *
+	 * @param seqNum the transport-wide sequence number
+	 * @param sent when it was sent, relative to SENT
+	 * @param arrival when it arrived, relative to ARRIVED, -1 if it was lost
+	 */
+	private void transfer(int seqNum, long sent, long arrival) {
+		history.sent(seqNum & 0xFFFF, SENT + sent, LENGTH);
+		if(arrival >= 0) {
+			feedback.received(seqNum & 0xFFFF, ARRIVED + arrival);
+		}
+	}
+
+	/**
+	 * Writes the pending feedback and parses it.
+	 *
+	 * @return the FCI
+	 */
+	private byte[] report() {
+		byte[] fci = feedback.build(ARRIVED + 10000 * MS);
+		assertEquals(0, fci.length % 4);
+		int reported = ((fci[2] & 0xFF) << 8) | (fci[3] & 0xFF);
+		assertEquals(reported, history.feedback(fci, 0, fci.length));
+		return fci;
+	}
+
+	private static int chunk(byte[] fci, int index) {
+		return ((fci[8 + 2*index] & 0xFF) << 8) | (fci[9 + 2*index] & 0xFF);
+	}
+
+	@Test
+	public void testRunLength() {
+		for(int i=0; i<20; i++) {
+			transfer(i, i * MS, 10 * MS + i * MS);
+		}
+		byte[] fci = report();
+		assertEquals(0, ((fci[0] & 0xFF) << 8) | (fci[1] & 0xFF));
+		// 20 small deltas in one chunk
+		assertEquals(TransportFeedback.SMALL_DELTA << 13 | 20, chunk(fci, 0));
+
+		assertEquals(0, history.lost);
+		assertEquals(19, history.count);
+		for(int i=0; i<history.count; i++) {
+			assertEquals(MS, history.sendDeltas[i]);
+			assertEquals(MS, history.arrivalDeltas[i]);
+			assertEquals(LENGTH, history.sizes[i]);
+		}
+	}
+
+	@Test
+	public void testStatusVector() {
+		// Every third packet lost
+		for(int i=0; i<21; i++) {
+			transfer(i, i * MS, i % 3 == 1 ? -1 : i * MS);
+		}
+		byte[] fci = report();
+		for(int c=0; c<3; c++) {
+			assertEquals(0xC000, chunk(fci, c) & 0xC000);
+		}
+		// Symbols of 0 to 6: received, lost, received, received, lost, received, received
+		assertEquals(0xC000 | 1 << 12 | 0 << 10 | 1 << 8 | 1 << 6 | 0 << 4 | 1 << 2 | 1, chunk(fci, 0));
+
+		assertEquals(7, history.lost);
+		assertEquals(13, history.count);
+		for(int i=0; i<history.count; i++) {
+			// From the packet received before, one or two packets back
+			assertEquals(history.sendDeltas[i], history.arrivalDeltas[i]);
+			assertTrue(history.sendDeltas[i] == MS || history.sendDeltas[i] == 2 * MS);
+		}
+	}
+
+	@Test
+	public void testLostRun() {
+		transfer(0, 0, 0);
+		for(int i=1; i<21; i++) {
+			transfer(i, i * MS, -1);
+		}
+		transfer(21, 21 * MS, 21 * MS);
+		byte[] fci = report();
+		// Twenty lost packets, the first six in a status vector, then a run
+		assertEquals(0xC000 | 1 << 12, chunk(fci, 0));
+		assertEquals(TransportFeedback.NOT_RECEIVED << 13 | 14, chunk(fci, 1));
+		assertEquals(0xC000 | 1 << 12, chunk(fci, 2));
+		assertEquals(20, history.lost);
+		assertEquals(1, history.count);
+		assertEquals(21 * MS, history.sendDeltas[0]);
+		assertEquals(21 * MS, history.arrivalDeltas[0]);
+	}
+
+	@Test
+	public void testLargeDeltas() {
+		transfer(0, 0, 0);
+		// A delay of 100 milliseconds, more than a one octet delta holds
+		transfer(1, MS, 101 * MS);
+		// Reordered, arrives before the packet sent earlier
+		transfer(2, 2 * MS, 100 * MS);
+		transfer(3, 3 * MS, 103 * MS);
+		byte[] fci = report();
+		assertEquals(0xC000 | 1 << 12 | 2 << 10 | 2 << 8 | 1 << 6, chunk(fci, 0));
+
+		assertEquals(3, history.count);
+		assertEquals(101 * MS, history.arrivalDeltas[0]);
+		assertEquals(-MS, history.arrivalDeltas[1]);
+		assertEquals(3 * MS, history.arrivalDeltas[2]);
+		assertEquals(MS, history.sendDeltas[2]);
+	}
+
+	@Test
+	public void testDeltaResolution() {
+		transfer(0, 0, 0);
+		transfer(1, MS, MS + 100000L);
+		transfer(2, 2 * MS, 2 * MS + 300000L);
+		report();
+		// Multiples of 250 microseconds, rounded down, not accumulating the error
+		assertEquals(MS, history.arrivalDeltas[0]);
+		assertEquals(MS + TransportFeedback.DELTA_UNIT, history.arrivalDeltas[1]);
+	}
+
+	@Test
+	public void testWrap() {
+		for(int i=65530; i<65550; i++) {
+			transfer(i, i * MS, i * MS);
+		}
+		byte[] fci = report();
+		assertEquals(65530, ((fci[0] & 0xFF) << 8) | (fci[1] & 0xFF));
+		assertEquals(20, ((fci[2] & 0xFF) << 8) | (fci[3] & 0xFF));
+		assertEquals(0, history.lost);
+		assertEquals(19, history.count);
+		for(int i=0; i<history.count; i++) {
+			assertEquals(MS, history.arrivalDeltas[i]);
+		}
+	}
+
+	@Test
+	public void testConsecutiveMessages() {
+		for(int i=0; i<10; i++) {
+			transfer(i, i * MS, i * MS);
+		}
+		report();
+		assertFalse(feedback.due(ARRIVED + 10000 * MS));
+		assertNull(feedback.build(ARRIVED + 10000 * MS));
+
+		// The second message starts where the first ended, and knows the last packet
+		for(int i=10; i<20; i++) {
+			transfer(i, i * MS, i * MS);
+		}
+		// Late, already reported
+		feedback.received(5, ARRIVED + 50 * MS);
+		byte[] fci = report();
+		assertEquals(10, ((fci[0] & 0xFF) << 8) | (fci[1] & 0xFF));
+		assertEquals(10, history.count);
+		assertEquals(MS, history.arrivalDeltas[0]);
+		assertEquals(0, history.missedFeedback);
+
+		// A message that went missing
+		for(int i=20; i<30; i++) {
+			transfer(i, i * MS, i * MS);
+		}
+		feedback.build(ARRIVED + 10000 * MS);
+		for(int i=30; i<40; i++) {
+			transfer(i, i * MS, i * MS);
+		}
+		report();
+		assertEquals(1, history.missedFeedback);
+	}
+
+	@Test
+	public void testMalformed() {
+		for(int i=0; i<20; i++) {
+			transfer(i, i * MS, i * MS);
+		}
+		byte[] fci = feedback.build(ARRIVED + 10000 * MS);
+		assertEquals(-1, history.feedback(fci, 0, 7));
+		// The chunk but not the deltas
+		assertEquals(-1, history.feedback(fci, 0, 10));
+	}
+}
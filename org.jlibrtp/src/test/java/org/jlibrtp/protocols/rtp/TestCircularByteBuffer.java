@@ -0,0 +1,242 @@
+/**
+ * Java RTP Library (jlibrtp)
+ * Copyright (C) 2026 agent
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jlibrtp.protocols.rtp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link CircularByteBuffer}.
+ *
+ * @author agent
+ */
+public class TestCircularByteBuffer {
+	private static byte[] bytes(int first, int length) {
+		byte[] b = new byte[length];
+		for(int i=0; i<length; i++) {
+			b[i] = (byte) (first + i);
+		}
+		return b;
+	}
+
+	@Test
+	public void testCapacity() {
+		assertEquals(8, new CircularByteBuffer(8).capacity());
+		assertEquals(16, new CircularByteBuffer(9).capacity());
+	}
+
+	@Test
+	public void testWrap() throws IOException {
+		CircularByteBuffer cbb = new CircularByteBuffer(8);
+		OutputStream os = cbb.getOutputStream();
+		InputStream is = cbb.getInputStream();
+		byte[] in = new byte[8];
+		for(int round=0; round<10; round++) {
+			// 6 does not divide 8, so the copies wrap at every offset
+			os.write(bytes(round * 6, 6));
+			assertEquals(6, is.available());
+			assertEquals(6, is.read(in, 0, 8));
+			for(int i=0; i<6; i++) {
+				assertEquals((byte) (round * 6 + i), in[i]);
+			}
+			assertEquals(0, is.available());
+		}
+		// Nothing to read
+		assertEquals(0, is.read(in));
+	}
+
+	@Test
+	public void testSingleBytes() throws IOException {
+		CircularByteBuffer cbb = new CircularByteBuffer(4);
+		OutputStream os = cbb.getOutputStream();
+		InputStream is = cbb.getInputStream();
+		for(int i=0; i<10; i++) {
+			os.write(200 + i);
+			assertEquals(200 + i, is.read());
+		}
+	}
+
+	@Test
+	public void testDropOldest() throws IOException {
+		CircularByteBuffer cbb = new CircularByteBuffer(8, CircularByteBuffer.DROP_OLDEST);
+		cbb.getOutputStream().write(bytes(0, 6));
+		cbb.getOutputStream().write(bytes(6, 6));
+		assertEquals(4, cbb.dropped());
+		byte[] in = new byte[8];
+		assertEquals(8, cbb.getInputStream().read(in));
+		assertArrayEquals(bytes(4, 8), in);
+	}
+
+	@Test
+	public void testDropNewest() throws IOException {
+		CircularByteBuffer cbb = new CircularByteBuffer(8, CircularByteBuffer.DROP_NEWEST);
+		cbb.getOutputStream().write(bytes(0, 6));
+		cbb.getOutputStream().write(bytes(6, 6));
+		assertEquals(4, cbb.dropped());
+		byte[] in = new byte[8];
+		assertEquals(8, cbb.getInputStream().read(in));
+		assertArrayEquals(bytes(0, 8), in);
+	}
+
+	@Test
+	public void testCloseOutput() throws IOException {
+		CircularByteBuffer cbb = new CircularByteBuffer(8);
+		OutputStream os = cbb.getOutputStream();
+		InputStream is = cbb.getInputStream();
+		os.write(bytes(1, 2));
+		os.close();
+		try {
+			os.write(3);
+			fail("write after close");
+		} catch (IOException e) {
+			// expected
+		}
+		// What was written can still be read, then the end of the stream
+		assertEquals(1, is.read());
+		assertEquals(2, is.read());
+		assertEquals(-1, is.read());
+	}
+
+	@Test
+	public void testCloseOutputWakesReader() throws Exception {
+		CircularByteBuffer cbb = new CircularByteBuffer(8);
+		final InputStream is = cbb.getInputStream();
+		final AtomicReference<Object> result = new AtomicReference<Object>();
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					result.set(is.read());
+				} catch (IOException e) {
+					result.set(e);
+				}
+			}
+		};
+		reader.start();
+		Thread.sleep(50);
+		cbb.getOutputStream().close();
+		reader.join(5000);
+		assertEquals(-1, result.get());
+	}
+
+	@Test
+	public void testCloseInput() throws IOException {
+		CircularByteBuffer cbb = new CircularByteBuffer(8);
+		InputStream is = cbb.getInputStream();
+		cbb.getOutputStream().write(bytes(0, 4));
+		is.close();
+		try {
+			is.read();
+			fail("read after close");
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			is.available();
+			fail("available after close");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCloseInputWakesWriter() throws Exception {
+		CircularByteBuffer cbb = new CircularByteBuffer(8);
+		final OutputStream os = cbb.getOutputStream();
+		final AtomicReference<Object> result = new AtomicReference<Object>();
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					// Twice the capacity, blocks halfway
+					os.write(new byte[16]);
+					result.set("written");
+				} catch (IOException e) {
+					result.set(e);
+				}
+			}
+		};
+		writer.start();
+		Thread.sleep(50);
+		assertNull(result.get());
+		cbb.getInputStream().close();
+		writer.join(5000);
+		assertTrue(result.get() instanceof IOException);
+	}
+
+	@Test
+	public void testOneWriterOneReader() throws Exception {
+		final int total = 4 * 1024 * 1024;
+		final CircularByteBuffer cbb = new CircularByteBuffer(1000);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					Random random = new Random(1);
+					OutputStream os = cbb.getOutputStream();
+					int written = 0;
+					while(written < total) {
+						int n = Math.min(total - written, 1 + random.nextInt(3000));
+						os.write(bytes(written, n));
+						written += n;
+					}
+					os.close();
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		};
+		writer.start();
+
+		Random random = new Random(2);
+		InputStream is = cbb.getInputStream();
+		byte[] in = new byte[2000];
+		int read = 0;
+		while(true) {
+			// Alternate between bulk reads and reads that wait
+			int n = is.read(in, 0, 1 + random.nextInt(in.length));
+			if(n == 0) {
+				int b = is.read();
+				if(b < 0) {
+					break;
+				}
+				assertEquals((byte) read, (byte) b);
+				read++;
+				continue;
+			}
+			for(int i=0; i<n; i++) {
+				assertEquals((byte) (read + i), in[i]);
+			}
+			read += n;
+		}
+		writer.join();
+		assertNull(failure.get());
+		assertEquals(total, read);
+		assertEquals(0, cbb.dropped());
+	}
+}